@@ -8,6 +8,9 @@ import java.beans.VetoableChangeListener;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
 
 
 /**
@@ -16,8 +19,9 @@ import java.util.HashMap;
  * of validation methods defined in concrete subclasses. This is a typical use of
  * reflection to avoid the need for a chain of if/else statements, discussed in
  * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-on-One J2EE Design and Development</a>.
- * <br/>Because validation methods are cached by this class's constructor, the
- * overhead of reflection is not great.
+ * <br/>Because validation methods are found once for each subclass, and
+ * cached, the overhead of reflection is not great. The first instance of
+ * a listener class pays for finding them.
  * <br/>The signature for validation methods must be of this form (the following
  * example validates an int property named age):
  * <code>
@@ -44,17 +48,42 @@ public abstract class AbstractVetoableChangeListener implements VetoableChangeLi
 	 */
 	protected static final String VALIDATE_METHOD_PREFIX = "validate";
 	
-	/** Validation methods, keyed by propertyName */
-	private HashMap validationMethodHash = new HashMap();
+	private static Logger logger = Logger.getLogger(AbstractVetoableChangeListener.class.getName());
 	
+	/**
+	 * Validator tables of listener classes, keyed by class. Each is a Map
+	 * of validation methods keyed by property name. The cache and the tables
+	 * are never modified once published, so lookups need no lock.
+	 */
+	private static volatile HashMap validatorTableCache = new HashMap();
 	
-	/** Creates new AbstractVetoableChangeListener.
-	 * Caches validation methods for efficiency.
+	/** 
+	 * Return the validator table for the given listener class,
+	 * finding the validation methods if we haven't already done so
 	 */
-	public AbstractVetoableChangeListener() throws SecurityException {
-		// Look at all methods in the subclass, trying to find
-		// methods that are validators according to our criteria
-		Method [] methods = getClass().getMethods();
+	private static Map getValidatorTable(Class listenerClass) {
+		Map validators = (Map) validatorTableCache.get(listenerClass);
+		if (validators == null) {
+			validators = findValidators(listenerClass);
+			// Don't keep classes from other ClassLoaders, such as a web application's, alive
+			if (CachedIntrospectionResults.isCacheSafe(listenerClass)) {
+				synchronized (AbstractVetoableChangeListener.class) {
+					HashMap copy = new HashMap(validatorTableCache);
+					copy.put(listenerClass, validators);
+					validatorTableCache = copy;
+				}
+			}
+		}
+		return validators;
+	}
+	
+	/**
+	 * Look at all methods in the listener class, trying to find
+	 * methods that are validators according to our criteria
+	 */
+	private static Map findValidators(Class listenerClass) throws SecurityException {
+		HashMap validators = new HashMap();
+		Method [] methods = listenerClass.getMethods();
 		for (int i = 0; i < methods.length; i++) {
 			// We're looking for methods with names starting with the given prefix,
 			// and two parameters: the value (which may be of any type, primitive or object)
@@ -64,7 +93,6 @@ public abstract class AbstractVetoableChangeListener implements VetoableChangeLi
 				PropertyChangeEvent.class.isAssignableFrom(methods[i].getParameterTypes()[1])) {
 				// We've found a potential validator: it has the right number of parameters
 				// and its name begins with validate...
-				//System.out.println("Found potential validator method [" + methods[i] + "]");
 				Class[] exceptions = methods[i].getExceptionTypes();
 				// We don't care about the return type, but we must ensure that
 				// the method throws only one checked exception, PropertyVetoException
@@ -73,48 +101,58 @@ public abstract class AbstractVetoableChangeListener implements VetoableChangeLi
 					// Ensure it's accessible (for example, it might be a method on an inner class)
 					methods[i].setAccessible(true);
 					String propertyName = Introspector.decapitalize(methods[i].getName().substring(VALIDATE_METHOD_PREFIX.length()));
-					validationMethodHash.put(propertyName, methods[i]);
-					System.out.println(methods[i] + " is validator for property " + propertyName);
+					validators.put(propertyName, methods[i]);
+					if (logger.isDebugEnabled())
+						logger.debug(methods[i] + " is validator for property " + propertyName);
 				}
-				else {
-					//System.out.println("invalid validator");
-				}
-			}
-			else {
-				//System.out.println("method [" + methods[i] + "] is not a validator");
 			}
 		}
+		return validators;
+	}
+	
+	
+	/** Validation methods, keyed by propertyName. Shared by all instances of the class */
+	private final Map validationMethodHash;
+	
+	
+	/** Creates new AbstractVetoableChangeListener.
+	 * Validation methods are found once for each subclass, and cached.
+	 */
+	public AbstractVetoableChangeListener() throws SecurityException {
+		this.validationMethodHash = getValidatorTable(getClass());
 	}	// constructor
 	
 	
+	/**
+	 * Return whether this listener has a validation method for the given property.
+	 * Other property changes are always allowed.
+	 * @param propertyName name of the property
+	 */
+	public final boolean hasValidator(String propertyName) {
+		return validationMethodHash.containsKey(propertyName);
+	}
+	
+	
 	/** Implementation of VetoableChangeListener.
 	 * Will attempt to locate the appropriate validator method and
 	 * invoke it. Will do nothing if there is no validation method for this
 	 * property.
 	 */
 	public final void vetoableChange(PropertyChangeEvent e) throws PropertyVetoException {
-		//System.out.println("VetoableChangeEvent: old value=[" + e.getOldValue() + "] new value=[" + e.getNewValue() + "]");
-		//if (m==null)
 		Method m = (Method) validationMethodHash.get(e.getPropertyName());
-				
 		if (m != null) {
 			try {
-				//System.out.println("Using validator method " + m);
-				Object val = e.getNewValue();
-				//String vals = (String) val;
-				//if (false) 
-				m.invoke(this, new Object[] { val, e });
-				//System.out.println("PROPERTY VALUE NOT VETOED: OK");
+				m.invoke(this, new Object[] { e.getNewValue(), e });
 			}
 			catch (IllegalAccessException ex) {
-				//System.out.println("WARNING: can't validate. method isn't accessible");
+				logger.warn("Can't validate property [" + e.getPropertyName() + "]: validator method [" + m + "] isn't accessible");
 			}
 			catch (InvocationTargetException ex) {
 				// This is what we're looking for: the subclass's
 				// validator method vetoed the property change event
 				// We know that the exception must be of the correct type (unless
 				// it's a runtime exception) as we checked the declared exceptions of the
-				// validator method in this class's constructor.
+				// validator method when we found it.
 				// If it IS a runtime exception, we just rethrow it, to encourage the
 				// author of the subclass to write robust code...
 				if (ex.getTargetException() instanceof RuntimeException)
@@ -123,9 +161,6 @@ public abstract class AbstractVetoableChangeListener implements VetoableChangeLi
 				throw pex;
 			}
 		}	// if there was a validator method for this property
-		else {
-			//System.out.println("no validation method for " + e.getPropertyName());
-		}
 	}	// vetoableChange
 	
 	
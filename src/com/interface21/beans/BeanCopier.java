@@ -0,0 +1,492 @@
+package com.interface21.beans;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyDescriptor;
+import java.beans.PropertyVetoException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Copies properties from beans of one class to beans of another,
+ * such as from data transfer objects to domain objects.
+ * <br/>The copy plan is compiled once: for each readable property of the
+ * source class with a writable counterpart in the target class, the accessors
+ * are resolved, and the Converter from the source property type to the
+ * target property type is found if the types aren't compatible. Copying
+ * then involves no lookups by name, unlike a loop of BeanWrapper
+ * getPropertyValue() and setPropertyValue() calls.
+ * <br/>Properties are matched by name, unless mapped to another target name.
+ * Source properties without a writable target property are skipped,
+ * as are excluded properties. A nested bean that isn't an instance of the
+ * target property's class is copied to a new instance of it, even by a
+ * shallow copy.
+ * <br/>A deep copy also copies nested beans, collections, maps and arrays,
+ * preserving shared references and cycles. A nested bean is copied to
+ * the target property type if that is a concrete class the value isn't
+ * already an instance of (as from a nested DTO to a nested domain object),
+ * otherwise to its own class. Strings, numbers and other immutable values, and
+ * objects of classes in java.* packages other than collections and Dates, are shared.
+ * <br/>Copiers for a source and target class without mappings are cached:
+ * use forClasses(). Copiers are immutable and threadsafe.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ */
+public class BeanCopier {
+
+	/**
+	 * Copiers for pairs of classes without mappings, keyed by ClassPair.
+	 * Never modified once published.
+	 */
+	private static volatile Map copierCache = new HashMap();
+
+	/**
+	 * Return the copier for the given classes, without property mappings or exclusions.
+	 * The copier is cached unless either class was loaded by
+	 * another ClassLoader than this class's own.
+	 * @param sourceClass class to copy from
+	 * @param targetClass class to copy to
+	 * @throws BeansException if either class can't be introspected
+	 */
+	public static BeanCopier forClasses(Class sourceClass, Class targetClass) throws BeansException {
+		ClassPair key = new ClassPair(sourceClass, targetClass);
+		BeanCopier copier = (BeanCopier) copierCache.get(key);
+		if (copier == null) {
+			copier = new BeanCopier(sourceClass, targetClass);
+			if (CachedIntrospectionResults.isCacheSafe(sourceClass) && CachedIntrospectionResults.isCacheSafe(targetClass)) {
+				synchronized (BeanCopier.class) {
+					Map copy = new HashMap(copierCache);
+					copy.put(key, copier);
+					copierCache = copy;
+				}
+			}
+		}
+		return copier;
+	}
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final Class sourceClass;
+
+	private final Class targetClass;
+
+	private final CopyStep[] steps;
+
+	private final ConversionService conversionService = ConversionService.getDefaultInstance();
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a copier matching properties by name
+	 * @param sourceClass class to copy from
+	 * @param targetClass class to copy to
+	 * @throws BeansException if either class can't be introspected
+	 */
+	public BeanCopier(Class sourceClass, Class targetClass) throws BeansException {
+		this(sourceClass, targetClass, null, null);
+	}
+
+	/**
+	 * Create a copier with property mappings and exclusions
+	 * @param sourceClass class to copy from
+	 * @param targetClass class to copy to
+	 * @param propertyMappings Map from source property name to target
+	 * property name, for properties whose names differ. May be null.
+	 * @param excludedProperties names of source properties not to copy. May be null.
+	 * @throws NotWritablePropertyException if a mapped target property isn't writable
+	 * @throws FatalBeanException if a mapped source property isn't readable
+	 * @throws BeansException if either class can't be introspected
+	 */
+	public BeanCopier(Class sourceClass, Class targetClass, Map propertyMappings,
+				String[] excludedProperties) throws BeansException {
+		this.sourceClass = sourceClass;
+		this.targetClass = targetClass;
+		Set excluded = new HashSet();
+		if (excludedProperties != null) {
+			for (int i = 0; i < excludedProperties.length; i++)
+				excluded.add(excludedProperties[i]);
+		}
+
+		CachedIntrospectionResults sourceResults = CachedIntrospectionResults.forClass(sourceClass);
+		CachedIntrospectionResults targetResults = CachedIntrospectionResults.forClass(targetClass);
+		if (propertyMappings != null) {
+			for (Iterator itr = propertyMappings.entrySet().iterator(); itr.hasNext(); ) {
+				Map.Entry entry = (Map.Entry) itr.next();
+				PropertyAccessor source = sourceResults.getPropertyAccessor((String) entry.getKey());
+				if (source == null || !source.isReadable())
+					throw new FatalBeanException("Mapped property [" + entry.getKey() + "] is not readable in class [" + sourceClass.getName() + "]", null);
+				PropertyAccessor target = targetResults.getPropertyAccessor((String) entry.getValue());
+				if (target == null || !target.isWritable())
+					throw new NotWritablePropertyException((String) entry.getValue(), targetClass);
+			}
+		}
+
+		List steps = new ArrayList();
+		PropertyDescriptor[] pds = sourceResults.getPropertyDescriptors();
+		for (int i = 0; i < pds.length; i++) {
+			String name = pds[i].getName();
+			if (excluded.contains(name))
+				continue;
+			PropertyAccessor source = sourceResults.getPropertyAccessor(name);
+			String targetName = (propertyMappings != null && propertyMappings.containsKey(name)) ?
+					(String) propertyMappings.get(name) : name;
+			PropertyAccessor target = targetResults.getPropertyAccessor(targetName);
+			// Indexed-only properties have no property type, and aren't copied
+			if (source != null && source.isReadable() && source.getPropertyType() != null &&
+					target != null && target.isWritable() && target.getPropertyType() != null)
+				steps.add(new CopyStep(source, target, this.conversionService));
+		}
+		this.steps = (CopyStep[]) steps.toArray(new CopyStep[steps.size()]);
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	public Class getSourceClass() {
+		return sourceClass;
+	}
+
+	public Class getTargetClass() {
+		return targetClass;
+	}
+
+	/**
+	 * Return the names of the source properties this copier copies
+	 */
+	public String[] getCopiedPropertyNames() {
+		String[] names = new String[steps.length];
+		for (int i = 0; i < steps.length; i++)
+			names[i] = steps[i].source.getName();
+		return names;
+	}
+
+	/**
+	 * Copy the properties of the source object to a new instance
+	 * of the target class. Nested objects are shared where the types allow.
+	 * @param source object to copy from: an instance of the source class
+	 * @return the new object
+	 * @throws BeansException if a property can't be copied
+	 */
+	public Object copy(Object source) throws BeansException {
+		Object target = BeanUtils.instantiateClass(targetClass);
+		copy(source, target);
+		return target;
+	}
+
+	/**
+	 * Copy the properties of the source object to the target object.
+	 * Nested objects are shared where the types allow.
+	 * @param source object to copy from: an instance of the source class
+	 * @param target object to copy to: an instance of the target class
+	 * @throws BeansException if a property can't be copied
+	 */
+	public void copy(Object source, Object target) throws BeansException {
+		copyProperties(source, target, null, false);
+	}
+
+	/**
+	 * Deep copy the source object to a new instance of the target class
+	 * @param source object to copy from: an instance of the source class
+	 * @return the new object
+	 * @throws BeansException if a property can't be copied
+	 */
+	public Object deepCopy(Object source) throws BeansException {
+		Object target = BeanUtils.instantiateClass(targetClass);
+		deepCopy(source, target);
+		return target;
+	}
+
+	/**
+	 * Deep copy the properties of the source object to the target object
+	 * @param source object to copy from: an instance of the source class
+	 * @param target object to copy to: an instance of the target class
+	 * @throws BeansException if a property can't be copied
+	 */
+	public void deepCopy(Object source, Object target) throws BeansException {
+		IdentityHashMap copies = new IdentityHashMap();
+		copies.put(source, target);
+		copyProperties(source, target, copies, true);
+	}
+
+	public String toString() {
+		return "BeanCopier from [" + sourceClass.getName() + "] to [" + targetClass.getName() + "]: " + steps.length + " properties";
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	/**
+	 * Copy each property
+	 * @param copies copies made so far, keyed by original. May be null
+	 * for a shallow copy, until a nested bean has to be copied.
+	 * @param deep whether this is a deep copy
+	 */
+	private void copyProperties(Object source, Object target, IdentityHashMap copies, boolean deep) throws BeansException {
+		if (!sourceClass.isInstance(source))
+			throw new FatalBeanException("Object [" + source + "] is not an instance of [" + sourceClass.getName() + "]", null);
+		if (!targetClass.isInstance(target))
+			throw new FatalBeanException("Object [" + target + "] is not an instance of [" + targetClass.getName() + "]", null);
+		for (int i = 0; i < steps.length; i++) {
+			CopyStep step = steps[i];
+			Object value = null;
+			try {
+				value = step.source.getValue(source);
+			}
+			catch (InvocationTargetException ex) {
+				throw new FatalBeanException("getter for property [" + step.source.getName() + "] threw exception", ex.getTargetException());
+			}
+			catch (IllegalAccessException ex) {
+				throw new FatalBeanException("illegal attempt to get property [" + step.source.getName() + "] threw exception", ex);
+			}
+			if (deep) {
+				value = copyValue(value, step.target.getPropertyType(), copies);
+			}
+			else if (value != null && step.converter == null && !step.target.isAssignable(value) && isBeanClass(step.target.getPropertyType())) {
+				// Nested beans may refer back to beans being copied
+				if (copies == null) {
+					copies = new IdentityHashMap();
+					copies.put(source, target);
+				}
+				value = copyNestedBean(value, step.target.getPropertyType(), copies);
+			}
+			setValue(target, step, value);
+		}
+	}
+
+	/**
+	 * Convert the value if necessary, and set the target property
+	 */
+	private void setValue(Object target, CopyStep step, Object value) throws BeansException {
+		String propertyName = step.target.getName();
+		try {
+			if (value != null && !step.target.isAssignable(value)) {
+				value = (step.converter != null && step.sourceType.isInstance(value)) ?
+					step.converter.convert(value) : step.target.convert(value, this.conversionService);
+			}
+		}
+		catch (IllegalArgumentException ex) {
+			throw new TypeMismatchException(
+				new PropertyChangeEvent(target, propertyName, null, value), step.target.getPropertyType());
+		}
+		try {
+			step.target.setValue(target, value);
+		}
+		catch (InvocationTargetException ex) {
+			PropertyChangeEvent propertyChangeEvent = new PropertyChangeEvent(target, propertyName, null, value);
+			if (ex.getTargetException() instanceof PropertyVetoException)
+				throw new FatalBeanException("setter for property [" + propertyName + "] vetoed change", ex.getTargetException());
+			if (ex.getTargetException() instanceof ClassCastException)
+				throw new TypeMismatchException(propertyChangeEvent, step.target.getPropertyType(), ex);
+			throw new MethodInvocationException(ex.getTargetException(), propertyChangeEvent);
+		}
+		catch (IllegalAccessException ex) {
+			throw new FatalBeanException("illegal attempt to set property [" + propertyName + "] threw exception", ex);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new TypeMismatchException(
+				new PropertyChangeEvent(target, propertyName, null, value), step.target.getPropertyType(), ex);
+		}
+	}
+
+	/**
+	 * Deep copy a property value
+	 * @param value value to copy
+	 * @param requiredType type of the target property, or Object
+	 * for collection elements and map values
+	 * @param copies copies made so far, keyed by original
+	 */
+	private static Object copyValue(Object value, Class requiredType, IdentityHashMap copies) throws BeansException {
+		if (value == null || isShared(value))
+			return value;
+		Object copy = copies.get(value);
+		if (copy != null)
+			return copy;
+
+		if (value instanceof Date) {
+			copy = ((Date) value).clone();
+			copies.put(value, copy);
+		}
+		else if (value.getClass().isArray()) {
+			Class componentType = value.getClass().getComponentType();
+			int length = Array.getLength(value);
+			copy = Array.newInstance(componentType, length);
+			copies.put(value, copy);
+			if (!componentType.isPrimitive()) {
+				for (int i = 0; i < length; i++)
+					Array.set(copy, i, copyValue(Array.get(value, i), componentType, copies));
+			}
+			else {
+				System.arraycopy(value, 0, copy, 0, length);
+			}
+		}
+		else if (value instanceof Collection) {
+			Collection collection = newCollection((Collection) value);
+			copies.put(value, collection);
+			for (Iterator itr = ((Collection) value).iterator(); itr.hasNext(); )
+				collection.add(copyValue(itr.next(), Object.class, copies));
+			copy = collection;
+		}
+		else if (value instanceof Map) {
+			Map map = newMap((Map) value);
+			copies.put(value, map);
+			for (Iterator itr = ((Map) value).entrySet().iterator(); itr.hasNext(); ) {
+				Map.Entry entry = (Map.Entry) itr.next();
+				map.put(entry.getKey(), copyValue(entry.getValue(), Object.class, copies));
+			}
+			copy = map;
+		}
+		else {
+			// A bean: copy it to the required type if it's a different bean class
+			Class copyClass = (!requiredType.isInstance(value) && isBeanClass(requiredType)) ? requiredType : value.getClass();
+			copy = newInstanceOrNull(copyClass);
+			if (copy == null)
+				return value;
+			copies.put(value, copy);
+			forClasses(value.getClass(), copyClass).copyProperties(value, copy, copies, true);
+		}
+		return copy;
+	}
+
+	/**
+	 * Shallow copy a nested bean to a new instance of the required type.
+	 * Beans already copied are reused, so that cyclic graphs can be copied.
+	 * @param copies copies made so far, keyed by original
+	 */
+	private static Object copyNestedBean(Object value, Class requiredType, IdentityHashMap copies) throws BeansException {
+		Object copy = copies.get(value);
+		if (requiredType.isInstance(copy))
+			return copy;
+		copy = BeanUtils.instantiateClass(requiredType);
+		copies.put(value, copy);
+		forClasses(value.getClass(), requiredType).copyProperties(value, copy, copies, false);
+		return copy;
+	}
+
+	/**
+	 * Is this an immutable value, or a value of a class we don't know
+	 * how to copy, which copies can share?
+	 */
+	private static boolean isShared(Object value) {
+		if (value instanceof String || value instanceof Number || value instanceof Boolean ||
+				value instanceof Character || value instanceof Class)
+			return true;
+		if (value instanceof Collection || value instanceof Map || value instanceof Date || value.getClass().isArray())
+			return false;
+		return value.getClass().getName().startsWith("java");
+	}
+
+	/**
+	 * Could a nested bean be copied to a new instance of this class?
+	 */
+	private static boolean isBeanClass(Class clazz) {
+		return !clazz.isPrimitive() && !clazz.isArray() && !clazz.isInterface() &&
+			!Modifier.isAbstract(clazz.getModifiers()) && !clazz.getName().startsWith("java");
+	}
+
+	private static Collection newCollection(Collection original) {
+		// The no-arg constructor of a sorted set would lose its comparator
+		if (original instanceof SortedSet)
+			return new TreeSet(((SortedSet) original).comparator());
+		Collection collection = (Collection) newInstanceOrNull(original.getClass());
+		if (collection != null)
+			return collection;
+		if (original instanceof Set)
+			return new HashSet(original.size());
+		return new ArrayList(original.size());
+	}
+
+	private static Map newMap(Map original) {
+		if (original instanceof SortedMap)
+			return new TreeMap(((SortedMap) original).comparator());
+		Map map = (Map) newInstanceOrNull(original.getClass());
+		return (map != null) ? map : new HashMap(original.size());
+	}
+
+	/**
+	 * Instantiate the class with its public no-arg constructor,
+	 * returning null if it doesn't have one
+	 */
+	private static Object newInstanceOrNull(Class clazz) {
+		if (!Modifier.isPublic(clazz.getModifiers()))
+			return null;
+		try {
+			return clazz.newInstance();
+		}
+		catch (Exception ex) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Copy of one property: accessors and, if the property types
+	 * aren't compatible, the Converter between them
+	 */
+	private static class CopyStep {
+
+		final PropertyAccessor source;
+
+		final PropertyAccessor target;
+
+		/** Type source values are instances of, with primitives wrapped */
+		final Class sourceType;
+
+		/** Converter from the source type, or null if not needed or not found */
+		final Converter converter;
+
+		CopyStep(PropertyAccessor source, PropertyAccessor target, ConversionService conversionService) {
+			this.source = source;
+			this.target = target;
+			Class sourceType = source.getPropertyType();
+			Class targetType = target.getPropertyType();
+			this.sourceType = sourceType.isPrimitive() ? PropertyAccessor.getWrapperType(sourceType) : sourceType;
+			Class assignableType = targetType.isPrimitive() ? PropertyAccessor.getWrapperType(targetType) : targetType;
+			this.converter = assignableType.isAssignableFrom(this.sourceType) ?
+				null : conversionService.getConverter(this.sourceType, targetType);
+		}
+	}	// class CopyStep
+
+
+	/**
+	 * Key for the copier cache
+	 */
+	private static class ClassPair {
+
+		private final Class sourceClass;
+
+		private final Class targetClass;
+
+		ClassPair(Class sourceClass, Class targetClass) {
+			this.sourceClass = sourceClass;
+			this.targetClass = targetClass;
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof ClassPair))
+				return false;
+			ClassPair pair = (ClassPair) other;
+			return this.sourceClass == pair.sourceClass && this.targetClass == pair.targetClass;
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(sourceClass) * 31 + System.identityHashCode(targetClass);
+		}
+	}	// class ClassPair
+
+}	// class BeanCopier
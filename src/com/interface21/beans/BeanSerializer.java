@@ -0,0 +1,1049 @@
+package com.interface21.beans;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+
+/**
+ * Compact binary serializer for JavaBeans such as command objects and form
+ * beans, as an alternative to Java serialization for session replication.
+ * <br/>The schema of a bean class is the list of its properties that are both
+ * readable and writable, sorted by name, as found by CachedIntrospectionResults.
+ * A bean is written as a reference to its class followed by its property values
+ * in schema order, without names. The class name and a fingerprint of the
+ * schema are written only the first time a class appears in a payload; the
+ * reader rejects the payload if the fingerprint doesn't match its own class.
+ * <br/>Primitive properties are written without type tags: ints, longs and shorts
+ * as zigzag varints, so small values take one byte. Other values are written with
+ * a one-byte tag. Supported types are Strings, primitive wrappers, BigDecimal,
+ * BigInteger, java.util.Date, java.sql.Date, Time and Timestamp, arrays, nested
+ * beans, and the JDK Collections and Maps that hold nothing but their elements:
+ * ArrayList, LinkedList, Vector, HashSet, LinkedHashSet, TreeSet, HashMap,
+ * LinkedHashMap (unless in access order), Hashtable and TreeMap. The comparator
+ * of a TreeSet or TreeMap is written with it, and passed to the constructor
+ * taking a Comparator when it is read. Other Collections and Maps, such as
+ * Properties with defaults or user subclasses, may hold more state, and are
+ * written with Java serialization.
+ * <br/>A bean is an object of a public class outside the java packages with a public
+ * no-arg constructor, whose instance fields, other than transient fields, all
+ * have readable and writable properties of the same name. Serializable classes
+ * that customize their serialization, or are Externalizable, aren't beans.
+ * Other Serializable values fall back to Java serialization, so that no state is
+ * lost; other objects are rejected. Shared references and cycles between beans,
+ * collections, maps and arrays are preserved.
+ * <br/>Threadsafe: each call uses its own state.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see SerializedBeanHolder
+ */
+public class BeanSerializer {
+
+	private static final int MAGIC = 0xB5;
+
+	private static final int VERSION = 1;
+
+	// Value tags
+	private static final int NULL = 0;
+	private static final int BACK_REFERENCE = 1;
+	private static final int STRING = 2;
+	private static final int INTEGER = 3;
+	private static final int LONG = 4;
+	private static final int TRUE = 5;
+	private static final int FALSE = 6;
+	private static final int DOUBLE = 7;
+	private static final int FLOAT = 8;
+	private static final int SHORT = 9;
+	private static final int BYTE = 10;
+	private static final int CHARACTER = 11;
+	private static final int BIG_DECIMAL = 12;
+	private static final int BIG_INTEGER = 13;
+	private static final int DATE = 14;
+	private static final int SQL_DATE = 15;
+	private static final int SQL_TIME = 16;
+	private static final int TIMESTAMP = 17;
+	private static final int BEAN = 18;
+	private static final int COLLECTION = 19;
+	private static final int MAP = 20;
+	private static final int ARRAY = 21;
+	private static final int SERIALIZED = 22;
+	private static final int SORTED_COLLECTION = 23;
+	private static final int SORTED_MAP = 24;
+
+	/** Schemas keyed by bean class. Never modified once published */
+	private static volatile Map schemaCache = new HashMap();
+
+	/**
+	 * Collection and Map classes written as their elements: they hold no other
+	 * state, except the comparator of TreeSet and TreeMap, which is written,
+	 * and the access order of LinkedHashMap, which must be checked
+	 */
+	private static final Set COMPACT_CLASSES = new HashSet(Arrays.asList(new Class[] {
+		ArrayList.class, LinkedList.class, Vector.class, HashSet.class, LinkedHashSet.class, TreeSet.class,
+		HashMap.class, LinkedHashMap.class, Hashtable.class, TreeMap.class
+	}));
+
+	/** LinkedHashMap's private accessOrder field, or null if we can't read it */
+	private static final Field accessOrderField = findAccessOrderField();
+
+	private static Field findAccessOrderField() {
+		try {
+			Field field = LinkedHashMap.class.getDeclaredField("accessOrder");
+			field.setAccessible(true);
+			return field;
+		}
+		catch (Exception ex) {
+			// Not in this JDK, or not accessible
+			return null;
+		}
+	}
+
+	private static final Comparator NAME_ORDER = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			return ((PropertyAccessor) o1).getName().compareTo(((PropertyAccessor) o2).getName());
+		}
+	};
+
+	/**
+	 * Return the schema for the given bean class
+	 */
+	private static Schema getSchema(Class beanClass) throws BeansException {
+		Schema schema = (Schema) schemaCache.get(beanClass);
+		if (schema == null) {
+			schema = new Schema(beanClass);
+			if (CachedIntrospectionResults.isCacheSafe(beanClass)) {
+				synchronized (BeanSerializer.class) {
+					Map copy = new HashMap(schemaCache);
+					copy.put(beanClass, schema);
+					schemaCache = copy;
+				}
+			}
+		}
+		return schema;
+	}
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	/** ClassLoader to load classes with, or null to use the thread context ClassLoader */
+	private final ClassLoader classLoader;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a BeanSerializer that loads classes with the thread context ClassLoader
+	 * at the time of deserialization, as web containers set it to the web
+	 * application's ClassLoader while restoring sessions
+	 */
+	public BeanSerializer() {
+		this(null);
+	}
+
+	/**
+	 * Create a BeanSerializer that loads classes with the given ClassLoader
+	 * @param classLoader ClassLoader to load classes named in payloads
+	 */
+	public BeanSerializer(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Serialize the given object, typically a bean
+	 * @param o object to serialize. May be null.
+	 * @return the serialized form
+	 * @throws FatalBeanException if the object, or an object it references,
+	 * isn't a bean or a supported type, or a getter throws an exception
+	 */
+	public byte[] serialize(Object o) throws BeansException {
+		Writer writer = new Writer();
+		writer.writeByte(MAGIC);
+		writer.writeByte(VERSION);
+		writer.writeValue(o);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Deserialize an object serialized by this class
+	 * @param data serialized form
+	 * @return the object
+	 * @throws FatalBeanException if the data is invalid, or a class can't be
+	 * loaded, or a class's properties differ from those it had when serialized
+	 */
+	public Object deserialize(byte[] data) throws BeansException {
+		Reader reader = new Reader(data, getClassLoader());
+		if (reader.readByte() != MAGIC || reader.readByte() != VERSION)
+			throw new FatalBeanException("Data is not in BeanSerializer format version " + VERSION, null);
+		Object o = reader.readValue();
+		if (reader.pos != data.length)
+			throw new FatalBeanException("Unexpected data after serialized object", null);
+		return o;
+	}
+
+	private ClassLoader getClassLoader() {
+		if (this.classLoader != null)
+			return this.classLoader;
+		ClassLoader cl = Thread.currentThread().getContextClassLoader();
+		return (cl != null) ? cl : BeanSerializer.class.getClassLoader();
+	}
+
+
+	/**
+	 * Properties of a bean class, in the order they're serialized
+	 */
+	private static class Schema {
+
+		final Class beanClass;
+
+		final PropertyAccessor[] properties;
+
+		final int fingerprint;
+
+		/** Are the properties all the state of the class, so that it can be written as a bean? */
+		final boolean complete;
+
+		Schema(Class beanClass) throws BeansException {
+			this.beanClass = beanClass;
+			PropertyAccessor[] accessors = CachedIntrospectionResults.forClass(beanClass).getPropertyAccessors();
+			List properties = new ArrayList(accessors.length);
+			for (int i = 0; i < accessors.length; i++) {
+				if (accessors[i].isReadable() && accessors[i].isWritable() && accessors[i].getPropertyType() != null)
+					properties.add(accessors[i]);
+			}
+			this.properties = (PropertyAccessor[]) properties.toArray(new PropertyAccessor[properties.size()]);
+			Arrays.sort(this.properties, NAME_ORDER);
+			StringBuffer sb = new StringBuffer();
+			for (int i = 0; i < this.properties.length; i++)
+				sb.append(this.properties[i].getName()).append(':').append(this.properties[i].getPropertyType().getName()).append(';');
+			this.fingerprint = sb.toString().hashCode();
+			this.complete = isComplete();
+		}
+
+		/**
+		 * Does every non-transient instance field have a property of the same name,
+		 * and, if the class is Serializable, does it leave serialization to the JVM?
+		 */
+		private boolean isComplete() {
+			if (Externalizable.class.isAssignableFrom(this.beanClass))
+				return false;
+			boolean serializable = Serializable.class.isAssignableFrom(this.beanClass);
+			Set names = new HashSet();
+			for (int i = 0; i < this.properties.length; i++)
+				names.add(this.properties[i].getName());
+			try {
+				for (Class c = this.beanClass; c != null && c != Object.class; c = c.getSuperclass()) {
+					if (serializable && (declaresMethod(c, "writeObject") || declaresMethod(c, "writeReplace") ||
+							declaresMethod(c, "readResolve")))
+						return false;
+					Field[] fields = c.getDeclaredFields();
+					for (int i = 0; i < fields.length; i++) {
+						int modifiers = fields[i].getModifiers();
+						if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !names.contains(fields[i].getName()))
+							return false;
+					}
+				}
+				return true;
+			}
+			catch (SecurityException ex) {
+				// Can't tell: don't risk losing state
+				return false;
+			}
+		}
+
+		private static boolean declaresMethod(Class c, String name) {
+			Method[] methods = c.getDeclaredMethods();
+			for (int i = 0; i < methods.length; i++) {
+				if (methods[i].getName().equals(name))
+					return true;
+			}
+			return false;
+		}
+	}	// class Schema
+
+
+	/**
+	 * Writes one payload
+	 */
+	private static class Writer {
+
+		private byte[] buf = new byte[256];
+
+		private int count;
+
+		/** Beans, collections, maps and arrays written, mapped to their Integer index */
+		private final IdentityHashMap objects = new IdentityHashMap();
+
+		/** Classes written, mapped to their Integer index, from 1 */
+		private final Map classes = new HashMap();
+
+		byte[] toByteArray() {
+			byte[] result = new byte[count];
+			System.arraycopy(buf, 0, result, 0, count);
+			return result;
+		}
+
+		private void ensureCapacity(int extra) {
+			if (count + extra > buf.length) {
+				byte[] grown = new byte[Math.max(buf.length * 2, count + extra)];
+				System.arraycopy(buf, 0, grown, 0, count);
+				buf = grown;
+			}
+		}
+
+		void writeByte(int b) {
+			ensureCapacity(1);
+			buf[count++] = (byte) b;
+		}
+
+		void writeVarInt(int v) {
+			ensureCapacity(5);
+			while ((v & ~0x7F) != 0) {
+				buf[count++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buf[count++] = (byte) v;
+		}
+
+		void writeVarLong(long v) {
+			ensureCapacity(10);
+			while ((v & ~0x7FL) != 0) {
+				buf[count++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buf[count++] = (byte) v;
+		}
+
+		void writeSignedVarInt(int v) {
+			writeVarInt((v << 1) ^ (v >> 31));
+		}
+
+		void writeSignedVarLong(long v) {
+			writeVarLong((v << 1) ^ (v >> 63));
+		}
+
+		void writeFixedInt(int v) {
+			ensureCapacity(4);
+			buf[count++] = (byte) (v >>> 24);
+			buf[count++] = (byte) (v >>> 16);
+			buf[count++] = (byte) (v >>> 8);
+			buf[count++] = (byte) v;
+		}
+
+		void writeFixedLong(long v) {
+			writeFixedInt((int) (v >>> 32));
+			writeFixedInt((int) v);
+		}
+
+		void writeBytes(byte[] b) {
+			writeVarInt(b.length);
+			ensureCapacity(b.length);
+			System.arraycopy(b, 0, buf, count, b.length);
+			count += b.length;
+		}
+
+		void writeString(String s) {
+			// Most strings in beans are ASCII: write those directly
+			int length = s.length();
+			boolean ascii = true;
+			for (int i = 0; i < length && ascii; i++)
+				ascii = s.charAt(i) < 0x80;
+			if (ascii) {
+				writeVarInt(length);
+				ensureCapacity(length);
+				for (int i = 0; i < length; i++)
+					buf[count++] = (byte) s.charAt(i);
+			}
+			else {
+				try {
+					writeBytes(s.getBytes("UTF-8"));
+				}
+				catch (UnsupportedEncodingException ex) {
+					// Can't happen: every JVM supports UTF-8
+					throw new FatalBeanException("UTF-8 not supported", ex);
+				}
+			}
+		}
+
+		/**
+		 * Write a reference to the given class, with its name if it's new
+		 * @return whether the class is new in this payload
+		 */
+		boolean writeClass(Class clazz) {
+			Integer index = (Integer) classes.get(clazz);
+			if (index != null) {
+				writeVarInt(index.intValue());
+				return false;
+			}
+			classes.put(clazz, new Integer(classes.size() + 1));
+			writeVarInt(0);
+			writeString(clazz.getName());
+			return true;
+		}
+
+		/**
+		 * Write a back reference if we've already written this object, else register it
+		 * @return whether we wrote a back reference
+		 */
+		private boolean writeBackReference(Object o) {
+			Integer index = (Integer) objects.get(o);
+			if (index != null) {
+				writeByte(BACK_REFERENCE);
+				writeVarInt(index.intValue());
+				return true;
+			}
+			objects.put(o, new Integer(objects.size()));
+			return false;
+		}
+
+		/**
+		 * Write the value of a property of the given type: primitives without a tag
+		 */
+		void writeProperty(Object value, Class type) throws BeansException {
+			if (!type.isPrimitive()) {
+				writeValue(value);
+			}
+			else if (type == int.class) {
+				writeSignedVarInt(((Integer) value).intValue());
+			}
+			else if (type == long.class) {
+				writeSignedVarLong(((Long) value).longValue());
+			}
+			else if (type == boolean.class) {
+				writeByte(((Boolean) value).booleanValue() ? 1 : 0);
+			}
+			else if (type == double.class) {
+				writeFixedLong(Double.doubleToLongBits(((Double) value).doubleValue()));
+			}
+			else if (type == float.class) {
+				writeFixedInt(Float.floatToIntBits(((Float) value).floatValue()));
+			}
+			else if (type == short.class) {
+				writeSignedVarInt(((Short) value).shortValue());
+			}
+			else if (type == byte.class) {
+				writeByte(((Byte) value).byteValue());
+			}
+			else {
+				writeVarInt(((Character) value).charValue());
+			}
+		}
+
+		/**
+		 * Write a tagged value
+		 */
+		void writeValue(Object o) throws BeansException {
+			if (o == null) {
+				writeByte(NULL);
+			}
+			else if (o instanceof String) {
+				writeByte(STRING);
+				writeString((String) o);
+			}
+			else if (o instanceof Integer) {
+				writeByte(INTEGER);
+				writeSignedVarInt(((Integer) o).intValue());
+			}
+			else if (o instanceof Long) {
+				writeByte(LONG);
+				writeSignedVarLong(((Long) o).longValue());
+			}
+			else if (o instanceof Boolean) {
+				writeByte(((Boolean) o).booleanValue() ? TRUE : FALSE);
+			}
+			else if (o instanceof Double) {
+				writeByte(DOUBLE);
+				writeFixedLong(Double.doubleToLongBits(((Double) o).doubleValue()));
+			}
+			else if (o instanceof Float) {
+				writeByte(FLOAT);
+				writeFixedInt(Float.floatToIntBits(((Float) o).floatValue()));
+			}
+			else if (o instanceof Short) {
+				writeByte(SHORT);
+				writeSignedVarInt(((Short) o).shortValue());
+			}
+			else if (o instanceof Byte) {
+				writeByte(BYTE);
+				writeByte(((Byte) o).byteValue());
+			}
+			else if (o instanceof Character) {
+				writeByte(CHARACTER);
+				writeVarInt(((Character) o).charValue());
+			}
+			else if (o.getClass() == BigDecimal.class) {
+				writeByte(BIG_DECIMAL);
+				writeString(o.toString());
+			}
+			else if (o.getClass() == BigInteger.class) {
+				writeByte(BIG_INTEGER);
+				writeString(o.toString());
+			}
+			else if (o.getClass() == Date.class) {
+				writeByte(DATE);
+				writeSignedVarLong(((Date) o).getTime());
+			}
+			else if (o.getClass() == java.sql.Date.class) {
+				writeByte(SQL_DATE);
+				writeSignedVarLong(((Date) o).getTime());
+			}
+			else if (o.getClass() == java.sql.Time.class) {
+				writeByte(SQL_TIME);
+				writeSignedVarLong(((Date) o).getTime());
+			}
+			else if (o.getClass() == Timestamp.class) {
+				writeByte(TIMESTAMP);
+				writeSignedVarLong(((Timestamp) o).getTime());
+				writeVarInt(((Timestamp) o).getNanos());
+			}
+			else if (!writeBackReference(o)) {
+				writeObject(o);
+			}
+		}
+
+		/**
+		 * Write an array, Collection, Map, bean or Serializable object
+		 * that hasn't been written before
+		 */
+		private void writeObject(Object o) throws BeansException {
+			Class clazz = o.getClass();
+			// A sorted collection or map with a comparator can't be recreated without it
+			Comparator comparator = null;
+			if (o instanceof SortedSet)
+				comparator = ((SortedSet) o).comparator();
+			else if (o instanceof SortedMap)
+				comparator = ((SortedMap) o).comparator();
+			if (clazz.isArray()) {
+				writeByte(ARRAY);
+				writeClass(clazz.getComponentType());
+				int length = Array.getLength(o);
+				writeVarInt(length);
+				Class componentType = clazz.getComponentType();
+				for (int i = 0; i < length; i++)
+					writeProperty(Array.get(o, i), componentType);
+			}
+			else if (o instanceof SortedSet && comparator != null && isCompact(o)) {
+				writeByte(SORTED_COLLECTION);
+				writeClass(clazz);
+				writeValue(comparator);
+				writeVarInt(((Collection) o).size());
+				for (Iterator itr = ((Collection) o).iterator(); itr.hasNext(); )
+					writeValue(itr.next());
+			}
+			else if (o instanceof SortedMap && comparator != null && isCompact(o)) {
+				writeByte(SORTED_MAP);
+				writeClass(clazz);
+				writeValue(comparator);
+				writeMapEntries((Map) o);
+			}
+			else if (o instanceof Collection && comparator == null && isCompact(o)) {
+				writeByte(COLLECTION);
+				writeClass(clazz);
+				writeVarInt(((Collection) o).size());
+				for (Iterator itr = ((Collection) o).iterator(); itr.hasNext(); )
+					writeValue(itr.next());
+			}
+			else if (o instanceof Map && comparator == null && isCompact(o)) {
+				writeByte(MAP);
+				writeClass(clazz);
+				writeMapEntries((Map) o);
+			}
+			else if (isBean(clazz)) {
+				writeBean(o);
+			}
+			else if (o instanceof Serializable) {
+				writeByte(SERIALIZED);
+				writeBytes(javaSerialize(o));
+			}
+			else {
+				throw new FatalBeanException("Cannot serialize object of class [" + clazz.getName() + "]: " +
+					"it is not Serializable, nor a bean whose fields are all properties", null);
+			}
+		}
+
+		private void writeMapEntries(Map map) throws BeansException {
+			writeVarInt(map.size());
+			for (Iterator itr = map.entrySet().iterator(); itr.hasNext(); ) {
+				Map.Entry entry = (Map.Entry) itr.next();
+				writeValue(entry.getKey());
+				writeValue(entry.getValue());
+			}
+		}
+
+		private void writeBean(Object bean) throws BeansException {
+			Schema schema = getSchema(bean.getClass());
+			writeByte(BEAN);
+			if (writeClass(bean.getClass()))
+				writeFixedInt(schema.fingerprint);
+			for (int i = 0; i < schema.properties.length; i++) {
+				PropertyAccessor accessor = schema.properties[i];
+				Object value = null;
+				try {
+					value = accessor.getValue(bean);
+				}
+				catch (InvocationTargetException ex) {
+					throw new FatalBeanException("getter for property [" + accessor.getName() + "] threw exception", ex.getTargetException());
+				}
+				catch (IllegalAccessException ex) {
+					throw new FatalBeanException("illegal attempt to get property [" + accessor.getName() + "] threw exception", ex);
+				}
+				writeProperty(value, accessor.getPropertyType());
+			}
+		}
+
+		private byte[] javaSerialize(Object o) throws BeansException {
+			try {
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				ObjectOutputStream oos = new ObjectOutputStream(bos);
+				oos.writeObject(o);
+				oos.close();
+				return bos.toByteArray();
+			}
+			catch (IOException ex) {
+				throw new FatalBeanException("Cannot serialize object of class [" + o.getClass().getName() + "]", ex);
+			}
+		}
+	}	// class Writer
+
+
+	/**
+	 * Reads one payload
+	 */
+	private static class Reader {
+
+		private final byte[] buf;
+
+		int pos;
+
+		private final ClassLoader classLoader;
+
+		/** Beans, collections, maps and arrays read, by index */
+		private final List objects = new ArrayList();
+
+		/** Classes read, by index from 1 */
+		private final List classes = new ArrayList();
+
+		Reader(byte[] buf, ClassLoader classLoader) {
+			this.buf = buf;
+			this.classLoader = classLoader;
+			this.classes.add(null);
+		}
+
+		int readByte() throws BeansException {
+			if (pos >= buf.length)
+				throw new FatalBeanException("Unexpected end of serialized data", null);
+			return buf[pos++] & 0xFF;
+		}
+
+		int readVarInt() throws BeansException {
+			int v = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = readByte();
+				v |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return v;
+			}
+			throw new FatalBeanException("Malformed varint in serialized data", null);
+		}
+
+		long readVarLong() throws BeansException {
+			long v = 0;
+			for (int shift = 0; shift < 70; shift += 7) {
+				int b = readByte();
+				v |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return v;
+			}
+			throw new FatalBeanException("Malformed varint in serialized data", null);
+		}
+
+		int readSignedVarInt() throws BeansException {
+			int v = readVarInt();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		long readSignedVarLong() throws BeansException {
+			long v = readVarLong();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		int readFixedInt() throws BeansException {
+			return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+		}
+
+		long readFixedLong() throws BeansException {
+			return ((long) readFixedInt() << 32) | (readFixedInt() & 0xFFFFFFFFL);
+		}
+
+		byte[] readBytes() throws BeansException {
+			int length = readVarInt();
+			if (length < 0 || length > buf.length - pos)
+				throw new FatalBeanException("Unexpected end of serialized data", null);
+			byte[] b = new byte[length];
+			System.arraycopy(buf, pos, b, 0, length);
+			pos += length;
+			return b;
+		}
+
+		String readString() throws BeansException {
+			try {
+				return new String(readBytes(), "UTF-8");
+			}
+			catch (UnsupportedEncodingException ex) {
+				// Can't happen: every JVM supports UTF-8
+				throw new FatalBeanException("UTF-8 not supported", ex);
+			}
+		}
+
+		/**
+		 * Read a class reference
+		 * @param isNew receives whether the class is new in this payload. May be null.
+		 */
+		Class readClass(boolean[] isNew) throws BeansException {
+			int index = readVarInt();
+			if (index != 0) {
+				if (index >= classes.size())
+					throw new FatalBeanException("Invalid class reference in serialized data", null);
+				if (isNew != null)
+					isNew[0] = false;
+				return (Class) classes.get(index);
+			}
+			String name = readString();
+			Class clazz = primitiveType(name);
+			if (clazz == null) {
+				try {
+					clazz = Class.forName(name, false, classLoader);
+				}
+				catch (ClassNotFoundException ex) {
+					throw new FatalBeanException("Cannot load class [" + name + "] of serialized object", ex);
+				}
+			}
+			classes.add(clazz);
+			if (isNew != null)
+				isNew[0] = true;
+			return clazz;
+		}
+
+		private Class primitiveType(String name) {
+			if (name.indexOf('.') != -1)
+				return null;
+			Class[] primitives = { int.class, long.class, boolean.class, double.class, float.class,
+				short.class, byte.class, char.class };
+			for (int i = 0; i < primitives.length; i++) {
+				if (primitives[i].getName().equals(name))
+					return primitives[i];
+			}
+			return null;
+		}
+
+		/**
+		 * Read the value of a property of the given type: primitives have no tag
+		 */
+		Object readProperty(Class type) throws BeansException {
+			if (!type.isPrimitive())
+				return readValue();
+			if (type == int.class)
+				return new Integer(readSignedVarInt());
+			if (type == long.class)
+				return new Long(readSignedVarLong());
+			if (type == boolean.class)
+				return (readByte() != 0) ? Boolean.TRUE : Boolean.FALSE;
+			if (type == double.class)
+				return new Double(Double.longBitsToDouble(readFixedLong()));
+			if (type == float.class)
+				return new Float(Float.intBitsToFloat(readFixedInt()));
+			if (type == short.class)
+				return new Short((short) readSignedVarInt());
+			if (type == byte.class)
+				return new Byte((byte) readByte());
+			return new Character((char) readVarInt());
+		}
+
+		Object readValue() throws BeansException {
+			int tag = readByte();
+			switch (tag) {
+				case NULL:
+					return null;
+				case BACK_REFERENCE:
+					int index = readVarInt();
+					if (index >= objects.size())
+						throw new FatalBeanException("Invalid back reference in serialized data", null);
+					return objects.get(index);
+				case STRING:
+					return readString();
+				case INTEGER:
+					return new Integer(readSignedVarInt());
+				case LONG:
+					return new Long(readSignedVarLong());
+				case TRUE:
+					return Boolean.TRUE;
+				case FALSE:
+					return Boolean.FALSE;
+				case DOUBLE:
+					return new Double(Double.longBitsToDouble(readFixedLong()));
+				case FLOAT:
+					return new Float(Float.intBitsToFloat(readFixedInt()));
+				case SHORT:
+					return new Short((short) readSignedVarInt());
+				case BYTE:
+					return new Byte((byte) readByte());
+				case CHARACTER:
+					return new Character((char) readVarInt());
+				case BIG_DECIMAL:
+					return new BigDecimal(readString());
+				case BIG_INTEGER:
+					return new BigInteger(readString());
+				case DATE:
+					return new Date(readSignedVarLong());
+				case SQL_DATE:
+					return new java.sql.Date(readSignedVarLong());
+				case SQL_TIME:
+					return new java.sql.Time(readSignedVarLong());
+				case TIMESTAMP:
+					Timestamp ts = new Timestamp(readSignedVarLong());
+					ts.setNanos(readVarInt());
+					return ts;
+				case ARRAY:
+					return readArray();
+				case COLLECTION:
+					return readCollection();
+				case SORTED_COLLECTION:
+					return readSortedCollection();
+				case MAP:
+					return readMap();
+				case SORTED_MAP:
+					return readSortedMap();
+				case BEAN:
+					return readBean();
+				case SERIALIZED:
+					return javaDeserialize(readBytes());
+				default:
+					throw new FatalBeanException("Invalid tag " + tag + " in serialized data", null);
+			}
+		}
+
+		private Object readArray() throws BeansException {
+			Class componentType = readClass(null);
+			int length = readVarInt();
+			if (length < 0 || length > buf.length - pos)
+				throw new FatalBeanException("Invalid array length in serialized data", null);
+			Object array = Array.newInstance(componentType, length);
+			objects.add(array);
+			for (int i = 0; i < length; i++)
+				Array.set(array, i, readProperty(componentType));
+			return array;
+		}
+
+		private Object readCollection() throws BeansException {
+			Collection collection = (Collection) BeanUtils.instantiateClass(readCompactClass(Collection.class));
+			objects.add(collection);
+			readElements(collection);
+			return collection;
+		}
+
+		private Object readSortedCollection() throws BeansException {
+			Class clazz = readCompactClass(SortedSet.class);
+			// Reserve our index: the comparator is read before we can create the set
+			int index = objects.size();
+			objects.add(null);
+			Collection collection = (Collection) instantiateSorted(clazz, readValue());
+			objects.set(index, collection);
+			readElements(collection);
+			return collection;
+		}
+
+		private void readElements(Collection collection) throws BeansException {
+			int size = readVarInt();
+			for (int i = 0; i < size; i++)
+				collection.add(readValue());
+		}
+
+		private Object readMap() throws BeansException {
+			Map map = (Map) BeanUtils.instantiateClass(readCompactClass(Map.class));
+			objects.add(map);
+			readEntries(map);
+			return map;
+		}
+
+		private Object readSortedMap() throws BeansException {
+			Class clazz = readCompactClass(SortedMap.class);
+			int index = objects.size();
+			objects.add(null);
+			Map map = (Map) instantiateSorted(clazz, readValue());
+			objects.set(index, map);
+			readEntries(map);
+			return map;
+		}
+
+		private void readEntries(Map map) throws BeansException {
+			int size = readVarInt();
+			for (int i = 0; i < size; i++) {
+				Object key = readValue();
+				map.put(key, readValue());
+			}
+		}
+
+		/**
+		 * Read a class reference, checking that the payload names
+		 * one of the Collection or Map classes we write as elements
+		 * @param type Collection, Map or a sorted subtype
+		 */
+		private Class readCompactClass(Class type) throws BeansException {
+			Class clazz = readClass(null);
+			if (!type.isAssignableFrom(clazz) || !COMPACT_CLASSES.contains(clazz))
+				throw new FatalBeanException("Invalid serialized data: class [" + clazz.getName() + "] is not a supported " +
+					type.getName(), null);
+			return clazz;
+		}
+
+		private Object instantiateSorted(Class clazz, Object comparator) throws BeansException {
+			if (!(comparator instanceof Comparator))
+				throw new FatalBeanException("Invalid serialized data: comparator of [" + clazz.getName() + "] is not a Comparator", null);
+			try {
+				return getComparatorConstructor(clazz).newInstance(new Object[] { comparator });
+			}
+			catch (InvocationTargetException ex) {
+				throw new FatalBeanException("Constructor of class [" + clazz.getName() + "] threw exception", ex.getTargetException());
+			}
+			catch (Exception ex) {
+				throw new FatalBeanException("Cannot instantiate class [" + clazz.getName() + "] with a Comparator", ex);
+			}
+		}
+
+		private Object readBean() throws BeansException {
+			boolean[] isNew = new boolean[1];
+			Class beanClass = readClass(isNew);
+			if (!isBean(beanClass))
+				throw new FatalBeanException("Invalid serialized data: class [" + beanClass.getName() + "] is not a bean", null);
+			Schema schema = getSchema(beanClass);
+			if (isNew[0] && readFixedInt() != schema.fingerprint)
+				throw new FatalBeanException("Properties of class [" + beanClass.getName() + "] have changed since it was serialized", null);
+			Object bean = BeanUtils.instantiateClass(beanClass);
+			objects.add(bean);
+			for (int i = 0; i < schema.properties.length; i++) {
+				PropertyAccessor accessor = schema.properties[i];
+				Object value = readProperty(accessor.getPropertyType());
+				try {
+					accessor.setValue(bean, value);
+				}
+				catch (InvocationTargetException ex) {
+					throw new FatalBeanException("setter for property [" + accessor.getName() + "] threw exception", ex.getTargetException());
+				}
+				catch (IllegalAccessException ex) {
+					throw new FatalBeanException("illegal attempt to set property [" + accessor.getName() + "] threw exception", ex);
+				}
+				catch (IllegalArgumentException ex) {
+					throw new FatalBeanException("Serialized value of property [" + accessor.getName() + "] doesn't match its type", ex);
+				}
+			}
+			return bean;
+		}
+
+		private Object javaDeserialize(byte[] data) throws BeansException {
+			try {
+				ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data)) {
+					protected Class resolveClass(java.io.ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+						try {
+							return Class.forName(desc.getName(), false, classLoader);
+						}
+						catch (ClassNotFoundException ex) {
+							return super.resolveClass(desc);
+						}
+					}
+				};
+				Object o = ois.readObject();
+				// Register after reading: Java serialization handles its own references
+				objects.add(o);
+				return o;
+			}
+			catch (IOException ex) {
+				throw new FatalBeanException("Cannot deserialize Serializable object", ex);
+			}
+			catch (ClassNotFoundException ex) {
+				throw new FatalBeanException("Cannot load class of serialized object", ex);
+			}
+		}
+	}	// class Reader
+
+
+	/**
+	 * Can objects of this class be written and read as beans, losing no state?
+	 */
+	private static boolean isBean(Class clazz) throws BeansException {
+		return isInstantiable(clazz) && !clazz.getName().startsWith("java") && getSchema(clazz).complete;
+	}
+
+	/**
+	 * Can this Collection or Map be written as its class and elements, losing no state?
+	 * A LinkedHashMap only can if it's in insertion order, which we must be able to check.
+	 */
+	private static boolean isCompact(Object o) {
+		if (!COMPACT_CLASSES.contains(o.getClass()))
+			return false;
+		if (o.getClass() != LinkedHashMap.class)
+			return true;
+		if (accessOrderField == null)
+			return false;
+		try {
+			return !accessOrderField.getBoolean(o);
+		}
+		catch (IllegalAccessException ex) {
+			return false;
+		}
+	}
+
+	private static Constructor getComparatorConstructor(Class clazz) throws NoSuchMethodException {
+		return clazz.getConstructor(new Class[] { Comparator.class });
+	}
+
+	/**
+	 * Can we recreate objects of this class with its public no-arg constructor?
+	 */
+	private static boolean isInstantiable(Class clazz) {
+		if (!Modifier.isPublic(clazz.getModifiers()) || Modifier.isAbstract(clazz.getModifiers()))
+			return false;
+		try {
+			return Modifier.isPublic(clazz.getConstructor(new Class[0]).getModifiers());
+		}
+		catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+}	// class BeanSerializer
@@ -265,6 +265,20 @@ public interface BeanWrapper {
 	 */
 	void setEventPropagationEnabled(boolean flag);
 	
+	/**
+	 * Set the ConversionService used to convert property values,
+	 * such as Strings, to the required types. Default is the shared
+	 * ConversionService.getDefaultInstance().
+	 * @param conversionService ConversionService to use
+	 */
+	void setConversionService(ConversionService conversionService);
+	
+	/**
+	 * Return the ConversionService used to convert property values
+	 * @return the ConversionService used by this BeanWrapper
+	 */
+	ConversionService getConversionService();
+	
 	/**
 	 * Invoke the named method. This interface is designed
 	 * to encourage working with bean properties, rather than methods,
@@ -17,10 +17,10 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.beans.PropertyDescriptor;
-import java.beans.PropertyEditor;
 import java.beans.PropertyEditorManager;
 import java.beans.PropertyVetoException;
 import java.beans.VetoableChangeListener;
+import java.beans.VetoableChangeListenerProxy;
 import java.beans.VetoableChangeSupport;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -28,7 +28,6 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
-import com.interface21.beans.propertyeditors.StringArrayPropertyEditor;
 
 /**
  * Default implementation of the BeanWrapper interface
@@ -52,11 +51,9 @@ public class BeanWrapperImpl implements BeanWrapper {
 	/** Should JavaBeans event propagation be enabled by default? */
 	public static final boolean DEFAULT_EVENT_PROPAGATION_ENABLED = false;
 
-	// Install default property editors
+	// Make our property editors available to the ConversionService's PropertyEditor fallback.
+	// String[] and Properties are handled by the ConversionService's own converters.
 	static {
-		//PropertyEditorManager.registerEditor(Properties.class, PropertiesEditor.class);
-		PropertyEditorManager.registerEditor(String[].class, StringArrayPropertyEditor.class);
-		
 		// Register all editors in our standard package
 		PropertyEditorManager.setEditorSearchPath(new String[] {
 			"sun.beans.editors",
@@ -64,6 +61,25 @@ public class BeanWrapperImpl implements BeanWrapper {
 		});
 	}
 
+	/**
+	 * Set whether classes should be introspected with java.beans.Introspector,
+	 * which looks for BeanInfo classes, rather than by scanning their getter and
+	 * setter methods, which is much faster. Default is false, unless the
+	 * com.interface21.beans.searchBeanInfo system property is "true".
+	 * Only affects classes introspected after this call.
+	 * @param search whether to search for BeanInfo classes
+	 */
+	public static void setSearchBeanInfo(boolean search) {
+		CachedIntrospectionResults.setSearchBeanInfo(search);
+	}
+
+	/**
+	 * Return whether classes are introspected with java.beans.Introspector
+	 */
+	public static boolean isSearchBeanInfo() {
+		return CachedIntrospectionResults.isSearchBeanInfo();
+	}
+
 	//---------------------------------------------------------------------
 	// Instance data
 	//---------------------------------------------------------------------
@@ -92,6 +108,9 @@ public class BeanWrapperImpl implements BeanWrapper {
 	/** Should we propagate events to listeners!? */
 	private boolean					eventPropagationEnabled = DEFAULT_EVENT_PROPAGATION_ENABLED;
 
+	/** Used to convert property values to the required type */
+	private ConversionService		conversionService = ConversionService.getDefaultInstance();
+
 	//---------------------------------------------------------------------
 	// Constructors
 	//---------------------------------------------------------------------
@@ -213,48 +232,32 @@ public class BeanWrapperImpl implements BeanWrapper {
 	}
 
 	/**
-	 * Convert the value to the required type (if necessary from a string),
-	 * to create a PropertyChangeEvent.
-	 * Conversions from String to any type use the setAsTest() method of
-	 * the PropertyEditor class. Note that a PropertyEditor must be registered
-	 * for this class for this to work. This is a standard Java Beans API. 
+	 * Convert the value to the required type (if necessary from a string).
+	 * Conversions use our ConversionService, which has converters for common
+	 * types and can fall back to the standard Java Beans PropertyEditors.
 	 * A number of property editors are automatically registered by this class.
 	 * @param target target bean
+	 * @param accessor accessor for the property
 	 * @param propertyName name of the property
-	 * @param oldValue previous value, if available. May be null.
+	 * @param oldValue previous value, if available, for exception information. May be null.
 	 * @param newValue proposed change value.
-	 * @param requiredType type we must convert to
-	 * @throws BeansException if there is an internal error
-	 * @return a PropertyChangeEvent, containing the converted type of the new
-	 * value.
-	 */
-	private PropertyChangeEvent createPropertyChangeEventWithTypeConversionIfNecessary(
-							Object target, String propertyName, 
-							Object oldValue, Object newValue, 
-							Class requiredType) throws BeansException {
-		// Only need to cast if value isn't null
-		if (newValue != null) {
-			// We may need to change the value of newValue
-			if (!requiredType.isAssignableFrom(newValue.getClass()) && (newValue instanceof String)) {
-				if (logger.isDebugEnabled())
-					logger.debug("Convert: string to " + requiredType);
-				PropertyEditor pe = PropertyEditorManager.findEditor(requiredType);
-				if (logger.isDebugEnabled())
-					logger.debug("Using property editor [" + pe + "]");
-				if (pe != null) {
-					try {
-						pe.setAsText((String) newValue);
-						newValue = pe.getValue();
-					}
-					catch (IllegalArgumentException ex) {
-						throw new TypeMismatchException(
-							new PropertyChangeEvent(target, propertyName, oldValue, newValue), requiredType);
-					}
-				}
+	 * @throws TypeMismatchException if the value can't be converted
+	 * @return the converted value
+	 */
+	private Object convertIfNecessary(Object target, PropertyAccessor accessor, String propertyName, 
+							Object oldValue, Object newValue) throws BeansException {
+		// Only need to convert if value isn't null and doesn't already have the right type
+		if (newValue != null && !accessor.isAssignable(newValue)) {
+			try {
+				return accessor.convert(newValue, this.conversionService);
+			}
+			catch (IllegalArgumentException ex) {
+				throw new TypeMismatchException(
+					new PropertyChangeEvent(target, propertyName, oldValue, newValue), accessor.getPropertyType());
 			}
 		}
-		return new PropertyChangeEvent(target, propertyName, oldValue, newValue);
-	}	// createPropertyChangeEventWithTypeConversionIfNecessary
+		return newValue;
+	}	// convertIfNecessary
 
 
 	/**
@@ -265,51 +268,6 @@ public class BeanWrapperImpl implements BeanWrapper {
 	}   // setPropertyValue
 
 
-	/**
-	 * Is the property nested? That is, does it contain the nested
-	 * property separator (usually .)
-	 * @param path property path
-	 * @return boolean is the property nested
-	 */
-	private boolean isNestedProperty(String path) {
-		return path.indexOf(NESTED_PROPERTY_SEPARATOR) != -1;
-	}
-
-	/**
-	 * Get the last component of the path. Also works if not nested.
-	 * @param nestedPath property path we know is nested
-	 * @return last component of the path (the property on the target bean)
-	 */
-	private String getFinalPath(String nestedPath) {
-		return nestedPath.substring(nestedPath.lastIndexOf(NESTED_PROPERTY_SEPARATOR) + 1);
-	}
-
-
-	/**
-	 * Recursively navigate to return a BeanWrapper for the nested path
-	 * @param bw target bean wrapper
-	 * @param path property path, which may be nested
-	 * @return a BeanWrapper for the target bean
-	 */
-	private BeanWrapper getBeanWrapperForNestedProperty(BeanWrapper bw, String path) {
-		int pos = path.indexOf(NESTED_PROPERTY_SEPARATOR);
-		// Handle nested properties recursively
-		if (pos > -1) {
-			String nestedProperty = path.substring(0, pos);
-			String nestedPath = path.substring(pos + 1);
-			logger.debug("Navigating to property path '" + nestedPath + "' of nested property '" + nestedProperty + "'");
-			// Could consider caching these, but they're not that expensive to instantiate
-			Object propertyValue = bw.getPropertyValue(nestedProperty);
-			if (propertyValue == null)
-				throw new NullValueInNestedPathException(bw.getWrappedClass(), nestedProperty);
-			BeanWrapper nestedBw = new BeanWrapperImpl(propertyValue, false);
-			return getBeanWrapperForNestedProperty(nestedBw, nestedPath);
-		}
-		else {
-			return bw;
-		}
-	}	// getBeanWrapperForNestedProperty
-
 	/**
 	 * Set an individual field
 	 * All other setters go through this
@@ -318,96 +276,149 @@ public class BeanWrapperImpl implements BeanWrapper {
 	 * @throws BeansException if there's a low-level, fatal error
 	 */
 	public void setPropertyValue(PropertyValue pv) throws PropertyVetoException, BeansException {
-
-		if (isNestedProperty(pv.getName())) {
-			try {
-				BeanWrapper nestedBw = getBeanWrapperForNestedProperty(this, pv.getName());
-				nestedBw.setPropertyValue(new PropertyValue(getFinalPath(pv.getName()), pv.getValue()));
+		PropertyAccessor accessor = cachedIntrospectionResults.getPropertyAccessor(pv.getName());
+		if (accessor != null && accessor.isWritable()) {
+			setPropertyValue(this.object, accessor, pv.getName(), pv.getValue(), this.eventPropagationEnabled);
+			return;
+		}
+		if (accessor == null) {
+			PropertyPath path = cachedIntrospectionResults.getPropertyPath(pv.getName());
+			if (path.isNested()) {
+				setNestedPropertyValue(path, pv.getValue());
 				return;
 			}
-			catch (NullValueInNestedPathException ex) {
-				// Let this through
-				throw ex;
-			}
-			catch (FatalBeanException ex) {
-				// Error in the nested path
-				throw new NotWritablePropertyException(pv.getName(), getWrappedClass());
-			}
 		}
+		throw new NotWritablePropertyException(pv.getName(), getWrappedClass());
+	}   // setPropertyValue
 
-		// ****TODO nested property support?
-		int pos = pv.getName().indexOf(NESTED_PROPERTY_SEPARATOR);
-		// Handle nested properties recursively
-		if (pos > -1) {
-			String nestedProperty = pv.getName().substring(0, pos);
-			String nestedPath = pv.getName().substring(pos + 1);
-			logger.debug("Navigating to property path '" + nestedPath + "' of nested property '" + nestedProperty + "'");
-			// Could consider caching these, but they're not that expensive to instantiate
-			BeanWrapper nestedBw = new BeanWrapperImpl(getPropertyValue(nestedProperty), false);
-			nestedBw.setPropertyValue(new PropertyValue(nestedPath, pv.getValue()));
-			return;
+
+	/**
+	 * Set a nested property, by walking the compiled path to the object
+	 * that owns the final property. No events are propagated for nested properties.
+	 * @param path compiled property path
+	 * @param value new value of the property
+	 */
+	private void setNestedPropertyValue(PropertyPath path, Object value) throws PropertyVetoException, BeansException {
+		Object owner = null;
+		PropertyAccessor accessor = null;
+		try {
+			owner = path.getOwner(this.object);
+			accessor = path.getFinalAccessor(owner);
+		}
+		catch (NullValueInNestedPathException ex) {
+			// Let this through
+			throw ex;
+		}
+		catch (FatalBeanException ex) {
+			// Error in the nested path
+			throw new NotWritablePropertyException(path.getPath(), getWrappedClass());
+		}
+		if (accessor == null || !accessor.isWritable())
+			throw new NotWritablePropertyException(path.getPath(), getWrappedClass());
+		setPropertyValue(owner, accessor, path.getFinalName(), value, false);
+	}
+
+
+	/**
+	 * Could a change to the given property be vetoed? Listeners that are
+	 * AbstractVetoableChangeListeners only count if they validate the property,
+	 * so that setting other properties neither reads the old value nor builds an event.
+	 * @param propertyName name of a property of the wrapped object
+	 */
+	private boolean isVetoable(String propertyName) {
+		if (!vetoableChangeSupport.hasListeners(propertyName))
+			return false;
+		// Includes listeners for named properties, wrapped in proxies
+		VetoableChangeListener[] listeners = vetoableChangeSupport.getVetoableChangeListeners();
+		for (int i = 0; i < listeners.length; i++) {
+			VetoableChangeListener l = listeners[i];
+			if (l instanceof VetoableChangeListenerProxy) {
+				VetoableChangeListenerProxy proxy = (VetoableChangeListenerProxy) l;
+				if (!propertyName.equals(proxy.getPropertyName()))
+					continue;
+				l = (VetoableChangeListener) proxy.getListener();
+			}
+			if (!(l instanceof AbstractVetoableChangeListener) || ((AbstractVetoableChangeListener) l).hasValidator(propertyName))
+				return true;
 		}
+		return false;
+	}
 
 
-		if (!isWritableProperty(pv.getName()))
-			throw new NotWritablePropertyException(pv.getName(), getWrappedClass());
-		PropertyDescriptor pd = getPropertyDescriptor(pv.getName());
-		Method writeMethod = pd.getWriteMethod();
-		Method readMethod = pd.getReadMethod();
+	/**
+	 * Set a simple property of the given target, converting the value if necessary
+	 * @param target object owning the property: the wrapped object, or an object
+	 * reached through a nested path
+	 * @param accessor accessor for a writable property of the target
+	 * @param propertyName name of the property
+	 * @param value new value of the property
+	 * @param fireEvents whether to fire events to our listeners. May only
+	 * be true if the target is the wrapped object.
+	 */
+	private void setPropertyValue(Object target, PropertyAccessor accessor, String propertyName, Object value,
+					boolean fireEvents) throws PropertyVetoException, BeansException {
+		// Only build events if someone is listening to this property
+		boolean fireVetoableChange = fireEvents && isVetoable(propertyName);
+		boolean firePropertyChange = fireEvents && propertyChangeSupport.hasListeners(propertyName);
 		Object oldValue = null;	// May stay null if it's not a readable property
 		PropertyChangeEvent propertyChangeEvent = null;
 
 		try {
-			if (readMethod != null && eventPropagationEnabled) {
+			if (accessor.isReadable() && (fireVetoableChange || firePropertyChange)) {
 				// Can only find existing value if it's a readable property
 				try {
-					oldValue = readMethod.invoke(object, new Object[] { });
+					oldValue = accessor.getValue(target);
 				}
 				catch (Exception ex) {
 					// The getter threw an exception, so we couldn't retrieve the old value.
 					// We're not really interested in any exceptions at this point,
 					// so we merely log the problem and leave oldValue null
-					logger.warn("Failed to invoke getter '" + readMethod.getName() 
+					logger.warn("Failed to invoke getter '" + accessor.getReadMethod().getName() 
 						+ "' to get old property value before property change: getter probably threw an exception",
 						ex);
 				}
 			}
 
 			// Old value may still be null
-			propertyChangeEvent = createPropertyChangeEventWithTypeConversionIfNecessary(
-									object, pv.getName(), oldValue, pv.getValue(), pd.getPropertyType());
+			Object newValue = convertIfNecessary(target, accessor, propertyName, oldValue, value);
+			if (fireVetoableChange || firePropertyChange)
+				propertyChangeEvent = new PropertyChangeEvent(target, propertyName, oldValue, newValue);
 
 			// May throw PropertyVetoException: if this happens the PropertyChangeSupport
 			// class fires a reversion event, and we jump out of this method, meaning
 			// the change was never actually made
-			if (eventPropagationEnabled) {
+			if (fireVetoableChange) {
 				vetoableChangeSupport.fireVetoableChange(propertyChangeEvent);
 			}
 
 			// Make the change
 			if (logger.isDebugEnabled())
 				logger.debug("About to invoke write method [" 
-							+ writeMethod + "] on object of class '" + object.getClass().getName() + "'");
-			writeMethod.invoke(object, new Object[] { propertyChangeEvent.getNewValue() });
+							+ accessor.getWriteMethod() + "] on object of class '" + target.getClass().getName() + "'");
+			accessor.setValue(target, newValue);
 			if (logger.isDebugEnabled())
-				logger.debug("Invoked write method [" + writeMethod + "] ok");
+				logger.debug("Invoked write method [" + accessor.getWriteMethod() + "] ok");
 
 			// If we get here we've changed the property OK and can broadcast it
-			if (eventPropagationEnabled)
+			if (firePropertyChange)
 				propertyChangeSupport.firePropertyChange(propertyChangeEvent);
 		}
 		catch (InvocationTargetException ex) {
 			if (ex.getTargetException() instanceof PropertyVetoException)
 				throw (PropertyVetoException) ex.getTargetException();
+			if (propertyChangeEvent == null)
+				propertyChangeEvent = new PropertyChangeEvent(target, propertyName, oldValue, value);
 			if (ex.getTargetException() instanceof ClassCastException)
-				throw new TypeMismatchException(propertyChangeEvent, pd.getPropertyType(), ex);
+				throw new TypeMismatchException(propertyChangeEvent, accessor.getPropertyType(), ex);
 			throw new MethodInvocationException(ex.getTargetException(), propertyChangeEvent);
 		}
 		catch (IllegalAccessException ex) {
-			throw new FatalBeanException("illegal attempt to set property [" + pv + "] threw exception", ex);
+			throw new FatalBeanException("illegal attempt to set property [" + propertyName + "] threw exception", ex);
 		}
 		catch (IllegalArgumentException ex) {
-			throw new TypeMismatchException(propertyChangeEvent, pd.getPropertyType(), ex);
+			if (propertyChangeEvent == null)
+				propertyChangeEvent = new PropertyChangeEvent(target, propertyName, oldValue, value);
+			throw new TypeMismatchException(propertyChangeEvent, accessor.getPropertyType(), ex);
 		}
 	}   // setPropertyValue
 
@@ -486,19 +497,17 @@ public class BeanWrapperImpl implements BeanWrapper {
 	 * @see BeanWrapper#getPropertyValue(String)
 	 */
 	public Object getPropertyValue(String propertyName) throws BeansException {
-		if (isNestedProperty(propertyName)) {
-			BeanWrapper nestedBw = getBeanWrapperForNestedProperty(this, propertyName);
-			logger.debug("Final path in nested property value '" + propertyName + "' is '" 
-					+ getFinalPath(propertyName) + "'");
-			return nestedBw.getPropertyValue(getFinalPath(propertyName));
+		PropertyAccessor accessor = cachedIntrospectionResults.getPropertyAccessor(propertyName);
+		if (accessor == null) {
+			PropertyPath path = cachedIntrospectionResults.getPropertyPath(propertyName);
+			if (path.isNested())
+				return path.getValue(this.object);
+			throw new FatalBeanException("No property [" + propertyName + "] in class [" + getWrappedClass() + "]", null);
 		}
-
-		PropertyDescriptor pd = getPropertyDescriptor(propertyName);
-		Method m = pd.getReadMethod();
-		if (m == null)
+		if (!accessor.isReadable())
 			throw new FatalBeanException("Cannot get scalar property [" + propertyName + "]: not readable", null);
 		try {
-			return m.invoke(object, null);
+			return accessor.getValue(object);
 		}
 		catch (InvocationTargetException ex) {
 			throw new FatalBeanException("getter for property [" + propertyName + "] threw exception", ex);
@@ -542,7 +551,7 @@ public class BeanWrapperImpl implements BeanWrapper {
 	 * @throws BeansException if property descriptors cannot be obtained
 	 */
 	public PropertyDescriptor[] getProperties() throws BeansException {
-		return cachedIntrospectionResults.getBeanInfo().getPropertyDescriptors();
+		return cachedIntrospectionResults.getPropertyDescriptors();
 	}
 
 
@@ -557,26 +566,16 @@ public class BeanWrapperImpl implements BeanWrapper {
 	 * @see BeanWrapper#isReadableProperty(String)
 	 */
 	public boolean isReadableProperty(String propertyName) {
-		try {
-			return getPropertyDescriptor(propertyName).getReadMethod() != null;
-		}
-		catch (BeansException ex) {
-			// Doesn't exist, so can't be readable
-			return false;
-		}
+		PropertyAccessor accessor = cachedIntrospectionResults.getPropertyAccessor(propertyName);
+		return accessor != null && accessor.isReadable();
 	}
 
 	/**
 	 * @see BeanWrapper#isWritableProperty(String)
 	 */
 	public boolean isWritableProperty(String propertyName) {
-		try {
-			return getPropertyDescriptor(propertyName).getWriteMethod() != null;
-		}
-		catch (BeansException ex) {
-			// Doesn't exist, so can't be writable
-			return false;
-		}
+		PropertyAccessor accessor = cachedIntrospectionResults.getPropertyAccessor(propertyName);
+		return accessor != null && accessor.isWritable();
 	}
 
 	/**
@@ -610,7 +609,7 @@ public class BeanWrapperImpl implements BeanWrapper {
 	 * @see BeanWrapper#getPropertyDescriptors()
 	 */
 	public PropertyDescriptor[] getPropertyDescriptors() {
-		return cachedIntrospectionResults.getBeanInfo().getPropertyDescriptors();
+		return cachedIntrospectionResults.getPropertyDescriptors();
 	}
 
 	//---------------------------------------------------------------------
@@ -703,6 +702,21 @@ public class BeanWrapperImpl implements BeanWrapper {
 	}
 
 
+	/**
+	 * @see BeanWrapper#setConversionService(ConversionService)
+	 */
+	public void setConversionService(ConversionService conversionService) {
+		this.conversionService = conversionService;
+	}
+
+	/**
+	 * @see BeanWrapper#getConversionService()
+	 */
+	public ConversionService getConversionService() {
+		return conversionService;
+	}
+
+
 	//---------------------------------------------------------------------
 	// Diagnostics
 	//---------------------------------------------------------------------
@@ -0,0 +1,285 @@
+package com.interface21.beans;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyVetoException;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Compiled plan for populating many objects of the same class with values
+ * for the same properties, in the same order, as in imports or mapping
+ * JDBC rows to beans.
+ * <br/>Property names are resolved once, when the plan is created, rather
+ * than for every object as with BeanWrapper.setPropertyValues(). Each
+ * object is then populated from an array of values in the order of the
+ * property names. Values are converted as by BeanWrapperImpl, using the
+ * plan's ConversionService: the converter for String values is looked up
+ * once per property.
+ * <br/>Nested property paths are supported. They are split once, but
+ * the accessor for the final property is looked up for each object, as
+ * it depends on the runtime class of the object reached.
+ * <br/>As with BeanWrapper.setPropertyValues(), recoverable errors such as type
+ * mismatches are collected, and reported together in a PropertyVetoExceptionsException
+ * once all the other properties have been set. No events are fired.
+ * <br/>Immutable and threadsafe: one plan can populate objects
+ * concurrently from many threads.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see BeanWrapper#setPropertyValues(PropertyValues)
+ */
+public class BindingPlan {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final Class beanClass;
+
+	private final String[] propertyNames;
+
+	/**
+	 * Accessor for each property of the bean class, or null
+	 * for a nested path or an ignored unknown property
+	 */
+	private final PropertyAccessor[] accessors;
+
+	/** Compiled path for each nested property, else null */
+	private final PropertyPath[] paths;
+
+	private final boolean ignoreUnknown;
+
+	private final ConversionService conversionService;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Compile a plan that doesn't allow unknown properties,
+	 * using the default ConversionService
+	 * @param beanClass class of the objects to populate
+	 * @param propertyNames names of the properties to set, in the order
+	 * values will be supplied. May include nested property paths.
+	 * @throws NotWritablePropertyException if a property isn't writable
+	 * @throws BeansException if the class can't be introspected
+	 */
+	public BindingPlan(Class beanClass, String[] propertyNames) throws BeansException {
+		this(beanClass, propertyNames, false, ConversionService.getDefaultInstance());
+	}
+
+	/**
+	 * Compile a plan
+	 * @param beanClass class of the objects to populate
+	 * @param propertyNames names of the properties to set, in the order
+	 * values will be supplied. May include nested property paths.
+	 * @param ignoreUnknown should values for properties that aren't
+	 * writable be ignored, rather than causing a NotWritablePropertyException?
+	 * @param conversionService ConversionService to convert values with
+	 * @throws NotWritablePropertyException if a property isn't writable and
+	 * ignoreUnknown is false
+	 * @throws BeansException if the class can't be introspected
+	 */
+	public BindingPlan(Class beanClass, String[] propertyNames, boolean ignoreUnknown,
+				ConversionService conversionService) throws BeansException {
+		this.beanClass = beanClass;
+		this.propertyNames = (String[]) propertyNames.clone();
+		this.ignoreUnknown = ignoreUnknown;
+		this.conversionService = conversionService;
+		this.accessors = new PropertyAccessor[propertyNames.length];
+		this.paths = new PropertyPath[propertyNames.length];
+
+		CachedIntrospectionResults cachedIntrospectionResults = CachedIntrospectionResults.forClass(beanClass);
+		for (int i = 0; i < propertyNames.length; i++) {
+			PropertyAccessor accessor = cachedIntrospectionResults.getPropertyAccessor(propertyNames[i]);
+			if (accessor != null && accessor.isWritable()) {
+				this.accessors[i] = accessor;
+			}
+			else if (accessor == null && cachedIntrospectionResults.getPropertyPath(propertyNames[i]).isNested()) {
+				this.paths[i] = cachedIntrospectionResults.getPropertyPath(propertyNames[i]);
+			}
+			else if (!ignoreUnknown) {
+				throw new NotWritablePropertyException(propertyNames[i], beanClass);
+			}
+		}
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Return the class of the objects this plan populates
+	 */
+	public Class getBeanClass() {
+		return beanClass;
+	}
+
+	/**
+	 * Return the names of the properties set by this plan,
+	 * in the order values must be supplied
+	 */
+	public String[] getPropertyNames() {
+		return (String[]) propertyNames.clone();
+	}
+
+	/**
+	 * Instantiate the bean class and populate the new instance
+	 * @param values values in the order of the property names
+	 * @return the new object
+	 * @throws PropertyVetoExceptionsException if there were recoverable errors,
+	 * such as type mismatches. All other properties will have been set.
+	 * @throws BeansException if there's a fatal error
+	 */
+	public Object newInstance(Object[] values) throws BeansException {
+		Object target = BeanUtils.instantiateClass(this.beanClass);
+		apply(target, values);
+		return target;
+	}
+
+	/**
+	 * Populate an existing object
+	 * @param target object to populate: an instance of the bean class
+	 * @param values values in the order of the property names
+	 * @throws PropertyVetoExceptionsException if there were recoverable errors,
+	 * such as type mismatches. All other properties will have been set.
+	 * @throws BeansException if there's a fatal error
+	 */
+	public void apply(Object target, Object[] values) throws BeansException {
+		if (!this.beanClass.isInstance(target))
+			throw new FatalBeanException("Object [" + target + "] is not an instance of [" + this.beanClass.getName() + "]", null);
+		if (values.length != this.propertyNames.length)
+			throw new FatalBeanException("Expected " + this.propertyNames.length + " values, not " + values.length, null);
+
+		// Create only if needed
+		PropertyVetoExceptionsException propertyVetoExceptionsException = null;
+
+		for (int i = 0; i < values.length; i++) {
+			try {
+				if (this.accessors[i] != null)
+					setValue(target, this.accessors[i], this.propertyNames[i], values[i]);
+				else if (this.paths[i] != null)
+					setNestedValue(target, this.paths[i], values[i]);
+			}
+			// Fatal BeansExceptions will just be rethrown
+			catch (PropertyVetoException ex) {
+				if (propertyVetoExceptionsException == null)
+					propertyVetoExceptionsException = new PropertyVetoExceptionsException(new BeanWrapperImpl(target));
+				propertyVetoExceptionsException.addPropertyVetoException(ex);
+			}
+			catch (TypeMismatchException ex) {
+				if (propertyVetoExceptionsException == null)
+					propertyVetoExceptionsException = new PropertyVetoExceptionsException(new BeanWrapperImpl(target));
+				propertyVetoExceptionsException.addTypeMismatchException(ex);
+			}
+			catch (MethodInvocationException ex) {
+				if (propertyVetoExceptionsException == null)
+					propertyVetoExceptionsException = new PropertyVetoExceptionsException(new BeanWrapperImpl(target));
+				propertyVetoExceptionsException.addMethodInvocationException(ex);
+			}
+		}
+
+		// If we encountered individual exceptions, throw the composite exception
+		if (propertyVetoExceptionsException != null)
+			throw propertyVetoExceptionsException;
+	}	// apply
+
+	/**
+	 * Convert a value for the given property ahead of time, so that it can be
+	 * supplied to apply() for many objects without being converted each time.
+	 * As the converted value will be shared by all the objects populated
+	 * with it, only Strings converted to immutable types are converted:
+	 * primitives and their wrappers, Strings, BigDecimals and BigIntegers.
+	 * @param index index of the property in the property names
+	 * @param value value that will be supplied for the property
+	 * @return the converted value, or the value unchanged if it can't be shared,
+	 * or can't be converted, in which case apply() will report the error
+	 */
+	public Object preconvert(int index, Object value) {
+		PropertyAccessor accessor = this.accessors[index];
+		if (!(value instanceof String) || accessor == null || accessor.isAssignable(value) ||
+				!isImmutableType(accessor.getPropertyType()))
+			return value;
+		try {
+			Object converted = accessor.convert(value, this.conversionService);
+			return accessor.isAssignable(converted) ? converted : value;
+		}
+		catch (IllegalArgumentException ex) {
+			return value;
+		}
+	}
+
+	public String toString() {
+		return "BindingPlan for [" + beanClass.getName() + "]: " + propertyNames.length + " properties";
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	private static boolean isImmutableType(Class type) {
+		return type != null && (type.isPrimitive() || type == String.class || type == Integer.class ||
+			type == Long.class || type == Boolean.class || type == Double.class || type == Float.class ||
+			type == Short.class || type == Byte.class || type == Character.class ||
+			type == BigDecimal.class || type == BigInteger.class);
+	}
+
+	/**
+	 * Walk the nested path to the object owning the final property, and set it
+	 */
+	private void setNestedValue(Object target, PropertyPath path, Object value) throws PropertyVetoException, BeansException {
+		Object owner = null;
+		PropertyAccessor accessor = null;
+		try {
+			owner = path.getOwner(target);
+			accessor = path.getFinalAccessor(owner);
+		}
+		catch (NullValueInNestedPathException ex) {
+			// Let this through
+			throw ex;
+		}
+		catch (FatalBeanException ex) {
+			// Error in the nested path
+			accessor = null;
+		}
+		if (accessor == null || !accessor.isWritable()) {
+			if (this.ignoreUnknown)
+				return;
+			throw new NotWritablePropertyException(path.getPath(), this.beanClass);
+		}
+		setValue(owner, accessor, path.getFinalName(), value);
+	}
+
+	/**
+	 * Set a simple property, converting the value if necessary.
+	 * Exceptions are translated as by BeanWrapperImpl.
+	 */
+	private void setValue(Object target, PropertyAccessor accessor, String propertyName, Object value)
+					throws PropertyVetoException, BeansException {
+		Object newValue = value;
+		try {
+			if (value != null && !accessor.isAssignable(value))
+				newValue = accessor.convert(value, this.conversionService);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new TypeMismatchException(
+				new PropertyChangeEvent(target, propertyName, null, value), accessor.getPropertyType());
+		}
+
+		try {
+			accessor.setValue(target, newValue);
+		}
+		catch (InvocationTargetException ex) {
+			if (ex.getTargetException() instanceof PropertyVetoException)
+				throw (PropertyVetoException) ex.getTargetException();
+			PropertyChangeEvent propertyChangeEvent = new PropertyChangeEvent(target, propertyName, null, newValue);
+			if (ex.getTargetException() instanceof ClassCastException)
+				throw new TypeMismatchException(propertyChangeEvent, accessor.getPropertyType(), ex);
+			throw new MethodInvocationException(ex.getTargetException(), propertyChangeEvent);
+		}
+		catch (IllegalAccessException ex) {
+			throw new FatalBeanException("illegal attempt to set property [" + propertyName + "] threw exception", ex);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new TypeMismatchException(
+				new PropertyChangeEvent(target, propertyName, null, newValue), accessor.getPropertyType(), ex);
+		}
+	}
+
+}	// class BindingPlan
@@ -6,7 +6,12 @@ import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.MethodDescriptor;
 import java.beans.PropertyDescriptor;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -21,93 +26,400 @@ import org.apache.log4j.Logger;
  * of this class for every JavaBean we manipulate. Thus this class
  * implements the factory design pattern, using a private constructor 
  * and a public static forClass() method to obtain instances.
+ * <br/>The cache is safe for concurrent use, and lookups of classes already
+ * introspected take no lock on the cache: only one of several hit counters,
+ * chosen by thread, is locked. Each class is introspected at most once, however
+ * many threads ask for it at the same time. Classes loaded by a ClassLoader
+ * other than this class's own (or one of its parents), such as the classes of
+ * a web application when this framework is installed in a server's shared lib,
+ * are held only weakly, with their introspection results softly referenced,
+ * so that such ClassLoaders can be garbage collected on redeploy.
+ * <br/>Classes are introspected by FastIntrospector, which doesn't search for
+ * BeanInfo classes, unless BeanInfo search is switched on with
+ * BeanWrapperImpl.setSearchBeanInfo() or the com.interface21.beans.searchBeanInfo
+ * system property, or the class has indexed properties.
  * @author  Rod Johnson
  * @since 05 May 2001
  * @version $Revision: 1.1.1.1 $
+ * @see IntrospectionCacheStatistics
  */
 final class CachedIntrospectionResults {
     
+	/** Maximum number of compiled property paths cached for each class */
+	private static final int MAX_CACHED_PATHS = 256;
+	
+	/** 
+	 * Should we use java.beans.Introspector, which honours BeanInfo classes,
+	 * rather than the FastIntrospector? Only affects classes introspected afterwards.
+	 */
+	private static volatile boolean searchBeanInfo = getSearchBeanInfoProperty();
+	
+	private static boolean getSearchBeanInfoProperty() {
+		try {
+			return Boolean.getBoolean("com.interface21.beans.searchBeanInfo");
+		}
+		catch (SecurityException ex) {
+			// We may not be allowed to read system properties, as in an EJB container
+			return false;
+		}
+	}
+	
+	static void setSearchBeanInfo(boolean search) {
+		searchBeanInfo = search;
+	}
+	
+	static boolean isSearchBeanInfo() {
+		return searchBeanInfo;
+	}
+	
 	//---------------------------------------------------------------------
     // Factory implementation
     //---------------------------------------------------------------------
-	/** HashMap keyed by class containing CachedIntrospectionResults
-	 * or ReflectionException
-	 */
-	private static HashMap $cache = new HashMap();		
-	
 	/** Logging category to use for logging for this object
 	 */
 	private static Logger logger = Logger.getLogger(CachedIntrospectionResults.class.getName());
 	
+	/**
+	 * Hash table of CacheEntry chains, indexed by identity hash code of class.
+	 * Entries are immutable: an addition puts a new entry at the head of its
+	 * chain and republishes the table. A reader may miss an entry just added,
+	 * in which case it looks again holding $cacheLock.
+	 */
+	private static volatile CacheEntry[] $cache = new CacheEntry[64];
+	
+	/** Lock guarding additions to the cache */
+	private static final Object $cacheLock = new Object();
+	
+	/** Classes currently being introspected. Guarded by $cacheLock */
+	private static final Set $pending = new HashSet();
+	
+	/**
+	 * Number of entries in the cache, including any whose class or value has
+	 * been garbage collected since the table was last grown. Guarded by $cacheLock
+	 */
+	private static int $size;
+	
+	/** Number of lookups satisfied from the cache */
+	private static final StripedCounter $hitCount = new StripedCounter();
+	
+	/** Number of lookups that required introspection. Guarded by $cacheLock */
+	private static long $missCount;
+	
 	/** 
-	 * We might use this from the EJB tier, so we don't want to use
-	 * synchronization. Object references are atomic, so we
-	 * can live with doing the occasional unnecessary lookup at startup only.
+	 * Return the introspection results for the given class,
+	 * introspecting it if necessary. If introspection failed,
+	 * the exception is cached and rethrown on each call.
 	 */
 	public static CachedIntrospectionResults forClass(Class clazz) throws BeansException {
-		Object o = $cache.get(clazz);
-		if (o == null) {
+		Object o = lookup($cache, clazz);
+		if (o != null) {
+			$hitCount.increment();
+		}
+		else {
+			o = introspect(clazz);
+		}
+		
+		// o is now an exception or CachedIntrospectionResults
+		if (o instanceof BeansException)
+			throw (BeansException) o;
+		return (CachedIntrospectionResults) o;
+	}
+	
+	/**
+	 * Introspect the given class and add the results to the cache, unless another
+	 * thread has already done so, or is doing so, in which case we wait for its results
+	 * @return CachedIntrospectionResults or a BeansException
+	 */
+	private static Object introspect(Class clazz) {
+		synchronized ($cacheLock) {
+			boolean interrupted = false;
+			while (true) {
+				Object o = lookup($cache, clazz);
+				if (o != null) {
+					$hitCount.increment();
+					if (interrupted)
+						Thread.currentThread().interrupt();
+					return o;
+				}
+				if (!$pending.contains(clazz))
+					break;
+				try {
+					$cacheLock.wait();
+				}
+				catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			$pending.add(clazz);
+			$missCount++;
+		}
+		
+		// Introspect outside the lock, so lookups of other classes can proceed
+		Object o = null;
+		try {
 			try {
 				o = new CachedIntrospectionResults(clazz);
 			}
 			catch (BeansException ex) {
 				o = ex;
 			}
-			$cache.put(clazz, o);
+			return o;
 		}
-		else {
-			logger.debug("Using cached introspection results for class " + clazz);
+		finally {
+			synchronized ($cacheLock) {
+				if (o != null)
+					add(clazz, o);
+				$pending.remove(clazz);
+				$cacheLock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Find the cached value for the given class in the given table.
+	 * @return CachedIntrospectionResults, a BeansException, or null if not found
+	 */
+	private static Object lookup(CacheEntry[] table, Class clazz) {
+		int hash = System.identityHashCode(clazz);
+		for (CacheEntry e = table[hash & (table.length - 1)]; e != null; e = e.next) {
+			if (e.hash == hash && e.getBeanClass() == clazz)
+				return e.getValue();
+		}
+		return null;
+	}
+	
+	/**
+	 * Add the given value to the cache, growing the table first if it's half full.
+	 * Must be called holding $cacheLock.
+	 */
+	private static void add(Class clazz, Object value) {
+		CacheEntry[] table = $cache;
+		if (($size + 1) * 2 > table.length)
+			table = rehash(table);
+		int index = System.identityHashCode(clazz) & (table.length - 1);
+		table[index] = new CacheEntry(clazz, value, isCacheSafe(clazz), table[index]);
+		$size++;
+		// Republish, so that readers' next volatile read sees the new entry
+		$cache = table;
+	}
+	
+	/**
+	 * Return a new table holding the live entries of the given table,
+	 * dropping those whose class or value has been garbage collected. The new
+	 * table is at least twice the number of live entries, so that the cost
+	 * of copying is spread over the additions that filled the table.
+	 * Must be called holding $cacheLock.
+	 */
+	private static CacheEntry[] rehash(CacheEntry[] old) {
+		int live = 0;
+		for (int i = 0; i < old.length; i++) {
+			for (CacheEntry e = old[i]; e != null; e = e.next) {
+				if (e.isLive())
+					live++;
+			}
+		}
+		int capacity = old.length;
+		while (capacity < (live + 1) * 4)
+			capacity *= 2;
+		CacheEntry[] table = new CacheEntry[capacity];
+		for (int i = 0; i < old.length; i++) {
+			for (CacheEntry e = old[i]; e != null; e = e.next) {
+				if (e.isLive()) {
+					int index = e.hash & (capacity - 1);
+					table[index] = new CacheEntry(e, table[index]);
+				}
+			}
+		}
+		$size = live;
+		return table;
+	}
+	
+	/**
+	 * Is the given class loaded by our own ClassLoader or one of its parents,
+	 * so that it can't outlive us and can be referenced strongly?
+	 */
+	static boolean isCacheSafe(Class clazz) {
+		ClassLoader target = clazz.getClassLoader();
+		if (target == null)
+			return true;
+		for (ClassLoader cl = CachedIntrospectionResults.class.getClassLoader(); cl != null; cl = cl.getParent()) {
+			if (cl == target)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Return the number of classes currently cached. May include classes
+	 * garbage collected since the cache last grew.
+	 */
+	static int getCacheSize() {
+		synchronized ($cacheLock) {
+			return $size;
+		}
+	}
+	
+	/**
+	 * Return the number of lookups satisfied from the cache
+	 */
+	static long getHitCount() {
+		return $hitCount.get();
+	}
+	
+	/**
+	 * Return the number of lookups that required introspection
+	 */
+	static long getMissCount() {
+		synchronized ($cacheLock) {
+			return $missCount;
 		}
+	}
+	
+	
+	/**
+	 * Immutable cache entry. Holds the class and value strongly if the class
+	 * is cache-safe; otherwise the class weakly and the value softly.
+	 */
+	private static final class CacheEntry {
 		
-		// o is now an exception or CachedIntrospectionResults
+		final int hash;
 		
-		// We already have data for this class in the cache
-		if (o instanceof BeansException)
-			throw (BeansException) o;
-		return (CachedIntrospectionResults) o;
-	}
+		final CacheEntry next;
+		
+		private final Object classRef;
+		
+		private final Object valueRef;
+		
+		private final boolean strong;
+		
+		CacheEntry(Class clazz, Object value, boolean strong, CacheEntry next) {
+			this.hash = System.identityHashCode(clazz);
+			this.next = next;
+			this.strong = strong;
+			this.classRef = strong ? (Object) clazz : new WeakReference(clazz);
+			this.valueRef = strong ? value : new SoftReference(value);
+		}
+		
+		/**
+		 * Copy the given entry into a new chain, sharing its references
+		 */
+		CacheEntry(CacheEntry other, CacheEntry next) {
+			this.hash = other.hash;
+			this.next = next;
+			this.strong = other.strong;
+			this.classRef = other.classRef;
+			this.valueRef = other.valueRef;
+		}
+		
+		/**
+		 * Are the class and value still reachable?
+		 */
+		boolean isLive() {
+			return getBeanClass() != null && getValue() != null;
+		}
+		
+		Class getBeanClass() {
+			return (Class) (this.strong ? this.classRef : ((WeakReference) this.classRef).get());
+		}
+		
+		Object getValue() {
+			return this.strong ? this.valueRef : ((SoftReference) this.valueRef).get();
+		}
+	}	// class CacheEntry
+	
+	
+	/**
+	 * Counter incremented by many threads at once. Threads are spread over
+	 * several separately locked counts, so they seldom wait for each other.
+	 */
+	private static final class StripedCounter {
+		
+		private static final int STRIPES = 16;
+		
+		/** Count of each stripe. Each element is guarded by the corresponding lock */
+		private final long[] counts = new long[STRIPES];
+		
+		private final Object[] locks = new Object[STRIPES];
+		
+		StripedCounter() {
+			for (int i = 0; i < STRIPES; i++)
+				this.locks[i] = new Object();
+		}
+		
+		void increment() {
+			int stripe = System.identityHashCode(Thread.currentThread()) & (STRIPES - 1);
+			synchronized (this.locks[stripe]) {
+				this.counts[stripe]++;
+			}
+		}
+		
+		long get() {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				synchronized (this.locks[i]) {
+					sum += this.counts[i];
+				}
+			}
+			return sum;
+		}
+	}	// class StripedCounter
+	
 	
     //---------------------------------------------------------------------
     // Instance data
     //---------------------------------------------------------------------
-    private BeanInfo    beanInfo;
+    private final Class     beanClass;
     
-    /** Property desciptors keyed by property name */
-    private HashMap         propertyDescriptorMap;		
+    /** Only created on demand if the FastIntrospector was used */
+    private volatile BeanInfo beanInfo;
     
-     /** Property desciptors keyed by property name */
-    private HashMap         methodDescriptorMap;		
+    /** Sorted by name if the FastIntrospector was used. Created on demand */
+    private volatile PropertyDescriptor[] propertyDescriptors;
+    
+    /** Property accessors, in the order of the PropertyDescriptors */
+    private final PropertyAccessor[] propertyAccessors;
+    
+    /** Property accessors keyed by property name */
+    private final HashMap   propertyAccessorMap;		
+    
+    /** Method descriptors keyed by method name. Created on demand */
+    private volatile HashMap methodDescriptorMap;		
+    
+    /** 
+     * Compiled nested PropertyPaths keyed by path String. Copied on write
+     * and never modified once published, so that readers need no lock.
+     */
+    private volatile HashMap propertyPathMap = new HashMap();
     
     //---------------------------------------------------------------------
     // Constructors
     //---------------------------------------------------------------------
     /** Creates new CachedIntrospectionResults */
     private CachedIntrospectionResults(Class clazz) throws BeansException {
-        try {
-        	logger.info("Getting BeanInfo for class " + clazz);
-        	
-            beanInfo = Introspector.getBeanInfo(clazz);
-            
-            logger.debug("Caching PropertyDescriptors for class " + clazz);
-            propertyDescriptorMap = new HashMap();
-			// This call is slow so we do it once
-            PropertyDescriptor[] pds = beanInfo.getPropertyDescriptors();
-            for (int i = 0; i < pds.length; i++) {
-                logger.debug("Found property [" + pds[i].getName() + "] of type [" + pds[i].getPropertyType() + "]; editor=[" + pds[i].getPropertyEditorClass() + "]");
-                propertyDescriptorMap.put(pds[i].getName(), pds[i]);
-            }
-            
-            logger.debug("Caching MethodDescriptors for class " + clazz);
-            methodDescriptorMap = new HashMap();
-			// This call is slow so we do it once
-            MethodDescriptor[] mds = beanInfo.getMethodDescriptors();
-            for (int i = 0; i < mds.length; i++) {
-                logger.debug("Found method [" + mds[i].getName() + "] of type [" + mds[i].getMethod().getReturnType() + "]");
-                methodDescriptorMap.put(mds[i].getName(), mds[i]);
-            }
+        this.beanClass = clazz;
+        PropertyAccessor[] accessors = searchBeanInfo ? null : FastIntrospector.getPropertyAccessors(clazz);
+        if (accessors == null) {
+            logger.info("Getting BeanInfo for class " + clazz);
+            // This call is slow so we do it once
+            PropertyDescriptor[] pds = getBeanInfo().getPropertyDescriptors();
+            accessors = new PropertyAccessor[pds.length];
+            for (int i = 0; i < pds.length; i++)
+                accessors[i] = new PropertyAccessor(pds[i]);
+            this.propertyDescriptors = pds;
         }
-        catch (IntrospectionException ex) {
-            throw new FatalBeanException("Cannot get BeanInfo for object of class [" + clazz.getName() + "]", ex);
+        else {
+            logger.info("Introspected class " + clazz + " without BeanInfo");
+        }
+        
+        logger.debug("Caching PropertyAccessors for class " + clazz);
+        this.propertyAccessors = accessors;
+        this.propertyAccessorMap = new HashMap();
+        for (int i = 0; i < accessors.length; i++) {
+            if (logger.isDebugEnabled())
+                logger.debug("Found property [" + accessors[i].getName() + "] of type [" + accessors[i].getPropertyType() + "]");
+            propertyAccessorMap.put(accessors[i].getName(), accessors[i]);
         }
     }
     
@@ -116,23 +428,106 @@ final class CachedIntrospectionResults {
     // Public methods
     //---------------------------------------------------------------------
     
-    public BeanInfo getBeanInfo() {
-        return beanInfo;
+    /**
+     * Return the BeanInfo for the class, from java.beans.Introspector.
+     * If the FastIntrospector was used, this is only done now.
+     */
+    public BeanInfo getBeanInfo() throws BeansException {
+        BeanInfo bi = this.beanInfo;
+        if (bi == null) {
+            try {
+                bi = Introspector.getBeanInfo(beanClass);
+            }
+            catch (IntrospectionException ex) {
+                throw new FatalBeanException("Cannot get BeanInfo for object of class [" + beanClass.getName() + "]", ex);
+            }
+            this.beanInfo = bi;
+        }
+        return bi;
     }
     
     public Class getBeanClass() {
-        return beanInfo.getBeanDescriptor().getBeanClass();
+        return beanClass;
+    }
+    
+    /**
+     * Return the PropertyDescriptors of the class. The array is shared:
+     * callers must not modify it.
+     */
+    public PropertyDescriptor[] getPropertyDescriptors() throws BeansException {
+        PropertyDescriptor[] pds = this.propertyDescriptors;
+        if (pds == null) {
+            pds = new PropertyDescriptor[propertyAccessors.length];
+            for (int i = 0; i < pds.length; i++)
+                pds[i] = propertyAccessors[i].getPropertyDescriptor();
+            this.propertyDescriptors = pds;
+        }
+        return pds;
     }
     
     public PropertyDescriptor getPropertyDescriptor(String propertyName) throws BeansException {
-       PropertyDescriptor pd = (PropertyDescriptor) propertyDescriptorMap.get(propertyName);
-        if (pd == null)
+        PropertyAccessor accessor = getPropertyAccessor(propertyName);
+        if (accessor == null)
             throw new FatalBeanException("No property [" + propertyName + "] in class [" + getBeanClass() + "]", null);
-        return pd;
+        return accessor.getPropertyDescriptor();
+    }
+    
+    /**
+     * Return the accessors for all properties, in the order of the
+     * PropertyDescriptors. The array is shared: callers must not modify it.
+     */
+    public PropertyAccessor[] getPropertyAccessors() {
+        return propertyAccessors;
+    }
+    
+    /**
+     * Return the accessor for the given property, or null if there is no such
+     * property. Cheaper than getPropertyDescriptor() when the property may not exist.
+     */
+    public PropertyAccessor getPropertyAccessor(String propertyName) {
+        return (PropertyAccessor) propertyAccessorMap.get(propertyName);
+    }
+    
+    /**
+     * Return the compiled form of the given property path, which may be nested,
+     * starting from this class. Nested paths are cached, up to MAX_CACHED_PATHS per class,
+     * so that a stream of bogus request parameters can't grow the cache without limit.
+     */
+    public PropertyPath getPropertyPath(String path) {
+        PropertyPath pp = (PropertyPath) propertyPathMap.get(path);
+        if (pp == null) {
+            pp = new PropertyPath(path);
+            if (!pp.isNested())
+                return pp;
+            synchronized (this) {
+                if (propertyPathMap.size() < MAX_CACHED_PATHS) {
+                    HashMap copy = new HashMap(propertyPathMap);
+                    copy.put(path, pp);
+                    propertyPathMap = copy;
+                }
+            }
+        }
+        return pp;
     }
     
     public MethodDescriptor getMethodDescriptor(String methodName) throws BeansException {
-       MethodDescriptor md = (MethodDescriptor) methodDescriptorMap.get(methodName);
+        HashMap mdm = this.methodDescriptorMap;
+        if (mdm == null) {
+            logger.debug("Caching MethodDescriptors for class " + beanClass);
+            mdm = new HashMap();
+            if (this.beanInfo != null) {
+                MethodDescriptor[] mds = this.beanInfo.getMethodDescriptors();
+                for (int i = 0; i < mds.length; i++)
+                    mdm.put(mds[i].getName(), mds[i]);
+            }
+            else {
+                Method[] methods = beanClass.getMethods();
+                for (int i = 0; i < methods.length; i++)
+                    mdm.put(methods[i].getName(), new MethodDescriptor(methods[i]));
+            }
+            this.methodDescriptorMap = mdm;
+        }
+        MethodDescriptor md = (MethodDescriptor) mdm.get(methodName);
         if (md == null)
             throw new FatalBeanException("No method [" + methodName + "] in class [" + getBeanClass() + "]", null);
         return md;
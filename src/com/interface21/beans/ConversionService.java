@@ -0,0 +1,316 @@
+package com.interface21.beans;
+
+import java.beans.PropertyEditor;
+import java.beans.PropertyEditorManager;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.interface21.beans.propertyeditors.PropertiesEditor;
+import com.interface21.util.StringUtils;
+
+/**
+ * Threadsafe registry of Converters, keyed by source and target type,
+ * used by BeanWrapperImpl to convert property values, typically Strings
+ * from request parameters or bean definitions, to the required type.
+ *
+ * <p>Stateless converters are registered out of the box for String to
+ * primitives and their wrappers, BigDecimal, BigInteger, String[] (as a
+ * comma-delimited list), Properties (in the format of PropertiesEditor),
+ * java.util.Date and java.sql.Date, Time and Timestamp (in JDBC escape format,
+ * yyyy-mm-dd [hh:mm:ss[.f...]]).
+ *
+ * <p>For other conversions from String, the registry can fall back to the
+ * PropertyEditor that the JavaBeans PropertyEditorManager finds for the target
+ * type. As editors hold state, each thread gets its own editor instance.
+ * Editors found are cached, as is the absence of an editor, so editors
+ * registered with the PropertyEditorManager after a type's first conversion
+ * aren't seen. Classes loaded by other ClassLoaders than this class's own
+ * aren't cached here, to avoid preventing the ClassLoader being garbage collected.
+ *
+ * <p>Lookups take no lock: registrations copy the registry.
+ * Converters should be registered at startup.
+ *
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see Converter
+ * @see BeanWrapperImpl#setConversionService(ConversionService)
+ */
+public class ConversionService {
+
+	/** Shared instance used by BeanWrapperImpl unless another is set */
+	private static final ConversionService defaultInstance = new ConversionService();
+
+	/**
+	 * Return the shared ConversionService used by default by all BeanWrappers.
+	 * Converters registered with it are available to all BeanWrappers.
+	 */
+	public static ConversionService getDefaultInstance() {
+		return defaultInstance;
+	}
+
+	/**
+	 * Marker cached for types that have no PropertyEditor,
+	 * so that the PropertyEditorManager isn't searched on every conversion
+	 */
+	private static final Converter NO_EDITOR = new Converter() {
+		public Object convert(Object value) {
+			return value;
+		}
+	};
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	/**
+	 * Map from target Class to Map from source Class to Converter.
+	 * Never modified once published.
+	 */
+	private volatile Map converters = new HashMap();
+
+	private boolean propertyEditorFallback = true;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a new ConversionService with the default Converters registered
+	 */
+	public ConversionService() {
+		registerDefaultConverters();
+	}
+
+	//---------------------------------------------------------------------
+	// Bean properties
+	//---------------------------------------------------------------------
+	/**
+	 * Set whether to fall back to JavaBeans PropertyEditors for conversions from
+	 * String that no Converter is registered for. Default is true.
+	 */
+	public void setPropertyEditorFallback(boolean propertyEditorFallback) {
+		this.propertyEditorFallback = propertyEditorFallback;
+	}
+
+	/**
+	 * Return whether we fall back to JavaBeans PropertyEditors
+	 */
+	public boolean isPropertyEditorFallback() {
+		return propertyEditorFallback;
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Register a Converter, replacing any existing Converter for the same types.
+	 * To convert to a primitive type, register the Converter for the primitive
+	 * class, such as int.class: the Converter must return the wrapper type.
+	 * @param sourceType type of values the Converter accepts
+	 * @param targetType type the Converter returns
+	 * @param converter stateless, threadsafe Converter
+	 */
+	public synchronized void addConverter(Class sourceType, Class targetType, Converter converter) {
+		Map copy = new HashMap(this.converters);
+		Map bySource = (Map) copy.get(targetType);
+		bySource = (bySource != null) ? new HashMap(bySource) : new HashMap(4);
+		bySource.put(sourceType, converter);
+		copy.put(targetType, bySource);
+		this.converters = copy;
+	}
+
+	/**
+	 * Return the Converter to use for the given types
+	 * @param sourceType type of the value to convert
+	 * @param targetType type required
+	 * @return the Converter, or null if none is registered, and there's no
+	 * PropertyEditor to fall back to
+	 */
+	public Converter getConverter(Class sourceType, Class targetType) {
+		Map bySource = (Map) this.converters.get(targetType);
+		if (bySource != null) {
+			Converter converter = (Converter) bySource.get(sourceType);
+			if (converter == NO_EDITOR)
+				return null;
+			if (converter != null)
+				return converter;
+		}
+		if (this.propertyEditorFallback && sourceType == String.class) {
+			PropertyEditor pe = PropertyEditorManager.findEditor(targetType);
+			Converter converter = (pe != null) ? new PropertyEditorConverter(targetType, pe) : NO_EDITOR;
+			if (CachedIntrospectionResults.isCacheSafe(targetType))
+				addConverter(String.class, targetType, converter);
+			return (converter != NO_EDITOR) ? converter : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Convert the value to the required type, if necessary and possible
+	 * @param value value to convert. May be null.
+	 * @param targetType type required
+	 * @return the converted value, or the value unchanged if it is null,
+	 * already of the required type, or if there's no way to convert it
+	 * @throws IllegalArgumentException if the conversion fails
+	 */
+	public Object convert(Object value, Class targetType) throws IllegalArgumentException {
+		if (value == null)
+			return null;
+		Class assignableType = targetType.isPrimitive() ? PropertyAccessor.getWrapperType(targetType) : targetType;
+		if (assignableType.isInstance(value))
+			return value;
+		Converter converter = getConverter(value.getClass(), targetType);
+		return (converter != null) ? converter.convert(value) : value;
+	}
+
+	//---------------------------------------------------------------------
+	// Default converters
+	//---------------------------------------------------------------------
+	/**
+	 * Register the converters available out of the box
+	 */
+	private void registerDefaultConverters() {
+		Converter intConverter = new Converter() {
+			public Object convert(Object value) {
+				return Integer.decode((String) value);
+			}
+		};
+		addConverter(String.class, int.class, intConverter);
+		addConverter(String.class, Integer.class, intConverter);
+
+		Converter longConverter = new Converter() {
+			public Object convert(Object value) {
+				return Long.decode((String) value);
+			}
+		};
+		addConverter(String.class, long.class, longConverter);
+		addConverter(String.class, Long.class, longConverter);
+
+		Converter shortConverter = new Converter() {
+			public Object convert(Object value) {
+				return Short.decode((String) value);
+			}
+		};
+		addConverter(String.class, short.class, shortConverter);
+		addConverter(String.class, Short.class, shortConverter);
+
+		Converter byteConverter = new Converter() {
+			public Object convert(Object value) {
+				return Byte.decode((String) value);
+			}
+		};
+		addConverter(String.class, byte.class, byteConverter);
+		addConverter(String.class, Byte.class, byteConverter);
+
+		Converter doubleConverter = new Converter() {
+			public Object convert(Object value) {
+				return Double.valueOf((String) value);
+			}
+		};
+		addConverter(String.class, double.class, doubleConverter);
+		addConverter(String.class, Double.class, doubleConverter);
+
+		Converter floatConverter = new Converter() {
+			public Object convert(Object value) {
+				return Float.valueOf((String) value);
+			}
+		};
+		addConverter(String.class, float.class, floatConverter);
+		addConverter(String.class, Float.class, floatConverter);
+
+		Converter booleanConverter = new Converter() {
+			public Object convert(Object value) {
+				String s = (String) value;
+				if ("true".equalsIgnoreCase(s))
+					return Boolean.TRUE;
+				if ("false".equalsIgnoreCase(s))
+					return Boolean.FALSE;
+				throw new IllegalArgumentException("Invalid boolean value [" + s + "]");
+			}
+		};
+		addConverter(String.class, boolean.class, booleanConverter);
+		addConverter(String.class, Boolean.class, booleanConverter);
+
+		addConverter(String.class, BigDecimal.class, new Converter() {
+			public Object convert(Object value) {
+				return new BigDecimal(((String) value).trim());
+			}
+		});
+		addConverter(String.class, BigInteger.class, new Converter() {
+			public Object convert(Object value) {
+				return new BigInteger(((String) value).trim());
+			}
+		});
+
+		addConverter(String.class, String[].class, new Converter() {
+			public Object convert(Object value) {
+				return StringUtils.commaDelimitedListToStringArray((String) value);
+			}
+		});
+		addConverter(String.class, Properties.class, new Converter() {
+			public Object convert(Object value) {
+				return PropertiesEditor.parse((String) value);
+			}
+		});
+
+		addConverter(String.class, Date.class, new Converter() {
+			public Object convert(Object value) {
+				String s = ((String) value).trim();
+				if (s.length() == 10)
+					return new Date(java.sql.Date.valueOf(s).getTime());
+				return new Date(Timestamp.valueOf(s).getTime());
+			}
+		});
+		addConverter(String.class, java.sql.Date.class, new Converter() {
+			public Object convert(Object value) {
+				return java.sql.Date.valueOf(((String) value).trim());
+			}
+		});
+		addConverter(String.class, Time.class, new Converter() {
+			public Object convert(Object value) {
+				return Time.valueOf(((String) value).trim());
+			}
+		});
+		addConverter(String.class, Timestamp.class, new Converter() {
+			public Object convert(Object value) {
+				return Timestamp.valueOf(((String) value).trim());
+			}
+		});
+	}	// registerDefaultConverters
+
+
+	/**
+	 * Adapter from a PropertyEditor class to the Converter interface,
+	 * giving each thread its own editor instance
+	 */
+	private static class PropertyEditorConverter implements Converter {
+
+		private final Class targetType;
+
+		/** Each thread's PropertyEditor, or NO_EDITOR if the manager found none */
+		private final ThreadLocal editors = new ThreadLocal();
+
+		PropertyEditorConverter(Class targetType, PropertyEditor firstEditor) {
+			this.targetType = targetType;
+			this.editors.set(firstEditor);
+		}
+
+		public Object convert(Object value) throws IllegalArgumentException {
+			Object editor = this.editors.get();
+			if (editor == null) {
+				editor = PropertyEditorManager.findEditor(this.targetType);
+				this.editors.set((editor != null) ? editor : NO_EDITOR);
+			}
+			if (editor == null || editor == NO_EDITOR)
+				return value;
+			PropertyEditor pe = (PropertyEditor) editor;
+			pe.setAsText((String) value);
+			return pe.getValue();
+		}
+	}	// class PropertyEditorConverter
+
+}	// class ConversionService
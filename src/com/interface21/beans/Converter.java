@@ -0,0 +1,23 @@
+package com.interface21.beans;
+
+/**
+ * Interface to be implemented by objects that convert values, usually
+ * Strings, to a particular type. Registered with a ConversionService
+ * for a source and target type.
+ * <br/>Unlike a java.beans.PropertyEditor, a Converter holds no state
+ * between calls, so a single instance can be shared by all threads.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see ConversionService
+ */
+public interface Converter {
+
+	/**
+	 * Convert the given value
+	 * @param value value to convert. Never null: null values are not converted.
+	 * @return the converted value
+	 * @throws IllegalArgumentException if the value can't be converted
+	 */
+	Object convert(Object value) throws IllegalArgumentException;
+
+}
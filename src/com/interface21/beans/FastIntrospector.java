@@ -0,0 +1,132 @@
+package com.interface21.beans;
+
+import java.beans.Introspector;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Introspection engine used by CachedIntrospectionResults in place of
+ * java.beans.Introspector. Makes one pass over the public methods of the class
+ * (Class.getMethods(), which includes inherited methods), picking out getters
+ * and setters following the JavaBeans naming conventions.
+ * <br/>Unlike the Introspector, this doesn't look for BeanInfo classes for the
+ * class and each of its superclasses, and doesn't build descriptors for all methods
+ * and properties up front: PropertyDescriptors are only created if asked for.
+ * <br/>The result is the same as the Introspector's for classes without
+ * BeanInfo: the same properties, with the same read and write methods. For
+ * classes with indexed properties, which BeanWrapperImpl reads through
+ * IndexedPropertyDescriptors, we return null and the Introspector is used.
+ * <br/>Package-visible; not used by application code. Threadsafe.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see BeanWrapperImpl#setSearchBeanInfo(boolean)
+ */
+final class FastIntrospector {
+
+	private FastIntrospector() {
+	}
+
+	/**
+	 * Find the properties of the given class
+	 * @param clazz class to introspect
+	 * @return PropertyAccessors for the properties, sorted by name, or null if the
+	 * class has indexed properties and must be introspected by the Introspector
+	 */
+	static PropertyAccessor[] getPropertyAccessors(Class clazz) {
+		// Property name to Method[] { getter, setter }
+		Map properties = new TreeMap();
+		Method[] methods = clazz.getMethods();
+
+		// Find getters first, as they determine which setter to choose if overloaded
+		for (int i = 0; i < methods.length; i++) {
+			Method m = methods[i];
+			if (Modifier.isStatic(m.getModifiers()))
+				continue;
+			String name = m.getName();
+			Class[] params = m.getParameterTypes();
+			Class returnType = m.getReturnType();
+			if (params.length == 0 && returnType != void.class) {
+				String propertyName = null;
+				if (name.startsWith("get") && name.length() > 3)
+					propertyName = Introspector.decapitalize(name.substring(3));
+				else if (name.startsWith("is") && name.length() > 2 && returnType == boolean.class)
+					propertyName = Introspector.decapitalize(name.substring(2));
+				if (propertyName != null) {
+					Method[] accessors = getAccessors(properties, propertyName);
+					if (accessors[0] == null || preferGetter(m, accessors[0]))
+						accessors[0] = m;
+				}
+			}
+			else if (params.length == 1 && params[0] == int.class && name.startsWith("get") && name.length() > 3) {
+				// Indexed getter
+				return null;
+			}
+		}
+
+		for (int i = 0; i < methods.length; i++) {
+			Method m = methods[i];
+			if (Modifier.isStatic(m.getModifiers()) || m.getReturnType() != void.class)
+				continue;
+			String name = m.getName();
+			if (!name.startsWith("set") || name.length() <= 3)
+				continue;
+			Class[] params = m.getParameterTypes();
+			if (params.length == 2 && params[0] == int.class)
+				// Indexed setter
+				return null;
+			if (params.length != 1)
+				continue;
+			Method[] accessors = getAccessors(properties, Introspector.decapitalize(name.substring(3)));
+			if (accessors[0] != null) {
+				// Only a setter taking the getter's type makes the property writable
+				if (params[0] == accessors[0].getReturnType())
+					accessors[1] = m;
+			}
+			else if (accessors[1] == null || params[0].getName().compareTo(accessors[1].getParameterTypes()[0].getName()) < 0) {
+				// Overloaded setters without a getter: choose one deterministically
+				accessors[1] = m;
+			}
+		}
+
+		PropertyAccessor[] result = new PropertyAccessor[properties.size()];
+		int count = 0;
+		for (Iterator itr = properties.entrySet().iterator(); itr.hasNext(); ) {
+			Map.Entry entry = (Map.Entry) itr.next();
+			Method[] accessors = (Method[]) entry.getValue();
+			if (accessors[0] != null || accessors[1] != null)
+				result[count++] = new PropertyAccessor((String) entry.getKey(), accessors[0], accessors[1]);
+		}
+		if (count < result.length) {
+			PropertyAccessor[] trimmed = new PropertyAccessor[count];
+			System.arraycopy(result, 0, trimmed, 0, count);
+			result = trimmed;
+		}
+		return result;
+	}
+
+	private static Method[] getAccessors(Map properties, String propertyName) {
+		Method[] accessors = (Method[]) properties.get(propertyName);
+		if (accessors == null) {
+			accessors = new Method[2];
+			properties.put(propertyName, accessors);
+		}
+		return accessors;
+	}
+
+	/**
+	 * Should the candidate getter replace the one already found? The Introspector
+	 * prefers isXxx() to getXxx(), and with covariant return types,
+	 * the most specific return type.
+	 */
+	private static boolean preferGetter(Method candidate, Method existing) {
+		boolean candidateIs = candidate.getName().startsWith("is");
+		boolean existingIs = existing.getName().startsWith("is");
+		if (candidateIs != existingIs)
+			return candidateIs;
+		return existing.getReturnType().isAssignableFrom(candidate.getReturnType());
+	}
+
+}	// class FastIntrospector
@@ -0,0 +1,290 @@
+package com.interface21.beans;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.interface21.util.StringUtils;
+
+/**
+ * PropertyValues implementation for large or frequently queried sets of
+ * property values, such as request parameters bound to a form object.
+ * <br/>Lookups by name go through an open addressing hash index, rather
+ * than a linear scan. Once the object is full, as after trimToSize() or
+ * construction from existing values, getPropertyValues() returns a shared
+ * array rather than a copy. changesSince() is linear in the size of both sets.
+ * <br/>As with MutablePropertyValues, if the same name is added more than once
+ * all the PropertyValue objects are kept, and lookups by name return the first.
+ * <br/>PropertyValue objects are immutable, so copies share them.
+ * This class is not threadsafe while being built, but may be read
+ * concurrently once it is no longer modified.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see MutablePropertyValues
+ */
+public class IndexedPropertyValues implements PropertyValues {
+
+	private static final PropertyValue[] EMPTY = new PropertyValue[0];
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	/** PropertyValue objects, in the order they were added */
+	private PropertyValue[] propertyValues;
+
+	/**
+	 * Number of PropertyValue objects held. Only a full propertyValues array
+	 * is handed out by getPropertyValues(), so a full array is copied
+	 * before it is modified, and reads never modify this object.
+	 */
+	private int size;
+
+	/**
+	 * Hash index: each slot holds 1 + the position in the propertyValues array
+	 * of the first PropertyValue with a given name, or 0 if the slot is free.
+	 * The length is a power of 2 at least twice the number of names.
+	 */
+	private int[] index;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Creates a new empty IndexedPropertyValues object.
+	 * PropertyValue objects can be added with the
+	 * addPropertyValue() method.
+	 */
+	public IndexedPropertyValues() {
+		this(8);
+	}
+
+	/**
+	 * Creates a new empty IndexedPropertyValues object with room
+	 * for the given number of PropertyValue objects
+	 * @param expectedSize number of PropertyValue objects expected
+	 */
+	public IndexedPropertyValues(int expectedSize) {
+		this.propertyValues = (expectedSize > 0) ? new PropertyValue[expectedSize] : EMPTY;
+		this.index = new int[tableSizeFor(expectedSize)];
+	}
+
+	/**
+	 * Copy constructor. The PropertyValue objects are immutable,
+	 * so they are shared with the other object.
+	 * @param other PropertyValues to copy
+	 */
+	public IndexedPropertyValues(PropertyValues other) {
+		this(other.getPropertyValues());
+	}
+
+	/**
+	 * Create a new object holding the given PropertyValue objects.
+	 * The array is copied.
+	 * @param pvs PropertyValue objects
+	 */
+	public IndexedPropertyValues(PropertyValue[] pvs) {
+		this(pvs.length);
+		for (int i = 0; i < pvs.length; i++)
+			addPropertyValue(pvs[i]);
+	}
+
+	/**
+	 * Construct a new PropertyValues object from a Map.
+	 * @param map Map with property values keyed by property name,
+	 * which must be a String
+	 */
+	public IndexedPropertyValues(Map map) {
+		this(map.size());
+		Iterator itr = map.entrySet().iterator();
+		while (itr.hasNext()) {
+			Map.Entry entry = (Map.Entry) itr.next();
+			addPropertyValue(new PropertyValue((String) entry.getKey(), entry.getValue()));
+		}
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Add a PropertyValue object
+	 * @param pv PropertyValue object to add
+	 */
+	public void addPropertyValue(PropertyValue pv) {
+		if (this.size == this.propertyValues.length) {
+			PropertyValue[] grown = new PropertyValue[Math.max(8, this.size * 2)];
+			System.arraycopy(this.propertyValues, 0, grown, 0, this.size);
+			this.propertyValues = grown;
+		}
+		this.propertyValues[this.size++] = pv;
+		if (this.size * 2 > this.index.length)
+			rebuildIndex();
+		else
+			addToIndex(this.size - 1);
+	}
+
+	/**
+	 * Modify a PropertyValue object held in this object
+	 * Indexed from 0
+	 */
+	public void setPropertyValueAt(PropertyValue pv, int i) {
+		if (i < 0 || i >= this.size)
+			throw new IndexOutOfBoundsException("Index " + i + " for PropertyValues of size " + this.size);
+		if (this.size == this.propertyValues.length) {
+			// May have been handed out. A spare slot means further updates needn't copy again
+			PropertyValue[] copy = new PropertyValue[this.size + 1];
+			System.arraycopy(this.propertyValues, 0, copy, 0, this.size);
+			this.propertyValues = copy;
+		}
+		boolean sameName = this.propertyValues[i].getName().equals(pv.getName());
+		this.propertyValues[i] = pv;
+		if (!sameName)
+			rebuildIndex();
+	}
+
+	/**
+	 * Return the number of PropertyValue objects held
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Release unused capacity, so that getPropertyValues() can return
+	 * the array held rather than a copy. Call when the object is built.
+	 */
+	public void trimToSize() {
+		if (this.size != this.propertyValues.length) {
+			PropertyValue[] trimmed = new PropertyValue[this.size];
+			System.arraycopy(this.propertyValues, 0, trimmed, 0, this.size);
+			this.propertyValues = trimmed;
+		}
+	}
+
+	/**
+	 * Return an array of the PropertyValue objects held in this object.
+	 * <b>If the object is full the array is shared, not copied: callers must
+	 * not modify it.</b> Otherwise a copy is returned; this object is never
+	 * modified, so it may be read concurrently.
+	 * Adding to this object after this call doesn't affect arrays already returned.
+	 * @return an array of the PropertyValue objects
+	 * held in this object.
+	 * @see #trimToSize()
+	 */
+	public PropertyValue[] getPropertyValues() {
+		if (this.size == this.propertyValues.length)
+			return this.propertyValues;
+		PropertyValue[] copy = new PropertyValue[this.size];
+		System.arraycopy(this.propertyValues, 0, copy, 0, this.size);
+		return copy;
+	}
+
+	/**
+	 * Return an unmodifiable List of the PropertyValue objects
+	 * held in this object, backed by the array from getPropertyValues()
+	 * @return a List of PropertyValue objects
+	 */
+	public List asList() {
+		return Collections.unmodifiableList(Arrays.asList(getPropertyValues()));
+	}
+
+	/** Is there a propertyValue object for this property?
+	 * @param propertyName name of the property we're interested in
+	 *@return whether there is a propertyValue object for this property?
+	 */
+	public boolean contains(String propertyName) {
+		return getPropertyValue(propertyName) != null;
+	}
+
+	/**
+	 * @see PropertyValues#getPropertyValue(String)
+	 */
+	public PropertyValue getPropertyValue(String propertyName) {
+		if (propertyName == null)
+			return null;
+		int mask = this.index.length - 1;
+		int slot = spread(propertyName.hashCode()) & mask;
+		int entry;
+		while ((entry = this.index[slot]) != 0) {
+			PropertyValue pv = this.propertyValues[entry - 1];
+			if (propertyName.equals(pv.getName()))
+				return pv;
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the PropertyValue objects that are new or changed since the
+	 * old PropertyValues, using PropertyValue.equals(). If the old object isn't an
+	 * IndexedPropertyValues, it is indexed first, so that this takes linear time.
+	 * @see PropertyValues#changesSince(PropertyValues)
+	 */
+	public PropertyValues changesSince(PropertyValues old) {
+		IndexedPropertyValues changes = new IndexedPropertyValues();
+		if (old == this)
+			return changes;
+		PropertyValues indexedOld = (old instanceof IndexedPropertyValues) ? old : new IndexedPropertyValues(old);
+		for (int i = 0; i < this.size; i++) {
+			PropertyValue newPv = this.propertyValues[i];
+			PropertyValue oldPv = indexedOld.getPropertyValue(newPv.getName());
+			if (oldPv == null || !oldPv.equals(newPv))
+				changes.addPropertyValue(newPv);
+		}
+		return changes;
+	}
+
+	public String toString() {
+		PropertyValue[] pvs = getPropertyValues();
+		StringBuffer sb = new StringBuffer("IndexedPropertyValues: length=" + pvs.length + "; ");
+		sb.append(StringUtils.arrayToDelimitedString(pvs, ","));
+		return sb.toString();
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	/**
+	 * Index the PropertyValue at the given position, unless
+	 * a PropertyValue with the same name is already indexed
+	 */
+	private void addToIndex(int position) {
+		String name = this.propertyValues[position].getName();
+		int mask = this.index.length - 1;
+		int slot = spread(name.hashCode()) & mask;
+		int entry;
+		while ((entry = this.index[slot]) != 0) {
+			if (name.equals(this.propertyValues[entry - 1].getName()))
+				return;
+			slot = (slot + 1) & mask;
+		}
+		this.index[slot] = position + 1;
+	}
+
+	private void rebuildIndex() {
+		this.index = new int[tableSizeFor(this.size)];
+		for (int i = 0; i < this.size; i++)
+			addToIndex(i);
+	}
+
+	/**
+	 * Return a power of 2 table size keeping the load factor at most 1/2
+	 */
+	private static int tableSizeFor(int entries) {
+		int tableSize = 16;
+		while (tableSize < entries * 2)
+			tableSize <<= 1;
+		return tableSize;
+	}
+
+	/**
+	 * Spread the bits of a String hash code, as similar property names
+	 * differ only in their last characters
+	 */
+	private static int spread(int h) {
+		h ^= (h >>> 16);
+		return h ^ (h >>> 8);
+	}
+
+}	// class IndexedPropertyValues
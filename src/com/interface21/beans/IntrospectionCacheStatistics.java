@@ -0,0 +1,78 @@
+package com.interface21.beans;
+
+/**
+ * Snapshot of the statistics of the static cache of introspection
+ * results shared by all BeanWrapperImpl objects. Useful for monitoring
+ * the cache in long-running servers.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ */
+public final class IntrospectionCacheStatistics {
+	
+	/**
+	 * Return the current statistics of the introspection cache
+	 * @return a snapshot of the cache statistics
+	 */
+	public static IntrospectionCacheStatistics getCurrent() {
+		return new IntrospectionCacheStatistics(CachedIntrospectionResults.getCacheSize(),
+			CachedIntrospectionResults.getHitCount(), CachedIntrospectionResults.getMissCount());
+	}
+	
+    //---------------------------------------------------------------------
+	// Instance data
+    //---------------------------------------------------------------------
+	private final int size;
+	
+	private final long hitCount;
+	
+	private final long missCount;
+
+    //---------------------------------------------------------------------
+    // Constructors
+    //---------------------------------------------------------------------
+	private IntrospectionCacheStatistics(int size, long hitCount, long missCount) {
+		this.size = size;
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+	}
+
+    //---------------------------------------------------------------------
+    // Public methods
+    //---------------------------------------------------------------------
+	/**
+	 * Return the number of classes in the cache
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Return the number of lookups answered from the cache.
+	 * This count isn't synchronized, so may be slightly low.
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Return the number of lookups that required a class to be introspected
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+	
+	/**
+	 * Return the proportion of lookups answered from the cache,
+	 * between 0 and 1. Returns 0 if there have been no lookups.
+	 */
+	public double getHitRate() {
+		long total = hitCount + missCount;
+		return (total > 0) ? (double) hitCount / total : 0.0;
+	}
+	
+	public String toString() {
+		return "IntrospectionCacheStatistics: size=" + size + "; hits=" + hitCount + "; misses=" + missCount +
+			"; hitRate=" + getHitRate();
+	}
+
+}	// class IntrospectionCacheStatistics
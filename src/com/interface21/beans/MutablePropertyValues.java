@@ -14,6 +14,8 @@ import com.interface21.util.StringUtils;
  * Allows simple manipulation of properties,
  * and provides constructors to support deep copy
  * and construction from a Map.
+ * <br/>Lookups are linear scans: IndexedPropertyValues is faster for
+ * large sets of property values.
  * @author  Rod Johnson
  * @since 13 May 2001
  * @version $Id: MutablePropertyValues.java,v 1.1.1.1 2003/02/11 08:10:11 johnsonr Exp $
@@ -132,13 +134,8 @@ public class MutablePropertyValues implements PropertyValues {
 			PropertyValue newPv = (PropertyValue) this.propertyValuesList.get(i);
 			// If there wasn't an old one, add it
 			PropertyValue pvOld = old.getPropertyValue(newPv.getName());
-			if (pvOld == null) {
-				System.out.println("No old pv for " + newPv.getName());
-				changes.addPropertyValue(newPv);
-			}
-			else if (!pvOld.equals(newPv)) {
-				// It's changed
-				System.out.println("pv changed for " + newPv.getName());
+			if (pvOld == null || !pvOld.equals(newPv)) {
+				// It's new or changed
 				changes.addPropertyValue(newPv);
 			}
 		}
@@ -0,0 +1,232 @@
+package com.interface21.beans;
+
+import java.beans.IntrospectionException;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Precomputed invoker for one property of a class, built once by
+ * CachedIntrospectionResults and shared by all BeanWrapperImpl objects
+ * wrapping instances of that class.
+ * <br/>Accessor methods are made accessible once, so that each invocation
+ * skips the reflective access check, and getters share a single empty
+ * argument array. If the security manager forbids this, we fall back
+ * to plain reflective invocation.
+ * <br/>The wrapper type of a primitive property is resolved up front, so that
+ * checking whether a value can be passed to the setter without
+ * conversion is a single instanceof test.
+ * <br/>Package-visible; not used by application code. Threadsafe.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ */
+final class PropertyAccessor {
+
+	/** Argument array shared by all getter invocations */
+	private static final Object[] NO_ARGS = new Object[0];
+
+	private static Logger logger = Logger.getLogger(PropertyAccessor.class.getName());
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final String name;
+
+	/** Created on demand if we weren't built from a PropertyDescriptor */
+	private volatile PropertyDescriptor propertyDescriptor;
+
+	private final Method readMethod;
+
+	private final Method writeMethod;
+
+	private final Class propertyType;
+
+	/** Type a non-null value must be an instance of to be passed to the setter as is */
+	private final Class assignableType;
+
+	private final boolean primitive;
+
+	/** 
+	 * Converter from String last found for this property, and the ConversionService
+	 * it came from. Replaced as a whole, and volatile so that other threads
+	 * see both elements of a new array, so needs no synchronization.
+	 */
+	private volatile Object[] stringConverter;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a new accessor for the given property
+	 * @param pd descriptor of the property
+	 */
+	PropertyAccessor(PropertyDescriptor pd) {
+		this.name = pd.getName();
+		this.propertyDescriptor = pd;
+		this.readMethod = makeAccessible(pd.getReadMethod());
+		this.writeMethod = makeAccessible(pd.getWriteMethod());
+		this.propertyType = pd.getPropertyType();
+		this.primitive = (this.propertyType != null && this.propertyType.isPrimitive());
+		this.assignableType = this.primitive ? getWrapperType(this.propertyType) : this.propertyType;
+	}
+
+	/**
+	 * Create a new accessor for a property found by FastIntrospector.
+	 * The property type is taken from the method signatures.
+	 * @param name name of the property
+	 * @param readMethod getter, or null if the property isn't readable
+	 * @param writeMethod setter taking the getter's return type,
+	 * or null if the property isn't writable
+	 */
+	PropertyAccessor(String name, Method readMethod, Method writeMethod) {
+		this.name = name;
+		this.readMethod = makeAccessible(readMethod);
+		this.writeMethod = makeAccessible(writeMethod);
+		this.propertyType = (readMethod != null) ? readMethod.getReturnType() : writeMethod.getParameterTypes()[0];
+		this.primitive = this.propertyType.isPrimitive();
+		this.assignableType = this.primitive ? getWrapperType(this.propertyType) : this.propertyType;
+	}
+
+	/**
+	 * Suppress access checks on the given method if we're allowed to
+	 */
+	private static Method makeAccessible(Method m) {
+		if (m != null && !m.isAccessible()) {
+			try {
+				m.setAccessible(true);
+			}
+			catch (SecurityException ex) {
+				logger.debug("Not permitted to suppress access checks on [" + m + "]: using checked reflection");
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Return the wrapper class for the given primitive type
+	 */
+	static Class getWrapperType(Class primitiveType) {
+		if (primitiveType == int.class)
+			return Integer.class;
+		if (primitiveType == boolean.class)
+			return Boolean.class;
+		if (primitiveType == long.class)
+			return Long.class;
+		if (primitiveType == double.class)
+			return Double.class;
+		if (primitiveType == float.class)
+			return Float.class;
+		if (primitiveType == short.class)
+			return Short.class;
+		if (primitiveType == byte.class)
+			return Byte.class;
+		if (primitiveType == char.class)
+			return Character.class;
+		return Void.class;
+	}
+
+	//---------------------------------------------------------------------
+	// Accessors
+	//---------------------------------------------------------------------
+	/**
+	 * Return the PropertyDescriptor for this property, creating it if necessary
+	 * @throws FatalBeanException if the JavaBeans API rejects the accessor methods
+	 */
+	PropertyDescriptor getPropertyDescriptor() throws BeansException {
+		PropertyDescriptor pd = this.propertyDescriptor;
+		if (pd == null) {
+			try {
+				pd = new PropertyDescriptor(this.name, this.readMethod, this.writeMethod);
+			}
+			catch (IntrospectionException ex) {
+				throw new FatalBeanException("Cannot create PropertyDescriptor for property [" + this.name + "]", ex);
+			}
+			this.propertyDescriptor = pd;
+		}
+		return pd;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	Class getPropertyType() {
+		return propertyType;
+	}
+
+	Method getReadMethod() {
+		return readMethod;
+	}
+
+	Method getWriteMethod() {
+		return writeMethod;
+	}
+
+	boolean isReadable() {
+		return readMethod != null;
+	}
+
+	boolean isWritable() {
+		return writeMethod != null;
+	}
+
+	/**
+	 * Can the given value be passed to the setter without conversion?
+	 * Null can't be passed to the setter of a primitive property.
+	 */
+	boolean isAssignable(Object value) {
+		if (value == null)
+			return !primitive;
+		return assignableType != null && assignableType.isInstance(value);
+	}
+
+	/**
+	 * Convert the given value to the type of this property, if necessary and possible.
+	 * The converter for Strings is cached, so that the ConversionService is
+	 * consulted only once per property.
+	 * @param value value to convert, which isn't assignable to the property
+	 * @param conversionService ConversionService to find a converter with
+	 * @return the converted value, or the value unchanged if there's no way to convert it
+	 * @throws IllegalArgumentException if the conversion fails
+	 */
+	Object convert(Object value, ConversionService conversionService) throws IllegalArgumentException {
+		if (value == null || propertyType == null)
+			return value;
+		Converter converter = null;
+		if (value instanceof String) {
+			Object[] cached = this.stringConverter;
+			if (cached != null && cached[0] == conversionService) {
+				converter = (Converter) cached[1];
+			}
+			else {
+				converter = conversionService.getConverter(String.class, propertyType);
+				if (converter != null)
+					this.stringConverter = new Object[] { conversionService, converter };
+			}
+		}
+		else {
+			converter = conversionService.getConverter(value.getClass(), propertyType);
+		}
+		return (converter != null) ? converter.convert(value) : value;
+	}
+
+	//---------------------------------------------------------------------
+	// Invocation
+	//---------------------------------------------------------------------
+	/**
+	 * Invoke the getter on the given target. The property must be readable.
+	 */
+	Object getValue(Object target) throws InvocationTargetException, IllegalAccessException {
+		return readMethod.invoke(target, NO_ARGS);
+	}
+
+	/**
+	 * Invoke the setter on the given target. The property must be writable.
+	 */
+	void setValue(Object target, Object value) throws InvocationTargetException, IllegalAccessException {
+		writeMethod.invoke(target, new Object[] { value });
+	}
+
+}	// class PropertyAccessor
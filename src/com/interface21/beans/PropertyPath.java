@@ -0,0 +1,135 @@
+package com.interface21.beans;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Property path such as spouse.address.city, split into its property
+ * names once so that it can be walked repeatedly without string operations.
+ * <br/>At each step the PropertyAccessor is taken from the cached introspection
+ * results of the runtime class of the object reached, so polymorphic paths
+ * work, and no BeanWrapper needs to be created for intermediate objects.
+ * <br/>Compiled paths are cached per root class by CachedIntrospectionResults.
+ * <br/>Package-visible; not used by application code. Immutable and threadsafe.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ */
+final class PropertyPath {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final String path;
+
+	/** Property names, from the root object outwards */
+	private final String[] names;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Compile the given path
+	 * @param path property path, using the BeanWrapper
+	 * nested property separator. May be a single property name.
+	 */
+	PropertyPath(String path) {
+		this.path = path;
+		List names = new ArrayList();
+		int start = 0;
+		int pos;
+		while ((pos = path.indexOf(BeanWrapper.NESTED_PROPERTY_SEPARATOR, start)) != -1) {
+			names.add(path.substring(start, pos));
+			start = pos + 1;
+		}
+		names.add(path.substring(start));
+		this.names = (String[]) names.toArray(new String[names.size()]);
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Return the path string this was compiled from
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * Does the path have more than one element?
+	 */
+	boolean isNested() {
+		return names.length > 1;
+	}
+
+	/**
+	 * Return the name of the last property in the path: the property
+	 * of the object returned by getOwner()
+	 */
+	String getFinalName() {
+		return names[names.length - 1];
+	}
+
+	/**
+	 * Return the accessor for the last property in the path, on the given owner
+	 * @param owner object returned by getOwner()
+	 * @return the accessor, or null if the owner has no such property
+	 */
+	PropertyAccessor getFinalAccessor(Object owner) throws BeansException {
+		return CachedIntrospectionResults.forClass(owner.getClass()).getPropertyAccessor(getFinalName());
+	}
+
+	/**
+	 * Walk the path from the given root, returning the object whose property
+	 * is the last element of the path. Returns the root if the path isn't nested.
+	 * @throws NullValueInNestedPathException if an intermediate property is null
+	 * @throws FatalBeanException if an intermediate property doesn't exist,
+	 * isn't readable, or its getter throws an exception
+	 */
+	Object getOwner(Object root) throws BeansException {
+		Object current = root;
+		for (int i = 0; i < names.length - 1; i++) {
+			Object next = getValue(current, i);
+			if (next == null)
+				throw new NullValueInNestedPathException(current.getClass(), names[i]);
+			current = next;
+		}
+		return current;
+	}
+
+	/**
+	 * Return the value at the end of the path from the given root
+	 * @throws NullValueInNestedPathException if an intermediate property is null
+	 * @throws FatalBeanException if a property doesn't exist, isn't readable,
+	 * or its getter throws an exception
+	 */
+	Object getValue(Object root) throws BeansException {
+		return getValue(getOwner(root), names.length - 1);
+	}
+
+	/**
+	 * Read the property at the given level of the path from the given object
+	 */
+	private Object getValue(Object target, int level) throws BeansException {
+		PropertyAccessor accessor = CachedIntrospectionResults.forClass(target.getClass()).getPropertyAccessor(names[level]);
+		if (accessor == null)
+			throw new FatalBeanException("No property [" + names[level] + "] in class [" + target.getClass() + "]", null);
+		if (!accessor.isReadable())
+			throw new FatalBeanException("Cannot get scalar property [" + names[level] + "]: not readable", null);
+		try {
+			return accessor.getValue(target);
+		}
+		catch (InvocationTargetException ex) {
+			throw new FatalBeanException("getter for property [" + names[level] + "] threw exception", ex);
+		}
+		catch (IllegalAccessException ex) {
+			throw new FatalBeanException("illegal attempt to get property [" + names[level] + "] threw exception", ex);
+		}
+	}
+
+	public String toString() {
+		return "PropertyPath: " + path;
+	}
+
+}	// class PropertyPath
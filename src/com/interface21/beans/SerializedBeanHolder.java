@@ -0,0 +1,101 @@
+package com.interface21.beans;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Serializable holder for a bean, such as a command object kept in an
+ * HttpSession, that writes the bean in BeanSerializer's compact format
+ * rather than with Java serialization. The bean class needn't implement
+ * Serializable, but must have a public no-arg constructor and
+ * read-write properties holding its state.
+ * <br/>Usage: <code>session.setAttribute("command", new SerializedBeanHolder(command))</code>
+ * and <code>((SerializedBeanHolder) session.getAttribute("command")).getBean()</code>.
+ * <br/>When the container replicates or passivates the session, only the
+ * serialized form is written; the bean is recreated on first access after
+ * deserialization, with the thread context ClassLoader, so deserializing a
+ * session doesn't require the web application's classes.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see BeanSerializer
+ */
+public class SerializedBeanHolder implements Serializable {
+
+	private static final BeanSerializer serializer = new BeanSerializer();
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	/** The bean, or null if not yet deserialized */
+	private transient Object bean;
+
+	/** Serialized form of the bean, if read but not yet deserialized */
+	private transient byte[] data;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a holder for the given bean
+	 * @param bean bean to hold. May be null.
+	 */
+	public SerializedBeanHolder(Object bean) {
+		this.bean = bean;
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Return the bean, deserializing it if necessary
+	 * @throws FatalBeanException if the bean can't be deserialized
+	 */
+	public synchronized Object getBean() throws BeansException {
+		if (this.data != null) {
+			this.bean = serializer.deserialize(this.data);
+			this.data = null;
+		}
+		return this.bean;
+	}
+
+	/**
+	 * Replace the bean held
+	 * @param bean bean to hold. May be null.
+	 */
+	public synchronized void setBean(Object bean) {
+		this.bean = bean;
+		this.data = null;
+	}
+
+	public String toString() {
+		return "SerializedBeanHolder: " + ((this.data != null) ? "[" + this.data.length + " bytes]" : String.valueOf(this.bean));
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		byte[] serialized = this.data;
+		if (serialized == null) {
+			try {
+				serialized = serializer.serialize(this.bean);
+			}
+			catch (BeansException ex) {
+				throw new IOException("Cannot serialize bean: " + ex.getMessage());
+			}
+		}
+		out.defaultWriteObject();
+		out.writeInt(serialized.length);
+		out.write(serialized);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		byte[] serialized = new byte[in.readInt()];
+		in.readFully(serialized);
+		this.data = serialized;
+	}
+
+}	// class SerializedBeanHolder
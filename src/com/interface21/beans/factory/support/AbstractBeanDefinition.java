@@ -28,6 +28,12 @@ public abstract class AbstractBeanDefinition implements BeanDefinition {
 	
 	private boolean singleton;
 	
+	/** Should creation of the singleton wait for the first request? */
+	private boolean lazyInit;
+	
+	/** Pooled or thread scope, or null for a plain prototype */
+	private BeanScope scope;
+	
 	/** Property map */
 	private PropertyValues pvs;
 
@@ -74,6 +80,36 @@ public abstract class AbstractBeanDefinition implements BeanDefinition {
 		return singleton;
 	}
 	
+	/**
+	 * Set whether the singleton should be created on the first request for it,
+	 * rather than when the bean factory pre-instantiates singletons.
+	 * Default is false. Irrelevant for prototypes.
+	 */
+	public void setLazyInit(boolean lazyInit) {
+		this.lazyInit = lazyInit;
+	}
+	
+	public boolean isLazyInit() {
+		return lazyInit;
+	}
+	
+	/**
+	 * Set a scope for a bean that isn't a singleton: instances are pooled,
+	 * or kept one per thread, rather than created for each request.
+	 * Default is null, for a prototype. Ignored for singletons.
+	 * @see AbstractBeanFactory#releaseBean(String, Object)
+	 */
+	public void setScope(BeanScope scope) {
+		this.scope = scope;
+	}
+	
+	/**
+	 * Return the scope of the bean, or null if it's a singleton or a prototype
+	 */
+	public BeanScope getScope() {
+		return singleton ? null : scope;
+	}
+	
 	public void setPropertyValues(PropertyValues pvs) {
 		this.pvs = pvs;
 	}
@@ -10,13 +10,18 @@
 package com.interface21.beans.factory.support;
 
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
 import com.interface21.beans.BeanWrapper;
 import com.interface21.beans.BeansException;
 import com.interface21.beans.FatalBeanException;
-import com.interface21.beans.MutablePropertyValues;
+import com.interface21.beans.IndexedPropertyValues;
 import com.interface21.beans.PropertyValue;
 import com.interface21.beans.PropertyValues;
 import com.interface21.beans.factory.BeanFactory;
@@ -40,11 +45,41 @@ import com.interface21.beans.factory.NoSuchBeanDefinitionException;
  */
 public abstract class AbstractBeanFactory implements BeanFactory {
 
+	/** Marks a prototype that can't be created from an InstantiationPlan */
+	private static final Object NO_PLAN = new Object();
+
     //---------------------------------------------------------------------
     // Instance data
     //---------------------------------------------------------------------
-	/** Cache of shared instances. bean name --> bean instanced */
-	private HashMap						sharedInstanceCache = new HashMap();
+	/** Cache of shared instances. bean name --> bean instance. Read without locking */
+	private final ReadMostlyMap			sharedInstanceCache = new ReadMostlyMap();
+
+	/** Lock guarding creation of shared instances */
+	private final Object				creationLock = new Object();
+
+	/** Shared instances being created. bean name --> Thread creating it. Guarded by creationLock */
+	private final HashMap				singletonsInCreation = new HashMap();
+
+	/** Threads waiting for shared instances being created by other threads.
+	 * Thread --> bean name. Guarded by creationLock */
+	private final HashMap				waitingThreads = new HashMap();
+
+	/** Compiled instantiation plans for prototypes. bean name --> InstantiationPlan or NO_PLAN.
+	 * Replaced, not cleared, when bean definitions change */
+	private volatile ReadMostlyMap		instantiationPlans = new ReadMostlyMap();
+
+	/** Instances of pooled and thread-scoped beans. bean name --> ScopedInstances.
+	 * Replaced for a bean when its definition is replaced */
+	private final ReadMostlyMap			scopedInstances = new ReadMostlyMap();
+
+	/** Names of beans that have been requested. bean name --> Boolean.TRUE */
+	private final ReadMostlyMap			requestedBeans = new ReadMostlyMap();
+
+	/** Should prototypes be created from compiled instantiation plans? */
+	private boolean						useInstantiationPlans = true;
+
+	/** Notified of each singleton created. May be null */
+	private volatile SingletonCreationListener	singletonCreationListener;
 
 	/** Logger available to subclasses */
 	protected final Logger				logger = Logger.getLogger(getClass().getName());
@@ -58,6 +93,25 @@ public abstract class AbstractBeanFactory implements BeanFactory {
     public AbstractBeanFactory() {
     }
 
+	/**
+	 * Set whether prototypes should be created from compiled instantiation plans.
+	 * Default is true. There's normally no reason to turn this off, except to
+	 * compare performance.
+	 * @see InstantiationPlan
+	 */
+	public void setUseInstantiationPlans(boolean useInstantiationPlans) {
+		this.useInstantiationPlans = useInstantiationPlans;
+	}
+
+	/**
+	 * Set the callback to invoke when a singleton is created, replacing any
+	 * set before. Singletons already created are not affected.
+	 * @param singletonCreationListener callback, or null for none
+	 */
+	public void setSingletonCreationListener(SingletonCreationListener singletonCreationListener) {
+		this.singletonCreationListener = singletonCreationListener;
+	}
+
     //---------------------------------------------------------------------
     // Implementation of BeanFactory interface
     //---------------------------------------------------------------------
@@ -68,7 +122,9 @@ public abstract class AbstractBeanFactory implements BeanFactory {
 	 * @return a new instance of this bean
 	 */
     private Object createBean(String name) throws BeansException {
-        Object bean = getBeanWrapperForNewInstance(name).getWrappedInstance();
+		Object bean = createBeanInstance(name);
+		if (bean == null)
+			bean = getBeanWrapperForNewInstance(name).getWrappedInstance();
 		invokeInitializerIfNecessary(bean);
 		return bean;
     }
@@ -76,24 +132,103 @@ public abstract class AbstractBeanFactory implements BeanFactory {
 
 	/**
 	 * Get a singleton instance of this bean name. Note that this method shouldn't
-	 * be called too often: callers should keep hold of instances. Hence, the whole
-	 * method is synchronized here.
-	 * ****TODO: there probably isn't any need for this to be
-	 * synchronized, at least not if we pre-instantiate singletons
+	 * be called too often: callers should keep hold of instances.
+	 * <br/>Instances already created are returned without locking. Creation
+	 * locks only the bean being created: other threads asking for the same bean
+	 * wait for it, while beans without dependencies on it can be created concurrently.
+	 * @throws FatalBeanException if the bean depends on itself, directly or
+	 * through other singletons
 	 */
-	private final synchronized Object getSharedInstance(String name) throws BeansException {
-       Object o = sharedInstanceCache.get(name);
-	   if (o == null) {
-	   	   logger.info("Cached shared instance of Singleton bean '" + name + "'");
-		   o = createBean(name);
-		   sharedInstanceCache.put(name, o);
-	   }
-	   else {
-	   	if (logger.isDebugEnabled())
-		   	 logger.debug("Returning cached instance of Singleton bean '" + name + "'");
-	   }
-	   return o;
-    }
+	private final Object getSharedInstance(String name) throws BeansException {
+		Object o = sharedInstanceCache.get(name);
+		if (o != null) {
+			if (logger.isDebugEnabled())
+				logger.debug("Returning cached instance of Singleton bean '" + name + "'");
+			return o;
+		}
+		return createSharedInstance(name);
+	}
+
+
+	/**
+	 * Create a singleton instance and add it to the cache, unless another
+	 * thread has already done so, or is doing so, in which case we wait for it
+	 */
+	private Object createSharedInstance(String name) throws BeansException {
+		Thread current = Thread.currentThread();
+		synchronized (creationLock) {
+			boolean interrupted = false;
+			try {
+				while (true) {
+					Object o = sharedInstanceCache.get(name);
+					if (o != null)
+						return o;
+					Thread creator = (Thread) singletonsInCreation.get(name);
+					if (creator == null)
+						break;
+					if (creator == current || isWaitingFor(creator, current))
+						throw new FatalBeanException("Circular reference: singleton bean '" + name + "' depends on itself", null);
+					waitingThreads.put(current, name);
+					try {
+						creationLock.wait();
+					}
+					catch (InterruptedException ex) {
+						interrupted = true;
+					}
+					finally {
+						waitingThreads.remove(current);
+					}
+				}
+			}
+			finally {
+				if (interrupted)
+					current.interrupt();
+			}
+			singletonsInCreation.put(name, current);
+		}
+
+		// Create outside the lock, so that other beans can be created and returned
+		Object o = null;
+		try {
+			logger.info("Cached shared instance of Singleton bean '" + name + "'");
+			Object bean = createBean(name);
+			SingletonCreationListener listener = this.singletonCreationListener;
+			if (listener != null)
+				listener.singletonCreated(name, bean);
+			o = bean;
+			return o;
+		}
+		finally {
+			synchronized (creationLock) {
+				if (o != null)
+					sharedInstanceCache.put(name, o);
+				singletonsInCreation.remove(name);
+				creationLock.notifyAll();
+			}
+		}
+	}	// createSharedInstance
+
+
+	/**
+	 * Is the given thread waiting, directly or through a chain of other threads
+	 * waiting for beans, for a bean being created by the target thread? If so,
+	 * the target thread would wait forever: the beans depend on each other.
+	 * Must be called holding creationLock.
+	 */
+	private boolean isWaitingFor(Thread thread, Thread target) {
+		// Each thread waits for at most one bean, so a chain can't be longer than this
+		for (int i = 0; i <= waitingThreads.size(); i++) {
+			String awaited = (String) waitingThreads.get(thread);
+			if (awaited == null)
+				return false;
+			thread = (Thread) singletonsInCreation.get(awaited);
+			if (thread == null)
+				return false;
+			if (thread == target)
+				return true;
+		}
+		return false;
+	}
     
     
     /**
@@ -102,7 +237,13 @@ public abstract class AbstractBeanFactory implements BeanFactory {
      */
     public final Object getBean(String name) {
     	BeanDefinition bd = getBeanDefinition(name);
-    	return bd.isSingleton() ? getSharedInstance(name) : createBean(name);
+    	if (requestedBeans.get(name) == null)
+    		requestedBeans.put(name, Boolean.TRUE);
+    	if (bd.isSingleton())
+    		return getSharedInstance(name);
+    	if (bd instanceof AbstractBeanDefinition && ((AbstractBeanDefinition) bd).getScope() != null)
+    		return getScopedInstances(name, (AbstractBeanDefinition) bd).getInstance();
+    	return createNewInstance(name);
     }
 	
 	/**
@@ -128,9 +269,210 @@ public abstract class AbstractBeanFactory implements BeanFactory {
 		return getBeanDefinition(name).isSingleton();
 	}
 
+	/**
+	 * Has the shared instance of the given singleton been created?
+	 * @param name name of the bean
+	 * @return false if the bean is a prototype, or a singleton
+	 * not yet created
+	 */
+	public final boolean containsSingleton(String name) {
+		return sharedInstanceCache.containsKey(name);
+	}
+
+	/**
+	 * Return an instance of a pooled bean to its pool. For a thread-scoped bean,
+	 * discards the instance of the current thread if it's the given instance,
+	 * so that the next request in the thread creates a new one.
+	 * Does nothing for singletons and prototypes.
+	 * <br/>Each instance of a pooled bean obtained from getBean() must be released
+	 * exactly once, normally in a finally block. Instances not borrowed from the
+	 * current pool of the bean, such as those of a replaced definition, are discarded.
+	 * @param name name of the bean
+	 * @param bean instance obtained from getBean(name)
+	 * @see BeanScope
+	 */
+	public final void releaseBean(String name, Object bean) {
+		ScopedInstances si = (ScopedInstances) scopedInstances.get(name);
+		if (si != null)
+			si.release(bean);
+	}
+
+	/**
+	 * Discard the instances of all thread-scoped beans held by the current thread.
+	 * Threads taken from a pool, such as request threads, should call this when
+	 * their work is done, so that the instances can be garbage collected.
+	 */
+	public final void releaseThreadScopedBeans() {
+		String[] names = (String[]) scopedInstances.keys(new String[0]);
+		for (int i = 0; i < names.length; i++)
+			((ScopedInstances) scopedInstances.get(names[i])).releaseForCurrentThread();
+	}
+
+	/**
+	 * Discard pooled instances that have been idle for longer than their scope allows.
+	 * Idle instances are also evicted whenever an instance of the same bean is
+	 * borrowed or returned: call this periodically to free pools that are no longer used.
+	 */
+	public final void evictIdleBeans() {
+		String[] names = (String[]) scopedInstances.keys(new String[0]);
+		for (int i = 0; i < names.length; i++)
+			((ScopedInstances) scopedInstances.get(names[i])).evictIdle();
+	}
+
+	/**
+	 * Return statistics of the instances of a pooled or thread-scoped bean
+	 * @param name name of the bean
+	 * @return statistics of the bean's current definition,
+	 * or null if the bean isn't pooled or thread-scoped
+	 */
+	public final BeanScopeStatistics getScopeStatistics(String name) throws NoSuchBeanDefinitionException {
+		BeanDefinition bd = getBeanDefinition(name);
+		if (!(bd instanceof AbstractBeanDefinition) || ((AbstractBeanDefinition) bd).getScope() == null)
+			return null;
+		return getScopedInstances(name, (AbstractBeanDefinition) bd).getStatistics();
+	}
+
+	/**
+	 * Return statistics of all pooled and thread-scoped beans that have been requested
+	 */
+	public final BeanScopeStatistics[] getScopeStatistics() {
+		String[] names = (String[]) scopedInstances.keys(new String[0]);
+		BeanScopeStatistics[] statistics = new BeanScopeStatistics[names.length];
+		for (int i = 0; i < names.length; i++)
+			statistics[i] = ((ScopedInstances) scopedInstances.get(names[i])).getStatistics();
+		return statistics;
+	}
+
+	/**
+	 * Has the given bean ever been requested from this factory, by a caller of
+	 * getBean() or as a reference from another bean? Lazy-init singletons that
+	 * haven't been requested have never been created.
+	 * @param name name of the bean
+	 * @return whether the bean has been requested
+	 */
+	public final boolean wasRequested(String name) {
+		return requestedBeans.containsKey(name);
+	}
+
 	//---------------------------------------------------------------------
     // Implementation methods
     //---------------------------------------------------------------------
+	/**
+	 * Discard the compiled instantiation plans. Subclasses must call this
+	 * whenever a bean definition is added or replaced.
+	 */
+	protected final void clearInstantiationPlans() {
+		this.instantiationPlans = new ReadMostlyMap();
+	}
+
+
+	/**
+	 * Create a new instance of a bean that isn't a singleton
+	 * @param name name of the bean
+	 * @return a new instance of this bean
+	 */
+	final Object createNewInstance(String name) throws BeansException {
+		return useInstantiationPlans ? createPrototype(name) : createBean(name);
+	}
+
+	/**
+	 * Return the instances of a pooled or thread-scoped bean,
+	 * creating them if the bean hasn't been requested since its
+	 * definition was registered
+	 */
+	private ScopedInstances getScopedInstances(String name, AbstractBeanDefinition bd) {
+		ScopedInstances si = (ScopedInstances) scopedInstances.get(name);
+		if (si != null && si.getDefinition() == bd)
+			return si;
+		synchronized (scopedInstances) {
+			si = (ScopedInstances) scopedInstances.get(name);
+			if (si == null || si.getDefinition() != bd) {
+				si = ScopedInstances.forScope(this, name, bd);
+				scopedInstances.put(name, si);
+			}
+			return si;
+		}
+	}
+
+	/**
+	 * Create a new instance of a prototype from its instantiation plan,
+	 * compiling the plan on first use, unless createBeanInstance() creates it.
+	 * Prototypes that can't be planned are created by createBean().
+	 * @param name name of the prototype
+	 * @return a new instance of this bean
+	 */
+	private Object createPrototype(String name) throws BeansException {
+		Object bean = createBeanInstance(name);
+		if (bean != null) {
+			invokeInitializerIfNecessary(bean);
+			return bean;
+		}
+
+		// Keep hold of the map we read: if definitions change while we compile,
+		// our plan goes into the discarded map
+		ReadMostlyMap plans = this.instantiationPlans;
+		Object plan = plans.get(name);
+		if (plan == null) {
+			plan = compileInstantiationPlan(name);
+			plans.put(name, plan);
+		}
+		if (plan == NO_PLAN)
+			return createBean(name);
+		bean = ((InstantiationPlan) plan).newInstance(this);
+		invokeInitializerIfNecessary(bean);
+		return bean;
+	}
+
+
+	/**
+	 * Compile an instantiation plan for the given bean, merging the property values
+	 * of its definition and those of its ancestors, those of a child replacing
+	 * those of its parent. Only beans whose root definition is a DefaultRootBeanDefinition
+	 * or ClassNameRootBeanDefinition without listeners can be planned: other root
+	 * definitions may customize the BeanWrapper.
+	 * @return an InstantiationPlan, or NO_PLAN if the bean can't be planned
+	 */
+	private Object compileInstantiationPlan(String name) throws BeansException {
+		List definitions = new LinkedList();
+		BeanDefinition bd = getBeanDefinition(name);
+		while (bd instanceof ChildBeanDefinition) {
+			if (definitions.contains(bd))
+				return NO_PLAN;
+			definitions.add(0, bd);
+			bd = getBeanDefinition(((ChildBeanDefinition) bd).getParentName());
+		}
+		if ((bd.getClass() != DefaultRootBeanDefinition.class && bd.getClass() != ClassNameRootBeanDefinition.class) ||
+				!((AbstractBeanDefinition) bd).getListeners().isEmpty())
+			return NO_PLAN;
+		definitions.add(0, bd);
+
+		// Property name --> PropertyValue, in the order the values would be applied
+		Map merged = new LinkedHashMap();
+		for (Iterator itr = definitions.iterator(); itr.hasNext(); ) {
+			PropertyValues pvs = ((BeanDefinition) itr.next()).getPropertyValues();
+			if (pvs == null)
+				continue;
+			PropertyValue[] pvals = pvs.getPropertyValues();
+			for (int i = 0; i < pvals.length; i++) {
+				merged.remove(pvals[i].getName());
+				merged.put(pvals[i].getName(), pvals[i]);
+			}
+		}
+
+		try {
+			PropertyValue[] pvals = (PropertyValue[]) merged.values().toArray(new PropertyValue[merged.size()]);
+			InstantiationPlan plan = new InstantiationPlan(name, ((RootBeanDefinition) bd).getBeanClass(), pvals);
+			logger.debug("Compiled " + plan);
+			return plan;
+		}
+		catch (BeansException ex) {
+			// Let createBean() report the error, every time the bean is requested
+			logger.debug("Can't compile instantiation plan for bean [" + name + "]", ex);
+			return NO_PLAN;
+		}
+	}	// compileInstantiationPlan
+
+
 	/**
 	 * All bean instantiation within this class is performed by this method.
 	 * Return a BeanWrapper object for a new instance of this bean.
@@ -160,10 +502,36 @@ public abstract class AbstractBeanFactory implements BeanFactory {
     }   // getBeanWrapperForNewInstance
 
 
+	/**
+	 * Return the bean referenced by a property of another bean
+	 * @param name name of the bean with the property, for error messages
+	 * @param refName name of the referenced bean
+	 * @return the referenced bean
+	 * @throws FatalBeanException if the reference can't be resolved, or is to
+	 * a pooled bean: an instance borrowed for a reference would never be returned,
+	 * so the pool would soon be exhausted
+	 */
+	protected final Object getReferencedBean(String name, String refName) throws BeansException {
+		try {
+			logger.debug("Resolving reference from bean [" + name + "] to bean [" + refName + "]");
+			BeanDefinition bd = getBeanDefinition(refName);
+			if (bd instanceof AbstractBeanDefinition && ((AbstractBeanDefinition) bd).getScope() != null &&
+					((AbstractBeanDefinition) bd).getScope().isPooled())
+				throw new FatalBeanException("Pooled bean [" + refName + "] can't be referenced by other beans: " +
+					"obtain it with getBean() and return it with releaseBean()", null);
+			return getBean(refName);
+		}
+		catch (BeansException ex) {
+			throw new FatalBeanException("Can't resolve reference to bean [" + refName + "] while setting properties on bean [" + name + "]", ex);
+		}
+	}
+
+
 	/** 
 	 * Apply the given property values, resolving any runtime references
 	 * to other beans in this bean factory.
-	 * Must use deep copy, so we don't permanently modify this property
+	 * Must use a copy, so we don't permanently modify this property.
+	 * PropertyValue objects are immutable, so the copy can share them.
 	 * @param bw BeanWrapper wrapping the target object
 	 * @param pvs new property values
 	 * @param name bean name passed for better exception information
@@ -172,8 +540,8 @@ public abstract class AbstractBeanFactory implements BeanFactory {
 		if (pvs == null)
 			return;
 		
-		MutablePropertyValues deepCopy = new MutablePropertyValues(pvs);
-		PropertyValue[] pvals = deepCopy.getPropertyValues();
+		IndexedPropertyValues deepCopy = new IndexedPropertyValues(pvs);
+		PropertyValue[] pvals = pvs.getPropertyValues();
 
 		// Now we must check each PropertyValue to see whether it
 		// requires a runtime reference to another bean to be resolved.
@@ -181,18 +549,11 @@ public abstract class AbstractBeanFactory implements BeanFactory {
 		for (int i = 0; i < pvals.length; i++) {
 			if (pvals[i].getValue() != null && (pvals[i].getValue() instanceof RuntimeBeanReference)) {
 				RuntimeBeanReference ref = (RuntimeBeanReference) pvals[i].getValue();
-				try {
-					// Try to resolve bean reference
-					logger.debug("Resolving reference from bean [" + name + "] to bean [" + ref.getBeanName() + "]");
-					Object bean = getBean(ref.getBeanName());
-					// Create a new PropertyValue object holding the bean reference
-					PropertyValue pv = new PropertyValue(pvals[i].getName(), bean);
-					// Update mutable copy
-					deepCopy.setPropertyValueAt(pv, i);
-				}
-				catch (BeansException ex) {
-					throw new FatalBeanException("Can't resolve reference to bean [" + ref.getBeanName() + "] while setting properties on bean [" + name + "]", ex);
-				}
+				Object bean = getReferencedBean(name, ref.getBeanName());
+				// Create a new PropertyValue object holding the bean reference
+				PropertyValue pv = new PropertyValue(pvals[i].getName(), bean);
+				// Update mutable copy
+				deepCopy.setPropertyValueAt(pv, i);
 			}	// if this was a runtime reference to another bean
 		}	// for each property
 
@@ -257,6 +618,21 @@ public abstract class AbstractBeanFactory implements BeanFactory {
 	}	// getBeanClass
 
 
+	/**
+	 * Create and populate a new instance of the given bean, without invoking
+	 * afterPropertiesSet(). Subclasses can override this to create beans without
+	 * reflection, such as factories generated by BeanFactoryGenerator.
+	 * <br/>This implementation returns null.
+	 * @param name name of the bean
+	 * @return the new instance, or null to let this class create it
+	 * from its bean definition
+	 * @throws BeansException if the bean can't be created
+	 */
+	protected Object createBeanInstance(String name) throws BeansException {
+		return null;
+	}
+
+
   	//---------------------------------------------------------------------
     // Abstract method to be implemented by concrete subclasses
     //---------------------------------------------------------------------
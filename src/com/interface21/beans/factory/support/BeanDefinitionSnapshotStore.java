@@ -0,0 +1,527 @@
+package com.interface21.beans.factory.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.interface21.beans.BeansException;
+import com.interface21.beans.FatalBeanException;
+import com.interface21.beans.MutablePropertyValues;
+import com.interface21.beans.PropertyValue;
+import com.interface21.beans.PropertyValues;
+
+/**
+ * Directory of binary snapshots of parsed bean definitions, so that a restart
+ * with unchanged configuration can register the definitions without parsing
+ * the configuration again.
+ * <br/>Each snapshot is keyed by a hash of the source it was parsed from:
+ * a snapshot is used only if the source hasn't changed since it was written.
+ * Snapshots hold class names, parent names, singleton and lazy-init flags, scopes and
+ * property values, with strings shared in a table, so they are much smaller
+ * than the source. Classes are loaded when a snapshot is registered, unless
+ * the target factory uses lazy class loading.
+ * <br/>Only definitions whose property values are Strings, nulls or references
+ * to other beans can be stored, and only the definition classes created by
+ * ListableBeanFactoryImpl, without listeners. If any definition can't be stored,
+ * no snapshot is written, and the source will be parsed on each start.
+ * A snapshot that can't be read is deleted and ignored.
+ * <br/>Threadsafe: snapshots are written to a temporary file and renamed.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ */
+public class BeanDefinitionSnapshotStore {
+
+	/** Start of every snapshot file */
+	private static final int MAGIC = 0x69323144;
+
+	/** Increment whenever the format changes: older snapshots will be ignored */
+	private static final int VERSION = 2;
+
+	private static final String SUFFIX = ".snapshot";
+
+	// Kinds of bean definition
+	private static final int ROOT = 0;
+	private static final int CHILD = 1;
+
+	// Flags
+	private static final int SINGLETON = 1;
+	private static final int LAZY_INIT = 2;
+	private static final int SCOPED = 4;
+
+	// Kinds of property value
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int REFERENCE = 2;
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	protected final Logger logger = Logger.getLogger(getClass().getName());
+
+	private final File directory;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a new BeanDefinitionSnapshotStore
+	 * @param directory directory to keep snapshots in. Will be created if necessary.
+	 */
+	public BeanDefinitionSnapshotStore(File directory) {
+		this.directory = directory;
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Compute the key for the raw bytes of a source, such as an XML document
+	 * @param source content of the source
+	 * @return a key naming the content
+	 */
+	public static String computeKey(byte[] source) {
+		MessageDigest digest = newDigest();
+		digest.update(source);
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Compute the key for the bean definitions in a Map, as would be
+	 * registered by ListableBeanFactoryImpl.registerBeanDefinitions()
+	 * @param m Map name -> property
+	 * @param prefix prefix of the keys of the bean definitions. May be null.
+	 * @return a key naming the bean definitions, regardless of the order of the Map
+	 */
+	public static String computeKey(Map m, String prefix) {
+		if (prefix == null)
+			prefix = "";
+		List keys = new ArrayList();
+		Object[] all = m.keySet().toArray();
+		for (int i = 0; i < all.length; i++) {
+			if (((String) all[i]).startsWith(prefix))
+				keys.add(all[i]);
+		}
+		Object[] sorted = keys.toArray();
+		Arrays.sort(sorted);
+
+		MessageDigest digest = newDigest();
+		update(digest, prefix);
+		for (int i = 0; i < sorted.length; i++) {
+			update(digest, (String) sorted[i]);
+			update(digest, String.valueOf(m.get(sorted[i])));
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Register the bean definitions in a Map, from a snapshot if there's one
+	 * for the same definitions. Otherwise parse them, and write a snapshot
+	 * for next time.
+	 * @param lbf factory to register the definitions with
+	 * @param m Map name -> property
+	 * @param prefix prefix of the keys of the bean definitions. May be null.
+	 * @return the number of bean definitions registered
+	 * @throws BeansException if there's an error registering a definition
+	 * @see ListableBeanFactoryImpl#registerBeanDefinitions(Map, String)
+	 */
+	public int registerBeanDefinitions(ListableBeanFactoryImpl lbf, Map m, String prefix) throws BeansException {
+		String key = computeKey(m, prefix);
+		int count = load(key, lbf);
+		if (count >= 0)
+			return count;
+
+		Set existing = new HashSet(Arrays.asList(lbf.getBeanDefinitionNames()));
+		count = lbf.registerBeanDefinitions(m, prefix);
+		String[] names = lbf.getBeanDefinitionNames();
+		List added = new ArrayList();
+		for (int i = 0; i < names.length; i++) {
+			if (!existing.contains(names[i]))
+				added.add(names[i]);
+		}
+		save(key, lbf, (String[]) added.toArray(new String[added.size()]));
+		return count;
+	}
+
+	/**
+	 * Register the definitions in the snapshot with the given key,
+	 * if there is one, not replacing definitions already registered
+	 * @param key key of the source
+	 * @param lbf factory to register the definitions with
+	 * @return the number of bean definitions registered, or -1
+	 * if there's no usable snapshot for the key
+	 * @throws BeansException if there's an error registering a definition,
+	 * such as a class that can't be found
+	 */
+	public int load(String key, ListableBeanFactoryImpl lbf) throws BeansException {
+		File file = getFile(key);
+		if (!file.exists())
+			return -1;
+		List definitions;
+		try {
+			definitions = read(file, key);
+		}
+		catch (IOException ex) {
+			logger.warn("Ignoring unreadable bean definition snapshot [" + file + "]", ex);
+			file.delete();
+			return -1;
+		}
+
+		// Classes already loaded for this snapshot: many beans often share a class
+		Map classes = new HashMap();
+		int count = 0;
+		for (int i = 0; i < definitions.size(); i++) {
+			SnapshotEntry entry = (SnapshotEntry) definitions.get(i);
+			if (!lbf.containsBeanDefinition(entry.beanName)) {
+				AbstractBeanDefinition bd = lbf.createBeanDefinition(entry.beanName, entry.classname,
+					entry.parent, entry.pvs, entry.singleton, entry.lazyInit, classes);
+				bd.setScope(entry.scope);
+				lbf.registerBeanDefinition(entry.beanName, bd);
+				count++;
+			}
+		}
+		logger.info("Registered " + count + " bean definitions from snapshot [" + file + "]");
+		return count;
+	}
+
+	/**
+	 * Write a snapshot of the given bean definitions, replacing any snapshot with
+	 * the same key. Nothing is written if a definition can't be stored.
+	 * @param key key of the source the definitions were parsed from
+	 * @param lbf factory holding the definitions
+	 * @param beanNames names of the beans to store
+	 * @return whether the snapshot was written
+	 */
+	public boolean save(String key, ListableBeanFactoryImpl lbf, String[] beanNames) {
+		File file = getFile(key);
+		File temp = null;
+		try {
+			this.directory.mkdirs();
+			temp = File.createTempFile(key, ".tmp", this.directory);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				if (!write(out, key, lbf, beanNames))
+					return false;
+			}
+			finally {
+				out.close();
+			}
+			// Replace atomically where the platform allows it
+			file.delete();
+			if (!temp.renameTo(file))
+				throw new IOException("Can't rename [" + temp + "] to [" + file + "]");
+			logger.info("Wrote snapshot of " + beanNames.length + " bean definitions to [" + file + "]");
+			return true;
+		}
+		catch (IOException ex) {
+			logger.warn("Can't write bean definition snapshot [" + file + "]", ex);
+			return false;
+		}
+		finally {
+			if (temp != null)
+				temp.delete();
+		}
+	}
+
+	public String toString() {
+		return "BeanDefinitionSnapshotStore in [" + directory + "]";
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	private File getFile(String key) {
+		return new File(this.directory, key + SUFFIX);
+	}
+
+	/**
+	 * @return false if a definition can't be stored
+	 */
+	private boolean write(DataOutputStream out, String key, ListableBeanFactoryImpl lbf, String[] beanNames) throws IOException {
+		out.writeInt(MAGIC);
+		writeVarInt(out, VERSION);
+		out.writeUTF(key);
+		writeVarInt(out, beanNames.length);
+		Map strings = new HashMap();
+		for (int i = 0; i < beanNames.length; i++) {
+			BeanDefinition bd = lbf.getBeanDefinition(beanNames[i]);
+			if (!(bd instanceof AbstractBeanDefinition) || !((AbstractBeanDefinition) bd).getListeners().isEmpty()) {
+				logger.info("Can't snapshot bean definition [" + beanNames[i] + "]: " + bd);
+				return false;
+			}
+			writeString(out, beanNames[i], strings);
+			if (bd.getClass() == ClassNameRootBeanDefinition.class) {
+				writeVarInt(out, ROOT);
+				writeString(out, ((ClassNameRootBeanDefinition) bd).getBeanClassName(), strings);
+			}
+			else if (bd.getClass() == DefaultRootBeanDefinition.class) {
+				writeVarInt(out, ROOT);
+				writeString(out, ((RootBeanDefinition) bd).getBeanClass().getName(), strings);
+			}
+			else if (bd.getClass() == ChildBeanDefinitionImpl.class) {
+				writeVarInt(out, CHILD);
+				writeString(out, ((ChildBeanDefinition) bd).getParentName(), strings);
+			}
+			else {
+				logger.info("Can't snapshot bean definition [" + beanNames[i] + "]: " + bd);
+				return false;
+			}
+			BeanScope scope = ((AbstractBeanDefinition) bd).getScope();
+			writeVarInt(out, (bd.isSingleton() ? SINGLETON : 0) | (((AbstractBeanDefinition) bd).isLazyInit() ? LAZY_INIT : 0) |
+				(scope != null ? SCOPED : 0));
+			if (scope != null) {
+				writeString(out, scope.getName(), strings);
+				writeVarInt(out, scope.getMaxSize());
+				out.writeLong(scope.getMaxIdleMillis());
+				out.writeLong(scope.getMaxWaitMillis());
+			}
+
+			PropertyValues pvs = bd.getPropertyValues();
+			PropertyValue[] pvals = (pvs != null) ? pvs.getPropertyValues() : new PropertyValue[0];
+			writeVarInt(out, pvals.length);
+			for (int j = 0; j < pvals.length; j++) {
+				writeString(out, pvals[j].getName(), strings);
+				Object value = pvals[j].getValue();
+				if (value == null) {
+					writeVarInt(out, NULL);
+				}
+				else if (value instanceof String) {
+					writeVarInt(out, STRING);
+					writeString(out, (String) value, strings);
+				}
+				else if (value instanceof RuntimeBeanReference) {
+					writeVarInt(out, REFERENCE);
+					writeString(out, ((RuntimeBeanReference) value).getBeanName(), strings);
+				}
+				else {
+					logger.info("Can't snapshot value of property '" + pvals[j].getName() + "' of bean [" +
+						beanNames[i] + "]: " + value.getClass().getName());
+					return false;
+				}
+			}
+		}
+		return true;
+	}	// write
+
+	/**
+	 * Read the definitions in a snapshot
+	 * @return a List of SnapshotEntry
+	 * @throws IOException if the file can't be read, isn't a snapshot
+	 * of this version, has a different key or is corrupt
+	 */
+	private List read(File file, String key) throws IOException {
+		// Read the whole file first, so that lengths in it can be checked against what's left
+		long fileLength = file.length();
+		if (fileLength > Integer.MAX_VALUE)
+			throw new IOException("Snapshot too large: " + fileLength + " bytes");
+		byte[] data = new byte[(int) fileLength];
+		DataInputStream fileIn = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			fileIn.readFully(data);
+		}
+		finally {
+			fileIn.close();
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		try {
+			if (in.readInt() != MAGIC || readVarInt(in) != VERSION || !key.equals(in.readUTF()))
+				throw new IOException("Not a snapshot of this version for key " + key);
+			int count = readLength(in);
+			List definitions = new ArrayList(count);
+			List strings = new ArrayList();
+			for (int i = 0; i < count; i++) {
+				SnapshotEntry entry = new SnapshotEntry();
+				entry.beanName = readString(in, strings);
+				int kind = readVarInt(in);
+				if (kind == ROOT)
+					entry.classname = readString(in, strings);
+				else if (kind == CHILD)
+					entry.parent = readString(in, strings);
+				else
+					throw new IOException("Unknown kind of bean definition: " + kind);
+				int flags = readVarInt(in);
+				entry.singleton = (flags & SINGLETON) != 0;
+				entry.lazyInit = (flags & LAZY_INIT) != 0;
+				if ((flags & SCOPED) != 0)
+					entry.scope = readScope(in, strings);
+
+				int pvCount = readLength(in);
+				for (int j = 0; j < pvCount; j++) {
+					String name = readString(in, strings);
+					int type = readVarInt(in);
+					Object value = null;
+					if (type == STRING)
+						value = readString(in, strings);
+					else if (type == REFERENCE)
+						value = new RuntimeBeanReference(readString(in, strings));
+					else if (type != NULL)
+						throw new IOException("Unknown kind of property value: " + type);
+					entry.pvs.addPropertyValue(new PropertyValue(name, value));
+				}
+				definitions.add(entry);
+			}
+			return definitions;
+		}
+		finally {
+			in.close();
+		}
+	}	// read
+
+	private static BeanScope readScope(DataInputStream in, List strings) throws IOException {
+		String name = readString(in, strings);
+		int maxSize = readVarInt(in);
+		long maxIdleMillis = in.readLong();
+		long maxWaitMillis = in.readLong();
+		if (name.equals(BeanScope.THREAD_NAME))
+			return BeanScope.THREAD;
+		if (!name.equals(BeanScope.POOLED_NAME))
+			throw new IOException("Unknown scope: " + name);
+		try {
+			return BeanScope.pooled(maxSize, maxIdleMillis, maxWaitMillis);
+		}
+		catch (BeansException ex) {
+			throw new IOException(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Write the index of a string already written, plus one,
+	 * or 0 followed by the string the first time it's written
+	 */
+	private static void writeString(DataOutputStream out, String s, Map strings) throws IOException {
+		Integer index = (Integer) strings.get(s);
+		if (index != null) {
+			writeVarInt(out, index.intValue() + 1);
+			return;
+		}
+		strings.put(s, new Integer(strings.size()));
+		writeVarInt(out, 0);
+		byte[] bytes = s.getBytes("UTF-8");
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in, List strings) throws IOException {
+		int index = readVarInt(in);
+		if (index > 0) {
+			if (index > strings.size())
+				throw new IOException("Bad string index " + index);
+			return (String) strings.get(index - 1);
+		}
+		byte[] bytes = new byte[readLength(in)];
+		in.readFully(bytes);
+		String s = new String(bytes, "UTF-8");
+		strings.add(s);
+		return s;
+	}
+
+	/**
+	 * Write a non-negative int in 7-bit groups, low group first
+	 */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Read a length or count. Each element takes at least a byte, so it
+	 * can't be more than the bytes left in the snapshot, which must be
+	 * read from memory.
+	 * @throws IOException if the value is negative or too large, as in
+	 * a corrupt snapshot
+	 */
+	private static int readLength(DataInputStream in) throws IOException {
+		int length = readVarInt(in);
+		if (length < 0 || length > in.available())
+			throw new IOException("Bad length " + length + " with " + in.available() + " bytes left");
+		return length;
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable-length int");
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			// Every Java platform must support MD5
+			throw new FatalBeanException("MD5 not available", ex);
+		}
+	}
+
+	private static void update(MessageDigest digest, String s) {
+		try {
+			digest.update(s.getBytes("UTF-8"));
+			// Separator, so that "ab","c" and "a","bc" differ
+			digest.update((byte) 0);
+		}
+		catch (UnsupportedEncodingException ex) {
+			// Every Java platform must support UTF-8
+			throw new FatalBeanException("UTF-8 not supported", ex);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuffer sb = new StringBuffer(bytes.length * 2);
+		for (int i = 0; i < bytes.length; i++) {
+			sb.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(bytes[i] & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Bean definition read from a snapshot, not yet registered
+	 */
+	private static class SnapshotEntry {
+
+		private String beanName;
+
+		private String classname;
+
+		private String parent;
+
+		private boolean singleton;
+
+		private boolean lazyInit;
+
+		private BeanScope scope;
+
+		private MutablePropertyValues pvs = new MutablePropertyValues();
+	}	// class SnapshotEntry
+
+}	// class BeanDefinitionSnapshotStore
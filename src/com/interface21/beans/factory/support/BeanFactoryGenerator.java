@@ -0,0 +1,641 @@
+package com.interface21.beans.factory.support;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+import com.interface21.beans.BeansException;
+import com.interface21.beans.BindingPlan;
+import com.interface21.beans.FatalBeanException;
+import com.interface21.beans.PropertyValue;
+import com.interface21.beans.PropertyValues;
+
+/**
+ * Build-time tool that generates the Java source of a ListableBeanFactoryImpl
+ * subclass holding the bean definitions of a given factory. The generated factory
+ * creates each bean with a direct constructor call and sets its properties with
+ * direct setter calls, String values having been converted when the source was
+ * generated. It registers the same definitions, so listing, matching by type,
+ * singleton, prototype and scope semantics and afterPropertiesSet() are unchanged.
+ * <br/>Anything that can't be generated falls back to reflection: a property
+ * that isn't a simple writable property, or whose value can't be converted to
+ * a literal, is set through a BeanWrapper; a bean whose class isn't public,
+ * or has no public no-arg constructor, is created from its definition as
+ * in any other factory. So is a bean whose definition, or any of its ancestors'
+ * definitions, is replaced after the factory is created.
+ * <br/>Only definitions with String, null and bean reference property values,
+ * of the classes ListableBeanFactoryImpl registers, can be generated, as the
+ * generated factory must register them.
+ * <br/>Run main() from the build: see the generate-factory target in build.xml.
+ * Very large definition sets may exceed the limits of a class file.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see AbstractBeanFactory#createBeanInstance(String)
+ */
+public class BeanFactoryGenerator {
+
+	/** Beans registered by each generated registration method, to keep methods small */
+	private static final int BEANS_PER_REGISTRATION_METHOD = 50;
+
+	/** Cases of each generated dispatch method */
+	private static final int BEANS_PER_DISPATCH_METHOD = 500;
+
+	private static final String INDENT = "\t";
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	protected final Logger logger = Logger.getLogger(getClass().getName());
+
+	private final ListableBeanFactoryImpl beanFactory;
+
+	/** Names of the beans, in the order they're registered by the generated factory */
+	private final String[] beanNames;
+
+	/** Bean name --> Integer index in beanNames */
+	private final Map indices = new HashMap();
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a new BeanFactoryGenerator
+	 * @param beanFactory factory holding the definitions to generate
+	 */
+	public BeanFactoryGenerator(ListableBeanFactoryImpl beanFactory) {
+		this.beanFactory = beanFactory;
+		this.beanNames = beanFactory.getBeanDefinitionNames();
+		for (int i = 0; i < beanNames.length; i++)
+			indices.put(beanNames[i], new Integer(i));
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Generate the source of the factory class
+	 * @param className fully qualified name of the class to generate
+	 * @return Java source of the class
+	 * @throws FatalBeanException if a definition can't be generated
+	 */
+	public String generate(String className) throws BeansException {
+		int dot = className.lastIndexOf('.');
+		String packageName = (dot > 0) ? className.substring(0, dot) : null;
+		String simpleName = className.substring(dot + 1);
+
+		StringBuffer sb = new StringBuffer();
+		if (packageName != null)
+			sb.append("package ").append(packageName).append(";\n\n");
+		sb.append("import com.interface21.beans.BeanWrapper;\n");
+		sb.append("import com.interface21.beans.BeanWrapperImpl;\n");
+		sb.append("import com.interface21.beans.BeansException;\n");
+		sb.append("import com.interface21.beans.FatalBeanException;\n");
+		sb.append("import com.interface21.beans.MutablePropertyValues;\n");
+		sb.append("import com.interface21.beans.PropertyValue;\n");
+		sb.append("import com.interface21.beans.factory.NoSuchBeanDefinitionException;\n");
+		sb.append("import com.interface21.beans.factory.support.AbstractBeanDefinition;\n");
+		sb.append("import com.interface21.beans.factory.support.BeanScope;\n");
+		sb.append("import com.interface21.beans.factory.support.ChildBeanDefinitionImpl;\n");
+		sb.append("import com.interface21.beans.factory.support.ClassNameRootBeanDefinition;\n");
+		sb.append("import com.interface21.beans.factory.support.ListableBeanFactoryImpl;\n");
+		sb.append("import com.interface21.beans.factory.support.RuntimeBeanReference;\n\n");
+		sb.append("/**\n * Bean factory generated by BeanFactoryGenerator from ").append(beanNames.length)
+			.append(" bean definitions.\n * Don't edit: regenerate it when the definitions change.\n */\n");
+		sb.append("public class ").append(simpleName).append(" extends ListableBeanFactoryImpl {\n\n");
+
+		// Which beans can be created by generated code?
+		List generated = new ArrayList();
+		int[][] chains = new int[beanNames.length][];
+		for (int i = 0; i < beanNames.length; i++) {
+			chains[i] = getChain(beanNames[i]);
+			if (chains[i] != null && canInstantiate(getBeanClass(chains[i])))
+				generated.add(new Integer(i));
+			else
+				chains[i] = null;
+		}
+
+		generateFields(sb, chains);
+		generateConstructor(sb, simpleName);
+		generateDispatch(sb, generated);
+		for (int i = 0; i < generated.size(); i++) {
+			int index = ((Integer) generated.get(i)).intValue();
+			generateCreateMethod(sb, index, chains[index]);
+		}
+		sb.append("}\n");
+		logger.info("Generated " + className + ": " + generated.size() + " of " + beanNames.length + " beans created without reflection");
+		return sb.toString();
+	}	// generate
+
+	/**
+	 * Generate the source of the factory class into a source tree
+	 * @param className fully qualified name of the class to generate
+	 * @param sourceDirectory root of the source tree
+	 * @return the file written
+	 * @throws IOException if the file can't be written
+	 * @throws FatalBeanException if a definition can't be generated
+	 */
+	public File generate(String className, File sourceDirectory) throws IOException, BeansException {
+		String source = generate(className);
+		File file = new File(sourceDirectory, className.replace('.', File.separatorChar) + ".java");
+		file.getParentFile().mkdirs();
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1");
+		try {
+			out.write(source);
+		}
+		finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Generate a bean factory from properties files
+	 * @param args [-prefix &lt;prefix&gt;] &lt;class name&gt; &lt;source directory&gt; &lt;properties file&gt;...
+	 */
+	public static void main(String[] args) throws Exception {
+		int arg = 0;
+		String prefix = null;
+		if (args.length > 1 && args[0].equals("-prefix")) {
+			prefix = args[1];
+			arg = 2;
+		}
+		if (args.length - arg < 3) {
+			System.err.println("Usage: BeanFactoryGenerator [-prefix <prefix>] <class name> <source directory> <properties file>...");
+			System.exit(1);
+		}
+		String className = args[arg++];
+		File sourceDirectory = new File(args[arg++]);
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		while (arg < args.length) {
+			Properties p = new Properties();
+			InputStream is = new FileInputStream(args[arg++]);
+			try {
+				p.load(is);
+			}
+			finally {
+				is.close();
+			}
+			lbf.registerBeanDefinitions(p, prefix);
+		}
+		File file = new BeanFactoryGenerator(lbf).generate(className, sourceDirectory);
+		System.out.println("Generated " + file);
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	private void generateFields(StringBuffer sb, int[][] chains) {
+		sb.append(INDENT).append("private static final String[] BEAN_NAMES = {\n");
+		for (int i = 0; i < beanNames.length; i++)
+			sb.append(INDENT).append(INDENT).append(literal(beanNames[i])).append(",\n");
+		sb.append(INDENT).append("};\n\n");
+
+		sb.append(INDENT).append("/** Indices of the definitions of each generated bean and its ancestors; null if not generated */\n");
+		sb.append(INDENT).append("private static final int[][] CHAINS = {\n");
+		for (int i = 0; i < chains.length; i++) {
+			sb.append(INDENT).append(INDENT);
+			if (chains[i] == null) {
+				sb.append("null");
+			}
+			else {
+				sb.append("{ ");
+				for (int j = 0; j < chains[i].length; j++)
+					sb.append(j > 0 ? ", " : "").append(chains[i][j]);
+				sb.append(" }");
+			}
+			sb.append(",\n");
+		}
+		sb.append(INDENT).append("};\n\n");
+
+		sb.append(INDENT).append("/** Bean name --> Integer index */\n");
+		sb.append(INDENT).append("private static final java.util.Map INDICES = new java.util.HashMap();\n\n");
+		sb.append(INDENT).append("static {\n");
+		sb.append(INDENT).append(INDENT).append("for (int i = 0; i < BEAN_NAMES.length; i++)\n");
+		sb.append(INDENT).append(INDENT).append(INDENT).append("INDICES.put(BEAN_NAMES[i], new Integer(i));\n");
+		sb.append(INDENT).append("}\n\n");
+
+		sb.append(INDENT).append("/** Definitions registered by the constructor, to detect replaced definitions */\n");
+		sb.append(INDENT).append("private final AbstractBeanDefinition[] definitions = new AbstractBeanDefinition[")
+			.append(beanNames.length).append("];\n\n");
+	}
+
+	private void generateConstructor(StringBuffer sb, String simpleName) {
+		int methods = (beanNames.length + BEANS_PER_REGISTRATION_METHOD - 1) / BEANS_PER_REGISTRATION_METHOD;
+		sb.append(INDENT).append("public ").append(simpleName).append("() {\n");
+		sb.append(INDENT).append(INDENT).append("ClassLoader classLoader = ").append(simpleName).append(".class.getClassLoader();\n");
+		for (int m = 0; m < methods; m++)
+			sb.append(INDENT).append(INDENT).append("registerDefinitions").append(m).append("(classLoader);\n");
+		sb.append(INDENT).append("}\n\n");
+
+		sb.append(INDENT).append("private void register(int index, AbstractBeanDefinition definition, boolean lazyInit, BeanScope scope) {\n");
+		sb.append(INDENT).append(INDENT).append("definition.setLazyInit(lazyInit);\n");
+		sb.append(INDENT).append(INDENT).append("definition.setScope(scope);\n");
+		sb.append(INDENT).append(INDENT).append("registerBeanDefinition(BEAN_NAMES[index], definition);\n");
+		sb.append(INDENT).append(INDENT).append("definitions[index] = definition;\n");
+		sb.append(INDENT).append("}\n\n");
+
+		for (int m = 0; m < methods; m++) {
+			sb.append(INDENT).append("private void registerDefinitions").append(m).append("(ClassLoader classLoader) {\n");
+			sb.append(INDENT).append(INDENT).append("MutablePropertyValues pvs = null;\n");
+			int end = Math.min(beanNames.length, (m + 1) * BEANS_PER_REGISTRATION_METHOD);
+			for (int i = m * BEANS_PER_REGISTRATION_METHOD; i < end; i++)
+				generateRegistration(sb, i);
+			sb.append(INDENT).append("}\n\n");
+		}
+	}
+
+	private void generateRegistration(StringBuffer sb, int index) {
+		String name = beanNames[index];
+		BeanDefinition bd = beanFactory.getBeanDefinition(name);
+		if (!(bd instanceof AbstractBeanDefinition) || !((AbstractBeanDefinition) bd).getListeners().isEmpty())
+			throw new FatalBeanException("Can't generate definition of bean '" + name + "': " + bd, null);
+		String i2 = INDENT + INDENT;
+
+		sb.append(i2).append("pvs = new MutablePropertyValues();\n");
+		PropertyValues pvs = bd.getPropertyValues();
+		PropertyValue[] pvals = (pvs != null) ? pvs.getPropertyValues() : new PropertyValue[0];
+		for (int i = 0; i < pvals.length; i++) {
+			Object value = pvals[i].getValue();
+			String valueSource;
+			if (value == null)
+				valueSource = "null";
+			else if (value instanceof String)
+				valueSource = literal((String) value);
+			else if (value instanceof RuntimeBeanReference)
+				valueSource = "new RuntimeBeanReference(" + literal(((RuntimeBeanReference) value).getBeanName()) + ")";
+			else
+				throw new FatalBeanException("Can't generate value of property '" + pvals[i].getName() + "' of bean '" +
+					name + "': " + value.getClass().getName(), null);
+			sb.append(i2).append("pvs.addPropertyValue(new PropertyValue(").append(literal(pvals[i].getName()))
+				.append(", ").append(valueSource).append("));\n");
+		}
+
+		sb.append(i2).append("register(").append(index).append(", ");
+		if (bd.getClass() == ClassNameRootBeanDefinition.class || bd.getClass() == DefaultRootBeanDefinition.class) {
+			String classname = (bd instanceof ClassNameRootBeanDefinition) ?
+				((ClassNameRootBeanDefinition) bd).getBeanClassName() : ((RootBeanDefinition) bd).getBeanClass().getName();
+			sb.append("new ClassNameRootBeanDefinition(").append(literal(classname)).append(", classLoader, pvs, ");
+		}
+		else if (bd.getClass() == ChildBeanDefinitionImpl.class) {
+			sb.append("new ChildBeanDefinitionImpl(").append(literal(((ChildBeanDefinition) bd).getParentName())).append(", pvs, ");
+		}
+		else {
+			throw new FatalBeanException("Can't generate definition of bean '" + name + "': " + bd, null);
+		}
+		sb.append(bd.isSingleton()).append("), ").append(((AbstractBeanDefinition) bd).isLazyInit()).append(", ");
+		BeanScope scope = ((AbstractBeanDefinition) bd).getScope();
+		if (scope == null)
+			sb.append("null");
+		else if (scope.isPooled())
+			sb.append("BeanScope.pooled(").append(scope.getMaxSize()).append(", ").append(scope.getMaxIdleMillis())
+				.append("L, ").append(scope.getMaxWaitMillis()).append("L)");
+		else
+			sb.append("BeanScope.THREAD");
+		sb.append(");\n");
+	}	// generateRegistration
+
+	private void generateDispatch(StringBuffer sb, List generated) {
+		int methods = (beanNames.length + BEANS_PER_DISPATCH_METHOD - 1) / BEANS_PER_DISPATCH_METHOD;
+		sb.append(INDENT).append("protected Object createBeanInstance(String name) throws BeansException {\n");
+		sb.append(INDENT).append(INDENT).append("Integer index = (Integer) INDICES.get(name);\n");
+		sb.append(INDENT).append(INDENT).append("if (index == null || !isGenerated(index.intValue()))\n");
+		sb.append(INDENT).append(INDENT).append(INDENT).append("return null;\n");
+		sb.append(INDENT).append(INDENT).append("int i = index.intValue();\n");
+		for (int m = 0; m < methods; m++) {
+			sb.append(INDENT).append(INDENT);
+			if (m < methods - 1)
+				sb.append("if (i < ").append((m + 1) * BEANS_PER_DISPATCH_METHOD).append(")\n").append(INDENT).append(INDENT).append(INDENT);
+			sb.append("return createBeanInstance").append(m).append("(i);\n");
+		}
+		if (methods == 0)
+			sb.append(INDENT).append(INDENT).append("return null;\n");
+		sb.append(INDENT).append("}\n\n");
+
+		sb.append(INDENT).append("/**\n").append(INDENT).append(" * Is the bean created by generated code, and are its definition and those\n");
+		sb.append(INDENT).append(" * of its ancestors still those registered by the constructor?\n").append(INDENT).append(" */\n");
+		sb.append(INDENT).append("private boolean isGenerated(int index) {\n");
+		sb.append(INDENT).append(INDENT).append("int[] chain = CHAINS[index];\n");
+		sb.append(INDENT).append(INDENT).append("if (chain == null)\n");
+		sb.append(INDENT).append(INDENT).append(INDENT).append("return false;\n");
+		sb.append(INDENT).append(INDENT).append("try {\n");
+		sb.append(INDENT).append(INDENT).append(INDENT).append("for (int i = 0; i < chain.length; i++) {\n");
+		sb.append(INDENT).append(INDENT).append(INDENT).append(INDENT).append("if (getBeanDefinition(BEAN_NAMES[chain[i]]) != definitions[chain[i]])\n");
+		sb.append(INDENT).append(INDENT).append(INDENT).append(INDENT).append(INDENT).append("return false;\n");
+		sb.append(INDENT).append(INDENT).append(INDENT).append("}\n");
+		sb.append(INDENT).append(INDENT).append(INDENT).append("return true;\n");
+		sb.append(INDENT).append(INDENT).append("}\n");
+		sb.append(INDENT).append(INDENT).append("catch (NoSuchBeanDefinitionException ex) {\n");
+		sb.append(INDENT).append(INDENT).append(INDENT).append("return false;\n");
+		sb.append(INDENT).append(INDENT).append("}\n");
+		sb.append(INDENT).append("}\n\n");
+
+		for (int m = 0; m < methods; m++) {
+			sb.append(INDENT).append("private Object createBeanInstance").append(m).append("(int index) throws BeansException {\n");
+			sb.append(INDENT).append(INDENT).append("switch (index) {\n");
+			for (int i = 0; i < generated.size(); i++) {
+				int index = ((Integer) generated.get(i)).intValue();
+				if (index / BEANS_PER_DISPATCH_METHOD == m)
+					sb.append(INDENT).append(INDENT).append(INDENT).append("case ").append(index).append(": return create")
+						.append(index).append("();\n");
+			}
+			sb.append(INDENT).append(INDENT).append(INDENT).append("default: return null;\n");
+			sb.append(INDENT).append(INDENT).append("}\n");
+			sb.append(INDENT).append("}\n\n");
+		}
+	}	// generateDispatch
+
+	private void generateCreateMethod(StringBuffer sb, int index, int[] chain) {
+		String name = beanNames[index];
+		Class beanClass = getBeanClass(chain);
+		String i2 = INDENT + INDENT;
+		String i3 = i2 + INDENT;
+
+		StringBuffer body = new StringBuffer();
+		boolean reflective = false;
+		PropertyValue[] pvals = getMergedPropertyValues(chain);
+		for (int i = 0; i < pvals.length; i++) {
+			String statement = generateSetter(index, beanClass, pvals[i]);
+			if (statement != null) {
+				body.append(i3).append(statement).append("\n");
+			}
+			else {
+				// Fall back to reflection for this property
+				reflective = true;
+				Object value = pvals[i].getValue();
+				String valueSource = (value instanceof RuntimeBeanReference) ?
+					"getReferencedBean(BEAN_NAMES[" + index + "], " + literal(((RuntimeBeanReference) value).getBeanName()) + ")" :
+					(value == null) ? "null" : literal((String) value);
+				body.append(i3).append("bw.setPropertyValue(new PropertyValue(").append(literal(pvals[i].getName()))
+					.append(", ").append(valueSource).append("));\n");
+			}
+		}
+
+		String typeName = getTypeName(beanClass);
+		sb.append(INDENT).append("/** Bean ").append(literal(name)).append(" */\n");
+		sb.append(INDENT).append("private Object create").append(index).append("() throws BeansException {\n");
+		sb.append(i2).append(typeName).append(" bean = new ").append(typeName).append("();\n");
+		if (pvals.length > 0) {
+			if (reflective)
+				sb.append(i2).append("BeanWrapper bw = new BeanWrapperImpl(bean);\n");
+			sb.append(i2).append("try {\n");
+			sb.append(body);
+			sb.append(i2).append("}\n");
+			sb.append(i2).append("catch (BeansException ex) {\n");
+			sb.append(i3).append("throw ex;\n");
+			sb.append(i2).append("}\n");
+			sb.append(i2).append("catch (Exception ex) {\n");
+			sb.append(i3).append("throw new FatalBeanException(\"Error setting property on bean [\" + BEAN_NAMES[")
+				.append(index).append("] + \"]\", ex);\n");
+			sb.append(i2).append("}\n");
+		}
+		sb.append(i2).append("return bean;\n");
+		sb.append(INDENT).append("}\n\n");
+	}	// generateCreateMethod
+
+	/**
+	 * Generate a direct setter call
+	 * @return the statement, or null if the property must be set by reflection
+	 */
+	private String generateSetter(int index, Class beanClass, PropertyValue pv) {
+		String name = pv.getName();
+		if (name.indexOf('.') != -1 || name.indexOf('[') != -1)
+			return null;
+		PropertyDescriptor pd = getPropertyDescriptor(beanClass, name);
+		if (pd == null)
+			return null;
+		Method writeMethod = pd.getWriteMethod();
+		Class type = pd.getPropertyType();
+		if (writeMethod == null || !Modifier.isPublic(writeMethod.getModifiers()) || type == null || !isAccessible(type))
+			return null;
+
+		String argument;
+		Object value = pv.getValue();
+		if (value instanceof RuntimeBeanReference) {
+			if (type.isPrimitive())
+				return null;
+			argument = "getReferencedBean(BEAN_NAMES[" + index + "], " +
+				literal(((RuntimeBeanReference) value).getBeanName()) + ")";
+			if (type != Object.class)
+				argument = "(" + getTypeName(type) + ") " + argument;
+		}
+		else if (value == null) {
+			if (type.isPrimitive())
+				return null;
+			argument = "(" + getTypeName(type) + ") null";
+		}
+		else if (type == String.class || type == Object.class) {
+			argument = literal((String) value);
+		}
+		else {
+			// Convert as the bean factory would, now rather than on every creation
+			Object converted;
+			try {
+				converted = new BindingPlan(beanClass, new String[] { name }).preconvert(0, value);
+			}
+			catch (BeansException ex) {
+				return null;
+			}
+			argument = literal(converted, type);
+			if (argument == null)
+				return null;
+		}
+		return "bean." + writeMethod.getName() + "(" + argument + ");";
+	}	// generateSetter
+
+	/**
+	 * Return the descriptor of the given property, or null if none.
+	 * Introspects directly, as only the generator needs the results.
+	 */
+	private static PropertyDescriptor getPropertyDescriptor(Class beanClass, String name) {
+		try {
+			PropertyDescriptor[] pds = Introspector.getBeanInfo(beanClass).getPropertyDescriptors();
+			for (int i = 0; i < pds.length; i++) {
+				if (pds[i].getName().equals(name))
+					return pds[i];
+			}
+		}
+		catch (IntrospectionException ex) {
+			// Set the property by reflection, which will report the problem
+		}
+		return null;
+	}
+
+	/**
+	 * Return Java source for a converted value of the given type, or null if none
+	 */
+	private static String literal(Object value, Class type) {
+		boolean primitive = type.isPrimitive();
+		if (value instanceof Integer && (type == int.class || type == Integer.class))
+			return primitive ? value.toString() : "new Integer(" + value + ")";
+		if (value instanceof Long && (type == long.class || type == Long.class))
+			return primitive ? value + "L" : "new Long(" + value + "L)";
+		if (value instanceof Short && (type == short.class || type == Short.class))
+			return primitive ? "(short) " + value : "new Short((short) " + value + ")";
+		if (value instanceof Byte && (type == byte.class || type == Byte.class))
+			return primitive ? "(byte) " + value : "new Byte((byte) " + value + ")";
+		if (value instanceof Boolean && (type == boolean.class || type == Boolean.class))
+			return primitive ? value.toString() : "Boolean." + (((Boolean) value).booleanValue() ? "TRUE" : "FALSE");
+		if (value instanceof Character && (type == char.class || type == Character.class)) {
+			String c = "'" + escape(((Character) value).charValue(), '\'') + "'";
+			return primitive ? c : "new Character(" + c + ")";
+		}
+		if (value instanceof Double && (type == double.class || type == Double.class)) {
+			double d = ((Double) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d))
+				return null;
+			return primitive ? d + "d" : "new Double(" + d + "d)";
+		}
+		if (value instanceof Float && (type == float.class || type == Float.class)) {
+			float f = ((Float) value).floatValue();
+			if (Float.isNaN(f) || Float.isInfinite(f))
+				return null;
+			return primitive ? f + "f" : "new Float(" + f + "f)";
+		}
+		if (value instanceof BigDecimal && type == BigDecimal.class)
+			return "new java.math.BigDecimal(" + literal(value.toString()) + ")";
+		if (value instanceof BigInteger && type == BigInteger.class)
+			return "new java.math.BigInteger(" + literal(value.toString()) + ")";
+		return null;
+	}
+
+	/**
+	 * Return a Java String literal, with all non-ASCII characters escaped
+	 */
+	private static String literal(String s) {
+		StringBuffer sb = new StringBuffer(s.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++)
+			sb.append(escape(s.charAt(i), '"'));
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * Escape a character for a Java literal delimited by the given quote.
+	 * Unicode escapes are translated before the source is parsed,
+	 * so they can't be used for line terminators, quotes or backslashes.
+	 */
+	private static String escape(char c, char quote) {
+		if (c == quote || c == '\\')
+			return "\\" + c;
+		if (c == '\n')
+			return "\\n";
+		if (c == '\r')
+			return "\\r";
+		if (c >= 0x20 && c < 0x7F)
+			return String.valueOf(c);
+		String hex = Integer.toHexString(c);
+		return "\\u" + "0000".substring(hex.length()) + hex;
+	}
+
+	/**
+	 * Return the indices of the definitions of the given bean and its ancestors,
+	 * the bean first, or null if the chain doesn't end in a root definition
+	 * the generated factory can create
+	 */
+	private int[] getChain(String beanName) {
+		List chain = new ArrayList();
+		BeanDefinition bd = beanFactory.getBeanDefinition(beanName);
+		chain.add(indices.get(beanName));
+		while (bd instanceof ChildBeanDefinition) {
+			String parent = ((ChildBeanDefinition) bd).getParentName();
+			Integer index = (Integer) indices.get(parent);
+			if (index == null || chain.contains(index))
+				return null;
+			chain.add(index);
+			bd = beanFactory.getBeanDefinition(parent);
+		}
+		if (bd.getClass() != DefaultRootBeanDefinition.class && bd.getClass() != ClassNameRootBeanDefinition.class)
+			return null;
+		int[] result = new int[chain.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = ((Integer) chain.get(i)).intValue();
+		return result;
+	}
+
+	/**
+	 * Return the class of the root definition at the end of the chain,
+	 * or null if it can't be loaded
+	 */
+	private Class getBeanClass(int[] chain) {
+		if (chain == null)
+			return null;
+		try {
+			return ((RootBeanDefinition) beanFactory.getBeanDefinition(beanNames[chain[chain.length - 1]])).getBeanClass();
+		}
+		catch (BeansException ex) {
+			logger.warn("Can't load class of bean '" + beanNames[chain[0]] + "': it will be created by reflection", ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Can generated code in any package create instances of the given class?
+	 */
+	private static boolean canInstantiate(Class clazz) {
+		if (clazz == null || !isAccessible(clazz) || Modifier.isAbstract(clazz.getModifiers()) ||
+				(clazz.getDeclaringClass() != null && !Modifier.isStatic(clazz.getModifiers())))
+			return false;
+		try {
+			return Modifier.isPublic(clazz.getConstructor(new Class[0]).getModifiers());
+		}
+		catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Can generated code in any package name the given type?
+	 */
+	private static boolean isAccessible(Class type) {
+		while (type.isArray())
+			type = type.getComponentType();
+		for (Class c = type; c != null; c = c.getDeclaringClass()) {
+			if (!c.isPrimitive() && !Modifier.isPublic(c.getModifiers()))
+				return false;
+		}
+		return true;
+	}
+
+	private static String getTypeName(Class type) {
+		if (type.isArray())
+			return getTypeName(type.getComponentType()) + "[]";
+		return type.getName().replace('$', '.');
+	}
+
+	/**
+	 * Merge the property values of the definitions in the chain,
+	 * those of a child replacing those of its parent
+	 */
+	private PropertyValue[] getMergedPropertyValues(int[] chain) {
+		Map merged = new LinkedHashMap();
+		for (int i = chain.length - 1; i >= 0; i--) {
+			PropertyValues pvs = beanFactory.getBeanDefinition(beanNames[chain[i]]).getPropertyValues();
+			PropertyValue[] pvals = (pvs != null) ? pvs.getPropertyValues() : new PropertyValue[0];
+			for (int j = 0; j < pvals.length; j++) {
+				merged.remove(pvals[j].getName());
+				merged.put(pvals[j].getName(), pvals[j]);
+			}
+		}
+		return (PropertyValue[]) merged.values().toArray(new PropertyValue[merged.size()]);
+	}
+
+}	// class BeanFactoryGenerator
@@ -0,0 +1,162 @@
+package com.interface21.beans.factory.support;
+
+import com.interface21.beans.FatalBeanException;
+
+/**
+ * Scope of a bean that is neither a singleton nor a prototype. Suits beans
+ * that aren't threadsafe but are too expensive to create for every use,
+ * such as parsers, formatters or crypto engines.
+ * <ul>
+ * <li>A <b>pooled</b> bean is borrowed with getBean() and must be returned with
+ * AbstractBeanFactory.releaseBean(). At most maxSize instances exist at once:
+ * callers wait for one to be returned when all are borrowed.
+ * Instances idle for longer than maxIdleMillis are discarded.
+ * <li>A <b>thread</b> bean has one instance per thread: getBean() in the same
+ * thread always returns the same instance, until the thread calls
+ * AbstractBeanFactory.releaseThreadScopedBeans().
+ * </ul>
+ * Other beans can't reference a pooled bean: they would never return the
+ * instance they borrowed, so creating them fails. A reference to a thread
+ * bean obtains the instance of the thread creating the referencing bean,
+ * and keeps it. Scoped beans should normally be obtained by name when
+ * they are needed.
+ * <br/>Immutable.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see AbstractBeanDefinition#setScope(BeanScope)
+ * @see BeanScopeStatistics
+ */
+public final class BeanScope {
+
+	/** Name of the pooled scope */
+	public static final String POOLED_NAME = "pooled";
+
+	/** Name of the thread scope */
+	public static final String THREAD_NAME = "thread";
+
+	/** Maximum number of instances of a pooled bean if not specified */
+	public static final int DEFAULT_MAX_SIZE = 8;
+
+	/** One instance per thread */
+	public static final BeanScope THREAD = new BeanScope(THREAD_NAME, 0, 0, 0);
+
+	/**
+	 * Return a pooled scope
+	 * @param maxSize maximum number of instances, borrowed or idle. Must be positive.
+	 * @param maxIdleMillis time after which an idle instance is discarded,
+	 * or 0 to keep idle instances
+	 * @param maxWaitMillis time a caller waits for an instance when all are borrowed
+	 * before getBean() fails, or 0 to wait until one is returned
+	 * @throws FatalBeanException if a parameter is out of range
+	 */
+	public static BeanScope pooled(int maxSize, long maxIdleMillis, long maxWaitMillis) throws FatalBeanException {
+		if (maxSize <= 0 || maxIdleMillis < 0 || maxWaitMillis < 0)
+			throw new FatalBeanException("Invalid pool: maxSize=" + maxSize + "; maxIdleMillis=" + maxIdleMillis +
+				"; maxWaitMillis=" + maxWaitMillis, null);
+		return new BeanScope(POOLED_NAME, maxSize, maxIdleMillis, maxWaitMillis);
+	}
+
+	/**
+	 * Return the scope described by the given settings, as found in properties
+	 * or XML bean definitions. Pool settings are ignored unless the scope is pooled.
+	 * @param beanName name of the bean, for error messages
+	 * @param name name of the scope, or null for a singleton or prototype
+	 * @param maxSize maximum size of a pool, or null for the default
+	 * @param maxIdleMillis maximum idle time of a pooled instance, or null for none
+	 * @param maxWaitMillis maximum wait for a pooled instance, or null for none
+	 * @return the scope, or null if no name is given
+	 * @throws FatalBeanException if the name or a setting is invalid
+	 */
+	static BeanScope parse(String beanName, String name, String maxSize, String maxIdleMillis, String maxWaitMillis)
+			throws FatalBeanException {
+		if (name == null)
+			return null;
+		if (name.equals(THREAD_NAME))
+			return THREAD;
+		if (!name.equals(POOLED_NAME))
+			throw new FatalBeanException("Unknown scope '" + name + "' for bean with name '" + beanName + "'", null);
+		try {
+			return pooled((maxSize != null) ? Integer.parseInt(maxSize.trim()) : DEFAULT_MAX_SIZE,
+				(maxIdleMillis != null) ? Long.parseLong(maxIdleMillis.trim()) : 0,
+				(maxWaitMillis != null) ? Long.parseLong(maxWaitMillis.trim()) : 0);
+		}
+		catch (NumberFormatException ex) {
+			throw new FatalBeanException("Invalid pool setting for bean with name '" + beanName + "'", ex);
+		}
+	}
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final String name;
+
+	private final int maxSize;
+
+	private final long maxIdleMillis;
+
+	private final long maxWaitMillis;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	private BeanScope(String name, int maxSize, long maxIdleMillis, long maxWaitMillis) {
+		this.name = name;
+		this.maxSize = maxSize;
+		this.maxIdleMillis = maxIdleMillis;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Return the name of the scope: POOLED_NAME or THREAD_NAME
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public boolean isPooled() {
+		return name == POOLED_NAME;
+	}
+
+	/**
+	 * Return the maximum number of instances of a pooled bean; 0 for thread scope
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Return the time after which an idle pooled instance is discarded; 0 for never
+	 */
+	public long getMaxIdleMillis() {
+		return maxIdleMillis;
+	}
+
+	/**
+	 * Return how long a caller waits for a pooled instance; 0 for as long as it takes
+	 */
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof BeanScope))
+			return false;
+		BeanScope bs = (BeanScope) other;
+		return name.equals(bs.name) && maxSize == bs.maxSize && maxIdleMillis == bs.maxIdleMillis &&
+			maxWaitMillis == bs.maxWaitMillis;
+	}
+
+	public int hashCode() {
+		return name.hashCode() ^ maxSize ^ (int) maxIdleMillis ^ (int) maxWaitMillis;
+	}
+
+	public String toString() {
+		if (!isPooled())
+			return name;
+		return name + ": maxSize=" + maxSize + "; maxIdleMillis=" + maxIdleMillis + "; maxWaitMillis=" + maxWaitMillis;
+	}
+
+}	// class BeanScope
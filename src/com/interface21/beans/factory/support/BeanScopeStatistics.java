@@ -0,0 +1,140 @@
+package com.interface21.beans.factory.support;
+
+/**
+ * Snapshot of the statistics of the instances of a pooled or thread-scoped bean.
+ * Useful for sizing pools and monitoring them in long-running servers.
+ * <br/>For a thread-scoped bean, active instances are those of threads that haven't
+ * called releaseThreadScopedBeans(), including any threads that have died since.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see AbstractBeanFactory#getScopeStatistics(String)
+ */
+public final class BeanScopeStatistics {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final String beanName;
+
+	private final BeanScope scope;
+
+	private final int activeCount;
+
+	private final int idleCount;
+
+	private final int peakActiveCount;
+
+	private final long requestCount;
+
+	private final long createdCount;
+
+	private final long discardedCount;
+
+	private final long waitCount;
+
+	private final long timeoutCount;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	BeanScopeStatistics(String beanName, BeanScope scope, int activeCount, int idleCount, int peakActiveCount,
+			long requestCount, long createdCount, long discardedCount, long waitCount, long timeoutCount) {
+		this.beanName = beanName;
+		this.scope = scope;
+		this.activeCount = activeCount;
+		this.idleCount = idleCount;
+		this.peakActiveCount = peakActiveCount;
+		this.requestCount = requestCount;
+		this.createdCount = createdCount;
+		this.discardedCount = discardedCount;
+		this.waitCount = waitCount;
+		this.timeoutCount = timeoutCount;
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	public String getBeanName() {
+		return beanName;
+	}
+
+	public BeanScope getScope() {
+		return scope;
+	}
+
+	/**
+	 * Return the number of instances borrowed from the pool and not returned,
+	 * or held by threads
+	 */
+	public int getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * Return the number of instances in the pool waiting to be borrowed.
+	 * Always 0 for a thread-scoped bean.
+	 */
+	public int getIdleCount() {
+		return idleCount;
+	}
+
+	/**
+	 * Return the highest number of active instances at any one time
+	 */
+	public int getPeakActiveCount() {
+		return peakActiveCount;
+	}
+
+	/**
+	 * Return the number of calls to getBean() for this bean
+	 */
+	public long getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * Return the number of instances created
+	 */
+	public long getCreatedCount() {
+		return createdCount;
+	}
+
+	/**
+	 * Return the number of instances discarded: idle pooled instances evicted,
+	 * or thread-scoped instances released
+	 */
+	public long getDiscardedCount() {
+		return discardedCount;
+	}
+
+	/**
+	 * Return the number of requests that waited for a pooled instance to be returned
+	 */
+	public long getWaitCount() {
+		return waitCount;
+	}
+
+	/**
+	 * Return the number of requests that failed because no pooled
+	 * instance was returned within the maximum wait
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	/**
+	 * Return the proportion of the maximum size of the pool in use,
+	 * between 0 and 1. Always 0 for a thread-scoped bean, which has no maximum.
+	 */
+	public double getUtilization() {
+		return scope.isPooled() ? (double) activeCount / scope.getMaxSize() : 0.0;
+	}
+
+	public String toString() {
+		return "BeanScopeStatistics for bean '" + beanName + "' (" + scope + "): active=" + activeCount +
+			"; idle=" + idleCount + "; peakActive=" + peakActiveCount + "; requests=" + requestCount +
+			"; created=" + createdCount + "; discarded=" + discardedCount + "; waits=" + waitCount +
+			"; timeouts=" + timeoutCount + "; utilization=" + getUtilization();
+	}
+
+}	// class BeanScopeStatistics
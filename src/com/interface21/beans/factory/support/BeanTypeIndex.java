@@ -0,0 +1,114 @@
+package com.interface21.beans.factory.support;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index from types to the names of the beans assignable to them, used to
+ * implement ListableBeanFactory.getBeanDefinitionNames(Class) without
+ * resolving the class of every bean on each call.
+ * <br/>Each bean is indexed under its class, all its superclasses and
+ * all the interfaces they implement, so a lookup takes time proportional
+ * to the number of matching beans. Beans are listed in the order they were
+ * added. Supertypes are computed once for each bean class.
+ * <br/>Package-visible; not used by application code. Threadsafe.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ */
+final class BeanTypeIndex {
+
+	private static final String[] EMPTY = new String[0];
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	/** Type --> LinkedHashSet of bean names. Guarded by this */
+	private final Map namesByType = new HashMap();
+
+	/** Bean name --> Class it's indexed under. Guarded by this */
+	private final Map typesByName = new HashMap();
+
+	/** Bean class --> Class[] of its supertypes, including itself. Guarded by this */
+	private final Map supertypeCache = new HashMap();
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Index a bean under the given class and its supertypes,
+	 * replacing any entry for the bean
+	 * @param beanName name of the bean
+	 * @param beanClass class of the bean
+	 */
+	public synchronized void add(String beanName, Class beanClass) {
+		remove(beanName);
+		Class[] types = getSupertypes(beanClass);
+		for (int i = 0; i < types.length; i++) {
+			Set names = (Set) namesByType.get(types[i]);
+			if (names == null) {
+				names = new LinkedHashSet();
+				namesByType.put(types[i], names);
+			}
+			names.add(beanName);
+		}
+		typesByName.put(beanName, beanClass);
+	}
+
+	/**
+	 * Remove the entries for a bean, if there are any
+	 * @param beanName name of the bean
+	 */
+	public synchronized void remove(String beanName) {
+		Class beanClass = (Class) typesByName.remove(beanName);
+		if (beanClass == null)
+			return;
+		Class[] types = getSupertypes(beanClass);
+		for (int i = 0; i < types.length; i++) {
+			Set names = (Set) namesByType.get(types[i]);
+			names.remove(beanName);
+			if (names.isEmpty())
+				namesByType.remove(types[i]);
+		}
+	}
+
+	/**
+	 * Return the names of the beans assignable to the given type
+	 * @param type class or interface to match
+	 * @return the names of matching beans. Never returns null.
+	 */
+	public synchronized String[] getNames(Class type) {
+		Set names = (Set) namesByType.get(type);
+		if (names == null)
+			return EMPTY;
+		return (String[]) names.toArray(new String[names.size()]);
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	/**
+	 * Return the given class, its superclasses and all the interfaces they implement
+	 */
+	private Class[] getSupertypes(Class clazz) {
+		Class[] types = (Class[]) supertypeCache.get(clazz);
+		if (types == null) {
+			Set found = new LinkedHashSet();
+			for (Class c = clazz; c != null; c = c.getSuperclass())
+				addWithInterfaces(c, found);
+			types = (Class[]) found.toArray(new Class[found.size()]);
+			supertypeCache.put(clazz, types);
+		}
+		return types;
+	}
+
+	private static void addWithInterfaces(Class type, Set found) {
+		if (!found.add(type))
+			return;
+		Class[] interfaces = type.getInterfaces();
+		for (int i = 0; i < interfaces.length; i++)
+			addWithInterfaces(interfaces[i], found);
+	}
+
+}	// class BeanTypeIndex
@@ -0,0 +1,118 @@
+package com.interface21.beans.factory.support;
+
+import java.beans.PropertyChangeListener;
+import java.beans.VetoableChangeListener;
+import java.util.Iterator;
+
+import com.interface21.beans.BeanWrapper;
+import com.interface21.beans.BeanWrapperImpl;
+import com.interface21.beans.FatalBeanException;
+import com.interface21.beans.PropertyValues;
+
+/**
+ * Root bean definition that holds the name of the bean class, and loads
+ * the class only when it's first needed: to create the bean, or to match it
+ * by type. Registering such definitions costs no class loading, so startup
+ * isn't proportional to the number of classes the context could use.
+ * <br/>A class that can't be found is reported when the class is first needed,
+ * rather than when the definition is registered.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see ListableBeanFactoryImpl#setLazyClassLoading(boolean)
+ */
+public class ClassNameRootBeanDefinition extends AbstractBeanDefinition implements RootBeanDefinition {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final String className;
+
+	/** May be null, in which case we rely on the default behavior of Class.forName() */
+	private final ClassLoader classLoader;
+
+	/** Class, once loaded */
+	private volatile Class clazz;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Creates new ClassNameRootBeanDefinition
+	 * @param className fully qualified name of the bean class
+	 * @param classLoader ClassLoader to load the class with. May be null.
+	 * @param pvs properties of the bean
+	 * @param singleton is the bean a singleton?
+	 */
+	public ClassNameRootBeanDefinition(String className, ClassLoader classLoader, PropertyValues pvs, boolean singleton) {
+		super(pvs, singleton);
+		this.className = className;
+		this.classLoader = classLoader;
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Return the name of the bean class
+	 */
+	public String getBeanClassName() {
+		return className;
+	}
+
+	/**
+	 * Has the bean class been loaded?
+	 */
+	public boolean isBeanClassLoaded() {
+		return clazz != null;
+	}
+
+	/**
+	 * Return the class of the bean, loading it if necessary
+	 * @throws FatalBeanException if the class can't be found
+	 * @see RootBeanDefinition#getBeanClass()
+	 */
+	public Class getBeanClass() throws FatalBeanException {
+		Class c = this.clazz;
+		if (c == null) {
+			// Loading twice in a race is harmless: the class loader returns the same Class
+			try {
+				c = (this.classLoader != null) ? Class.forName(this.className, true, this.classLoader) : Class.forName(this.className);
+			}
+			catch (ClassNotFoundException ex) {
+				throw new FatalBeanException("Cannot find class '" + this.className + "'", ex);
+			}
+			this.clazz = c;
+		}
+		return c;
+	}
+
+	/**
+	 * @see RootBeanDefinition#getBeanWrapperForNewInstance()
+	 */
+	public BeanWrapper getBeanWrapperForNewInstance() throws FatalBeanException {
+		BeanWrapper bw = new BeanWrapperImpl(getBeanClass());
+		Iterator itr = getListeners().iterator();
+		while (itr.hasNext()) {
+			ListenerRegistration lr = (ListenerRegistration) itr.next();
+			if (lr.getListener() instanceof VetoableChangeListener) {
+				if (lr.getPropertyName() == null)
+					bw.addVetoableChangeListener((VetoableChangeListener) lr.getListener());
+				else
+					bw.addVetoableChangeListener(lr.getPropertyName(), (VetoableChangeListener) lr.getListener());
+			}
+			if (lr.getListener() instanceof PropertyChangeListener) {
+				if (lr.getPropertyName() == null)
+					bw.addPropertyChangeListener((PropertyChangeListener) lr.getListener());
+				else
+					bw.addPropertyChangeListener(lr.getPropertyName(), (PropertyChangeListener) lr.getListener());
+			}
+		}
+		return bw;
+	}
+
+	public String toString() {
+		return "ClassNameRootBeanDefinition for class '" + className + "'" + (isSingleton() ? "" : "; prototype") +
+			(isLazyInit() ? "; lazy-init" : "");
+	}
+
+}	// class ClassNameRootBeanDefinition
@@ -0,0 +1,143 @@
+package com.interface21.beans.factory.support;
+
+import com.interface21.beans.BeanUtils;
+import com.interface21.beans.BeansException;
+import com.interface21.beans.BindingPlan;
+import com.interface21.beans.FatalBeanException;
+import com.interface21.beans.PropertyValue;
+
+/**
+ * Compiled recipe for creating instances of a prototype bean, built once
+ * from its definition and those of its ancestors by AbstractBeanFactory.
+ * <br/>The plan holds the merged property values of the definition chain,
+ * with those of a child replacing those of its parent, and a BindingPlan
+ * resolving the property accessors. String values for properties of immutable
+ * types are converted once. References to singletons are resolved the
+ * first time they're needed, and kept; references to prototypes are resolved
+ * for each instance.
+ * <br/>Creating an instance is then a constructor call plus a setter call per
+ * property, without a BeanWrapper, a copy of the property values, or
+ * lookups of property names.
+ * <br/>Package-visible; not used by application code. Threadsafe.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see BindingPlan
+ */
+final class InstantiationPlan {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final String beanName;
+
+	private final Class beanClass;
+
+	private final BindingPlan bindingPlan;
+
+	/**
+	 * Value for each property of the binding plan: a literal,
+	 * possibly converted, or a BeanReference. Never modified.
+	 */
+	private final Object[] values;
+
+	private final boolean hasReferences;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Compile a plan
+	 * @param beanName name of the bean, for error messages
+	 * @param beanClass class of the bean
+	 * @param pvs merged property values. Values that are RuntimeBeanReferences
+	 * will be resolved for each instance.
+	 * @throws BeansException if a property isn't writable
+	 */
+	InstantiationPlan(String beanName, Class beanClass, PropertyValue[] pvs) throws BeansException {
+		this.beanName = beanName;
+		this.beanClass = beanClass;
+		String[] propertyNames = new String[pvs.length];
+		for (int i = 0; i < pvs.length; i++)
+			propertyNames[i] = pvs[i].getName();
+		this.bindingPlan = new BindingPlan(beanClass, propertyNames);
+
+		this.values = new Object[pvs.length];
+		boolean hasReferences = false;
+		for (int i = 0; i < pvs.length; i++) {
+			Object value = pvs[i].getValue();
+			if (value instanceof RuntimeBeanReference) {
+				this.values[i] = new BeanReference(((RuntimeBeanReference) value).getBeanName());
+				hasReferences = true;
+			}
+			else {
+				this.values[i] = this.bindingPlan.preconvert(i, value);
+			}
+		}
+		this.hasReferences = hasReferences;
+	}
+
+	//---------------------------------------------------------------------
+	// Package-visible methods
+	//---------------------------------------------------------------------
+	/**
+	 * Create and populate a new instance. Doesn't invoke afterPropertiesSet().
+	 * @param beanFactory factory to resolve references to other beans in
+	 * @return the new instance
+	 * @throws BeansException if a reference can't be resolved or a property can't be set
+	 */
+	Object newInstance(AbstractBeanFactory beanFactory) throws BeansException {
+		Object[] args = this.values;
+		if (this.hasReferences) {
+			args = (Object[]) this.values.clone();
+			for (int i = 0; i < args.length; i++) {
+				if (args[i] instanceof BeanReference)
+					args[i] = resolve((BeanReference) args[i], beanFactory);
+			}
+		}
+		Object bean = BeanUtils.instantiateClass(this.beanClass);
+		try {
+			this.bindingPlan.apply(bean, args);
+		}
+		catch (FatalBeanException ex) {
+			// Improve the message by showing the context
+			throw new FatalBeanException("Error setting property on bean [" + this.beanName + "]", ex);
+		}
+		return bean;
+	}
+
+	public String toString() {
+		return "InstantiationPlan for bean [" + this.beanName + "]: " + this.bindingPlan;
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	private Object resolve(BeanReference ref, AbstractBeanFactory beanFactory) throws BeansException {
+		Object bean = ref.singleton;
+		if (bean != null)
+			return bean;
+		bean = beanFactory.getReferencedBean(this.beanName, ref.beanName);
+		// A singleton will never change: bind it to the plan
+		if (beanFactory.isSingleton(ref.beanName))
+			ref.singleton = bean;
+		return bean;
+	}
+
+
+	/**
+	 * Reference to another bean, bound to it once it's
+	 * known to be a singleton
+	 */
+	private static final class BeanReference {
+
+		final String beanName;
+
+		/** The referenced bean, once known to be a singleton */
+		volatile Object singleton;
+
+		BeanReference(String beanName) {
+			this.beanName = beanName;
+		}
+	}	// class BeanReference
+
+}	// class InstantiationPlan
@@ -1,8 +1,11 @@
 package com.interface21.beans.factory.support;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -13,6 +16,7 @@ import com.interface21.beans.BeansException;
 import com.interface21.beans.FatalBeanException;
 import com.interface21.beans.MutablePropertyValues;
 import com.interface21.beans.PropertyValue;
+import com.interface21.beans.PropertyValues;
 import com.interface21.beans.factory.ListableBeanFactory;
 import com.interface21.beans.factory.NoSuchBeanDefinitionException;
 import com.interface21.util.StringUtils;
@@ -46,6 +50,39 @@ public class ListableBeanFactoryImpl extends AbstractBeanFactory implements List
 	 */
 	public static final String SINGLETON_KEY = "(singleton)";
 	
+	/**
+	 * Special string to mark a singleton to be created on the first request
+	 * for it, rather than by preInstantiateSingletons(): owner.(lazy-init)=true.
+	 * Default is false.
+	 */
+	public static final String LAZY_INIT_KEY = "(lazy-init)";
+	
+	/**
+	 * Special string to give a bean a scope other than singleton or prototype:
+	 * owner.(scope)=pooled or owner.(scope)=thread. Such beans aren't singletons.
+	 * @see BeanScope
+	 */
+	public static final String SCOPE_KEY = "(scope)";
+	
+	/**
+	 * Special string for the maximum number of instances of a pooled bean:
+	 * owner.(pool-size)=4. Default is BeanScope.DEFAULT_MAX_SIZE.
+	 */
+	public static final String POOL_SIZE_KEY = "(pool-size)";
+	
+	/**
+	 * Special string for the milliseconds after which an idle instance of a
+	 * pooled bean is discarded: owner.(pool-max-idle)=60000. Default is 0, for never.
+	 */
+	public static final String POOL_MAX_IDLE_KEY = "(pool-max-idle)";
+	
+	/**
+	 * Special string for the milliseconds getBean() waits for an instance of a
+	 * pooled bean when all are borrowed: owner.(pool-max-wait)=1000.
+	 * Default is 0, to wait until one is returned.
+	 */
+	public static final String POOL_MAX_WAIT_KEY = "(pool-max-wait)";
+	
 	/**
 	 * Reserved "property" to indicate the parent of a 
 	 * child bean definition.
@@ -70,8 +107,24 @@ public class ListableBeanFactoryImpl extends AbstractBeanFactory implements List
 	//---------------------------------------------------------------------
 	// Instance data
 	//---------------------------------------------------------------------
-	/** Map of BeanDefinition objects, keyed by prototype name */
-	private Map     beanDefinitionHash = new HashMap();
+	/** Map of BeanDefinition objects, keyed by prototype name. Read without locking */
+	private final ReadMostlyMap beanDefinitionHash = new ReadMostlyMap();
+	
+	/** Index from types to bean names. Also guards childNames */
+	private final BeanTypeIndex typeIndex = new BeanTypeIndex();
+	
+	/** Parent bean name --> Set of names of child bean definitions. Guarded by typeIndex */
+	private final Map childNames = new HashMap();
+	
+	/** Names of beans not yet in the type index because their class
+	 * hasn't been loaded. Guarded by typeIndex */
+	private final Set unindexedNames = new LinkedHashSet();
+	
+	/** Should classes be loaded when first needed, rather than on registration? */
+	private boolean lazyClassLoading;
+	
+	/** Are all singletons lazy-init? */
+	private boolean defaultLazyInit;
 	
 	/** ClassLoader to use. May be null, in which case
 	 * we rely on the default behavior of Class.forName()
@@ -105,6 +158,69 @@ public class ListableBeanFactoryImpl extends AbstractBeanFactory implements List
 			this.classLoader = caller.getClass().getClassLoader();
 	}
 	
+	//---------------------------------------------------------------------
+	// Bean properties
+	//---------------------------------------------------------------------
+	/**
+	 * Set whether the classes of beans registered from properties should be
+	 * loaded only when first needed: to create the bean, or to match it by type.
+	 * Default is false: classes are loaded on registration, so that a missing
+	 * class is reported at once.
+	 * @see ClassNameRootBeanDefinition
+	 */
+	public void setLazyClassLoading(boolean lazyClassLoading) {
+		this.lazyClassLoading = lazyClassLoading;
+	}
+	
+	public boolean isLazyClassLoading() {
+		return lazyClassLoading;
+	}
+	
+	
+	/**
+	 * Set whether all singletons should be created on the first request
+	 * for them, rather than by preInstantiateSingletons(). Default is false:
+	 * only singletons whose definitions are marked lazy-init are deferred.
+	 * @see AbstractBeanDefinition#setLazyInit(boolean)
+	 */
+	public void setDefaultLazyInit(boolean defaultLazyInit) {
+		this.defaultLazyInit = defaultLazyInit;
+	}
+	
+	public boolean isDefaultLazyInit() {
+		return defaultLazyInit;
+	}
+	
+	
+	/**
+	 * Is the given bean a singleton that preInstantiateSingletons() won't create?
+	 * @param name name of the bean
+	 * @throws NoSuchBeanDefinitionException if there's no such bean definition
+	 */
+	public boolean isLazyInit(String name) throws NoSuchBeanDefinitionException {
+		BeanDefinition bd = getBeanDefinition(name);
+		return bd.isSingleton() &&
+			(this.defaultLazyInit || (bd instanceof AbstractBeanDefinition && ((AbstractBeanDefinition) bd).isLazyInit()));
+	}
+	
+	
+	/**
+	 * Return the names of the beans that have never been requested, by callers
+	 * or as references from other beans. They may be candidates for removal,
+	 * or for lazy-init. Parent definitions used only by their children are included.
+	 * @return the names of beans never requested, in no particular order
+	 * @see AbstractBeanFactory#wasRequested(String)
+	 */
+	public String[] getUnrequestedBeanNames() {
+		String[] beanNames = getBeanDefinitionNames();
+		List unrequested = new ArrayList();
+		for (int i = 0; i < beanNames.length; i++) {
+			if (!wasRequested(beanNames[i]))
+				unrequested.add(beanNames[i]);
+		}
+		return (String[]) unrequested.toArray(new String[unrequested.size()]);
+	}
+	
 	//---------------------------------------------------------------------
 	// Implementation of ListableBeanFactory
 	//---------------------------------------------------------------------
@@ -112,14 +228,7 @@ public class ListableBeanFactoryImpl extends AbstractBeanFactory implements List
 	 * @see ListableBeanFactory#getBeanDefinitionNames()
 	 */
 	public final String[] getBeanDefinitionNames() {
-		Set keys = beanDefinitionHash.keySet();
-		String[] names = new String[keys.size()];
-		Iterator itr = keys.iterator();
-		int i = 0;
-		while (itr.hasNext()) {
-			names[i++] = (String) itr.next();
-		}
-		return names;
+		return (String[]) beanDefinitionHash.keys(new String[0]);
 	}	// getBeanDefinitionNames
 	
 	
@@ -132,22 +241,24 @@ public class ListableBeanFactoryImpl extends AbstractBeanFactory implements List
 	
 	
 	/** 
-	 * Note that this method is slow. Don't invoke it too often:
-	 * it's best used only in application initialization.
+	 * Uses an index maintained as bean definitions are registered, so this
+	 * takes time proportional to the number of matches. Child bean definitions
+	 * whose parent hasn't been registered don't match any type.
+	 * <br/>Classes not yet loaded are loaded now, so that their beans can be matched.
+	 * Beans whose class can't be found don't match any type.
 	 */
 	public final String[] getBeanDefinitionNames(Class type) {
-		Set keys = beanDefinitionHash.keySet();
-		List matches = new LinkedList();
-		Iterator itr = keys.iterator();
-		while (itr.hasNext()) {
-			String name = (String) itr.next();
-			Class clazz = getBeanClass((AbstractBeanDefinition) beanDefinitionHash.get(name));
-			if (type.isAssignableFrom(clazz)) {
-				//log4jCategory.debug("Added " + name + " of type " + type);
-				matches.add(name);
+		synchronized (typeIndex) {
+			if (!unindexedNames.isEmpty()) {
+				Iterator itr = unindexedNames.iterator();
+				while (itr.hasNext()) {
+					String beanName = (String) itr.next();
+					indexBeanClass(beanName, findRootDefinition(beanName));
+				}
+				unindexedNames.clear();
 			}
 		}
-		return (String[]) matches.toArray(new String[matches.size()]);
+		return typeIndex.getNames(type);
 	}	// getBeanDefinitionNames(Class)
 	
 	
@@ -157,7 +268,7 @@ public class ListableBeanFactoryImpl extends AbstractBeanFactory implements List
 	/**
 	 * Subclasses or users should call this method to register new bean definitions
 	 * with this class. All other registration methods in this class use this method.
-	 * <br/>This method isn't guaranteed to be threadsafe. It should be called
+	 * <br/>This method is threadsafe, but should normally be called
 	 * before any bean instances are accessed.
 	 * @param prototypeName name of the bean instance to register
 	 * @param beanDefinition definition of the bean instance to register
@@ -165,24 +276,58 @@ public class ListableBeanFactoryImpl extends AbstractBeanFactory implements List
 	public final void registerBeanDefinition(String prototypeName, BeanDefinition beanDefinition) throws BeansException {
 		// The BeanDefinition may need access to this bean factory
         beanDefinition.setBeanFactory(this);
-		beanDefinitionHash.put(prototypeName, beanDefinition);
+		synchronized (typeIndex) {
+			BeanDefinition old = (BeanDefinition) beanDefinitionHash.put(prototypeName, beanDefinition);
+			if (old instanceof ChildBeanDefinition)
+				removeChild(((ChildBeanDefinition) old).getParentName(), prototypeName);
+			if (beanDefinition instanceof ChildBeanDefinition)
+				addChild(((ChildBeanDefinition) beanDefinition).getParentName(), prototypeName);
+			indexBeanType(prototypeName, new HashSet());
+		}
+		// Plans of this bean and any children are now stale
+		clearInstantiationPlans();
 	}
 	
 	
 	/**
 	 * Ensure that even potentially unreferenced singletons are instantiated
 	 * Subclasses or callers should invoke this if they want this behavior.
+	 * Lazy-init singletons are left to be created on first request.
+	 * Singletons are created in the calling thread, each after those it references.
+	 * @see #preInstantiateSingletons(int)
 	 */
 	public void preInstantiateSingletons() {
-		// Ensure that unreferenced singletons are instantiated
+		preInstantiateSingletons(1);
+	}
+	
+	
+	/**
+	 * Ensure that even potentially unreferenced singletons are instantiated,
+	 * using the given number of threads. Singletons are created in dependency order:
+	 * each is created after the singletons it references, directly or through
+	 * prototypes, so that singletons that don't depend on each other are created
+	 * in parallel. A report of the time taken, including the critical path, is logged.
+	 * <br/>Only references declared in bean definitions are known: a singleton that
+	 * looks up another in its afterPropertiesSet() method will wait for it if necessary.
+	 * @param threads number of threads to use, including the calling thread
+	 * @return report of the time taken
+	 * @throws BeansException the first exception thrown creating a singleton
+	 */
+	public StartupReport preInstantiateSingletons(int threads) throws BeansException {
 		String[] beanNames = getBeanDefinitionNames();
+		List singletonNames = new ArrayList(beanNames.length);
+		Map dependencies = new HashMap();
 		for (int i = 0; i < beanNames.length; i++) {
-			BeanDefinition bd = getBeanDefinition(beanNames[i]);
-			if (bd.isSingleton()) {
-				Object singleton = getBean(beanNames[i]);
-	 			logger.debug("Instantiated singleton: " + singleton);
+			if (getBeanDefinition(beanNames[i]).isSingleton() && !isLazyInit(beanNames[i])) {
+				singletonNames.add(beanNames[i]);
+				dependencies.put(beanNames[i], getSingletonDependencies(beanNames[i]));
 			}
 		}
+		SingletonPreInstantiator preInstantiator = new SingletonPreInstantiator(this,
+			(String[]) singletonNames.toArray(new String[singletonNames.size()]), dependencies);
+		StartupReport report = preInstantiator.run(threads);
+		logger.info(report);
+		return report;
 	}
 	
 	
@@ -215,111 +360,114 @@ public class ListableBeanFactoryImpl extends AbstractBeanFactory implements List
 	public final int registerBeanDefinitions(Map m, String prefix) throws BeansException {
 		if (prefix == null)
 			prefix = "";		
-		int beanCount = 0;				
 		
-		Set keys = m.keySet();
-		Iterator itr = keys.iterator();
+		// Group the properties by bean name in a single pass over the keys,
+		// keeping the beans in the order they were first found
+		Map beans = new HashMap();
+		List beanNames = new ArrayList();
+		Iterator itr = m.entrySet().iterator();
 		while (itr.hasNext()) {
-			String key = (String) itr.next();
+			Map.Entry entry = (Map.Entry) itr.next();
+			String key = (String) entry.getKey();
 			if (key.startsWith(prefix)) {
 				// Key is of form prefix<name>.property
-				String nameAndProperty = key.substring(prefix.length());
-				int sepIndx = nameAndProperty.indexOf(SEPARATOR);
+				int sepIndx = key.indexOf(SEPARATOR, prefix.length());
 				if (sepIndx != -1) {
-					String beanName = nameAndProperty.substring(0, sepIndx);
-					logger.debug("Found bean name '" + beanName + "'");
-					if (beanDefinitionHash.get(beanName) == null) {
-						// If we haven't already registered it...
-						registerBeanDefinition(beanName, m, prefix + beanName);
-						++beanCount;
+					String beanName = key.substring(prefix.length(), sepIndx);
+					BeanDefinitionProperties bdp = (BeanDefinitionProperties) beans.get(beanName);
+					if (bdp == null) {
+						if (logger.isDebugEnabled())
+							logger.debug("Found bean name '" + beanName + "'");
+						bdp = new BeanDefinitionProperties();
+						beans.put(beanName, bdp);
+						beanNames.add(beanName);
 					}
+					bdp.addProperty(key.substring(sepIndx + SEPARATOR.length()), entry.getValue());
 				}
-				else {
+				else if (logger.isDebugEnabled()) {
 					// Ignore it: it wasn't a valid bean name and property,
 					// although it did start with the required prefix
-					logger.debug("invalid name and property '" + nameAndProperty + "'");
+					logger.debug("invalid name and property '" + key.substring(prefix.length()) + "'");
 				}
 			}	// if the key started with the prefix we're looking for
 		}	// while there are more keys
 		
+		// Classes already loaded for this Map: many beans often share a class
+		Map classes = new HashMap();
+		int beanCount = 0;				
+		for (int i = 0; i < beanNames.size(); i++) {
+			String beanName = (String) beanNames.get(i);
+			if (beanDefinitionHash.get(beanName) == null) {
+				// If we haven't already registered it...
+				registerBeanDefinition(beanName, (BeanDefinitionProperties) beans.get(beanName), classes);
+				++beanCount;
+			}
+		}
 		return beanCount;
-	}	// registerBeanDefinition
+	}	// registerBeanDefinitions
 	
 	
 	/**
-	 * Get all property values, given a prefix (which will be stripped)
-	 * and add the bean they define to the factory with the given name
+	 * Add the bean defined by the given properties to the factory with the given name
 	 * @param beanName name of the bean to define
-	 * @param m Map containing string pairs
-	 * @param prefix prefix of each entry, which will be stripped
+	 * @param bdp properties of the bean, with the bean name prefix stripped
+	 * @param classes Map from class name to Class for classes already loaded
 	 */
-	private void registerBeanDefinition(String beanName, Map m, String prefix) throws BeansException {
-		//System.out.println("registerBeanDefinitions for beanName '" + beanName + "' with prefix='" + prefix + "'");
-		
-		String	classname = null;
-		String	parent = null;
-		boolean singleton = true;
-		
-		MutablePropertyValues pvs = new MutablePropertyValues();
-		Set keys = m.keySet();
-		Iterator itr = keys.iterator();
-		while (itr.hasNext()) {
-			String key = (String) itr.next();
-			if (key.startsWith(prefix + SEPARATOR)) {
-				String property = key.substring(prefix.length() + SEPARATOR.length());
-				//System.out.println("PROPERTY='" + property + "'");
-				if (property.equals(CLASS_KEY)) {
-					classname = (String) m.get(key);
-				}
-				else if (property.equals(SINGLETON_KEY)) {
-					String val = (String) m.get(key);
-					singleton = val == null || !val.toUpperCase().equals("FALSE");
-				}
-				else if (property.equals(PARENT_KEY)) {
-					parent = (String) m.get(key);
-				}
-				else if (property.endsWith(REF_SUFFIX)) {
-					// This isn't a real property, but a reference to another prototype
-					// Extract property name: property is of form dog(ref)
-					property = property.substring(0, property.length() - REF_SUFFIX.length());
-					String ref = (String) m.get(key);					
-					
-					// It doesn't matter if the referenced bean hasn't yet been registered:
-					// this will ensure that the reference is resolved at rungime
-					// Default is not to use singleton
-					Object val = new RuntimeBeanReference(ref);
-					pvs.addPropertyValue(new PropertyValue(property, val));
-				}
-				else {
-					// Normal bean property
-					Object val = m.get(key);					
-					pvs.addPropertyValue(new PropertyValue(property, val));
-				}
-			}
-		}
-		logger.debug(pvs.toString());
-		
+	private void registerBeanDefinition(String beanName, BeanDefinitionProperties bdp, Map classes) throws BeansException {
+		if (logger.isDebugEnabled())
+			logger.debug(bdp.pvs.toString());
+		BeanScope scope = BeanScope.parse(beanName, bdp.scope, bdp.poolSize, bdp.poolMaxIdle, bdp.poolMaxWait);
+		AbstractBeanDefinition bd = createBeanDefinition(beanName, bdp.classname, bdp.parent, bdp.pvs,
+			bdp.singleton && scope == null, bdp.lazyInit, classes);
+		bd.setScope(scope);
+		registerBeanDefinition(beanName, bd);
+	}	// registerBeanDefinition
+	
+	
+	/**
+	 * Create a root definition if a class name is given, else a child definition.
+	 * Loads the class unless lazy class loading is on.
+	 * @param beanName name of the bean, for error messages
+	 * @param classname name of the bean class. May be null for a child definition.
+	 * @param parent name of the parent bean. Ignored if classname isn't null.
+	 * @param pvs property values of the bean
+	 * @param singleton is the bean a singleton?
+	 * @param lazyInit should creation of the singleton wait for the first request?
+	 * @param classes Map from class name to Class for classes already loaded
+	 * @throws FatalBeanException if neither classname nor parent is given,
+	 * or the class can't be found
+	 */
+	AbstractBeanDefinition createBeanDefinition(String beanName, String classname, String parent, PropertyValues pvs,
+				boolean singleton, boolean lazyInit, Map classes) throws BeansException {
 		if (classname == null && parent == null)
 			throw new FatalBeanException("Invalid bean definition. Classname or parent must be supplied for bean with name '" + beanName + "'", null);
 		
 		try {
 			
-			BeanDefinition beanDefinition = null;
-			if (classname != null) {
-				// Load the class using a special class loader if one is available.
-				// Otherwise rely on the default behavior of Class.forName().
-				Class clazz = (this.classLoader != null) ? Class.forName(classname, true, this.classLoader) : Class.forName(classname);
+			AbstractBeanDefinition beanDefinition = null;
+			if (classname != null && this.lazyClassLoading) {
+				beanDefinition = new ClassNameRootBeanDefinition(classname, this.classLoader, pvs, singleton);
+			}
+			else if (classname != null) {
+				Class clazz = (Class) classes.get(classname);
+				if (clazz == null) {
+					// Load the class using a special class loader if one is available.
+					// Otherwise rely on the default behavior of Class.forName().
+					clazz = (this.classLoader != null) ? Class.forName(classname, true, this.classLoader) : Class.forName(classname);
+					classes.put(classname, clazz);
+				}
 				beanDefinition = new DefaultRootBeanDefinition(clazz, pvs, singleton);
 			}
 			else {
 				beanDefinition = new ChildBeanDefinitionImpl(parent, pvs, singleton);
 			}
-			registerBeanDefinition(beanName, beanDefinition);
+			beanDefinition.setLazyInit(lazyInit);
+			return beanDefinition;
 		}
 		catch (ClassNotFoundException ex) {
 			throw new FatalBeanException("Cannot find class '" + classname + "' for bean with name '" + beanName + "'", ex);
 		}
-	}	// registerBeanDefinition
+	}	// createBeanDefinition
 	
 	
 	/** 
@@ -340,6 +488,214 @@ public class ListableBeanFactoryImpl extends AbstractBeanFactory implements List
 	}
 	 
 	
+	/**
+	 * Update the type index for the given bean and the child definitions
+	 * inheriting their class from it. Must be called holding the typeIndex lock.
+	 * @param beanName name of the bean whose definition was registered
+	 * @param visited names already indexed in this update, to guard against
+	 * parent cycles
+	 */
+	private void indexBeanType(String beanName, Set visited) {
+		if (!visited.add(beanName))
+			return;
+		RootBeanDefinition root = findRootDefinition(beanName);
+		if (root instanceof ClassNameRootBeanDefinition && !((ClassNameRootBeanDefinition) root).isBeanClassLoaded()) {
+			// Don't load the class until a lookup by type needs it
+			typeIndex.remove(beanName);
+			unindexedNames.add(beanName);
+		}
+		else {
+			unindexedNames.remove(beanName);
+			indexBeanClass(beanName, root);
+		}
+		Set children = (Set) childNames.get(beanName);
+		if (children != null) {
+			Iterator itr = children.iterator();
+			while (itr.hasNext())
+				indexBeanType((String) itr.next(), visited);
+		}
+	}
+	
+	
+	/**
+	 * Index the given bean under the class of the given root definition,
+	 * loading the class if necessary. Must be called holding the typeIndex lock.
+	 * @param root root definition of the bean. If null, or if the class
+	 * can't be loaded, the bean won't match any type.
+	 */
+	private void indexBeanClass(String beanName, RootBeanDefinition root) {
+		Class clazz = null;
+		if (root != null) {
+			try {
+				clazz = root.getBeanClass();
+			}
+			catch (FatalBeanException ex) {
+				logger.warn("Bean with name '" + beanName + "' won't match any type", ex);
+			}
+		}
+		if (clazz != null)
+			typeIndex.add(beanName, clazz);
+		else
+			typeIndex.remove(beanName);
+	}
+	
+	
+	/**
+	 * Return the root definition of the given bean, following the parent chain
+	 * of a child definition, or null if a parent in the chain isn't registered
+	 */
+	private RootBeanDefinition findRootDefinition(String beanName) {
+		BeanDefinition bd = (BeanDefinition) beanDefinitionHash.get(beanName);
+		// No chain can be longer than the number of definitions
+		for (int i = 0; bd != null && i <= beanDefinitionHash.size(); i++) {
+			if (bd instanceof RootBeanDefinition)
+				return (RootBeanDefinition) bd;
+			if (!(bd instanceof ChildBeanDefinition))
+				return null;
+			bd = (BeanDefinition) beanDefinitionHash.get(((ChildBeanDefinition) bd).getParentName());
+		}
+		return null;
+	}
+	
+	
+	private void addChild(String parentName, String childName) {
+		Set children = (Set) childNames.get(parentName);
+		if (children == null) {
+			children = new HashSet();
+			childNames.put(parentName, children);
+		}
+		children.add(childName);
+	}
+	
+	
+	private void removeChild(String parentName, String childName) {
+		Set children = (Set) childNames.get(parentName);
+		if (children != null) {
+			children.remove(childName);
+			if (children.isEmpty())
+				childNames.remove(parentName);
+		}
+	}
+	
+	
+	/**
+	 * Return the names of the singletons the given bean references, directly
+	 * or through prototypes and lazy-init singletons, which will be created with it.
+	 * Lazy-init singletons aren't included. References of parent definitions are included.
+	 * References to beans that aren't defined are ignored: creation will report them.
+	 */
+	private String[] getSingletonDependencies(String beanName) {
+		Set found = new HashSet();
+		Set visited = new HashSet();
+		LinkedList queue = new LinkedList();
+		queue.add(beanName);
+		visited.add(beanName);
+		while (!queue.isEmpty()) {
+			String name = (String) queue.removeFirst();
+			BeanDefinition bd = (BeanDefinition) beanDefinitionHash.get(name);
+			while (bd != null) {
+				PropertyValues pvs = bd.getPropertyValues();
+				PropertyValue[] pvals = (pvs != null) ? pvs.getPropertyValues() : new PropertyValue[0];
+				for (int i = 0; i < pvals.length; i++) {
+					if (pvals[i].getValue() instanceof RuntimeBeanReference) {
+						String ref = ((RuntimeBeanReference) pvals[i].getValue()).getBeanName();
+						BeanDefinition refBd = (BeanDefinition) beanDefinitionHash.get(ref);
+						if (refBd != null && visited.add(ref)) {
+							if (refBd.isSingleton() && !isLazyInit(ref))
+								found.add(ref);
+							else
+								queue.add(ref);
+						}
+					}
+				}
+				bd = (bd instanceof ChildBeanDefinition) ?
+					(BeanDefinition) beanDefinitionHash.get(((ChildBeanDefinition) bd).getParentName()) : null;
+			}
+		}
+		return (String[]) found.toArray(new String[found.size()]);
+	}
+	
+	
+	/**
+	 * Properties of one bean, collected from a Map of properties
+	 * for many beans by registerBeanDefinitions()
+	 */
+	private static class BeanDefinitionProperties {
+		
+		private String classname;
+		
+		private String parent;
+		
+		private boolean singleton = true;
+		
+		private boolean lazyInit;
+		
+		private String scope;
+		
+		private String poolSize;
+		
+		private String poolMaxIdle;
+		
+		private String poolMaxWait;
+		
+		private MutablePropertyValues pvs = new MutablePropertyValues();
+		
+		/**
+		 * Add a property, with the bean name prefix stripped
+		 */
+		private void addProperty(String property, Object value) {
+			if (property.equals(CLASS_KEY)) {
+				classname = (String) value;
+			}
+			else if (property.equals(SINGLETON_KEY)) {
+				String val = (String) value;
+				singleton = val == null || !val.toUpperCase().equals("FALSE");
+			}
+			else if (property.equals(LAZY_INIT_KEY)) {
+				String val = (String) value;
+				lazyInit = val != null && val.toUpperCase().equals("TRUE");
+			}
+			else if (property.equals(SCOPE_KEY)) {
+				scope = (String) value;
+			}
+			else if (property.equals(POOL_SIZE_KEY)) {
+				poolSize = (String) value;
+			}
+			else if (property.equals(POOL_MAX_IDLE_KEY)) {
+				poolMaxIdle = (String) value;
+			}
+			else if (property.equals(POOL_MAX_WAIT_KEY)) {
+				poolMaxWait = (String) value;
+			}
+			else if (property.equals(PARENT_KEY)) {
+				parent = (String) value;
+			}
+			else if (property.endsWith(REF_SUFFIX)) {
+				// This isn't a real property, but a reference to another prototype
+				// Extract property name: property is of form dog(ref)
+				property = property.substring(0, property.length() - REF_SUFFIX.length());
+				
+				// It doesn't matter if the referenced bean hasn't yet been registered:
+				// this will ensure that the reference is resolved at runtime
+				// Default is not to use singleton
+				pvs.addPropertyValue(new PropertyValue(property, new RuntimeBeanReference((String) value)));
+			}
+			else {
+				// Normal bean property
+				pvs.addPropertyValue(new PropertyValue(property, value));
+			}
+		}
+	}	// class BeanDefinitionProperties
+	
+	
+	/**
+	 * Is there a definition of the given bean in this factory?
+	 */
+	final boolean containsBeanDefinition(String beanName) {
+		return beanDefinitionHash.containsKey(beanName);
+	}
+	
+	
 	//---------------------------------------------------------------------
 	// Implementation of superclass protected abstract methods
 	//---------------------------------------------------------------------
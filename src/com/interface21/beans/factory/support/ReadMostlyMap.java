@@ -0,0 +1,166 @@
+package com.interface21.beans.factory.support;
+
+import java.lang.reflect.Array;
+
+/**
+ * Minimal hash map for data that is read far more often than it is
+ * written, such as the singleton cache and bean definitions of a bean factory.
+ * <br/>Reads take no lock. Writes are synchronized on the map, and publish
+ * their changes by writing the volatile table reference. Entries are
+ * immutable: a replaced value gets a new entry. A reader may therefore see a
+ * slightly stale table, but never a partly constructed entry; if a key isn't
+ * found, get() looks again holding the lock, so a value put by another thread
+ * before the call began is always found.
+ * <br/>Values reached through an entry, such as a singleton bean, are seen as they
+ * were when the entry was created, as entries only have final fields.
+ * <br/>Null keys and values are not supported. There is no remove operation:
+ * bean factories never forget beans.
+ * <br/>Package-visible; not used by application code.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ */
+final class ReadMostlyMap {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	/** Hash table of Entry chains. Length is a power of 2 */
+	private volatile Entry[] table = new Entry[32];
+
+	/** Number of entries. Guarded by this */
+	private int size;
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Return the value for the given key, or null if none
+	 */
+	public Object get(Object key) {
+		Object value = find(this.table, key);
+		if (value != null)
+			return value;
+		// Not found: we may have read a stale table. Check again holding the lock.
+		synchronized (this) {
+			return find(this.table, key);
+		}
+	}
+
+	/**
+	 * Add a value, replacing the value for the same key if there was one
+	 * @return the previous value, or null if none
+	 */
+	public synchronized Object put(Object key, Object value) {
+		if (key == null || value == null)
+			throw new IllegalArgumentException("ReadMostlyMap does not support null keys or values");
+		Entry[] tab = this.table;
+		int hash = spread(key.hashCode());
+		int i = hash & (tab.length - 1);
+		for (Entry e = tab[i]; e != null; e = e.next) {
+			if (e.hash == hash && key.equals(e.key)) {
+				// Replace: copy the entries in front of it, keeping those behind
+				Entry head = new Entry(hash, key, value, e.next);
+				for (Entry p = tab[i]; p != e; p = p.next)
+					head = new Entry(p.hash, p.key, p.value, head);
+				tab[i] = head;
+				this.table = tab;
+				return e.value;
+			}
+		}
+		if (this.size + 1 > tab.length * 3 / 4)
+			tab = resize(tab);
+		i = hash & (tab.length - 1);
+		tab[i] = new Entry(hash, key, value, tab[i]);
+		this.size++;
+		// Volatile write publishes the new entry
+		this.table = tab;
+		return null;
+	}
+
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Return the keys in the given array, or in a new array
+	 * of the same component type if it isn't large enough
+	 * @param a array to fill, as for Collection.toArray(Object[])
+	 * @return an array holding the keys, in no particular order
+	 */
+	public synchronized Object[] keys(Object[] a) {
+		if (a.length < this.size)
+			a = (Object[]) Array.newInstance(a.getClass().getComponentType(), this.size);
+		Entry[] tab = this.table;
+		int n = 0;
+		for (int i = 0; i < tab.length; i++) {
+			for (Entry e = tab[i]; e != null; e = e.next)
+				a[n++] = e.key;
+		}
+		if (a.length > n)
+			a[n] = null;
+		return a;
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	private static Object find(Entry[] tab, Object key) {
+		int hash = spread(key.hashCode());
+		for (Entry e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+			if (e.hash == hash && key.equals(e.key))
+				return e.value;
+		}
+		return null;
+	}
+
+	/**
+	 * Return a table twice the size, with new entries, leaving
+	 * the old table intact for readers still using it
+	 */
+	private static Entry[] resize(Entry[] old) {
+		Entry[] tab = new Entry[old.length * 2];
+		for (int i = 0; i < old.length; i++) {
+			for (Entry e = old[i]; e != null; e = e.next) {
+				int j = e.hash & (tab.length - 1);
+				tab[j] = new Entry(e.hash, e.key, e.value, tab[j]);
+			}
+		}
+		return tab;
+	}
+
+	/**
+	 * Spread the bits of a hash code, as bean names
+	 * often differ only in their last characters
+	 */
+	private static int spread(int h) {
+		h ^= (h >>> 16);
+		return h ^ (h >>> 8);
+	}
+
+
+	/**
+	 * Immutable hash chain entry
+	 */
+	private static final class Entry {
+
+		final int hash;
+
+		final Object key;
+
+		final Object value;
+
+		final Entry next;
+
+		Entry(int hash, Object key, Object value, Entry next) {
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+			this.next = next;
+		}
+	}	// class Entry
+
+}	// class ReadMostlyMap
@@ -0,0 +1,303 @@
+package com.interface21.beans.factory.support;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.interface21.beans.BeansException;
+import com.interface21.beans.FatalBeanException;
+
+/**
+ * Instances of a pooled or thread-scoped bean, created by AbstractBeanFactory
+ * for the definition of the bean. A definition replaced in the factory gets new
+ * ScopedInstances: instances of the old definition are no longer handed out.
+ * <br/>Package-visible; not used by application code. Threadsafe.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see BeanScope
+ */
+abstract class ScopedInstances {
+
+	/**
+	 * Create the instances holder for the given scope
+	 */
+	static ScopedInstances forScope(AbstractBeanFactory factory, String beanName, AbstractBeanDefinition definition) {
+		if (definition.getScope().isPooled())
+			return new Pool(factory, beanName, definition);
+		return new PerThread(factory, beanName, definition);
+	}
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	protected final Logger logger = Logger.getLogger(getClass().getName());
+
+	protected final AbstractBeanFactory factory;
+
+	protected final String beanName;
+
+	protected final AbstractBeanDefinition definition;
+
+	protected final BeanScope scope;
+
+	// Guarded by this
+	protected long requestCount;
+	protected int activeCount;
+	protected int peakActiveCount;
+	protected long createdCount;
+	protected long discardedCount;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	protected ScopedInstances(AbstractBeanFactory factory, String beanName, AbstractBeanDefinition definition) {
+		this.factory = factory;
+		this.beanName = beanName;
+		this.definition = definition;
+		this.scope = definition.getScope();
+	}
+
+	//---------------------------------------------------------------------
+	// Methods
+	//---------------------------------------------------------------------
+	/**
+	 * Return the definition these instances were created from
+	 */
+	final AbstractBeanDefinition getDefinition() {
+		return definition;
+	}
+
+	/**
+	 * Return an instance for getBean()
+	 */
+	abstract Object getInstance() throws BeansException;
+
+	/**
+	 * Return an instance obtained from getInstance()
+	 */
+	abstract void release(Object bean);
+
+	/**
+	 * Discard the instance of the current thread, if any
+	 */
+	abstract void releaseForCurrentThread();
+
+	/**
+	 * Discard instances idle for longer than the scope allows
+	 */
+	abstract void evictIdle();
+
+	abstract BeanScopeStatistics getStatistics();
+
+	/**
+	 * Must be called holding the lock on this object
+	 */
+	protected final void activated() {
+		if (++activeCount > peakActiveCount)
+			peakActiveCount = activeCount;
+	}
+
+
+	/**
+	 * Bounded pool. Idle instances are kept most recently returned first,
+	 * so the least recently used are evicted.
+	 */
+	private static final class Pool extends ScopedInstances {
+
+		/** IdleInstance objects, most recently returned first. Guarded by this */
+		private final LinkedList idle = new LinkedList();
+
+		/** Borrowed instances --> Boolean.TRUE. Guarded by this */
+		private final Map borrowed = new IdentityHashMap();
+
+		/** Instances being created, which count towards the maximum size. Guarded by this */
+		private int creating;
+
+		// Guarded by this
+		private long waitCount;
+		private long timeoutCount;
+
+		private Pool(AbstractBeanFactory factory, String beanName, AbstractBeanDefinition definition) {
+			super(factory, beanName, definition);
+		}
+
+		Object getInstance() throws BeansException {
+			synchronized (this) {
+				requestCount++;
+				evictIdle(System.currentTimeMillis());
+				waitForInstance();
+				if (!idle.isEmpty()) {
+					Object bean = ((IdleInstance) idle.removeFirst()).bean;
+					borrowed.put(bean, Boolean.TRUE);
+					activated();
+					return bean;
+				}
+				creating++;
+			}
+
+			// Create outside the lock, so that instances can be returned meanwhile
+			Object bean = null;
+			try {
+				bean = factory.createNewInstance(beanName);
+				return bean;
+			}
+			finally {
+				synchronized (this) {
+					creating--;
+					if (bean != null) {
+						borrowed.put(bean, Boolean.TRUE);
+						createdCount++;
+						activated();
+					}
+					else {
+						// Creation failed: another caller may create one instead
+						notifyAll();
+					}
+				}
+			}
+		}	// getInstance
+
+		/**
+		 * Wait until an instance is idle or another may be created.
+		 * Must be called holding the lock on this object.
+		 */
+		private void waitForInstance() throws BeansException {
+			if (!idle.isEmpty() || borrowed.size() + creating < scope.getMaxSize())
+				return;
+			waitCount++;
+			long maxWait = scope.getMaxWaitMillis();
+			long deadline = System.currentTimeMillis() + maxWait;
+			try {
+				while (idle.isEmpty() && borrowed.size() + creating >= scope.getMaxSize()) {
+					if (maxWait == 0) {
+						wait();
+					}
+					else {
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0) {
+							timeoutCount++;
+							throw new FatalBeanException("Timed out after " + maxWait + "ms waiting for an instance of pooled bean '" +
+								beanName + "': all " + scope.getMaxSize() + " are in use", null);
+						}
+						wait(remaining);
+					}
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new FatalBeanException("Interrupted waiting for an instance of pooled bean '" + beanName + "'", ex);
+			}
+		}	// waitForInstance
+
+		synchronized void release(Object bean) {
+			if (borrowed.remove(bean) == null) {
+				logger.warn("Discarding instance of pooled bean '" + beanName + "' that wasn't borrowed from its current pool");
+				return;
+			}
+			activeCount--;
+			long now = System.currentTimeMillis();
+			idle.addFirst(new IdleInstance(bean, now));
+			evictIdle(now);
+			notifyAll();
+		}
+
+		void releaseForCurrentThread() {
+		}
+
+		synchronized void evictIdle() {
+			evictIdle(System.currentTimeMillis());
+		}
+
+		/**
+		 * Must be called holding the lock on this object
+		 */
+		private void evictIdle(long now) {
+			long maxIdle = scope.getMaxIdleMillis();
+			if (maxIdle == 0)
+				return;
+			while (!idle.isEmpty() && now - ((IdleInstance) idle.getLast()).returned > maxIdle) {
+				idle.removeLast();
+				discardedCount++;
+			}
+		}
+
+		synchronized BeanScopeStatistics getStatistics() {
+			return new BeanScopeStatistics(beanName, scope, activeCount, idle.size(), peakActiveCount,
+				requestCount, createdCount, discardedCount, waitCount, timeoutCount);
+		}
+
+	}	// inner class Pool
+
+
+	private static final class IdleInstance {
+
+		private final Object bean;
+
+		/** When the instance was returned to the pool */
+		private final long returned;
+
+		private IdleInstance(Object bean, long returned) {
+			this.bean = bean;
+			this.returned = returned;
+		}
+	}	// inner class IdleInstance
+
+
+	/**
+	 * One instance per thread. Requests take the lock only to count themselves.
+	 */
+	private static final class PerThread extends ScopedInstances {
+
+		private final ThreadLocal instances = new ThreadLocal();
+
+		private PerThread(AbstractBeanFactory factory, String beanName, AbstractBeanDefinition definition) {
+			super(factory, beanName, definition);
+		}
+
+		Object getInstance() throws BeansException {
+			synchronized (this) {
+				requestCount++;
+			}
+			Object bean = instances.get();
+			if (bean == null) {
+				bean = factory.createNewInstance(beanName);
+				instances.set(bean);
+				synchronized (this) {
+					createdCount++;
+					activated();
+				}
+			}
+			return bean;
+		}
+
+		/**
+		 * Discards the instance of the current thread if it is the given bean
+		 */
+		void release(Object bean) {
+			if (bean != null && instances.get() == bean)
+				releaseForCurrentThread();
+		}
+
+		void releaseForCurrentThread() {
+			if (instances.get() != null) {
+				instances.set(null);
+				synchronized (this) {
+					activeCount--;
+					discardedCount++;
+				}
+			}
+		}
+
+		void evictIdle() {
+		}
+
+		synchronized BeanScopeStatistics getStatistics() {
+			return new BeanScopeStatistics(beanName, scope, activeCount, 0, peakActiveCount,
+				requestCount, createdCount, discardedCount, 0, 0);
+		}
+
+	}	// inner class PerThread
+
+}	// class ScopedInstances
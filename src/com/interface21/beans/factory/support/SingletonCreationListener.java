@@ -0,0 +1,28 @@
+package com.interface21.beans.factory.support;
+
+import com.interface21.beans.BeansException;
+
+/**
+ * Callback invoked by AbstractBeanFactory when it creates the shared instance
+ * of a singleton, however the singleton was requested: through getBean(),
+ * as a reference from another bean, or by pre-instantiation.
+ * <br/>Used by application contexts to configure lazy-init singletons
+ * that are created after the context was refreshed.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see AbstractBeanFactory#setSingletonCreationListener(SingletonCreationListener)
+ */
+public interface SingletonCreationListener {
+
+	/**
+	 * Invoked once the singleton is fully initialized, before it's
+	 * cached and visible to other threads. May be invoked concurrently
+	 * for different singletons.
+	 * @param name name of the bean
+	 * @param bean the new shared instance
+	 * @throws BeansException if the bean can't be used: it won't be cached,
+	 * and the exception is thrown to the caller requesting the bean
+	 */
+	void singletonCreated(String name, Object bean) throws BeansException;
+
+}	// interface SingletonCreationListener
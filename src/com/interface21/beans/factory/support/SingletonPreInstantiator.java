@@ -0,0 +1,279 @@
+package com.interface21.beans.factory.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.interface21.beans.factory.BeanFactory;
+
+/**
+ * Creates the singletons in a bean factory in dependency order, using a
+ * number of threads. A singleton is created once all the singletons it
+ * references have been created, so singletons that don't depend on each other,
+ * directly or indirectly, are created in parallel. This pays off when
+ * singletons spend time in afterPropertiesSet(), for example in JNDI lookups
+ * or loading caches.
+ * <br/>The calling thread works too, so with one thread, singletons are created
+ * in the calling thread only. If a singleton can't be created, no more are
+ * started, and the exception is rethrown once those being created are finished.
+ * <br/>Singletons in a reference cycle are never ready: they are created
+ * at the end, in the calling thread, so that the factory reports the cycle.
+ * <br/>Package-visible; used once for each pre-instantiation.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see ListableBeanFactoryImpl#preInstantiateSingletons(int)
+ */
+final class SingletonPreInstantiator {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final BeanFactory beanFactory;
+
+	private final String[] beanNames;
+
+	/** Indices of the singletons each singleton depends on */
+	private final int[][] dependencies;
+
+	/** Indices of the singletons depending on each singleton */
+	private final List[] dependents;
+
+	/** Number of dependencies not yet created, for each singleton. Guarded by this */
+	private final int[] pendingDependencies;
+
+	/** Time taken to create each singleton, or -1 if not created. Guarded by this */
+	private final long[] creationMillis;
+
+	/** Indices of singletons whose dependencies have been created, as Integers. Guarded by this */
+	private final LinkedList ready = new LinkedList();
+
+	/** Number of singletons being created. Guarded by this */
+	private int running;
+
+	/** First exception or error thrown creating a singleton. Guarded by this */
+	private Throwable failure;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a new SingletonPreInstantiator
+	 * @param beanFactory factory to get singletons from
+	 * @param beanNames names of the singletons to create, in the order to try them
+	 * @param dependencies Map from each singleton name to a String[] of the names
+	 * of singletons it depends on. Names not in the beanNames array are ignored.
+	 */
+	SingletonPreInstantiator(BeanFactory beanFactory, String[] beanNames, Map dependencies) {
+		this.beanFactory = beanFactory;
+		this.beanNames = beanNames;
+		this.dependencies = new int[beanNames.length][];
+		this.dependents = new List[beanNames.length];
+		this.pendingDependencies = new int[beanNames.length];
+		this.creationMillis = new long[beanNames.length];
+
+		Map indices = new HashMap();
+		for (int i = 0; i < beanNames.length; i++) {
+			indices.put(beanNames[i], new Integer(i));
+			this.dependents[i] = new ArrayList(2);
+			this.creationMillis[i] = -1L;
+		}
+		for (int i = 0; i < beanNames.length; i++) {
+			String[] names = (String[]) dependencies.get(beanNames[i]);
+			List found = new ArrayList();
+			for (int j = 0; names != null && j < names.length; j++) {
+				Integer index = (Integer) indices.get(names[j]);
+				if (index != null && index.intValue() != i && !found.contains(index)) {
+					found.add(index);
+					this.dependents[index.intValue()].add(new Integer(i));
+				}
+			}
+			this.dependencies[i] = new int[found.size()];
+			for (int j = 0; j < found.size(); j++)
+				this.dependencies[i][j] = ((Integer) found.get(j)).intValue();
+			this.pendingDependencies[i] = found.size();
+			if (found.isEmpty())
+				this.ready.add(new Integer(i));
+		}
+	}
+
+	//---------------------------------------------------------------------
+	// Package-visible methods
+	//---------------------------------------------------------------------
+	/**
+	 * Create the singletons
+	 * @param threads number of threads to use, including the calling thread
+	 * @return report of the time taken
+	 * @throws RuntimeException the first exception thrown creating
+	 * a singleton, usually a BeansException
+	 */
+	StartupReport run(int threads) {
+		long start = System.currentTimeMillis();
+		Thread[] workers = new Thread[Math.max(threads, 1) - 1];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread("SingletonPreInstantiator-" + (i + 1)) {
+				public void run() {
+					work();
+				}
+			};
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		work();
+		boolean interrupted = false;
+		for (int i = 0; i < workers.length; i++) {
+			while (workers[i].isAlive()) {
+				try {
+					workers[i].join();
+				}
+				catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		synchronized (this) {
+			if (this.failure instanceof RuntimeException)
+				throw (RuntimeException) this.failure;
+			if (this.failure instanceof Error)
+				throw (Error) this.failure;
+		}
+
+		// Anything left is in a cycle: the factory will report it
+		for (int i = 0; i < this.beanNames.length; i++) {
+			if (this.creationMillis[i] < 0L)
+				created(i, create(i), false);
+		}
+		return createReport(Math.max(threads, 1), System.currentTimeMillis() - start);
+	}
+
+	//---------------------------------------------------------------------
+	// Implementation methods
+	//---------------------------------------------------------------------
+	/**
+	 * Create singletons as they become ready, until there are none left
+	 */
+	private void work() {
+		int i;
+		while ((i = take()) >= 0) {
+			try {
+				created(i, create(i), true);
+			}
+			catch (Throwable t) {
+				fail(t);
+			}
+		}
+	}
+
+	/**
+	 * Get the singleton from the factory, creating it if necessary
+	 * @return the time taken, in milliseconds
+	 */
+	private long create(int i) {
+		long start = System.currentTimeMillis();
+		this.beanFactory.getBean(this.beanNames[i]);
+		return System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Wait for a singleton to be ready
+	 * @return its index, or -1 if there's nothing more to do
+	 */
+	private synchronized int take() {
+		while (this.ready.isEmpty() && this.running > 0 && this.failure == null) {
+			try {
+				wait();
+			}
+			catch (InterruptedException ex) {
+				// Give up: the calling thread will create what's left
+				return -1;
+			}
+		}
+		if (this.failure != null || this.ready.isEmpty())
+			return -1;
+		this.running++;
+		return ((Integer) this.ready.removeFirst()).intValue();
+	}
+
+	/**
+	 * Record that a singleton has been created, and make ready
+	 * those depending on it whose dependencies are now all created
+	 * @param taken whether the singleton was taken from the ready list
+	 */
+	private synchronized void created(int i, long millis, boolean taken) {
+		this.creationMillis[i] = millis;
+		for (int j = 0; j < this.dependents[i].size(); j++) {
+			int dependent = ((Integer) this.dependents[i].get(j)).intValue();
+			if (--this.pendingDependencies[dependent] == 0 && this.creationMillis[dependent] < 0L)
+				this.ready.add(new Integer(dependent));
+		}
+		if (taken)
+			this.running--;
+		notifyAll();
+	}
+
+	private synchronized void fail(Throwable t) {
+		if (this.failure == null)
+			this.failure = t;
+		this.running--;
+		notifyAll();
+	}
+
+	/**
+	 * Find the critical path: the chain of dependencies
+	 * with the longest total creation time
+	 */
+	private StartupReport createReport(int threads, long elapsedMillis) {
+		int n = this.beanNames.length;
+		long[] finish = new long[n];
+		int[] predecessor = new int[n];
+		boolean[] done = new boolean[n];
+		long totalMillis = 0L;
+		int last = -1;
+		for (int i = 0; i < n; i++) {
+			totalMillis += this.creationMillis[i];
+			computeFinish(i, finish, predecessor, done);
+			if (last < 0 || finish[i] > finish[last])
+				last = i;
+		}
+
+		LinkedList path = new LinkedList();
+		for (int i = last; i >= 0; i = predecessor[i])
+			path.addFirst(new Integer(i));
+		String[] pathNames = new String[path.size()];
+		long[] pathMillis = new long[path.size()];
+		for (int i = 0; i < pathNames.length; i++) {
+			int index = ((Integer) path.get(i)).intValue();
+			pathNames[i] = this.beanNames[index];
+			pathMillis[i] = this.creationMillis[index];
+		}
+		return new StartupReport(n, threads, elapsedMillis, totalMillis, pathNames, pathMillis);
+	}
+
+	/**
+	 * Compute the earliest time the given singleton could be finished,
+	 * given unlimited threads: its creation time plus the latest finish
+	 * of its dependencies. The graph is acyclic once all singletons are created.
+	 */
+	private void computeFinish(int i, long[] finish, int[] predecessor, boolean[] done) {
+		if (done[i])
+			return;
+		// Mark first, so that we terminate even if the graph had a cycle
+		done[i] = true;
+		predecessor[i] = -1;
+		long latest = 0L;
+		for (int j = 0; j < this.dependencies[i].length; j++) {
+			int dependency = this.dependencies[i][j];
+			computeFinish(dependency, finish, predecessor, done);
+			if (predecessor[i] < 0 || finish[dependency] > latest) {
+				latest = finish[dependency];
+				predecessor[i] = dependency;
+			}
+		}
+		finish[i] = latest + this.creationMillis[i];
+	}
+
+}	// class SingletonPreInstantiator
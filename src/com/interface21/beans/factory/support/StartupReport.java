@@ -0,0 +1,115 @@
+package com.interface21.beans.factory.support;
+
+/**
+ * Report of the time taken to pre-instantiate the singletons in a bean factory.
+ * <br/>The critical path is the chain of dependent singletons taking the longest
+ * to create in sequence, each singleton being created only after those it
+ * references. However many threads are used, startup can't take less time than
+ * this: to start faster, shorten the critical path.
+ * <br/>Immutable.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see ListableBeanFactoryImpl#preInstantiateSingletons(int)
+ */
+public class StartupReport {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final int singletonCount;
+
+	private final int threads;
+
+	private final long elapsedMillis;
+
+	private final long totalCreationMillis;
+
+	private final String[] criticalPath;
+
+	private final long[] criticalPathMillis;
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a new StartupReport
+	 * @param singletonCount number of singletons pre-instantiated
+	 * @param threads number of threads used
+	 * @param elapsedMillis wall clock time taken
+	 * @param totalCreationMillis sum of the time taken to create each singleton
+	 * @param criticalPath names of the singletons on the critical path,
+	 * each depending on the one before
+	 * @param criticalPathMillis time taken to create each singleton on the critical path
+	 */
+	public StartupReport(int singletonCount, int threads, long elapsedMillis, long totalCreationMillis,
+				String[] criticalPath, long[] criticalPathMillis) {
+		this.singletonCount = singletonCount;
+		this.threads = threads;
+		this.elapsedMillis = elapsedMillis;
+		this.totalCreationMillis = totalCreationMillis;
+		this.criticalPath = criticalPath;
+		this.criticalPathMillis = criticalPathMillis;
+	}
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Return the number of singletons pre-instantiated
+	 */
+	public int getSingletonCount() {
+		return singletonCount;
+	}
+
+	/**
+	 * Return the number of threads used
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Return the wall clock time taken, in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * Return the sum of the time taken to create each singleton, in milliseconds:
+	 * roughly the time pre-instantiation would take in a single thread
+	 */
+	public long getTotalCreationMillis() {
+		return totalCreationMillis;
+	}
+
+	/**
+	 * Return the names of the singletons on the critical path, starting with
+	 * one that depends on no other singleton. Each depends on the one before.
+	 */
+	public String[] getCriticalPath() {
+		return (String[]) criticalPath.clone();
+	}
+
+	/**
+	 * Return the time taken to create the singletons on the critical path, in milliseconds
+	 */
+	public long getCriticalPathMillis() {
+		long millis = 0L;
+		for (int i = 0; i < criticalPathMillis.length; i++)
+			millis += criticalPathMillis[i];
+		return millis;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer("Created " + singletonCount + " singletons in " + elapsedMillis + "ms using " +
+			threads + " thread(s) (" + totalCreationMillis + "ms creating beans); critical path " + getCriticalPathMillis() + "ms: ");
+		for (int i = 0; i < criticalPath.length; i++) {
+			if (i > 0)
+				sb.append(" -> ");
+			sb.append(criticalPath[i]).append(" (").append(criticalPathMillis[i]).append("ms)");
+		}
+		return sb.toString();
+	}
+
+}	// class StartupReport
@@ -1,11 +1,7 @@
 package com.interface21.beans.factory.support;
 
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import com.interface21.beans.BeansException;
 import com.interface21.beans.factory.BeanNotOfRequiredTypeException;
@@ -24,6 +20,9 @@ public class StaticListableBeanFactory implements ListableBeanFactory {
 	/** Map from bean name to bean instance */
 	private Map beans = new HashMap();
 
+	/** Index from types to bean names */
+	private final BeanTypeIndex typeIndex = new BeanTypeIndex();
+
 
 	/**
 	 * @see com.interface21.beans.factory.ListableBeanFactory#getBeanDefinitionCount()
@@ -36,26 +35,14 @@ public class StaticListableBeanFactory implements ListableBeanFactory {
 	 * @see com.interface21.beans.factory.ListableBeanFactory#getBeanDefinitionNames()
 	 */
 	public String[] getBeanDefinitionNames() {
-		return (String[]) beans.keySet().toArray();
+		return (String[]) beans.keySet().toArray(new String[beans.size()]);
 	}
 
 	/**
 	 * @see com.interface21.beans.factory.ListableBeanFactory#getBeanDefinitionNames(Class)
 	 */
 	public String[] getBeanDefinitionNames(Class type) {
-		
-		Set keys = beans.keySet();
-		List matches = new LinkedList();
-		Iterator itr = keys.iterator();
-		while (itr.hasNext()) {
-			String name = (String) itr.next();
-			Class clazz = beans.get(name).getClass();
-			if (type.isAssignableFrom(clazz)) {
-				//log4jCategory.debug("Added " + name + " of type " + type);
-				matches.add(name);
-			}
-		}
-		return (String[]) matches.toArray(new String[matches.size()]);
+		return typeIndex.getNames(type);
 	}
 
 	/**
@@ -85,6 +72,7 @@ public class StaticListableBeanFactory implements ListableBeanFactory {
 	 */
 	public void addBean(String name, Object bean) {
 		this.beans.put(name, bean);
+		this.typeIndex.add(name, bean.getClass());
 	}
 	
 	
@@ -0,0 +1,248 @@
+package com.interface21.beans.factory.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.interface21.beans.BeansException;
+import com.interface21.beans.FatalBeanException;
+import com.interface21.beans.MutablePropertyValues;
+import com.interface21.beans.PropertyValue;
+
+/**
+ * Reads bean definitions from an XML document with SAX, registering each
+ * definition in a ListableBeanFactoryImpl as soon as its end tag is read.
+ * No document tree is built, so memory use doesn't grow with the size of the
+ * document, and one SAXParserFactory is shared by all readers.
+ * <br/>Understands the XML bean definition format:
+ * <pre>
+ * &lt;beans&gt;
+ *   &lt;bean name="rod" class="com.mycompany.Person" singleton="false"&gt;
+ *     &lt;property name="name"&gt;Rod&lt;/property&gt;
+ *     &lt;property name="spouse" beanRef="true"&gt;kerry&lt;/property&gt;
+ *     &lt;listener property="age" beanRef="ageListener"/&gt;
+ *   &lt;/bean&gt;
+ *   &lt;bean name="child" parent="rod"/&gt;
+ * &lt;/beans&gt;
+ * </pre>
+ * Beans may also have the attributes lazy-init="true", scope="pooled" or
+ * scope="thread", and pool-size, pool-max-idle and pool-max-wait,
+ * as for the special properties understood by ListableBeanFactoryImpl.
+ * Listeners are resolved once the whole document has been read.
+ * <br/>Threadsafe: a reader can read several documents at once.
+ * @author  Rod Johnson
+ * @since 18 October 2003
+ * @see ListableBeanFactoryImpl#registerBeanDefinitions(java.util.Map, String)
+ * @see BeanScope
+ */
+public class StreamingXmlBeanDefinitionReader {
+
+	/** Shared by all readers. Creating a factory looks up the implementation class each time */
+	private static final SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+
+	static {
+		parserFactory.setNamespaceAware(false);
+		parserFactory.setValidating(false);
+	}
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	protected final Logger logger = Logger.getLogger(getClass().getName());
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Register the bean definitions in the given document, replacing
+	 * any definitions of the same beans. Doesn't close the stream.
+	 * @param lbf factory to register the definitions in
+	 * @param is stream holding the document
+	 * @return the number of bean definitions registered
+	 * @throws IOException if the stream can't be read
+	 * @throws SAXException if the document isn't well-formed
+	 * @throws FatalBeanException if a bean definition is invalid,
+	 * such as a class that can't be found
+	 */
+	public int registerBeanDefinitions(ListableBeanFactoryImpl lbf, InputStream is)
+			throws IOException, SAXException, BeansException {
+		SAXParser parser;
+		try {
+			// SAXParserFactory isn't guaranteed to be threadsafe
+			synchronized (parserFactory) {
+				parser = parserFactory.newSAXParser();
+			}
+		}
+		catch (ParserConfigurationException ex) {
+			throw new SAXException("Cannot create SAX parser", ex);
+		}
+		Handler handler = new Handler(lbf);
+		parser.parse(new InputSource(is), handler);
+		handler.registerListeners();
+		logger.info("Registered " + handler.count + " bean definitions from XML");
+		return handler.count;
+	}
+
+	public String toString() {
+		return "StreamingXmlBeanDefinitionReader";
+	}
+
+
+	/**
+	 * Builds each definition from the events for its element
+	 */
+	private class Handler extends DefaultHandler {
+
+		private final ListableBeanFactoryImpl lbf;
+
+		/** Classes already loaded for this document: many beans often share a class */
+		private final Map classes = new HashMap();
+
+		/** ListenerRegistration objects, to resolve at the end of the document */
+		private final List listeners = new ArrayList();
+
+		private Locator locator;
+
+		private int count;
+
+		// State of the current bean
+		private String beanName;
+		private String classname;
+		private String parent;
+		private boolean singleton;
+		private boolean lazyInit;
+		private BeanScope scope;
+		private MutablePropertyValues pvs;
+
+		// State of the current property
+		private String propertyName;
+		private boolean beanRef;
+		private StringBuffer text = new StringBuffer();
+
+		private Handler(ListableBeanFactoryImpl lbf) {
+			this.lbf = lbf;
+		}
+
+		public void setDocumentLocator(Locator locator) {
+			this.locator = locator;
+		}
+
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			if (qName.equals("bean")) {
+				beanName = attributes.getValue("name");
+				if (beanName == null)
+					throw error("Bean without a name");
+				classname = attributes.getValue("class");
+				parent = attributes.getValue("parent");
+				singleton = !"false".equalsIgnoreCase(attributes.getValue("singleton"));
+				lazyInit = "true".equalsIgnoreCase(attributes.getValue("lazy-init"));
+				scope = BeanScope.parse(beanName, attributes.getValue("scope"), attributes.getValue("pool-size"),
+					attributes.getValue("pool-max-idle"), attributes.getValue("pool-max-wait"));
+				pvs = new MutablePropertyValues();
+			}
+			else if (qName.equals("property")) {
+				if (pvs == null)
+					throw error("Property outside a bean");
+				propertyName = attributes.getValue("name");
+				if (propertyName == null)
+					throw error("Property of bean '" + beanName + "' without a name");
+				beanRef = "true".equalsIgnoreCase(attributes.getValue("beanRef"));
+				text.setLength(0);
+			}
+			else if (qName.equals("listener")) {
+				String ref = attributes.getValue("beanRef");
+				if (pvs == null || ref == null)
+					throw error("Listener must be in a bean and have a beanRef");
+				listeners.add(new ListenerRegistration(beanName, attributes.getValue("property"), ref));
+			}
+			else if (!qName.equals("beans")) {
+				logger.warn("Ignoring unknown element <" + qName + ">" + getLocation());
+			}
+		}
+
+		public void characters(char[] ch, int start, int length) {
+			if (propertyName != null)
+				text.append(ch, start, length);
+		}
+
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (qName.equals("property") && propertyName != null) {
+				Object value = text.toString();
+				if (beanRef)
+					value = new RuntimeBeanReference(((String) value).trim());
+				pvs.addPropertyValue(new PropertyValue(propertyName, value));
+				propertyName = null;
+			}
+			else if (qName.equals("bean") && pvs != null) {
+				AbstractBeanDefinition bd = lbf.createBeanDefinition(beanName, classname, parent, pvs,
+					singleton && scope == null, lazyInit, classes);
+				bd.setScope(scope);
+				lbf.registerBeanDefinition(beanName, bd);
+				count++;
+				pvs = null;
+			}
+		}
+
+		/**
+		 * Add the listeners to their bean definitions, now that
+		 * all the listener beans are defined
+		 */
+		private void registerListeners() throws BeansException {
+			for (int i = 0; i < listeners.size(); i++) {
+				ListenerRegistration lr = (ListenerRegistration) listeners.get(i);
+				Object listener = lbf.getBean(lr.listenerBeanName);
+				if (!(listener instanceof EventListener))
+					throw new FatalBeanException("Listener bean '" + lr.listenerBeanName + "' of bean '" + lr.beanName +
+						"' isn't an EventListener", null);
+				AbstractBeanDefinition bd = (AbstractBeanDefinition) lbf.getBeanDefinition(lr.beanName);
+				if (lr.propertyName != null)
+					bd.addListener(lr.propertyName, (EventListener) listener);
+				else
+					bd.addListener((EventListener) listener);
+				// Re-register so that no instantiation plan ignores the listener
+				lbf.registerBeanDefinition(lr.beanName, bd);
+			}
+		}
+
+		private SAXException error(String message) {
+			return new SAXException(message + getLocation());
+		}
+
+		private String getLocation() {
+			return (locator != null) ? " at line " + locator.getLineNumber() : "";
+		}
+
+	}	// inner class Handler
+
+
+	private static class ListenerRegistration {
+
+		private final String beanName;
+
+		private final String propertyName;
+
+		private final String listenerBeanName;
+
+		private ListenerRegistration(String beanName, String propertyName, String listenerBeanName) {
+			this.beanName = beanName;
+			this.propertyName = propertyName;
+			this.listenerBeanName = listenerBeanName;
+		}
+	}	// inner class ListenerRegistration
+
+}	// class StreamingXmlBeanDefinitionReader
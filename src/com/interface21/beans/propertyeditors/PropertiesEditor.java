@@ -22,6 +22,17 @@ public class PropertiesEditor extends PropertyEditorSupport {
 	 * @see PropertyEditor#setAsText(String)
 	 */
 	public void setAsText(String s) throws IllegalArgumentException {
+		setValue(parse(s));
+	}
+	
+	/**
+	 * Parse a String in the format understood by this editor.
+	 * Threadsafe, so usable without an editor instance.
+	 * @param s String to parse
+	 * @return a new Properties object
+	 * @throws IllegalArgumentException if the String is null
+	 */
+	public static Properties parse(String s) throws IllegalArgumentException {
 		Properties props = new Properties();
 		
 		if (s == null)
@@ -59,7 +70,7 @@ public class PropertiesEditor extends PropertyEditorSupport {
 //			throw new IllegalArgumentException("Failed to read String");
 //		}
 
-		setValue(props);
+		return props;
 	}
 
 }
@@ -7,7 +7,8 @@ import com.interface21.util.StringUtils;
 /**
  * Properties editor for String[] type.
  * Strings must be in CSV format.
- * This property editor is registered by BeanWrapperImpl.
+ * BeanWrapperImpl converts to String[] with the same format through
+ * ConversionService, without needing this editor to be registered.
  * @author Rod Johnson
  */
 public class StringArrayPropertyEditor extends PropertyEditorSupport {
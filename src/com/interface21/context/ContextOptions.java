@@ -14,6 +14,12 @@ public class ContextOptions {
 	/** Holds value of property reloadable. */
 	private boolean reloadable = true;
 	
+	/** Holds value of property preInstantiationThreads. */
+	private int preInstantiationThreads = 1;
+	
+	/** Holds value of property lazyInit. */
+	private boolean lazyInit;
+	
 	/** Creates new ContextOptions */
     public ContextOptions() {
     }
@@ -38,10 +44,47 @@ public class ContextOptions {
 	}
 	
 	
+	/**
+	 * Return the number of threads the context uses to create its singletons
+	 * at startup. Singletons that don't depend on each other are created
+	 * in parallel if this is more than 1. Default is 1.
+	 * @return the number of threads used to create singletons
+	 */
+	public int getPreInstantiationThreads() {
+		return preInstantiationThreads;
+	}
+	
+	/** Setter for property preInstantiationThreads.
+	 * @param preInstantiationThreads New value of property preInstantiationThreads.
+	 */
+	public void setPreInstantiationThreads(int preInstantiationThreads) {
+		this.preInstantiationThreads = preInstantiationThreads;
+	}
+	
+	
+	/**
+	 * Should all singletons be created on the first request for them,
+	 * rather than when the context starts? Default is false: only singletons
+	 * whose definitions are marked lazy-init are deferred. Listeners and
+	 * the MessageSource are always created at startup.
+	 * @return whether all singletons are lazy-init
+	 */
+	public boolean isLazyInit() {
+		return lazyInit;
+	}
+	
+	/** Setter for property lazyInit.
+	 * @param lazyInit New value of property lazyInit.
+	 */
+	public void setLazyInit(boolean lazyInit) {
+		this.lazyInit = lazyInit;
+	}
+	
+	
 	/** Show the state of this object
 	 */
 	public String toString() {
-		return getClass().getName() + ": reloadable=" + reloadable;
+		return getClass().getName() + ": reloadable=" + reloadable + "; preInstantiationThreads=" + preInstantiationThreads + "; lazyInit=" + lazyInit;
 	}
 	
 }
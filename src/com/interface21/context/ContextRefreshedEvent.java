@@ -0,0 +1,36 @@
+/**
+ * Generic framework code included with 
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002). 
+ * This code is free to use and modify. 
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.context;
+
+/**
+ * Event published when an ApplicationContext has been loaded or
+ * refreshed, once all its singleton beans have been instantiated
+ * and configured.
+ * @author  Rod Johnson
+ */
+public class ContextRefreshedEvent extends ApplicationEvent {
+
+	/**
+	 * Creates a new ContextRefreshedEvent
+	 * @param ctx context that has been refreshed
+	 */
+	public ContextRefreshedEvent(ApplicationContext ctx) {
+		super(ctx);
+	}
+
+	/**
+	 * Return the context that has been refreshed
+	 * @return the context that has been refreshed
+	 */
+	public ApplicationContext getApplicationContext() {
+		return (ApplicationContext) getSource();
+	}
+
+}	// class ContextRefreshedEvent
@@ -18,6 +18,8 @@ import org.apache.log4j.Logger;
 import com.interface21.beans.BeansException;
 import com.interface21.beans.factory.ListableBeanFactory;
 import com.interface21.beans.factory.NoSuchBeanDefinitionException;
+import com.interface21.beans.factory.support.ListableBeanFactoryImpl;
+import com.interface21.beans.factory.support.SingletonCreationListener;
 import com.interface21.context.ApplicationContext;
 import com.interface21.context.ApplicationContextAware;
 import com.interface21.context.ApplicationContextException;
@@ -25,6 +27,7 @@ import com.interface21.context.ApplicationEvent;
 import com.interface21.context.ApplicationEventMulticaster;
 import com.interface21.context.ApplicationListener;
 import com.interface21.context.ContextOptions;
+import com.interface21.context.ContextRefreshedEvent;
 import com.interface21.context.MessageSource;
 import com.interface21.context.NestingMessageSource;
 import com.interface21.context.NoSuchMessageException;
@@ -180,6 +183,7 @@ public abstract class AbstractApplicationContext implements ApplicationContext {
 		}
 		refreshListeners();				
 		configureAllManagedObjects();
+		publishEvent(new ContextRefreshedEvent(this));
 	}	// refresh
 	
 	
@@ -202,17 +206,41 @@ public abstract class AbstractApplicationContext implements ApplicationContext {
 	/**
 	 * Invoke the setApplicationContext() callback on all objects
 	 * in the context. This involves instantiating the objects.
-	 * Only singletons will be instantiated eagerly.
+	 * Only singletons will be instantiated eagerly: if the bean factory
+	 * is a ListableBeanFactoryImpl, in dependency order, using the
+	 * number of threads given by the context options. Lazy-init singletons
+	 * not yet created are left alone: the bean factory notifies this context
+	 * when it creates them, however they are requested, and they are
+	 * configured then.
+	 * @see ContextOptions#getPreInstantiationThreads()
+	 * @see ContextOptions#isLazyInit()
 	 */
 	private void configureAllManagedObjects() throws ApplicationContextException {
 		logger.info("Configuring singleton beans in context");
+		ListableBeanFactoryImpl lbf = null;
+		if (getBeanFactory() instanceof ListableBeanFactoryImpl) {
+			lbf = (ListableBeanFactoryImpl) getBeanFactory();
+			if (this.contextOptions.isLazyInit())
+				lbf.setDefaultLazyInit(true);
+			lbf.setSingletonCreationListener(new SingletonCreationListener() {
+				public void singletonCreated(String name, Object bean) {
+					configureManagedObject(bean);
+				}
+			});
+			try {
+				lbf.preInstantiateSingletons(this.contextOptions.getPreInstantiationThreads());
+			}
+			catch (BeansException ex) {
+				throw new ApplicationContextException("Couldn't instantiate singletons", ex);
+			}
+		}
 		String[] beanNames = getBeanDefinitionNames();
 		logger.debug("Found " + beanNames.length + " listeners in bean factory; names=" + 
 		StringUtils.arrayToDelimitedString(beanNames, ",") + "]");
 		for (int i = 0; i < beanNames.length; i++) {
 			String beanName = beanNames[i];
 			
-			if (isSingleton(beanName)) {
+			if (isSingleton(beanName) && (lbf == null || lbf.containsSingleton(beanName))) {
 			
 				try {
 					Object bean = getBeanFactory().getBean(beanName);
@@ -364,6 +392,18 @@ public abstract class AbstractApplicationContext implements ApplicationContext {
 		return getBeanFactory().isSingleton(name);
 	}
 	
+	/**
+	 * Is the given bean a singleton that this context doesn't create
+	 * when it's refreshed? Always false unless the bean factory
+	 * is a ListableBeanFactoryImpl.
+	 * @see ListableBeanFactoryImpl#isLazyInit(String)
+	 */
+	public boolean isLazyInit(String name) throws NoSuchBeanDefinitionException {
+		if (getBeanFactory() instanceof ListableBeanFactoryImpl)
+			return ((ListableBeanFactoryImpl) getBeanFactory()).isLazyInit(name);
+		return false;
+	}
+
 	/**
 	 * @see ApplicationContext#sharedObject(String)
 	 */
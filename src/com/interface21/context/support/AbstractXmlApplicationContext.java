@@ -1,6 +1,8 @@
 
 package com.interface21.context.support;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -15,6 +17,9 @@ import org.xml.sax.SAXException;
 import com.interface21.beans.BeansException;
 import com.interface21.beans.factory.ListableBeanFactory;
 import com.interface21.beans.factory.NoSuchBeanDefinitionException;
+import com.interface21.beans.factory.support.BeanDefinitionSnapshotStore;
+import com.interface21.beans.factory.support.ListableBeanFactoryImpl;
+import com.interface21.beans.factory.support.StreamingXmlBeanDefinitionReader;
 import com.interface21.beans.factory.support.XmlBeanFactory;
 import com.interface21.context.ApplicationContext;
 import com.interface21.context.ApplicationContextException;
@@ -29,12 +34,21 @@ import com.interface21.context.ApplicationContextException;
  */
 public abstract class AbstractXmlApplicationContext extends AbstractApplicationContext  {
 
+	/** Shared by all contexts. Creating a factory looks up the implementation class each time */
+	private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+
 	//---------------------------------------------------------------------
 	// Instance data
 	//---------------------------------------------------------------------
 	/** Default BeanFactory for this context */
 	private ListableBeanFactory listableBeanFactory; 
 
+	/** Store of parsed bean definitions. May be null */
+	private BeanDefinitionSnapshotStore snapshotStore;
+
+	/** Should definitions be read with SAX rather than parsed into a DOM? */
+	private boolean streamingXml;
+
 
 	//---------------------------------------------------------------------
 	// Constructors
@@ -46,6 +60,38 @@ public abstract class AbstractXmlApplicationContext extends AbstractApplicationC
 		super(parent);
 	}
 	
+	//---------------------------------------------------------------------
+	// Bean properties
+	//---------------------------------------------------------------------
+	/**
+	 * Set a store of snapshots of parsed bean definitions. If there's a snapshot
+	 * for the current XML document, the definitions are registered from it,
+	 * without parsing the document. Otherwise the document is parsed and
+	 * a snapshot written for next time. Default is none.
+	 * @param snapshotStore store of snapshots
+	 */
+	public void setSnapshotStore(BeanDefinitionSnapshotStore snapshotStore) {
+		this.snapshotStore = snapshotStore;
+	}
+
+	/**
+	 * Set whether bean definitions should be read with SAX, each registered as
+	 * soon as it's read, rather than parsing the whole document into a DOM for
+	 * XmlBeanFactory. Uses much less memory for large documents. Default is false.
+	 * Must be set before the context is refreshed.
+	 * @see StreamingXmlBeanDefinitionReader
+	 */
+	public void setStreamingXml(boolean streamingXml) {
+		this.streamingXml = streamingXml;
+	}
+
+	/**
+	 * Are bean definitions read with SAX rather than parsed into a DOM?
+	 */
+	public boolean isStreamingXml() {
+		return streamingXml;
+	}
+
 	//---------------------------------------------------------------------
 	// Implementation of WebApplicationConfig
 	//---------------------------------------------------------------------
@@ -55,9 +101,39 @@ public abstract class AbstractXmlApplicationContext extends AbstractApplicationC
 		try {
 			// Supports remote as well as local URLs
 			is = getInputStreamForBeanFactory();
-			DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			Document doc = db.parse(is);
-			parseDocument(doc);
+			byte[] source = null;
+			String snapshotKey = null;
+			if (this.snapshotStore != null) {
+				source = readFully(is);
+				snapshotKey = BeanDefinitionSnapshotStore.computeKey(source);
+				ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+				if (this.snapshotStore.load(snapshotKey, lbf) >= 0) {
+					listableBeanFactory = lbf;
+					logger.info("**** BeanFactory for application config is [" + listableBeanFactory + "], from snapshot");
+					return;
+				}
+			}
+			InputStream documentStream = (source != null) ? new ByteArrayInputStream(source) : is;
+			if (this.streamingXml) {
+				ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+				new StreamingXmlBeanDefinitionReader().registerBeanDefinitions(lbf, documentStream);
+				listableBeanFactory = lbf;
+				logger.info("**** BeanFactory for application config is [" + listableBeanFactory + "], read with SAX");
+			}
+			else {
+				DocumentBuilder db;
+				// DocumentBuilderFactory isn't guaranteed to be threadsafe
+				synchronized (documentBuilderFactory) {
+					db = documentBuilderFactory.newDocumentBuilder();
+				}
+				parseDocument(db.parse(documentStream));
+			}
+			if (snapshotKey != null && listableBeanFactory instanceof ListableBeanFactoryImpl)
+				this.snapshotStore.save(snapshotKey, (ListableBeanFactoryImpl) listableBeanFactory,
+					listableBeanFactory.getBeanDefinitionNames());
+		}
+		catch (BeansException ex) {
+			throw new ApplicationContextException("Cannot load bean definitions for " + identifier, ex);
 		}
 		catch (ParserConfigurationException ex) {
 			throw new ApplicationContextException("ParserConfiguration exception for " + identifier, ex);
@@ -78,6 +154,19 @@ public abstract class AbstractXmlApplicationContext extends AbstractApplicationC
 			}
 		}
 	}   // refresh
+
+
+	/**
+	 * Read the whole of a stream, leaving it open
+	 */
+	private static byte[] readFully(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) != -1)
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
 	
 
 
@@ -0,0 +1,40 @@
+/**
+ * Generic framework code included with 
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002). 
+ * This code is free to use and modify. 
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.jdbc.core;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Callback interface used by the JdbcTemplate class's batchUpdate() method.
+ * Implementations set the parameters of each statement in a batch
+ * on a single PreparedStatement, which JdbcTemplate creates once.
+ * <br>As with the other callback interfaces, implementations don't
+ * need to worry about handling SQLExceptions.
+ * @author Rod Johnson
+ * @see JdbcTemplate#batchUpdate(String, BatchPreparedStatementSetter)
+ */
+public interface BatchPreparedStatementSetter {
+
+	/**
+	 * Return the number of statements in the batch
+	 */
+	int getBatchSize();
+
+	/**
+	 * Set the parameters of the statement with the given index in the batch
+	 * @param ps PreparedStatement to set parameters on
+	 * @param i index (from 0) of the statement in the batch
+	 * @throws SQLException if a SQLException is encountered setting
+	 * parameter values (that is, there's no need to catch SQLException)
+	 */
+	void setValues(PreparedStatement ps, int i) throws SQLException;
+
+}
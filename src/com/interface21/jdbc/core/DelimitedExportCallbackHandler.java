@@ -0,0 +1,431 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.jdbc.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+
+import com.interface21.dao.DataAccessResourceFailureException;
+
+/**
+ * RowCountCallbackHandler that writes each row as a line of delimited
+ * text, such as CSV or TSV, in UTF-8. Rows are formatted straight into a
+ * reusable byte buffer, which is written to the OutputStream in large chunks.
+ * <br>Column values are extracted with typed getters chosen once from the
+ * column types reported by our superclass, so numeric, boolean and date
+ * columns are formatted without creating any objects. Character columns
+ * are encoded directly from the String returned by the driver.
+ * <br>Fields containing the delimiter, the quote character or line breaks
+ * are quoted, with embedded quotes doubled, as in RFC 4180.
+ * Null values are written as empty fields.
+ * <br>Callers must invoke flush() after the query has completed to write the
+ * last partial buffer. IOExceptions are thrown as DataAccessResourceFailureExceptions.
+ * @author Rod Johnson
+ * @see com.interface21.jdbc.object.DelimitedExport
+ */
+public class DelimitedExportCallbackHandler extends RowCountCallbackHandler implements MetaDataAwareRowCallbackHandler {
+
+	/** Default buffer size: 64 KB */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	// Ways of extracting and formatting columns
+	private static final int STRING = 0;
+	private static final int INT = 1;
+	private static final int LONG = 2;
+	private static final int BOOLEAN = 3;
+	private static final int DATE = 4;
+	private static final int TIME = 5;
+	private static final int TIMESTAMP = 6;
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private final OutputStream out;
+
+	private final byte[] buffer;
+
+	/** Number of bytes in the buffer */
+	private int count;
+
+	private char delimiter = ',';
+
+	private char quote = '"';
+
+	private byte[] lineSeparator = { '\n' };
+
+	private boolean header;
+
+	private boolean headerWritten;
+
+	/** How to extract each column, indexed from 0 */
+	private int[] columnKinds;
+
+	/** Reused to format dates */
+	private final Calendar calendar = Calendar.getInstance();
+
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a new handler writing comma-separated values
+	 * @param out stream to write to. It will not be closed.
+	 */
+	public DelimitedExportCallbackHandler(OutputStream out) {
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a new handler writing comma-separated values
+	 * @param out stream to write to. It will not be closed.
+	 * @param bufferSize size of the buffer in bytes
+	 */
+	public DelimitedExportCallbackHandler(OutputStream out, int bufferSize) {
+		if (bufferSize < 32)
+			throw new IllegalArgumentException("bufferSize must be at least 32 bytes");
+		this.out = out;
+		this.buffer = new byte[bufferSize];
+	}
+
+
+	//---------------------------------------------------------------------
+	// Bean properties
+	//---------------------------------------------------------------------
+	/**
+	 * Set the field delimiter. Default is a comma; use a tab for TSV.
+	 * Must be an ASCII character.
+	 */
+	public void setDelimiter(char delimiter) {
+		if (delimiter >= 0x80)
+			throw new IllegalArgumentException("Delimiter must be an ASCII character");
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Set the quote character. Default is a double quote.
+	 * Must be an ASCII character.
+	 */
+	public void setQuote(char quote) {
+		if (quote >= 0x80)
+			throw new IllegalArgumentException("Quote must be an ASCII character");
+		this.quote = quote;
+	}
+
+	/**
+	 * Set the line separator. Default is a newline.
+	 * Must consist of ASCII characters.
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = new byte[lineSeparator.length()];
+		for (int i = 0; i < lineSeparator.length(); i++) {
+			if (lineSeparator.charAt(i) >= 0x80)
+				throw new IllegalArgumentException("Line separator must consist of ASCII characters");
+			this.lineSeparator[i] = (byte) lineSeparator.charAt(i);
+		}
+	}
+
+	/**
+	 * Set whether to write a header line of column names
+	 * before the first row. Default is false. When run by JdbcTemplate,
+	 * the header is written even if the query returns no rows.
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of MetaDataAwareRowCallbackHandler
+	//---------------------------------------------------------------------
+	/**
+	 * Write the header line, if required, so that an export
+	 * of a query that returns no rows still has it
+	 */
+	public void setMetaData(ResultSetMetaData rsmd) throws SQLException {
+		if (!this.header || this.headerWritten)
+			return;
+		String[] names = new String[rsmd.getColumnCount()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = rsmd.getColumnName(i + 1);
+		}
+		try {
+			writeHeader(names);
+		}
+		catch (IOException ex) {
+			throw new DataAccessResourceFailureException("Couldn't write header of export", ex);
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of RowCountCallbackHandler
+	//---------------------------------------------------------------------
+	/**
+	 * Format the current row into the buffer
+	 */
+	protected void processRow(ResultSet rs, int rowNum) throws SQLException {
+		try {
+			if (rowNum == 0) {
+				this.columnKinds = columnKinds(getColumnTypes());
+				// Not yet written if we weren't given the metadata
+				if (this.header && !this.headerWritten)
+					writeHeader(getColumnNames());
+			}
+			for (int i = 0; i < this.columnKinds.length; i++) {
+				if (i > 0)
+					writeAscii(this.delimiter);
+				writeColumn(rs, i + 1, this.columnKinds[i]);
+			}
+			writeLineSeparator();
+		}
+		catch (IOException ex) {
+			throw new DataAccessResourceFailureException("Couldn't write row " + rowNum + " of export", ex);
+		}
+	}
+
+	/**
+	 * Write any buffered output and flush the underlying stream.
+	 * Must be invoked once the query has completed.
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		this.out.flush();
+	}
+
+
+	//---------------------------------------------------------------------
+	// Formatting
+	//---------------------------------------------------------------------
+	private int[] columnKinds(int[] types) {
+		int[] kinds = new int[types.length];
+		for (int i = 0; i < types.length; i++) {
+			switch (types[i]) {
+				case Types.TINYINT:
+				case Types.SMALLINT:
+				case Types.INTEGER:
+					kinds[i] = INT;
+					break;
+				case Types.BIGINT:
+					kinds[i] = LONG;
+					break;
+				case Types.BIT:
+					kinds[i] = BOOLEAN;
+					break;
+				case Types.DATE:
+					kinds[i] = DATE;
+					break;
+				case Types.TIME:
+					kinds[i] = TIME;
+					break;
+				case Types.TIMESTAMP:
+					kinds[i] = TIMESTAMP;
+					break;
+				default:
+					// Decimal and floating point numbers are formatted by the driver
+					kinds[i] = STRING;
+			}
+		}
+		return kinds;
+	}
+
+	private void writeHeader(String[] names) throws IOException {
+		for (int i = 0; i < names.length; i++) {
+			if (i > 0)
+				writeAscii(this.delimiter);
+			writeString(names[i]);
+		}
+		writeLineSeparator();
+		this.headerWritten = true;
+	}
+
+	private void writeColumn(ResultSet rs, int index, int kind) throws SQLException, IOException {
+		switch (kind) {
+			case INT:
+				int i = rs.getInt(index);
+				if (!rs.wasNull())
+					writeLong(i);
+				break;
+			case LONG:
+				long l = rs.getLong(index);
+				if (!rs.wasNull())
+					writeLong(l);
+				break;
+			case BOOLEAN:
+				boolean b = rs.getBoolean(index);
+				if (!rs.wasNull())
+					writeAscii(b ? "true" : "false");
+				break;
+			case DATE:
+				java.util.Date date = rs.getDate(index);
+				if (date != null) {
+					this.calendar.setTime(date);
+					writeDate();
+				}
+				break;
+			case TIME:
+				date = rs.getTime(index);
+				if (date != null) {
+					this.calendar.setTime(date);
+					writeTime();
+				}
+				break;
+			case TIMESTAMP:
+				Timestamp ts = rs.getTimestamp(index);
+				if (ts != null) {
+					this.calendar.setTime(ts);
+					writeDate();
+					writeAscii(' ');
+					writeTime();
+					int millis = ts.getNanos() / 1000000;
+					if (millis != 0) {
+						writeAscii('.');
+						writeDigits(millis, 3);
+					}
+				}
+				break;
+			default:
+				String s = rs.getString(index);
+				if (s != null)
+					writeString(s);
+		}
+	}
+
+	/** Write the calendar's date as yyyy-MM-dd */
+	private void writeDate() throws IOException {
+		writeDigits(this.calendar.get(Calendar.YEAR), 4);
+		writeAscii('-');
+		writeDigits(this.calendar.get(Calendar.MONTH) + 1, 2);
+		writeAscii('-');
+		writeDigits(this.calendar.get(Calendar.DAY_OF_MONTH), 2);
+	}
+
+	/** Write the calendar's time as HH:mm:ss */
+	private void writeTime() throws IOException {
+		writeDigits(this.calendar.get(Calendar.HOUR_OF_DAY), 2);
+		writeAscii(':');
+		writeDigits(this.calendar.get(Calendar.MINUTE), 2);
+		writeAscii(':');
+		writeDigits(this.calendar.get(Calendar.SECOND), 2);
+	}
+
+	/** Write a non-negative number, zero-padded to the given width */
+	private void writeDigits(int value, int width) throws IOException {
+		ensureCapacity(width);
+		for (int i = width - 1; i >= 0; i--) {
+			this.buffer[this.count + i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		this.count += width;
+	}
+
+	private void writeLong(long value) throws IOException {
+		// Long.MIN_VALUE has 20 characters
+		ensureCapacity(20);
+		if (value == Long.MIN_VALUE) {
+			writeAscii("-9223372036854775808");
+			return;
+		}
+		if (value < 0) {
+			this.buffer[this.count++] = '-';
+			value = -value;
+		}
+		int start = this.count;
+		do {
+			this.buffer[this.count++] = (byte) ('0' + (int) (value % 10));
+			value /= 10;
+		}
+		while (value != 0);
+		// Digits were written in reverse order
+		for (int i = start, j = this.count - 1; i < j; i++, j--) {
+			byte tmp = this.buffer[i];
+			this.buffer[i] = this.buffer[j];
+			this.buffer[j] = tmp;
+		}
+	}
+
+	/**
+	 * Write a String in UTF-8, quoting it if necessary
+	 */
+	private void writeString(String s) throws IOException {
+		int len = s.length();
+		boolean quoted = false;
+		for (int i = 0; i < len && !quoted; i++) {
+			char c = s.charAt(i);
+			quoted = (c == this.delimiter || c == this.quote || c == '\n' || c == '\r');
+		}
+		if (quoted)
+			writeAscii(this.quote);
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			ensureCapacity(4);
+			if (c < 0x80) {
+				if (c == this.quote && quoted)
+					this.buffer[this.count++] = (byte) c;
+				this.buffer[this.count++] = (byte) c;
+			}
+			else if (c < 0x800) {
+				this.buffer[this.count++] = (byte) (0xC0 | (c >> 6));
+				this.buffer[this.count++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if (c >= 0xD800 && c <= 0xDBFF && i + 1 < len) {
+				// Surrogate pair: encode the code point in four bytes
+				int cp = 0x10000 + ((c - 0xD800) << 10) + (s.charAt(++i) - 0xDC00);
+				this.buffer[this.count++] = (byte) (0xF0 | (cp >> 18));
+				this.buffer[this.count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				this.buffer[this.count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				this.buffer[this.count++] = (byte) (0x80 | (cp & 0x3F));
+			}
+			else {
+				this.buffer[this.count++] = (byte) (0xE0 | (c >> 12));
+				this.buffer[this.count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				this.buffer[this.count++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		if (quoted)
+			writeAscii(this.quote);
+	}
+
+	private void writeAscii(String s) throws IOException {
+		ensureCapacity(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			this.buffer[this.count++] = (byte) s.charAt(i);
+		}
+	}
+
+	private void writeAscii(char c) throws IOException {
+		ensureCapacity(1);
+		this.buffer[this.count++] = (byte) c;
+	}
+
+	private void writeLineSeparator() throws IOException {
+		ensureCapacity(this.lineSeparator.length);
+		System.arraycopy(this.lineSeparator, 0, this.buffer, this.count, this.lineSeparator.length);
+		this.count += this.lineSeparator.length;
+	}
+
+	private void ensureCapacity(int n) throws IOException {
+		if (this.count + n > this.buffer.length)
+			flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException {
+		if (this.count > 0) {
+			this.out.write(this.buffer, 0, this.count);
+			this.count = 0;
+		}
+	}
+
+}	// class DelimitedExportCallbackHandler
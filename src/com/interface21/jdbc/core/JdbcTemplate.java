@@ -150,6 +150,8 @@ public class JdbcTemplate {
 			if (logger.isInfoEnabled())
 				logger.info("Executing static SQL query '" + sql + "'");
 
+			if (callbackHandler instanceof MetaDataAwareRowCallbackHandler)
+				((MetaDataAwareRowCallbackHandler) callbackHandler).setMetaData(rs.getMetaData());
 			while (rs.next()) {
 				callbackHandler.processRow(rs);
 			}
@@ -189,6 +191,8 @@ public class JdbcTemplate {
 				logger.info("Executing SQL query using PreparedStatement: [" + psc + "]");
 			rs = ps.executeQuery();
 
+			if (callbackHandler instanceof MetaDataAwareRowCallbackHandler)
+				((MetaDataAwareRowCallbackHandler) callbackHandler).setMetaData(rs.getMetaData());
 			while (rs.next()) {
 				if (logger.isDebugEnabled())
 					logger.debug("Processing row of ResultSet");
@@ -268,30 +272,40 @@ public class JdbcTemplate {
 	}	// update[]
 
 	
-	// Batch updates only work with static SQL, so we don't favour this approach
-	/*public int[] batchUpdate(String[] sql) throws SQLException {	 
+	/**
+	 * Issue multiple updates on a single PreparedStatement, using JDBC 2.0
+	 * batch updates and a BatchPreparedStatementSetter to set parameter values.
+	 * <br>The whole batch is sent to the database in one round trip.
+	 * @param sql SQL defining the PreparedStatement that will be reused.
+	 * @param setter object to set parameters on the PreparedStatement
+	 * created by this method
+	 * @return an array of the number of rows affected by each statement
+	 * @throws DataAccessException if there is any problem issuing the update
+	 */
+	public int[] batchUpdate(String sql, BatchPreparedStatementSetter setter) throws DataAccessException {
 		Connection con = null;
 		try {
-			con = connectionFactory.getConnection();
-			Statement s = con.createStatement();
-			//int retval = ps.executeUpdate();
-			//** TEMP FIX RETURN VALS
-
-			for (int i = 0; i < sql.length; i++) {
-				s.addBatch(sql[i]);
-				logSql(sql + "(BATCH)");
+			con = DataSourceUtils.getConnection(this.dataSource);
+			PreparedStatement ps = con.prepareStatement(sql);
+			int batchSize = setter.getBatchSize();
+			for (int i = 0; i < batchSize; i++) {
+				setter.setValues(ps, i);
+				ps.addBatch();
 			}
-
-			int[] rowsUpdated = s.executeBatch();
-			s.close();
-			return rowsUpdated;
+			int[] retvals = ps.executeBatch();
+			ps.close();
+			if (logger.isInfoEnabled())
+				logger.info("JDBCTemplate: batch update of " + batchSize + " statements with SQL '" + sql + "'");
+			return retvals;
+		}
+		catch (SQLException ex) {
+			throw this.exceptionTranslater.translate("processing batch update", sql, ex);
 		}
 		finally {
-			closeConnectionIfNecessary(con);
+			DataSourceUtils.closeConnectionIfNecessary(this.dataSource, con);
 		}
-	}
-	*/
-	
+	}	// batchUpdate
+
 	
 	/**
 	 * Convenience method to throw a JdbcSqlWarningException if we're
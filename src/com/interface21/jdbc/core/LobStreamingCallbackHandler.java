@@ -0,0 +1,329 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.jdbc.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.interface21.dao.DataAccessResourceFailureException;
+import com.interface21.dao.InvalidDataAccessApiUsageException;
+
+/**
+ * RowCallbackHandler that streams a BLOB or CLOB column straight from
+ * the JDBC driver to an OutputStream or Writer, through a fixed buffer
+ * that is reused for the whole copy. The LOB is never held in memory as a whole.
+ * <br>A range of the LOB can be streamed instead of its whole content:
+ * positions are byte offsets for BLOBs, and character offsets for CLOBs.
+ * <br>The query should return a single row. Subclasses that need to
+ * know the LOB's length before choosing a range or obtaining their output,
+ * such as HTTP responses, can override the prepareStream(), getOutputStream()
+ * and getWriter() template methods.
+ * <br>IOExceptions encountered while copying are thrown as
+ * DataAccessResourceFailureExceptions.
+ * @author Rod Johnson
+ */
+public class LobStreamingCallbackHandler implements RowCallbackHandler {
+
+	/** Default size of the copy buffer: 8 KB */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	/** Index (from 1) of the LOB column */
+	private final int columnIndex;
+
+	/** Is the column a CLOB rather than a BLOB? */
+	private final boolean characterData;
+
+	/** Copy buffer for BLOBs */
+	private byte[] byteBuffer;
+
+	/** Copy buffer for CLOBs */
+	private char[] charBuffer;
+
+	private OutputStream outputStream;
+
+	private Writer writer;
+
+	/** Position of the first byte or character to stream, from 0 */
+	private long rangeStart;
+
+	/** Position of the last byte or character to stream, inclusive. -1 for the end of the LOB */
+	private long rangeEnd = -1;
+
+	private boolean rowFound;
+
+	/** Length of the LOB. -1 if the LOB was null or not found. */
+	private long lobLength = -1;
+
+	private long count;
+
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a handler that will stream a BLOB column to an OutputStream
+	 * @param columnIndex index (from 1) of the BLOB column
+	 * @param outputStream stream to write the BLOB to. It will be flushed,
+	 * but not closed.
+	 */
+	public LobStreamingCallbackHandler(int columnIndex, OutputStream outputStream) {
+		this(columnIndex, false, DEFAULT_BUFFER_SIZE);
+		this.outputStream = outputStream;
+	}
+
+	/**
+	 * Create a handler that will stream a CLOB column to a Writer
+	 * @param columnIndex index (from 1) of the CLOB column
+	 * @param writer Writer to write the CLOB to. It will be flushed,
+	 * but not closed.
+	 */
+	public LobStreamingCallbackHandler(int columnIndex, Writer writer) {
+		this(columnIndex, true, DEFAULT_BUFFER_SIZE);
+		this.writer = writer;
+	}
+
+	/**
+	 * Constructor for subclasses that obtain their output lazily,
+	 * by overriding getOutputStream() or getWriter().
+	 * @param columnIndex index (from 1) of the LOB column
+	 * @param characterData whether the column is a CLOB rather than a BLOB
+	 * @param bufferSize size of the copy buffer, in bytes or characters
+	 */
+	protected LobStreamingCallbackHandler(int columnIndex, boolean characterData, int bufferSize) {
+		if (bufferSize <= 0)
+			throw new IllegalArgumentException("bufferSize must be positive");
+		this.columnIndex = columnIndex;
+		this.characterData = characterData;
+		if (characterData)
+			this.charBuffer = new char[bufferSize];
+		else
+			this.byteBuffer = new byte[bufferSize];
+	}
+
+
+	//---------------------------------------------------------------------
+	// Configuration and results
+	//---------------------------------------------------------------------
+	/**
+	 * Stream only part of the LOB. Positions are byte offsets for BLOBs
+	 * and character offsets for CLOBs. A range beyond the end of the
+	 * LOB is truncated to the end of the LOB.
+	 * @param start position of the first byte or character to stream, from 0
+	 * @param end position of the last byte or character to stream, inclusive.
+	 * -1 means the end of the LOB.
+	 */
+	public void setRange(long start, long end) {
+		if (start < 0 || (end != -1 && end < start))
+			throw new IllegalArgumentException("Invalid range: " + start + "-" + end);
+		this.rangeStart = start;
+		this.rangeEnd = end;
+	}
+
+	/**
+	 * Return whether the column is a CLOB rather than a BLOB
+	 */
+	public final boolean isCharacterData() {
+		return characterData;
+	}
+
+	/**
+	 * Return whether the query returned a row
+	 */
+	public final boolean isRowFound() {
+		return rowFound;
+	}
+
+	/**
+	 * Return the length of the LOB, in bytes or characters.
+	 * Valid once the row has been processed.
+	 * @return the length of the LOB, or -1 if there was no row
+	 * or the LOB was null
+	 */
+	public final long getLobLength() {
+		return lobLength;
+	}
+
+	/**
+	 * Return the number of bytes or characters streamed
+	 */
+	public final long getCount() {
+		return count;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of RowCallbackHandler
+	//---------------------------------------------------------------------
+	/**
+	 * Stream the LOB in the current row
+	 * @throws InvalidDataAccessApiUsageException if the query returned more than one row
+	 * @throws DataAccessResourceFailureException if there was an error writing the output
+	 */
+	public final void processRow(ResultSet rs) throws SQLException {
+		if (this.rowFound)
+			throw new InvalidDataAccessApiUsageException("LobStreamingCallbackHandler expects a single row");
+		this.rowFound = true;
+		try {
+			if (this.characterData)
+				streamClob(rs.getClob(this.columnIndex));
+			else
+				streamBlob(rs.getBlob(this.columnIndex));
+		}
+		catch (IOException ex) {
+			throw new DataAccessResourceFailureException("Couldn't stream LOB in column " + this.columnIndex, ex);
+		}
+	}
+
+	private void streamBlob(Blob blob) throws SQLException, IOException {
+		if (blob == null) {
+			onNullLob();
+			return;
+		}
+		this.lobLength = blob.length();
+		if (!prepareStream(this.lobLength))
+			return;
+		OutputStream out = getOutputStream();
+		InputStream in = blob.getBinaryStream();
+		try {
+			skipFully(in, this.rangeStart);
+			byte[] buffer = this.byteBuffer;
+			long remaining = getRangeLength();
+			while (remaining > 0) {
+				int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (n == -1)
+					break;
+				out.write(buffer, 0, n);
+				this.count += n;
+				remaining -= n;
+			}
+			out.flush();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private void streamClob(Clob clob) throws SQLException, IOException {
+		if (clob == null) {
+			onNullLob();
+			return;
+		}
+		this.lobLength = clob.length();
+		if (!prepareStream(this.lobLength))
+			return;
+		Writer out = getWriter();
+		Reader in = clob.getCharacterStream();
+		try {
+			long skip = this.rangeStart;
+			while (skip > 0) {
+				long n = in.skip(skip);
+				if (n <= 0)
+					throw new IOException("Couldn't skip to position " + this.rangeStart + " of CLOB");
+				skip -= n;
+			}
+			char[] buffer = this.charBuffer;
+			long remaining = getRangeLength();
+			while (remaining > 0) {
+				int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (n == -1)
+					break;
+				out.write(buffer, 0, n);
+				this.count += n;
+				remaining -= n;
+			}
+			out.flush();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private void skipFully(InputStream in, long skip) throws IOException {
+		long remaining = skip;
+		while (remaining > 0) {
+			long n = in.skip(remaining);
+			if (n <= 0) {
+				// Some drivers' streams won't skip: read instead
+				if (in.read() == -1)
+					throw new IOException("Couldn't skip to position " + skip + " of BLOB");
+				n = 1;
+			}
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * Return the number of bytes or characters in the current range,
+	 * truncated to the length of the LOB
+	 */
+	protected final long getRangeLength() {
+		long end = (this.rangeEnd == -1 || this.rangeEnd >= this.lobLength) ? this.lobLength - 1 : this.rangeEnd;
+		return Math.max(0, end - this.rangeStart + 1);
+	}
+
+	/**
+	 * Return the position of the first byte or character to stream
+	 */
+	protected final long getRangeStart() {
+		return rangeStart;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Template methods
+	//---------------------------------------------------------------------
+	/**
+	 * Invoked once the length of the LOB is known, before any output is
+	 * obtained. Subclasses can override this to choose a range with setRange()
+	 * or to write headers. This implementation returns true.
+	 * @param lobLength length of the LOB, in bytes or characters
+	 * @return whether to stream the LOB
+	 */
+	protected boolean prepareStream(long lobLength) throws IOException {
+		return true;
+	}
+
+	/**
+	 * Invoked if the LOB column is null. This implementation does nothing.
+	 */
+	protected void onNullLob() throws IOException {
+	}
+
+	/**
+	 * Return the OutputStream to stream a BLOB to.
+	 * This implementation returns the stream passed to the constructor.
+	 */
+	protected OutputStream getOutputStream() throws IOException {
+		if (this.outputStream == null)
+			throw new InvalidDataAccessApiUsageException("No OutputStream to stream BLOB to");
+		return this.outputStream;
+	}
+
+	/**
+	 * Return the Writer to stream a CLOB to.
+	 * This implementation returns the Writer passed to the constructor.
+	 */
+	protected Writer getWriter() throws IOException {
+		if (this.writer == null)
+			throw new InvalidDataAccessApiUsageException("No Writer to stream CLOB to");
+		return this.writer;
+	}
+
+}	// class LobStreamingCallbackHandler
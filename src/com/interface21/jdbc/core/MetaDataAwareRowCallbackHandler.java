@@ -0,0 +1,34 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.jdbc.core;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Optional extension of RowCallbackHandler for handlers that need
+ * the columns of the ResultSet even if the query returns no rows,
+ * such as exports writing a header line.
+ * JdbcTemplate passes the ResultSetMetaData before the first row.
+ * @author Rod Johnson
+ * @since 18 October 2003
+ * @see JdbcTemplate
+ */
+public interface MetaDataAwareRowCallbackHandler extends RowCallbackHandler {
+
+	/**
+	 * Receive the metadata of the ResultSet, before any row is processed
+	 * @param rsmd metadata of the ResultSet
+	 * @throws SQLException if a SQLException is encountered getting
+	 * column information (that is, there's no need to catch SQLException)
+	 */
+	void setMetaData(ResultSetMetaData rsmd) throws SQLException;
+
+}
@@ -58,6 +58,36 @@ public class PreparedStatementCreatorFactory {
 		return l;
 	}
 
+	/**
+	 * Set the value for a parameter. The method used is based on the SQL
+	 * type of the parameter. Used by the PreparedStatementCreators returned
+	 * by this class, and available to other code that sets parameters
+	 * on a PreparedStatement, such as batch updates.
+	 * @param ps PreparedStatement to set the parameter on
+	 * @param paramIndex index (from 1) of the parameter
+	 * @param sqlType SQL type of the parameter, as defined in java.sql.Types
+	 * @param value value to set. May be null.
+	 */
+	public static void setParameterValue(PreparedStatement ps, int paramIndex, int sqlType, Object value) throws SQLException {
+		// We need SQL type to be able to set null
+		if (value == null) {
+			ps.setNull(paramIndex, sqlType);
+		}
+		else {
+			// Documentation?
+			// PARAMETERIZE THIS TO A TYPE MAP INTERFACE?
+			switch (sqlType) {
+				case Types.VARCHAR : 
+					ps.setString(paramIndex, (String) value);
+					break;
+				default : 
+					ps.setObject(paramIndex, value, sqlType);
+					break;
+			}
+		}
+	}
+
+
 	//---------------------------------------------------------------------
 	// Instance data
 	//---------------------------------------------------------------------
@@ -153,26 +183,7 @@ public class PreparedStatementCreatorFactory {
 			// Set arguments: does nothing if there are no parameters
 			for (int i = 0; i < parameters.size(); i++) {
 				SqlParameter declaredParameter = (SqlParameter) PreparedStatementCreatorFactory.this.declaredParameters.get(i);
-				// We need SQL type to be able to set null
-				if (parameters.get(i) == null) {
-					ps.setNull(i + 1, declaredParameter.getSqlType());
-				}
-				else {
-					// Documentation?
-					
-					// PARAMETERIZE THIS TO A TYPE MAP INTERFACE?
-					switch (declaredParameter.getSqlType()) {
-						case Types.VARCHAR : 
-							ps.setString(i + 1, (String) parameters.get(i));
-							break;
-						//case Types. : 
-						//	ps.setString(i + 1, (String) parameters.get(i));
-						//	break;
-						default : 
-							ps.setObject(i + 1, parameters.get(i), declaredParameter.getSqlType());
-							break;
-					}
-				}
+				setParameterValue(ps, i + 1, declaredParameter.getSqlType(), parameters.get(i));
 			}
 			return ps;
 		}
@@ -0,0 +1,731 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.jdbc.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.AbstractSequentialList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+
+import com.interface21.dao.DataAccessResourceFailureException;
+import com.interface21.dao.InvalidDataAccessApiUsageException;
+
+/**
+ * ResultReader implementation for result sets that may be far larger
+ * than the heap. Rows are held in memory until a configurable byte budget
+ * is used up; any further rows are serialized in a compact binary format
+ * into a memory-mapped temporary file.
+ * <br>Each row is represented as an Object array of column values, as
+ * returned by ResultSet.getObject(). BLOB and CLOB values are read fully
+ * into byte arrays and Strings, as LOB locators don't survive the ResultSet.
+ * <br>Results should be read back with the iterator() method, which
+ * decodes spilled rows sequentially straight from the mapped file,
+ * without reading it into an intermediate buffer. getResults() returns
+ * a read-only, forward-only List view over the same iterator.
+ * <br>Callers must invoke close() when they have finished with the
+ * results, to delete the temporary file.
+ * Like its superclass, this class can only be used once.
+ * @author Rod Johnson
+ * @see #iterator()
+ * @see #close()
+ */
+public class SpillingResultReader extends RowCountCallbackHandler implements ResultReader {
+
+	/** Default number of bytes of row data to hold in memory: 4 MB */
+	public static final int DEFAULT_MEMORY_BUDGET = 4 * 1024 * 1024;
+
+	/** Default size of each mapped region of the spill file: 8 MB */
+	public static final int DEFAULT_MAPPING_SIZE = 8 * 1024 * 1024;
+
+	// Value tags in the binary row format
+	private static final byte NULL = 0;
+	private static final byte FALSE = 1;
+	private static final byte TRUE = 2;
+	private static final byte INTEGER = 3;
+	private static final byte LONG = 4;
+	private static final byte SHORT = 5;
+	private static final byte DOUBLE = 6;
+	private static final byte FLOAT = 7;
+	private static final byte BIG_DECIMAL = 8;
+	private static final byte STRING = 9;
+	private static final byte DATE = 10;
+	private static final byte TIME = 11;
+	private static final byte TIMESTAMP = 12;
+	private static final byte BYTES = 13;
+	private static final byte SERIALIZED = 14;
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	/**
+	* Create a logging category that is available
+	* to subclasses.
+	*/
+	protected final Logger logger = Logger.getLogger(getClass().getName());
+
+	private int memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+	private int mappingSize = DEFAULT_MAPPING_SIZE;
+
+	/** Directory for the spill file. If null, use the system default */
+	private File tempDirectory;
+
+	/** Rows held in memory, as Object arrays */
+	private List memoryRows = new ArrayList();
+
+	/** Estimated number of bytes used by rows held in memory */
+	private long memoryUsed;
+
+	private File spillFile;
+
+	private RandomAccessFile spillAccessFile;
+
+	private FileChannel spillChannel;
+
+	/** Region of the spill file currently being written */
+	private MappedByteBuffer writeBuffer;
+
+	/** Offset in the spill file of the start of the current write region */
+	private long writeRegionOffset;
+
+	/** Number of bytes of row data in the spill file */
+	private long spillLength;
+
+	private int spilledRowCount;
+
+	private boolean closed;
+
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Create a new SpillingResultReader with the default memory budget
+	 */
+	public SpillingResultReader() {
+	}
+
+	/**
+	 * Create a new SpillingResultReader
+	 * @param memoryBudget number of bytes of row data to hold in memory
+	 * before spilling to disk. If 0, all rows will be spilled.
+	 */
+	public SpillingResultReader(int memoryBudget) {
+		setMemoryBudget(memoryBudget);
+	}
+
+
+	//---------------------------------------------------------------------
+	// Bean properties
+	//---------------------------------------------------------------------
+	/**
+	 * Set the number of bytes of row data to hold in memory before
+	 * further rows are spilled to disk. Sizes of in-memory rows are estimated.
+	 * Default is 4 MB.
+	 * @param memoryBudget number of bytes to hold in memory
+	 */
+	public void setMemoryBudget(int memoryBudget) {
+		if (memoryBudget < 0)
+			throw new IllegalArgumentException("memoryBudget must not be negative");
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Return the number of bytes of row data held in memory before spilling
+	 */
+	public int getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Set the size of each region of the spill file that is mapped into
+	 * memory at one time. Larger rows are mapped in a region of their own.
+	 * Default is 8 MB.
+	 * @param mappingSize size of mapped regions in bytes
+	 */
+	public void setMappingSize(int mappingSize) {
+		if (mappingSize <= 0)
+			throw new IllegalArgumentException("mappingSize must be positive");
+		this.mappingSize = mappingSize;
+	}
+
+	/**
+	 * Set the directory in which to create the spill file.
+	 * Default is the system temporary directory.
+	 * @param tempDirectory directory in which to create the spill file
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Return whether any rows were spilled to disk
+	 */
+	public boolean isSpilled() {
+		return this.spillFile != null;
+	}
+
+	/**
+	 * Return the number of rows that were spilled to disk
+	 */
+	public int getSpilledRowCount() {
+		return spilledRowCount;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of RowCountCallbackHandler
+	//---------------------------------------------------------------------
+	/**
+	 * Extract the current row and either hold it in memory or spill it.
+	 * Once the first row has been spilled, all further rows are spilled,
+	 * to preserve row order.
+	 */
+	protected void processRow(ResultSet rs, int rowNum) throws SQLException {
+		if (this.closed)
+			throw new InvalidDataAccessApiUsageException("SpillingResultReader has been closed");
+		Object[] row = new Object[getColumnCount()];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = extractValue(rs, i + 1);
+		}
+
+		if (this.spillFile == null) {
+			long rowSize = estimateSize(row);
+			if (this.memoryUsed + rowSize <= this.memoryBudget) {
+				this.memoryRows.add(row);
+				this.memoryUsed += rowSize;
+				return;
+			}
+		}
+
+		try {
+			spillRow(row);
+		}
+		catch (IOException ex) {
+			close();
+			throw new DataAccessResourceFailureException("Couldn't spill row " + rowNum + " to temporary file", ex);
+		}
+		catch (RuntimeException ex) {
+			// The row may be partly written: later reads would return corrupt data
+			close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Extract the value of the given column in the current row.
+	 * Subclasses can override this to perform custom extraction.
+	 * @param rs ResultSet to extract the value from
+	 * @param index index (from 1) of the column
+	 * @return the column value. May be null.
+	 */
+	protected Object extractValue(ResultSet rs, int index) throws SQLException {
+		Object value = rs.getObject(index);
+		if (value instanceof Blob) {
+			Blob blob = (Blob) value;
+			value = blob.getBytes(1, checkLobLength(blob.length(), index));
+		}
+		else if (value instanceof Clob) {
+			Clob clob = (Clob) value;
+			value = clob.getSubString(1, checkLobLength(clob.length(), index));
+		}
+		return value;
+	}
+
+	/**
+	 * Check that a LOB is small enough to be read into an array
+	 * @return the length as an int
+	 * @throws DataAccessResourceFailureException if it's too large
+	 */
+	private static int checkLobLength(long length, int index) throws DataAccessResourceFailureException {
+		if (length > Integer.MAX_VALUE)
+			throw new DataAccessResourceFailureException("LOB in column " + index + " is too large to read into memory: " +
+				length + " bytes or characters", null);
+		return (int) length;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of ResultReader
+	//---------------------------------------------------------------------
+	/**
+	 * Return a read-only, forward-only view of all rows.
+	 * Random access is only efficient for rows held in memory;
+	 * callers should normally use iterator() instead.
+	 * @see #iterator()
+	 */
+	public List getResults() {
+		return new AbstractSequentialList() {
+			public int size() {
+				return getRowCount();
+			}
+			public ListIterator listIterator(int index) {
+				Iterator it = SpillingResultReader.this.iterator();
+				for (int i = 0; i < index; i++) {
+					it.next();
+				}
+				return new ForwardListIterator(it, index);
+			}
+		};
+	}
+
+	/**
+	 * Return an iterator over all rows, in the order they were read.
+	 * Each element is an Object array of column values. Rows held in memory
+	 * are returned first; spilled rows are then decoded sequentially from
+	 * the mapped spill file.
+	 * @return an iterator over all rows
+	 * @throws InvalidDataAccessApiUsageException if this reader has been closed
+	 */
+	public Iterator iterator() throws InvalidDataAccessApiUsageException {
+		if (this.closed)
+			throw new InvalidDataAccessApiUsageException("SpillingResultReader has been closed");
+		return new RowIterator();
+	}
+
+	/**
+	 * Release all resources and delete the spill file, if any.
+	 * Results can no longer be read after this method has been called.
+	 * It's safe to call this method more than once.
+	 */
+	public void close() {
+		if (this.closed)
+			return;
+		this.closed = true;
+		this.memoryRows = null;
+		this.writeBuffer = null;
+		if (this.spillChannel != null) {
+			try {
+				this.spillAccessFile.close();
+			}
+			catch (IOException ex) {
+				logger.warn("Couldn't close spill file [" + this.spillFile + "]", ex);
+			}
+		}
+		if (this.spillFile != null && !this.spillFile.delete()) {
+			// The file may still be mapped on some platforms
+			logger.warn("Couldn't delete spill file [" + this.spillFile + "]: will try again on exit");
+			this.spillFile.deleteOnExit();
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Spilling to disk
+	//---------------------------------------------------------------------
+	/**
+	 * Write a row to the spill file as its length followed by its tagged values.
+	 * If the row doesn't fit into the current region, remap the region from
+	 * the start of the row and write it again.
+	 */
+	private void spillRow(Object[] row) throws IOException {
+		if (this.spillFile == null) {
+			openSpillFile();
+		}
+		while (true) {
+			int start = this.writeBuffer.position();
+			try {
+				this.writeBuffer.putInt(0);
+				for (int i = 0; i < row.length; i++) {
+					writeValue(row[i]);
+				}
+				this.writeBuffer.putInt(start, this.writeBuffer.position() - start - 4);
+				this.spillLength = this.writeRegionOffset + this.writeBuffer.position();
+				this.spilledRowCount++;
+				return;
+			}
+			catch (BufferOverflowException ex) {
+				// Row too large for a region of its own: double the region size
+				int size = (start == 0) ? this.writeBuffer.capacity() * 2 : this.mappingSize;
+				mapWriteRegion(this.writeRegionOffset + start, size);
+			}
+		}
+	}
+
+	private void openSpillFile() throws IOException {
+		this.spillFile = File.createTempFile("i21spill", ".dat", this.tempDirectory);
+		this.spillAccessFile = new RandomAccessFile(this.spillFile, "rw");
+		this.spillChannel = this.spillAccessFile.getChannel();
+		mapWriteRegion(0, this.mappingSize);
+		logger.info("Memory budget of " + this.memoryBudget + " bytes exhausted after " + this.memoryRows.size() +
+			" rows: spilling further rows to [" + this.spillFile + "]");
+	}
+
+	private void mapWriteRegion(long offset, int size) throws IOException {
+		this.writeBuffer = this.spillChannel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+		this.writeRegionOffset = offset;
+	}
+
+	private void writeValue(Object value) throws IOException {
+		MappedByteBuffer buf = this.writeBuffer;
+		if (value == null) {
+			buf.put(NULL);
+		}
+		else if (value instanceof String) {
+			buf.put(STRING);
+			writeString((String) value);
+		}
+		else if (value instanceof Integer) {
+			buf.put(INTEGER);
+			buf.putInt(((Integer) value).intValue());
+		}
+		else if (value instanceof Long) {
+			buf.put(LONG);
+			buf.putLong(((Long) value).longValue());
+		}
+		else if (value instanceof Short) {
+			buf.put(SHORT);
+			buf.putShort(((Short) value).shortValue());
+		}
+		else if (value instanceof Double) {
+			buf.put(DOUBLE);
+			buf.putDouble(((Double) value).doubleValue());
+		}
+		else if (value instanceof Float) {
+			buf.put(FLOAT);
+			buf.putFloat(((Float) value).floatValue());
+		}
+		else if (value instanceof BigDecimal) {
+			buf.put(BIG_DECIMAL);
+			writeString(value.toString());
+		}
+		else if (value instanceof Boolean) {
+			buf.put(((Boolean) value).booleanValue() ? TRUE : FALSE);
+		}
+		else if (value instanceof Timestamp) {
+			buf.put(TIMESTAMP);
+			buf.putLong(((Timestamp) value).getTime());
+			buf.putInt(((Timestamp) value).getNanos());
+		}
+		else if (value instanceof Time) {
+			buf.put(TIME);
+			buf.putLong(((Time) value).getTime());
+		}
+		else if (value instanceof java.sql.Date) {
+			buf.put(DATE);
+			buf.putLong(((java.sql.Date) value).getTime());
+		}
+		else if (value instanceof byte[]) {
+			buf.put(BYTES);
+			writeBytes((byte[]) value);
+		}
+		else if (value instanceof Serializable) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bos);
+			oos.writeObject(value);
+			oos.close();
+			buf.put(SERIALIZED);
+			writeBytes(bos.toByteArray());
+		}
+		else {
+			throw new InvalidDataAccessApiUsageException("Can't spill column value of " + value.getClass() +
+				": value is not serializable");
+		}
+	}
+
+	private void writeBytes(byte[] bytes) {
+		writeVarInt(bytes.length);
+		this.writeBuffer.put(bytes);
+	}
+
+	/**
+	 * Write a String as its length in chars followed by a
+	 * UTF-8 style encoding of each char, without allocating a byte array
+	 */
+	private void writeString(String s) {
+		MappedByteBuffer buf = this.writeBuffer;
+		int len = s.length();
+		writeVarInt(len);
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buf.put((byte) c);
+			}
+			else if (c < 0x800) {
+				buf.put((byte) (0xC0 | (c >> 6)));
+				buf.put((byte) (0x80 | (c & 0x3F)));
+			}
+			else {
+				buf.put((byte) (0xE0 | (c >> 12)));
+				buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buf.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	private void writeVarInt(int value) {
+		while ((value & ~0x7F) != 0) {
+			this.writeBuffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		this.writeBuffer.put((byte) value);
+	}
+
+	/**
+	 * Estimate the heap footprint of an in-memory row
+	 */
+	private long estimateSize(Object[] row) {
+		long size = 16 + 4 * row.length;
+		for (int i = 0; i < row.length; i++) {
+			Object value = row[i];
+			if (value == null)
+				continue;
+			if (value instanceof String)
+				size += 40 + 2 * ((String) value).length();
+			else if (value instanceof byte[])
+				size += 16 + ((byte[]) value).length;
+			else if (value instanceof BigDecimal)
+				size += 64;
+			else
+				size += 24;
+		}
+		return size;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Reading back
+	//---------------------------------------------------------------------
+	/**
+	 * Iterator that returns in-memory rows, then decodes spilled rows
+	 * directly from mapped regions of the spill file.
+	 */
+	private class RowIterator implements Iterator {
+
+		private final Iterator memoryIterator = memoryRows.iterator();
+
+		/** Offset in the spill file of the next row */
+		private long offset;
+
+		private MappedByteBuffer readBuffer;
+
+		private long readRegionOffset;
+
+		/** Reusable buffer for decoding Strings */
+		private char[] chars = new char[64];
+
+		public boolean hasNext() {
+			return this.memoryIterator.hasNext() || this.offset < spillLength;
+		}
+
+		public Object next() {
+			if (closed)
+				throw new InvalidDataAccessApiUsageException("SpillingResultReader has been closed");
+			if (this.memoryIterator.hasNext())
+				return this.memoryIterator.next();
+			if (this.offset >= spillLength)
+				throw new NoSuchElementException();
+			try {
+				return readRow();
+			}
+			catch (IOException ex) {
+				throw new DataAccessResourceFailureException("Couldn't read spilled row from [" + spillFile + "]", ex);
+			}
+			catch (ClassNotFoundException ex) {
+				throw new DataAccessResourceFailureException("Couldn't deserialize spilled value from [" + spillFile + "]", ex);
+			}
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("SpillingResultReader results are read-only");
+		}
+
+		private Object[] readRow() throws IOException, ClassNotFoundException {
+			int position = (int) (this.offset - this.readRegionOffset);
+			if (this.readBuffer == null || position + 4 > this.readBuffer.limit() ||
+					position + 4 + this.readBuffer.getInt(position) > this.readBuffer.limit()) {
+				mapReadRegion();
+				position = 0;
+			}
+			this.readBuffer.position(position);
+			int length = this.readBuffer.getInt();
+			Object[] row = new Object[getColumnCount()];
+			for (int i = 0; i < row.length; i++) {
+				row[i] = readValue(this.readBuffer);
+			}
+			this.offset += 4 + length;
+			return row;
+		}
+
+		private void mapReadRegion() throws IOException {
+			this.readBuffer = null;
+			// Make sure the whole of the next row fits into the region
+			MappedByteBuffer lengthBuffer = spillChannel.map(FileChannel.MapMode.READ_ONLY, this.offset, 4);
+			long size = Math.max(mappingSize, 4 + lengthBuffer.getInt(0));
+			size = Math.min(size, spillLength - this.offset);
+			this.readBuffer = spillChannel.map(FileChannel.MapMode.READ_ONLY, this.offset, size);
+			this.readRegionOffset = this.offset;
+		}
+
+		private Object readValue(MappedByteBuffer buf) throws IOException, ClassNotFoundException {
+			byte tag = buf.get();
+			switch (tag) {
+				case NULL:
+					return null;
+				case FALSE:
+					return Boolean.FALSE;
+				case TRUE:
+					return Boolean.TRUE;
+				case INTEGER:
+					return new Integer(buf.getInt());
+				case LONG:
+					return new Long(buf.getLong());
+				case SHORT:
+					return new Short(buf.getShort());
+				case DOUBLE:
+					return new Double(buf.getDouble());
+				case FLOAT:
+					return new Float(buf.getFloat());
+				case BIG_DECIMAL:
+					return new BigDecimal(readString(buf));
+				case STRING:
+					return readString(buf);
+				case DATE:
+					return new java.sql.Date(buf.getLong());
+				case TIME:
+					return new Time(buf.getLong());
+				case TIMESTAMP:
+					Timestamp ts = new Timestamp(buf.getLong());
+					ts.setNanos(buf.getInt());
+					return ts;
+				case BYTES:
+					return readBytes(buf);
+				case SERIALIZED:
+					ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes(buf)));
+					try {
+						return ois.readObject();
+					}
+					finally {
+						ois.close();
+					}
+				default:
+					throw new IOException("Corrupt spill file: unknown value tag " + tag);
+			}
+		}
+
+		private byte[] readBytes(MappedByteBuffer buf) {
+			byte[] bytes = new byte[readVarInt(buf)];
+			buf.get(bytes);
+			return bytes;
+		}
+
+		private String readString(MappedByteBuffer buf) {
+			int len = readVarInt(buf);
+			if (this.chars.length < len) {
+				this.chars = new char[Math.max(len, this.chars.length * 2)];
+			}
+			for (int i = 0; i < len; i++) {
+				int b = buf.get() & 0xFF;
+				if (b < 0x80) {
+					this.chars[i] = (char) b;
+				}
+				else if (b < 0xE0) {
+					this.chars[i] = (char) (((b & 0x1F) << 6) | (buf.get() & 0x3F));
+				}
+				else {
+					int b2 = buf.get() & 0x3F;
+					this.chars[i] = (char) (((b & 0x0F) << 12) | (b2 << 6) | (buf.get() & 0x3F));
+				}
+			}
+			return new String(this.chars, 0, len);
+		}
+
+		private int readVarInt(MappedByteBuffer buf) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buf.get();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while ((b & 0x80) != 0);
+			return value;
+		}
+	}
+
+
+	/**
+	 * ListIterator adapter exposing a forward-only Iterator
+	 * through the List interface
+	 */
+	private static class ForwardListIterator implements ListIterator {
+
+		private final Iterator it;
+
+		private int index;
+
+		private ForwardListIterator(Iterator it, int index) {
+			this.it = it;
+			this.index = index;
+		}
+
+		public boolean hasNext() {
+			return this.it.hasNext();
+		}
+
+		public Object next() {
+			Object o = this.it.next();
+			this.index++;
+			return o;
+		}
+
+		public int nextIndex() {
+			return this.index;
+		}
+
+		public int previousIndex() {
+			return this.index - 1;
+		}
+
+		public boolean hasPrevious() {
+			throw new UnsupportedOperationException("SpillingResultReader results are forward-only");
+		}
+
+		public Object previous() {
+			throw new UnsupportedOperationException("SpillingResultReader results are forward-only");
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("SpillingResultReader results are read-only");
+		}
+
+		public void set(Object o) {
+			throw new UnsupportedOperationException("SpillingResultReader results are read-only");
+		}
+
+		public void add(Object o) {
+			throw new UnsupportedOperationException("SpillingResultReader results are read-only");
+		}
+	}
+
+}	// class SpillingResultReader
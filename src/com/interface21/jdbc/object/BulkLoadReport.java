@@ -0,0 +1,143 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify. However, please
+ * acknowledge the source and include the above URL in each
+ * class using or derived from this code.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.jdbc.object;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Statistics about a run of a BulkLoader: rows read, loaded and
+ * rejected, batches executed and failed, and throughput.
+ * <br>Failures are described as Strings giving the line numbers concerned,
+ * in the order they were encountered. Only the first maxFailures
+ * descriptions are kept, although all failures are counted.
+ * @author Rod Johnson
+ * @see BulkLoader
+ */
+public class BulkLoadReport {
+
+	private final int maxFailures;
+
+	private long rowsRead;
+
+	private long rowsLoaded;
+
+	private long rowsRejected;
+
+	private int batchCount;
+
+	private int failedBatchCount;
+
+	private long elapsedMillis;
+
+	private List failures = new LinkedList();
+
+
+	/**
+	 * Create a new report
+	 * @param maxFailures maximum number of failure descriptions to keep
+	 */
+	BulkLoadReport(int maxFailures) {
+		this.maxFailures = maxFailures;
+	}
+
+
+	void batchLoaded(int rows, int rejected) {
+		this.batchCount++;
+		this.rowsRead += rows + rejected;
+		this.rowsLoaded += rows;
+		this.rowsRejected += rejected;
+	}
+
+	void batchFailed(int rows, int rejected, String description) {
+		this.batchCount++;
+		this.failedBatchCount++;
+		this.rowsRead += rows + rejected;
+		this.rowsRejected += rows + rejected;
+		addFailure(description);
+	}
+
+	void addFailure(String description) {
+		if (this.failures.size() < this.maxFailures)
+			this.failures.add(description);
+	}
+
+	void setElapsedMillis(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+
+	/**
+	 * Return the number of data rows read from the file
+	 */
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	/**
+	 * Return the number of rows inserted by successful batches
+	 */
+	public long getRowsLoaded() {
+		return rowsLoaded;
+	}
+
+	/**
+	 * Return the number of rows that couldn't be parsed,
+	 * or belonged to a failed batch
+	 */
+	public long getRowsRejected() {
+		return rowsRejected;
+	}
+
+	/**
+	 * Return the number of batches executed
+	 */
+	public int getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * Return the number of batches that failed
+	 */
+	public int getFailedBatchCount() {
+		return failedBatchCount;
+	}
+
+	/**
+	 * Return descriptions of parse and batch failures, as Strings
+	 */
+	public List getFailures() {
+		return Collections.unmodifiableList(failures);
+	}
+
+	/**
+	 * Return the elapsed time of the load in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * Return the number of rows loaded per second
+	 */
+	public long getRowsPerSecond() {
+		return (this.elapsedMillis > 0) ? this.rowsLoaded * 1000 / this.elapsedMillis : this.rowsLoaded;
+	}
+
+	public String toString() {
+		return "BulkLoadReport: rowsRead=" + rowsRead + "; rowsLoaded=" + rowsLoaded + "; rowsRejected=" + rowsRejected +
+			"; batches=" + batchCount + "; failedBatches=" + failedBatchCount + "; elapsedMillis=" + elapsedMillis +
+			"; rowsPerSecond=" + getRowsPerSecond();
+	}
+
+}
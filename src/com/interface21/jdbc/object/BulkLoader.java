@@ -0,0 +1,748 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify. However, please
+ * acknowledge the source and include the above URL in each
+ * class using or derived from this code.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.jdbc.object;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.interface21.dao.DataAccessException;
+import com.interface21.dao.DataAccessResourceFailureException;
+import com.interface21.dao.InvalidDataAccessApiUsageException;
+import com.interface21.jdbc.core.SqlParameter;
+
+/**
+ * Loads a delimited flat file, such as a CSV nightly import, into the
+ * database by executing a SqlUpdate in JDBC batches.
+ *
+ * <p>The file is memory-mapped in windows and cut into chunks of batchSize
+ * lines by a reader thread. A configurable number of parser threads turn
+ * each chunk into typed parameter values, parsing straight from the mapped
+ * bytes according to the SQL types of the parameters declared on the
+ * SqlUpdate. The calling thread executes the parsed batches as they become
+ * available, so parsing overlaps with database round trips.
+ * Batches may be executed in a different order to that of the file.
+ *
+ * <p>The file must be UTF-8 or ASCII, with one row per line. Fields
+ * may be quoted with double quotes, doubling embedded quotes, but quoted
+ * fields may not span lines. An empty field is taken to be null.
+ * Dates must be in JDBC escape format (yyyy-mm-dd and yyyy-mm-dd hh:mm:ss).
+ *
+ * <p>A row that can't be parsed is rejected, and a batch that fails is
+ * reported, without stopping the load unless stopOnFailure is set.
+ * The returned BulkLoadReport gives row counts, failures and throughput.
+ *
+ * <p>Configure once and reuse: this class is threadsafe once configured.
+ * @author Rod Johnson
+ * @see SqlUpdate#batchUpdate(Object[][])
+ */
+public class BulkLoader {
+
+	/** Default number of rows per batch */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/** Default size of the file windows mapped at once: 32 MB */
+	public static final int DEFAULT_MAPPING_SIZE = 32 * 1024 * 1024;
+
+	/** Marker telling parser threads that there are no more chunks */
+	private static final Object END_OF_CHUNKS = new Object();
+
+	/** Marker telling the loading thread that a parser thread has finished */
+	private static final Object PARSER_DONE = new Object();
+
+	protected final Logger logger = Logger.getLogger(getClass().getName());
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private SqlUpdate sqlUpdate;
+
+	private char delimiter = ',';
+
+	private boolean skipHeader;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private int parserThreads = 2;
+
+	private int mappingSize = DEFAULT_MAPPING_SIZE;
+
+	private boolean stopOnFailure;
+
+	private int maxReportedFailures = 100;
+
+	private int progressInterval = 100;
+
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Constructor to allow use as a JavaBean.
+	 * The SqlUpdate must be set before use.
+	 */
+	public BulkLoader() {
+	}
+
+	/**
+	 * Create a new BulkLoader executing the given update
+	 * @param sqlUpdate update to execute for each row, with one
+	 * declared parameter per field
+	 */
+	public BulkLoader(SqlUpdate sqlUpdate) {
+		this.sqlUpdate = sqlUpdate;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Bean properties
+	//---------------------------------------------------------------------
+	/**
+	 * Set the update to execute for each row. Its declared parameters
+	 * determine how many fields each line must contain and how they are parsed.
+	 */
+	public void setSqlUpdate(SqlUpdate sqlUpdate) {
+		this.sqlUpdate = sqlUpdate;
+	}
+
+	/**
+	 * Set the field delimiter. Default is a comma; use a tab for TSV.
+	 */
+	public void setDelimiter(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Set whether the first line of the file is a header to skip.
+	 * Default is false.
+	 */
+	public void setSkipHeader(boolean skipHeader) {
+		this.skipHeader = skipHeader;
+	}
+
+	/**
+	 * Set the number of lines per JDBC batch. Default is 1000.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Set the number of threads parsing lines into parameter values.
+	 * Default is 2.
+	 */
+	public void setParserThreads(int parserThreads) {
+		if (parserThreads < 1)
+			throw new IllegalArgumentException("parserThreads must be at least 1");
+		this.parserThreads = parserThreads;
+	}
+
+	/**
+	 * Set the size of the windows of the file mapped at once.
+	 * No line may be longer than this. Default is 32 MB.
+	 */
+	public void setMappingSize(int mappingSize) {
+		if (mappingSize < 1)
+			throw new IllegalArgumentException("mappingSize must be positive");
+		this.mappingSize = mappingSize;
+	}
+
+	/**
+	 * Set whether to abandon the load on the first failed batch.
+	 * Default is false: failures are reported and the load continues.
+	 * Rows already loaded are not affected either way, unless the
+	 * caller's transaction is rolled back.
+	 */
+	public void setStopOnFailure(boolean stopOnFailure) {
+		this.stopOnFailure = stopOnFailure;
+	}
+
+	/**
+	 * Set the maximum number of failure descriptions kept in the report.
+	 * Default is 100. All failures are counted regardless.
+	 */
+	public void setMaxReportedFailures(int maxReportedFailures) {
+		this.maxReportedFailures = maxReportedFailures;
+	}
+
+	/**
+	 * Set how many batches to execute between progress log messages.
+	 * Default is 100.
+	 */
+	public void setProgressInterval(int progressInterval) {
+		this.progressInterval = progressInterval;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Load the given file
+	 * @param file delimited file to load
+	 * @return report on the load
+	 * @throws DataAccessResourceFailureException if the file can't be read
+	 * @throws DataAccessException if a batch fails and stopOnFailure is set
+	 */
+	public BulkLoadReport load(File file) throws DataAccessException {
+		if (this.sqlUpdate == null)
+			throw new InvalidDataAccessApiUsageException("sqlUpdate is required");
+		this.sqlUpdate.compile();
+
+		List declaredParameters = this.sqlUpdate.getDeclaredParameters();
+		int[] types = new int[declaredParameters.size()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = ((SqlParameter) declaredParameters.get(i)).getSqlType();
+		}
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			return load(raf.getChannel(), types, file.getPath());
+		}
+		catch (IOException ex) {
+			throw new DataAccessResourceFailureException("Couldn't read bulk load file [" + file + "]", ex);
+		}
+		finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				}
+				catch (IOException ex) {
+					logger.warn("Couldn't close bulk load file [" + file + "]", ex);
+				}
+			}
+		}
+	}	// load
+
+
+	//---------------------------------------------------------------------
+	// Implementation
+	//---------------------------------------------------------------------
+	private BulkLoadReport load(final FileChannel channel, int[] types, String fileName) throws DataAccessException {
+		long startTime = System.currentTimeMillis();
+		logger.info("Bulk loading [" + fileName + "] with SQL [" + this.sqlUpdate.getSql() + "]");
+
+		final BoundedQueue chunks = new BoundedQueue(this.parserThreads * 2);
+		final BoundedQueue batches = new BoundedQueue(this.parserThreads * 2);
+		final Throwable[] failure = new Throwable[1];
+
+		Thread reader = new Thread("BulkLoader reader") {
+			public void run() {
+				try {
+					readChunks(channel, chunks);
+				}
+				catch (Throwable ex) {
+					recordFailure(failure, ex, chunks, batches);
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+
+		Thread[] parsers = new Thread[this.parserThreads];
+		for (int i = 0; i < parsers.length; i++) {
+			final LineParser parser = new LineParser(types);
+			parsers[i] = new Thread("BulkLoader parser " + i) {
+				public void run() {
+					try {
+						Object chunk;
+						while ((chunk = chunks.take()) != END_OF_CHUNKS && chunk != null) {
+							if (!batches.put(parser.parse((Chunk) chunk)))
+								return;
+						}
+						batches.put(PARSER_DONE);
+					}
+					catch (Throwable ex) {
+						recordFailure(failure, ex, chunks, batches);
+					}
+				}
+			};
+			parsers[i].setDaemon(true);
+			parsers[i].start();
+		}
+
+		BulkLoadReport report = new BulkLoadReport(this.maxReportedFailures);
+		try {
+			int parsersDone = 0;
+			while (parsersDone < parsers.length) {
+				Object batch = batches.take();
+				if (batch == null)
+					break;
+				if (batch == PARSER_DONE)
+					parsersDone++;
+				else
+					executeBatch((ParsedBatch) batch, report, startTime);
+			}
+		}
+		catch (InterruptedException ex) {
+			throw new DataAccessResourceFailureException("Interrupted during bulk load of [" + fileName + "]", ex);
+		}
+		finally {
+			// Stop the reader and parsers early if we failed
+			chunks.abort();
+			batches.abort();
+		}
+
+		if (failure[0] != null) {
+			if (failure[0] instanceof DataAccessException)
+				throw (DataAccessException) failure[0];
+			throw new DataAccessResourceFailureException("Bulk load of [" + fileName + "] failed", failure[0]);
+		}
+
+		report.setElapsedMillis(System.currentTimeMillis() - startTime);
+		logger.info("Bulk load of [" + fileName + "] complete: " + report);
+		return report;
+	}	// load
+
+	private void recordFailure(Throwable[] failure, Throwable ex, BoundedQueue chunks, BoundedQueue batches) {
+		synchronized (failure) {
+			if (failure[0] == null)
+				failure[0] = ex;
+		}
+		chunks.abort();
+		batches.abort();
+	}
+
+	/**
+	 * Map the file window by window, cutting it into chunks of
+	 * batchSize complete lines
+	 */
+	private void readChunks(FileChannel channel, BoundedQueue chunks) throws IOException, InterruptedException {
+		long size = channel.size();
+		long windowStart = 0;
+		long lineNumber = 1;
+		boolean skip = this.skipHeader;
+
+		while (windowStart < size) {
+			int windowLength = (int) Math.min(this.mappingSize, size - windowStart);
+			boolean lastWindow = (windowStart + windowLength == size);
+			ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+
+			int chunkStart = 0;
+			int lines = 0;
+			for (int pos = 0; pos < windowLength; ) {
+				if (window.get(pos++) == '\n' || (pos == windowLength && lastWindow)) {
+					if (skip) {
+						skip = false;
+						chunkStart = pos;
+						lineNumber++;
+					}
+					else if (++lines == this.batchSize) {
+						if (!chunks.put(new Chunk(window, chunkStart, pos, lineNumber)))
+							return;
+						lineNumber += lines;
+						chunkStart = pos;
+						lines = 0;
+					}
+				}
+			}
+
+			// Complete lines left over at the end of the window make a short batch.
+			// A trailing partial line is left for the next window to begin with.
+			int linesEnd = chunkStart;
+			if (lines > 0) {
+				linesEnd = windowLength;
+				while (!lastWindow && window.get(linesEnd - 1) != '\n')
+					linesEnd--;
+				if (!chunks.put(new Chunk(window, chunkStart, linesEnd, lineNumber)))
+					return;
+				lineNumber += lines;
+			}
+			if (!lastWindow && linesEnd == 0)
+				throw new IOException("Line " + lineNumber + " is longer than the mapping size of " +
+					this.mappingSize + " bytes");
+			windowStart = lastWindow ? size : windowStart + linesEnd;
+		}
+		for (int i = 0; i < this.parserThreads; i++) {
+			chunks.put(END_OF_CHUNKS);
+		}
+	}	// readChunks
+
+	private void executeBatch(ParsedBatch batch, BulkLoadReport report, long startTime) throws DataAccessException {
+		for (int i = 0; i < batch.parseErrors.size(); i++) {
+			report.addFailure((String) batch.parseErrors.get(i));
+		}
+		Object[][] rows = (Object[][]) batch.rows.toArray(new Object[batch.rows.size()][]);
+		if (rows.length == 0) {
+			report.batchLoaded(0, batch.rejected);
+			return;
+		}
+		try {
+			this.sqlUpdate.batchUpdate(rows);
+			report.batchLoaded(rows.length, batch.rejected);
+		}
+		catch (DataAccessException ex) {
+			String description = "Batch starting at line " + batch.firstLine + " failed: " + ex.getMessage();
+			logger.warn(description, ex);
+			report.batchFailed(rows.length, batch.rejected, description);
+			if (this.stopOnFailure)
+				throw ex;
+		}
+
+		if (this.progressInterval > 0 && report.getBatchCount() % this.progressInterval == 0 && logger.isInfoEnabled()) {
+			long elapsed = System.currentTimeMillis() - startTime;
+			logger.info("Bulk load progress: " + report.getRowsLoaded() + " rows loaded, " +
+				report.getRowsRejected() + " rejected, " + report.getFailedBatchCount() + " failed batches, " +
+				(elapsed > 0 ? report.getRowsLoaded() * 1000 / elapsed : report.getRowsLoaded()) + " rows/sec");
+		}
+	}	// executeBatch
+
+
+	//---------------------------------------------------------------------
+	// Inner classes
+	//---------------------------------------------------------------------
+	/**
+	 * Range of complete lines within a mapped window of the file
+	 */
+	private static class Chunk {
+
+		final ByteBuffer window;
+
+		final int start;
+
+		final int end;
+
+		final long firstLine;
+
+		Chunk(ByteBuffer window, int start, int end, long firstLine) {
+			this.window = window;
+			this.start = start;
+			this.end = end;
+			this.firstLine = firstLine;
+		}
+	}
+
+
+	/**
+	 * Parameter values parsed from a Chunk
+	 */
+	private static class ParsedBatch {
+
+		final long firstLine;
+
+		final List rows = new LinkedList();
+
+		final List parseErrors = new LinkedList();
+
+		int rejected;
+
+		ParsedBatch(long firstLine) {
+			this.firstLine = firstLine;
+		}
+	}
+
+
+	/**
+	 * Parses lines into typed parameter values. Each parser thread has its own
+	 * instance, as scratch buffers are reused from line to line.
+	 */
+	private class LineParser {
+
+		private final int[] types;
+
+		private final int[] fieldStarts;
+
+		private final int[] fieldEnds;
+
+		private final boolean[] quoted;
+
+		private final Calendar calendar = Calendar.getInstance();
+
+		private byte[] scratch = new byte[256];
+
+		LineParser(int[] types) {
+			this.types = types;
+			this.fieldStarts = new int[types.length];
+			this.fieldEnds = new int[types.length];
+			this.quoted = new boolean[types.length];
+		}
+
+		ParsedBatch parse(Chunk chunk) {
+			ParsedBatch batch = new ParsedBatch(chunk.firstLine);
+			ByteBuffer buf = chunk.window;
+			long lineNumber = chunk.firstLine;
+			int lineStart = chunk.start;
+			while (lineStart < chunk.end) {
+				int lineEnd = lineStart;
+				while (lineEnd < chunk.end && buf.get(lineEnd) != '\n')
+					lineEnd++;
+				int next = lineEnd + 1;
+				if (lineEnd > lineStart && buf.get(lineEnd - 1) == '\r')
+					lineEnd--;
+				if (lineEnd > lineStart) {
+					try {
+						batch.rows.add(parseLine(buf, lineStart, lineEnd));
+					}
+					catch (IllegalArgumentException ex) {
+						batch.rejected++;
+						batch.parseErrors.add("Line " + lineNumber + " rejected: " + ex.getMessage());
+					}
+				}
+				lineNumber++;
+				lineStart = next;
+			}
+			return batch;
+		}
+
+		/**
+		 * Split a line into fields and convert each one.
+		 * @throws IllegalArgumentException if the line can't be parsed
+		 */
+		private Object[] parseLine(ByteBuffer buf, int start, int end) {
+			int field = 0;
+			int pos = start;
+			while (true) {
+				if (field == this.types.length)
+					throw new IllegalArgumentException("Expected " + this.types.length + " fields but found more");
+				if (pos < end && buf.get(pos) == '"') {
+					int close = pos + 1;
+					while (true) {
+						if (close >= end)
+							throw new IllegalArgumentException("Unterminated quoted field " + (field + 1));
+						if (buf.get(close) == '"') {
+							if (close + 1 < end && buf.get(close + 1) == '"')
+								close += 2;
+							else
+								break;
+						}
+						else {
+							close++;
+						}
+					}
+					this.fieldStarts[field] = pos + 1;
+					this.fieldEnds[field] = close;
+					this.quoted[field] = true;
+					pos = close + 1;
+					if (pos < end && buf.get(pos) != delimiter)
+						throw new IllegalArgumentException("Unexpected character after quoted field " + (field + 1));
+				}
+				else {
+					this.fieldStarts[field] = pos;
+					while (pos < end && buf.get(pos) != delimiter)
+						pos++;
+					this.fieldEnds[field] = pos;
+					this.quoted[field] = false;
+				}
+				field++;
+				if (pos >= end)
+					break;
+				pos++;
+				if (pos == end) {
+					// Trailing delimiter: one more empty field
+					if (field == this.types.length)
+						throw new IllegalArgumentException("Expected " + this.types.length + " fields but found more");
+					this.fieldStarts[field] = pos;
+					this.fieldEnds[field] = pos;
+					this.quoted[field] = false;
+					field++;
+					break;
+				}
+			}
+			if (field != this.types.length)
+				throw new IllegalArgumentException("Expected " + this.types.length + " fields but found " + field);
+
+			Object[] values = new Object[this.types.length];
+			for (int i = 0; i < values.length; i++) {
+				try {
+					values[i] = convert(buf, this.fieldStarts[i], this.fieldEnds[i], this.quoted[i], this.types[i]);
+				}
+				catch (IllegalArgumentException ex) {
+					throw new IllegalArgumentException("Field " + (i + 1) + ": " + ex.getMessage());
+				}
+			}
+			return values;
+		}
+
+		private Object convert(ByteBuffer buf, int start, int end, boolean quoted, int sqlType) {
+			if (start == end)
+				return null;
+			if (quoted)
+				return convertString(decode(buf, start, end, true), sqlType);
+
+			switch (sqlType) {
+				case Types.TINYINT:
+				case Types.SMALLINT:
+				case Types.INTEGER: {
+					long value = parseLong(buf, start, end);
+					if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+						throw new IllegalArgumentException("Integer out of range");
+					return new Integer((int) value);
+				}
+				case Types.BIGINT:
+					return new Long(parseLong(buf, start, end));
+				case Types.DATE:
+					return parseDate(buf, start, end);
+				default:
+					return convertString(decode(buf, start, end, false), sqlType);
+			}
+		}
+
+		private Object convertString(String s, int sqlType) {
+			switch (sqlType) {
+				case Types.TINYINT:
+				case Types.SMALLINT:
+				case Types.INTEGER:
+					return Integer.valueOf(s.trim());
+				case Types.BIGINT:
+					return Long.valueOf(s.trim());
+				case Types.DECIMAL:
+				case Types.NUMERIC:
+					return new BigDecimal(s.trim());
+				case Types.FLOAT:
+				case Types.DOUBLE:
+					return Double.valueOf(s.trim());
+				case Types.REAL:
+					return Float.valueOf(s.trim());
+				case Types.BIT:
+					s = s.trim();
+					if ("1".equals(s) || "true".equalsIgnoreCase(s) || "Y".equalsIgnoreCase(s))
+						return Boolean.TRUE;
+					if ("0".equals(s) || "false".equalsIgnoreCase(s) || "N".equalsIgnoreCase(s))
+						return Boolean.FALSE;
+					throw new IllegalArgumentException("Invalid boolean [" + s + "]");
+				case Types.DATE:
+					return java.sql.Date.valueOf(s.trim());
+				case Types.TIME:
+					return java.sql.Time.valueOf(s.trim());
+				case Types.TIMESTAMP:
+					return Timestamp.valueOf(s.trim());
+				default:
+					return s;
+			}
+		}
+
+		private long parseLong(ByteBuffer buf, int start, int end) {
+			boolean negative = false;
+			int pos = start;
+			if (buf.get(pos) == '-' || buf.get(pos) == '+') {
+				negative = (buf.get(pos) == '-');
+				pos++;
+			}
+			if (pos == end || end - pos > 19)
+				throw new IllegalArgumentException("Invalid number [" + decode(buf, start, end, false) + "]");
+			long value = 0;
+			for (; pos < end; pos++) {
+				int digit = buf.get(pos) - '0';
+				if (digit < 0 || digit > 9)
+					throw new IllegalArgumentException("Invalid number [" + decode(buf, start, end, false) + "]");
+				// Accumulate negatively so that Long.MIN_VALUE parses
+				value = value * 10 - digit;
+				if (value > 0)
+					throw new IllegalArgumentException("Number out of range [" + decode(buf, start, end, false) + "]");
+			}
+			if (!negative) {
+				if (value == Long.MIN_VALUE)
+					throw new IllegalArgumentException("Number out of range [" + decode(buf, start, end, false) + "]");
+				value = -value;
+			}
+			return value;
+		}
+
+		/**
+		 * Parse a yyyy-mm-dd date without building a String
+		 */
+		private java.sql.Date parseDate(ByteBuffer buf, int start, int end) {
+			if (end - start != 10 || buf.get(start + 4) != '-' || buf.get(start + 7) != '-')
+				throw new IllegalArgumentException("Invalid date [" + decode(buf, start, end, false) + "]");
+			int year = (int) parseLong(buf, start, start + 4);
+			int month = (int) parseLong(buf, start + 5, start + 7);
+			int day = (int) parseLong(buf, start + 8, start + 10);
+			if (month < 1 || month > 12 || day < 1 || day > 31)
+				throw new IllegalArgumentException("Invalid date [" + decode(buf, start, end, false) + "]");
+			this.calendar.clear();
+			this.calendar.set(year, month - 1, day);
+			return new java.sql.Date(this.calendar.getTime().getTime());
+		}
+
+		/**
+		 * Decode UTF-8 bytes, unescaping doubled quotes in quoted fields
+		 */
+		private String decode(ByteBuffer buf, int start, int end, boolean quoted) {
+			int length = end - start;
+			if (this.scratch.length < length)
+				this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+			int n = 0;
+			for (int pos = start; pos < end; pos++) {
+				byte b = buf.get(pos);
+				this.scratch[n++] = b;
+				if (quoted && b == '"')
+					pos++;
+			}
+			try {
+				return new String(this.scratch, 0, n, "UTF-8");
+			}
+			catch (UnsupportedEncodingException ex) {
+				// Every JVM supports UTF-8
+				throw new IllegalStateException("UTF-8 not supported");
+			}
+		}
+	}	// class LineParser
+
+
+	/**
+	 * Minimal bounded blocking queue handing work between threads.
+	 * Once aborted, put() returns false and take() returns null,
+	 * so that all threads involved in a load stop promptly.
+	 */
+	private static class BoundedQueue {
+
+		private final LinkedList items = new LinkedList();
+
+		private final int capacity;
+
+		private boolean aborted;
+
+		BoundedQueue(int capacity) {
+			this.capacity = capacity;
+		}
+
+		synchronized boolean put(Object item) throws InterruptedException {
+			while (this.items.size() >= this.capacity && !this.aborted)
+				wait();
+			if (this.aborted)
+				return false;
+			this.items.addLast(item);
+			notifyAll();
+			return true;
+		}
+
+		synchronized Object take() throws InterruptedException {
+			while (this.items.isEmpty() && !this.aborted)
+				wait();
+			if (this.items.isEmpty())
+				return null;
+			Object item = this.items.removeFirst();
+			notifyAll();
+			return item;
+		}
+
+		synchronized void abort() {
+			this.aborted = true;
+			notifyAll();
+		}
+	}	// class BoundedQueue
+
+}	// class BulkLoader
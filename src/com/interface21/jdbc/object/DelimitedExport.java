@@ -0,0 +1,174 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify. However, please
+ * acknowledge the source and include the above URL in each
+ * class using or derived from this code.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.jdbc.object;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.sql.DataSource;
+
+import com.interface21.dao.DataAccessException;
+import com.interface21.dao.DataAccessResourceFailureException;
+import com.interface21.jdbc.core.DelimitedExportCallbackHandler;
+
+/**
+ * Reusable threadsafe object representing a query whose results are
+ * exported as delimited text, such as CSV or TSV, to an OutputStream.
+ * <br>Unlike a SqlQuery, no List of results is built: each row is formatted
+ * straight into a buffer as it is read from the ResultSet, so exports
+ * of any size run in constant memory. Output can optionally be gzipped
+ * as it is written.
+ * <br>Like SqlUpdate, this class is concrete, and can be parameterized
+ * by setting SQL and declaring parameters.
+ * @author Rod Johnson
+ * @see com.interface21.jdbc.core.DelimitedExportCallbackHandler
+ */
+public class DelimitedExport extends SqlOperation {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private char delimiter = ',';
+
+	private String lineSeparator = "\n";
+
+	private boolean header = true;
+
+	private boolean gzip;
+
+	private int bufferSize = DelimitedExportCallbackHandler.DEFAULT_BUFFER_SIZE;
+
+
+	//---------------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------------
+	/**
+	 * Constructor to allow use as a JavaBean. DataSource,
+	 * SQL and any parameter declarations must be supplied before
+	 * compilation and use.
+	 */
+	public DelimitedExport() {
+	}
+
+	/**
+	 * Construct an export object with a given DataSource and SQL
+	 * @param ds DataSource to use to obtain connections
+	 * @param sql SQL query
+	 */
+	public DelimitedExport(DataSource ds, String sql) {
+		setDataSource(ds);
+		setSql(sql);
+	}
+
+
+	//---------------------------------------------------------------------
+	// Bean properties
+	//---------------------------------------------------------------------
+	/**
+	 * Set the field delimiter. Default is a comma; use a tab for TSV.
+	 */
+	public void setDelimiter(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Set the line separator. Default is a newline.
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Set whether to write a header line of column names.
+	 * Default is true.
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	/**
+	 * Set whether to gzip the output as it is written.
+	 * Default is false.
+	 */
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	/**
+	 * Set the size of the buffer rows are formatted into before
+	 * being written. Default is 64 KB.
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Generic method to run the export given arguments.
+	 * All other export() methods invoke this method.
+	 * @param args array of object arguments. May be null.
+	 * @param out stream to write to. It will be flushed, but not closed.
+	 * @return the number of rows exported
+	 * @throws DataAccessException if there is any problem running the
+	 * query or writing the output
+	 */
+	public int export(Object[] args, OutputStream out) throws DataAccessException {
+		validateParameters(args);
+
+		try {
+			GZIPOutputStream gzipOut = this.gzip ? new GZIPOutputStream(out, this.bufferSize) : null;
+			DelimitedExportCallbackHandler handler =
+				new DelimitedExportCallbackHandler(gzipOut != null ? gzipOut : out, this.bufferSize);
+			handler.setDelimiter(this.delimiter);
+			handler.setLineSeparator(this.lineSeparator);
+			handler.setHeader(this.header);
+
+			getJdbcTemplate().query(newPreparedStatementCreator(args), handler);
+
+			handler.flush();
+			if (gzipOut != null)
+				gzipOut.finish();
+			out.flush();
+			logger.info(handler.getRowCount() + " rows exported by SQL query [" + getSql() + "]");
+			return handler.getRowCount();
+		}
+		catch (IOException ex) {
+			throw new DataAccessResourceFailureException("Couldn't write export of SQL query [" + getSql() + "]", ex);
+		}
+	}	// export
+
+	/**
+	 * Convenience method to run an export with no parameters
+	 */
+	public int export(OutputStream out) throws DataAccessException {
+		return export((Object[]) null, out);
+	}
+
+	/**
+	 * Convenient method to run an export given one int arg
+	 */
+	public int export(int p1, OutputStream out) throws DataAccessException {
+		return export(new Object[] { new Integer(p1) }, out);
+	}
+
+	/**
+	 * Convenient method to run an export given one String arg
+	 */
+	public int export(String p1, OutputStream out) throws DataAccessException {
+		return export(new Object[] { p1 }, out);
+	}
+
+}	// class DelimitedExport
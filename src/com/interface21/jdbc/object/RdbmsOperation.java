@@ -11,6 +11,9 @@
 
 package com.interface21.jdbc.object;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -223,6 +226,26 @@ public abstract class RdbmsOperation implements InitializingBean {
 	protected abstract void compileInternal() throws InvalidDataAccessApiUsageException;
 
 
+	/**
+	 * Prepare, and immediately close, this operation's statement on the given
+	 * Connection. Nothing is executed. With a pool that caches prepared
+	 * statements, this saves the first real use of the Connection from
+	 * paying for server-side preparation.
+	 * <br>Subclasses that don't execute their SQL as a PreparedStatement,
+	 * such as StoredProcedure, should override this method.
+	 * @param con Connection to prepare the statement on. It is not closed.
+	 * @throws InvalidDataAccessApiUsageException if this operation isn't compiled
+	 * @throws SQLException if the statement can't be prepared
+	 * @see StatementWarmUpListener
+	 */
+	public void prepareStatement(Connection con) throws InvalidDataAccessApiUsageException, SQLException {
+		if (!isCompiled())
+			throw new InvalidDataAccessApiUsageException("SQL operation must be compiled before its statement is prepared");
+		PreparedStatement ps = con.prepareStatement(getSql());
+		ps.close();
+	}
+
+
 	/**
 	 * Validate the parameters passed to an execute method
 	 * based on declared parameters.
@@ -8,11 +8,9 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
-import com.interface21.beans.BeanWrapper;
 import com.interface21.beans.BeanWrapperImpl;
 import com.interface21.beans.BeansException;
-import com.interface21.beans.MutablePropertyValues;
-import com.interface21.beans.PropertyValue;
+import com.interface21.beans.BindingPlan;
 import com.interface21.dao.InvalidDataAccessApiUsageException;
 import com.interface21.jdbc.core.ResultReader;
 import com.interface21.jdbc.core.RowCountCallbackHandler;
@@ -33,6 +31,9 @@ public class ReflectionRowExtractor extends RowCountCallbackHandler implements R
 
 	private Class resultClass;
 
+	/** Maps columns to properties: compiled from the first row's metadata */
+	private BindingPlan bindingPlan;
+
 	/** Column extractor to use */
 	//private ColumnExtractor columnExtractor;
 
@@ -53,23 +54,27 @@ public class ReflectionRowExtractor extends RowCountCallbackHandler implements R
 
 	protected void processRow(ResultSet rs, int rowNum) throws SQLException, InvalidDataAccessApiUsageException {
 		//l.add(columnExtractor.extractColumn(1, requiredType, rs));
-		MutablePropertyValues pvs = new MutablePropertyValues();
-		for (int i = 0; i < getColumnCount(); i++) {
-			String colname = getColumnNames()[i];
-			
-			// HACK!!!!
-			colname = colname.toLowerCase();
-			
-			// TODO: clean up types
-			PropertyValue pv = new PropertyValue(colname, rs.getObject(colname));
-			logger.info("Found property value " + pv);
-			pvs.addPropertyValue(pv);
+		if (this.bindingPlan == null) {
+			String[] propertyNames = new String[getColumnCount()];
+			for (int i = 0; i < propertyNames.length; i++) {
+				// HACK!!!!
+				propertyNames[i] = getColumnNames()[i].toLowerCase();
+			}
+			try {
+				this.bindingPlan = new BindingPlan(resultClass, propertyNames);
+			}
+			catch (BeansException ex) {
+				throw new InvalidDataAccessApiUsageException("Can't map columns to properties: " + ex);
+			}
+		}
+
+		// TODO: clean up types
+		Object[] values = new Object[getColumnCount()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = rs.getObject(i + 1);
 		}
 		try {
-			BeanWrapper bw = new BeanWrapperImpl(resultClass);
-			bw.setEventPropagationEnabled(false);
-			bw.setPropertyValues(pvs);
-			l.add(bw.getWrappedInstance());
+			l.add(this.bindingPlan.newInstance(values));
 		}
 		catch (BeansException ex) {
 			throw new InvalidDataAccessApiUsageException("Can't add row results: " + ex);
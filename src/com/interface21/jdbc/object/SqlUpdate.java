@@ -11,10 +11,17 @@
 
 package com.interface21.jdbc.object;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
 import javax.sql.DataSource;
 
 import com.interface21.dao.InvalidDataAccessApiUsageException;
+import com.interface21.jdbc.core.BatchPreparedStatementSetter;
 import com.interface21.jdbc.core.JdbcUpdateAffectedIncorrectNumberOfRowsException;
+import com.interface21.jdbc.core.PreparedStatementCreatorFactory;
+import com.interface21.jdbc.core.SqlParameter;
 
 /**
  * RdbmsOperation subclass representing a SQL update.
@@ -143,6 +150,40 @@ public class SqlUpdate extends SqlOperation {
 	}	// update
 	
 	
+	/**
+	 * Execute the update once for each array of arguments, as a single
+	 * JDBC batch. Row count checks are not applied to batch updates.
+	 * @param batchArgs array of argument arrays, one per statement in the batch
+	 * @return the number of rows affected by each statement in the batch
+	 */
+	public int[] batchUpdate(final Object[][] batchArgs) throws InvalidDataAccessApiUsageException {
+		for (int i = 0; i < batchArgs.length; i++) {
+			validateParameters(batchArgs[i]);
+		}
+		List declaredParameters = getDeclaredParameters();
+		final int[] types = new int[declaredParameters.size()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = ((SqlParameter) declaredParameters.get(i)).getSqlType();
+		}
+
+		int[] rowsAffected = getJdbcTemplate().batchUpdate(getSql(), new BatchPreparedStatementSetter() {
+			public int getBatchSize() {
+				return batchArgs.length;
+			}
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				Object[] args = batchArgs[i];
+				for (int j = 0; j < types.length; j++) {
+					PreparedStatementCreatorFactory.setParameterValue(ps, j + 1, types[j], args[j]);
+				}
+			}
+		});
+
+		if (logger.isInfoEnabled())
+			logger.info(batchArgs.length + " statements in batch update with SQL [" + getSql() + "]");
+		return rowsAffected;
+	}	// batchUpdate
+
+
 	/**
 	 * Convenience method to execute an update with no parameters
 	 */
@@ -0,0 +1,286 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify. However, please
+ * acknowledge the source and include the above URL in each
+ * class using or derived from this code.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.jdbc.object;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+
+import com.interface21.context.ApplicationContext;
+import com.interface21.context.ApplicationContextAware;
+import com.interface21.context.ApplicationContextException;
+import com.interface21.context.ApplicationEvent;
+import com.interface21.context.ApplicationListener;
+import com.interface21.context.ContextRefreshedEvent;
+import com.interface21.context.support.AbstractApplicationContext;
+
+/**
+ * Opt-in listener that warms up JDBC resources when its ApplicationContext
+ * is refreshed, so that the first requests after a deploy don't pay for
+ * connection creation and statement preparation.
+ *
+ * <p>To use it, simply define it as a bean in the context. On refresh,
+ * it finds every singleton RdbmsOperation (SqlQuery, SqlUpdate,
+ * StoredProcedure etc.) in the context, except lazy-init singletons,
+ * which it would otherwise create, and, for each DataSource they use:
+ * <ul>
+ * <li>opens poolSize connections at once, forcing the pool to create them
+ * <li>prepares each operation's statement on every one of those connections,
+ * populating the statement cache of pools that have one
+ * <li>returns the connections to the pool
+ * </ul>
+ * Timings are logged, and are available afterwards from this object.
+ *
+ * <p>By default, failures are logged as warnings and don't prevent
+ * the context from starting: warm-up is an optimization only.
+ * @author Rod Johnson
+ * @see RdbmsOperation#prepareStatement(java.sql.Connection)
+ * @see com.interface21.context.ContextRefreshedEvent
+ */
+public class StatementWarmUpListener implements ApplicationListener, ApplicationContextAware {
+
+	protected final Logger logger = Logger.getLogger(getClass().getName());
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private ApplicationContext applicationContext;
+
+	private int poolSize = 1;
+
+	private boolean failOnError;
+
+	private long connectionMillis;
+
+	private long preparationMillis;
+
+	private int statementCount;
+
+	private int failureCount;
+
+	/** Map from operation bean name to Long total preparation time in milliseconds */
+	private Map operationMillis = new HashMap();
+
+
+	//---------------------------------------------------------------------
+	// Bean properties
+	//---------------------------------------------------------------------
+	/**
+	 * Set the number of connections to open at once from each DataSource.
+	 * This should normally be the minimum size of the pool. Default is 1.
+	 */
+	public void setPoolSize(int poolSize) {
+		if (poolSize < 1)
+			throw new IllegalArgumentException("poolSize must be at least 1");
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * Set whether a failure to warm up should prevent the context starting.
+	 * Default is false: failures are only logged.
+	 */
+	public void setFailOnError(boolean failOnError) {
+		this.failOnError = failOnError;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of ApplicationContextAware
+	//---------------------------------------------------------------------
+	public void setApplicationContext(ApplicationContext ctx) throws ApplicationContextException {
+		this.applicationContext = ctx;
+	}
+
+	public ApplicationContext getApplicationContext() {
+		return applicationContext;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of ApplicationListener
+	//---------------------------------------------------------------------
+	/**
+	 * Warm up on refresh of our own context. Refreshes of child
+	 * contexts are propagated to us, but are ignored.
+	 */
+	public void onApplicationEvent(ApplicationEvent e) {
+		if (e instanceof ContextRefreshedEvent &&
+				((ContextRefreshedEvent) e).getApplicationContext() == this.applicationContext) {
+			warmUp();
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Public methods
+	//---------------------------------------------------------------------
+	/**
+	 * Warm up the connection pools and statements used by
+	 * the RdbmsOperations in our context
+	 * @throws ApplicationContextException if warm-up fails and failOnError is set
+	 */
+	public synchronized void warmUp() throws ApplicationContextException {
+		if (this.applicationContext == null)
+			throw new ApplicationContextException("StatementWarmUpListener must be defined in an ApplicationContext");
+		this.connectionMillis = 0;
+		this.preparationMillis = 0;
+		this.statementCount = 0;
+		this.failureCount = 0;
+		this.operationMillis.clear();
+
+		// Group operations by DataSource, keeping their bean names
+		Map namesByDataSource = new HashMap();
+		String[] names = this.applicationContext.getBeanDefinitionNames(RdbmsOperation.class);
+		for (int i = 0; i < names.length; i++) {
+			if (!this.applicationContext.isSingleton(names[i]) || isLazyInit(names[i]))
+				continue;
+			RdbmsOperation operation = (RdbmsOperation) this.applicationContext.getBean(names[i]);
+			if (!operation.isCompiled() || operation.getDataSource() == null)
+				continue;
+			List dsNames = (List) namesByDataSource.get(operation.getDataSource());
+			if (dsNames == null) {
+				dsNames = new LinkedList();
+				namesByDataSource.put(operation.getDataSource(), dsNames);
+			}
+			dsNames.add(names[i]);
+		}
+
+		for (Iterator it = namesByDataSource.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry entry = (Map.Entry) it.next();
+			warmUp((DataSource) entry.getKey(), (List) entry.getValue());
+		}
+
+		logger.info("Warm-up complete: " + this.statementCount + " statements prepared on " +
+			namesByDataSource.size() + " DataSources; " + this.connectionMillis + "ms obtaining connections, " +
+			this.preparationMillis + "ms preparing statements; " + this.failureCount + " failures");
+	}	// warmUp
+
+	/**
+	 * Return the total time in milliseconds spent obtaining connections
+	 * during the last warm-up
+	 */
+	public synchronized long getConnectionMillis() {
+		return connectionMillis;
+	}
+
+	/**
+	 * Return the total time in milliseconds spent preparing statements
+	 * during the last warm-up
+	 */
+	public synchronized long getPreparationMillis() {
+		return preparationMillis;
+	}
+
+	/**
+	 * Return the number of statements prepared during the last warm-up,
+	 * counting each statement once per connection
+	 */
+	public synchronized int getStatementCount() {
+		return statementCount;
+	}
+
+	/**
+	 * Return the number of failures during the last warm-up
+	 */
+	public synchronized int getFailureCount() {
+		return failureCount;
+	}
+
+	/**
+	 * Return the time in milliseconds spent preparing each operation's statement
+	 * during the last warm-up, as a Map from bean name to Long
+	 */
+	public synchronized Map getOperationMillis() {
+		return Collections.unmodifiableMap(new HashMap(operationMillis));
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation
+	//---------------------------------------------------------------------
+	private void warmUp(DataSource ds, List operationNames) throws ApplicationContextException {
+		Connection[] connections = new Connection[this.poolSize];
+		try {
+			long start = System.currentTimeMillis();
+			try {
+				// Hold all connections at once so that the pool has to create them
+				for (int i = 0; i < connections.length; i++) {
+					connections[i] = ds.getConnection();
+				}
+			}
+			catch (SQLException ex) {
+				handleFailure("Couldn't obtain connection from DataSource [" + ds + "]", ex);
+			}
+			long elapsed = System.currentTimeMillis() - start;
+			this.connectionMillis += elapsed;
+			logger.info("Obtained connections from DataSource [" + ds + "] in " + elapsed + "ms");
+
+			for (Iterator it = operationNames.iterator(); it.hasNext(); ) {
+				String name = (String) it.next();
+				RdbmsOperation operation = (RdbmsOperation) this.applicationContext.getBean(name);
+				start = System.currentTimeMillis();
+				for (int i = 0; i < connections.length && connections[i] != null; i++) {
+					try {
+						operation.prepareStatement(connections[i]);
+						this.statementCount++;
+					}
+					catch (SQLException ex) {
+						handleFailure("Couldn't prepare statement for operation '" + name + "' with SQL [" +
+							operation.getSql() + "]", ex);
+					}
+				}
+				elapsed = System.currentTimeMillis() - start;
+				this.preparationMillis += elapsed;
+				this.operationMillis.put(name, new Long(elapsed));
+				if (logger.isDebugEnabled())
+					logger.debug("Prepared statement for operation '" + name + "' in " + elapsed + "ms");
+			}
+		}
+		finally {
+			for (int i = 0; i < connections.length; i++) {
+				if (connections[i] != null) {
+					try {
+						connections[i].close();
+					}
+					catch (SQLException ex) {
+						logger.warn("Couldn't close connection", ex);
+					}
+				}
+			}
+		}
+	}	// warmUp
+
+	/**
+	 * Lazy-init singletons are left alone: warming them up would create them
+	 */
+	private boolean isLazyInit(String name) {
+		return this.applicationContext instanceof AbstractApplicationContext &&
+			((AbstractApplicationContext) this.applicationContext).isLazyInit(name);
+	}
+
+	private void handleFailure(String message, SQLException ex) throws ApplicationContextException {
+		this.failureCount++;
+		if (this.failOnError)
+			throw new ApplicationContextException(message, ex);
+		logger.warn(message, ex);
+	}
+
+}	// class StatementWarmUpListener
@@ -119,6 +119,17 @@ public abstract class StoredProcedure extends RdbmsOperation {
 		callString += ")}";
 		logger.info("Compiled stored procedure. Call string is [" + callString + "]");
 	}
+
+	/**
+	 * Override of RdbmsOperation.prepareStatement() to prepare the call string
+	 * as a CallableStatement
+	 */
+	public void prepareStatement(Connection con) throws InvalidDataAccessApiUsageException, SQLException {
+		if (!isCompiled())
+			throw new InvalidDataAccessApiUsageException("Stored procedure must be compiled before its statement is prepared");
+		CallableStatement call = con.prepareCall(this.callString);
+		call.close();
+	}
 	
 	
 	//---------------------------------------------------------------------
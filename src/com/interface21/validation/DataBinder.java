@@ -6,6 +6,7 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import com.interface21.beans.ConversionService;
 import com.interface21.beans.ErrorCodedPropertyVetoException;
 import com.interface21.beans.PropertyValue;
 import com.interface21.beans.PropertyValues;
@@ -48,6 +49,14 @@ public class DataBinder extends BindException {
 		getLastBeanWrapper().addPropertyChangeListener(pcl);
 	}
 	
+	/**
+	 * Sets the ConversionService the last bean wrapper uses
+	 * to convert String values to the required types
+	 */
+	public void setConversionService(ConversionService conversionService) {
+		getLastBeanWrapper().setConversionService(conversionService);
+	}
+	
 	// MULTIPLE ERRORS on same field?!?
 	
 	/**
@@ -7,7 +7,7 @@ import javax.servlet.ServletRequest;
 
 import org.apache.log4j.Logger;
 
-import com.interface21.beans.MutablePropertyValues;
+import com.interface21.beans.IndexedPropertyValues;
 import com.interface21.beans.PropertyValue;
 import com.interface21.beans.PropertyValues;
 import com.interface21.web.util.WebUtils;
@@ -38,10 +38,10 @@ public class ServletRequestParameterPropertyValues implements PropertyValues {
 	// Instance data
 	//---------------------------------------------------------------------
 	/** PropertyValues delegate. We use delegation rather than simply subclass
-	 * MutablePropertyValues as we don't want to expose MutablePropertyValues's
+	 * IndexedPropertyValues as we don't want to expose IndexedPropertyValues's
 	 * update methods. This class is immutable once initialized.
 	 */
-	private MutablePropertyValues mutablePropertyValues;
+	private IndexedPropertyValues propertyValues;
 
 	/** Creates new ServletRequestPropertyValues using the default
 	 * prefix separator and the given prefix (the underscore character, _).
@@ -71,9 +71,9 @@ public class ServletRequestParameterPropertyValues implements PropertyValues {
     public ServletRequestParameterPropertyValues(ServletRequest request, String prefix, String prefixSeparator) {
 		String base = (prefix != null) ?  prefix + prefixSeparator : null;
 		Properties p = WebUtils.getParametersStartingWith(request, base);
-		mutablePropertyValues = new MutablePropertyValues(p);
+		propertyValues = new IndexedPropertyValues(p);
 		if (logger.isDebugEnabled())
-			logger.debug("Found PropertyValues in request: " + mutablePropertyValues);
+			logger.debug("Found PropertyValues in request: " + propertyValues);
     }
 
 	//---------------------------------------------------------------------
@@ -86,7 +86,7 @@ public class ServletRequestParameterPropertyValues implements PropertyValues {
  	*/
 	public PropertyValue[] getPropertyValues() {
 		// We simply let the delegate handle this
-		return mutablePropertyValues.getPropertyValues();
+		return propertyValues.getPropertyValues();
 	}
 
 	/** Is there a propertyValue object for this property?
@@ -95,17 +95,17 @@ public class ServletRequestParameterPropertyValues implements PropertyValues {
 	 */
 	public boolean contains(String propertyName) {
 		// Just pass it to the delegate...
-		return mutablePropertyValues.contains(propertyName);
+		return propertyValues.contains(propertyName);
 	}
 	
 	public PropertyValue getPropertyValue(String propertyName) {
 		// Just pass it to the delegate...
-		return mutablePropertyValues.getPropertyValue(propertyName);
+		return propertyValues.getPropertyValue(propertyName);
 	}
 	
 	public PropertyValues changesSince(PropertyValues old) {
 		// Just pass it to the delegate...
-		return mutablePropertyValues.changesSince(old);
+		return propertyValues.changesSince(old);
 	}
 
 }
@@ -37,6 +37,14 @@ public class XmlWebApplicationContext
 
 	public static final String CONFIG_URL = "configUrl";
 
+	/**
+	 * Context param that makes the root context read its bean definitions
+	 * with SAX if "true". Servlet contexts use the streamingXml property
+	 * of FrameworkServlet.
+	 * @see AbstractXmlApplicationContext#setStreamingXml(boolean)
+	 */
+	public static final String STREAMING_XML_PARAM = "streamingXml";
+
 	//---------------------------------------------------------------------
 	// Instance data
 	//---------------------------------------------------------------------
@@ -82,6 +90,8 @@ public class XmlWebApplicationContext
 				throw new ServletException("Cannot initialize context of " + getClass() + ": missing required context param with name '" + CONFIG_URL + "'");
 			}
 			this.url = configURL;
+			if ("true".equalsIgnoreCase(servletContext.getInitParameter(STREAMING_XML_PARAM)))
+				setStreamingXml(true);
 		}
 		else {
 			this.url =  "/WEB-INF/" + url + ".xml";
@@ -21,6 +21,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import com.interface21.context.ApplicationContext;
 import com.interface21.context.ApplicationEvent;
+import com.interface21.context.support.AbstractXmlApplicationContext;
 import com.interface21.web.context.RequestHandledEvent;
 import com.interface21.web.context.WebApplicationContext;
 import com.interface21.web.context.support.XmlWebApplicationContext;
@@ -96,6 +97,9 @@ public abstract class FrameworkServlet extends HttpServletBean {
 	/** Custom context class */
 	private String contextClass;
 	
+	/** Should the context read its bean definitions with SAX? */
+	private boolean streamingXml;
+	
 	/** Any fatal exception encountered on startup.
 	 * Thrown on each request.
 	 */
@@ -191,6 +195,16 @@ public abstract class FrameworkServlet extends HttpServletBean {
 	public final void setPublishContext(boolean publishContext) {
 		this.publishContext = publishContext;
 	}
+	
+	/**
+	 * Set whether this servlet's context should read its bean definitions
+	 * with SAX, rather than parsing its XML document into a DOM. Default is false.
+	 * Ignored if a custom context class doesn't read XML.
+	 * @see AbstractXmlApplicationContext#setStreamingXml(boolean)
+	 */
+	public final void setStreamingXml(boolean streamingXml) {
+		this.streamingXml = streamingXml;
+	}
 
 
 	//---------------------------------------------------------------------
@@ -245,6 +259,8 @@ public abstract class FrameworkServlet extends HttpServletBean {
 			WebApplicationContext waca = (this.contextClass != null) ?
 					instantiateCustomWebApplicationContext(this.contextClass, parent, namespace) :
 				 	new XmlWebApplicationContext(parent, namespace);
+			if (this.streamingXml && waca instanceof AbstractXmlApplicationContext)
+				((AbstractXmlApplicationContext) waca).setStreamingXml(true);
 			waca.setServletContext(getServletConfig().getServletContext());
 			logger.info("Servlet with name '" + getServletName() + "' loaded child context " + waca);
 			if (this.publishContext) { 
@@ -10,7 +10,7 @@ import javax.servlet.ServletException;
 
 import org.apache.log4j.Logger;
 
-import com.interface21.beans.MutablePropertyValues;
+import com.interface21.beans.IndexedPropertyValues;
 import com.interface21.beans.PropertyValue;
 import com.interface21.beans.PropertyValues;
 import com.interface21.util.StringUtils;
@@ -25,10 +25,10 @@ class ServletConfigPropertyValues implements PropertyValues {
 	private static Logger logger = Logger.getLogger(ServletConfigPropertyValues.class.getName());
 	
 	/** PropertyValues delegate. We use delegation rather than simply subclass
-	 * MutablePropertyValues as we don't want to expose MutablePropertyValues's
+	 * IndexedPropertyValues as we don't want to expose IndexedPropertyValues's
 	 * update methods. This class is immutable once initialized.
 	 */
-	private MutablePropertyValues mutablePropertyValues;		
+	private IndexedPropertyValues propertyValues;		
 
 	/** Creates new PropertyValues object
 	 * @param config ServletConfig we'll use to take PropertyValues from
@@ -48,15 +48,16 @@ class ServletConfigPropertyValues implements PropertyValues {
 		// Ensure we have a deep copy
 		List missingProps = (requiredProperties == null) ? new ArrayList(0) : new ArrayList(requiredProperties);
 		
-		mutablePropertyValues = new MutablePropertyValues();
+		propertyValues = new IndexedPropertyValues();
 		Enumeration enum = config.getInitParameterNames();		
 		while (enum.hasMoreElements()) {
 			String property = (String) enum.nextElement();			
 			Object value = config.getInitParameter(property);
-			mutablePropertyValues.addPropertyValue(new PropertyValue(property, value));
+			propertyValues.addPropertyValue(new PropertyValue(property, value));
 			// Check it off
 			missingProps.remove(property);
 		}
+		propertyValues.trimToSize();
 		
 		// Fail if we are still missing properties
 		if (missingProps.size() > 0) {
@@ -64,7 +65,7 @@ class ServletConfigPropertyValues implements PropertyValues {
 				StringUtils.collectionToDelimitedString(missingProps, ", ") + ")");
 		}
 		
-		logger.debug("Found PropertyValues in ServletConfig: " + mutablePropertyValues);
+		logger.debug("Found PropertyValues in ServletConfig: " + propertyValues);
     }	// constructor
 	
 	
@@ -75,7 +76,7 @@ class ServletConfigPropertyValues implements PropertyValues {
  	*/
 	public PropertyValue[] getPropertyValues() {
 		// We simply let the delegate handle this
-		return mutablePropertyValues.getPropertyValues();
+		return propertyValues.getPropertyValues();
 	}
 	
 	/** Is there a propertyValue object for this property?
@@ -83,17 +84,17 @@ class ServletConfigPropertyValues implements PropertyValues {
 	 * @return whether there is a propertyValue object for this property?
 	 */
 	public boolean contains(String propertyName) {
-		return mutablePropertyValues.contains(propertyName);
+		return propertyValues.contains(propertyName);
 	}
 	
 	public PropertyValue getPropertyValue(String propertyName) {
 		// Just pass it to the delegate...
-		return mutablePropertyValues.getPropertyValue(propertyName);
+		return propertyValues.getPropertyValue(propertyName);
 	}
 	
 	public PropertyValues changesSince(PropertyValues old) {
 		// Just pass it to the delegate...
-		return mutablePropertyValues.changesSince(old);
+		return propertyValues.changesSince(old);
 	}
 	
 }
@@ -0,0 +1,151 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.web.servlet.view;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+
+import com.interface21.context.ApplicationContextException;
+import com.interface21.jdbc.core.JdbcTemplate;
+import com.interface21.jdbc.core.PreparedStatementCreatorFactory;
+import com.interface21.jdbc.core.SqlParameter;
+import com.interface21.web.util.ResponseLobStreamingCallbackHandler;
+
+/**
+ * View that streams a document stored in a BLOB or CLOB column
+ * straight from the database to the response, without reading it
+ * into memory. Byte range requests are supported for BLOBs.
+ * <br>The SQL must select the LOB as its first column, and take a single
+ * parameter: the document's key, which is taken from the model attribute
+ * named by the keyAttribute property.
+ * <br>The DataSource is looked up by name in the application context.
+ * <br>The contentType bean property inherited from AbstractView
+ * should be set to the type of the documents served.
+ * @author Rod Johnson
+ * @see com.interface21.web.util.ResponseLobStreamingCallbackHandler
+ */
+public class LobStreamingView extends AbstractView {
+
+	//---------------------------------------------------------------------
+	// Instance data
+	//---------------------------------------------------------------------
+	private String dataSourceBeanName = "dataSource";
+
+	private String sql;
+
+	private int keyType = java.sql.Types.INTEGER;
+
+	private String keyAttribute = "id";
+
+	private boolean characterData;
+
+	private int bufferSize = ResponseLobStreamingCallbackHandler.DEFAULT_BUFFER_SIZE;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private PreparedStatementCreatorFactory preparedStatementFactory;
+
+
+	//---------------------------------------------------------------------
+	// Bean properties
+	//---------------------------------------------------------------------
+	/**
+	 * Set the name of the DataSource bean in the application context.
+	 * Default is "dataSource".
+	 */
+	public void setDataSourceBeanName(String dataSourceBeanName) {
+		this.dataSourceBeanName = dataSourceBeanName;
+	}
+
+	/**
+	 * Set the SQL selecting the LOB, for example
+	 * SELECT CONTENT FROM DOCUMENT WHERE ID = ?
+	 */
+	public void setSql(String sql) {
+		this.sql = sql;
+	}
+
+	/**
+	 * Set the JDBC type of the key parameter, as defined in java.sql.Types.
+	 * Default is INTEGER.
+	 */
+	public void setKeyType(int keyType) {
+		this.keyType = keyType;
+	}
+
+	/**
+	 * Set the name of the model attribute holding the document's key.
+	 * Default is "id".
+	 */
+	public void setKeyAttribute(String keyAttribute) {
+		this.keyAttribute = keyAttribute;
+	}
+
+	/**
+	 * Set whether the column is a CLOB rather than a BLOB.
+	 * Default is false.
+	 */
+	public void setCharacterData(boolean characterData) {
+		this.characterData = characterData;
+	}
+
+	/**
+	 * Set the size of the copy buffer, in bytes or characters.
+	 * Default is 8 KB.
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Implementation of AbstractView
+	//---------------------------------------------------------------------
+	/**
+	 * Look up the DataSource and prepare the statement factory
+	 */
+	protected void onSetContext() throws ApplicationContextException {
+		if (this.sql == null)
+			throw new ApplicationContextException("sql property is required in LobStreamingView with name '" + getName() + "'");
+		DataSource ds = (DataSource) getApplicationContext().getBean(this.dataSourceBeanName, DataSource.class);
+		this.jdbcTemplate = new JdbcTemplate(ds);
+		this.preparedStatementFactory = new PreparedStatementCreatorFactory(this.sql);
+		this.preparedStatementFactory.addParameter(new SqlParameter(this.keyType));
+	}
+
+	/**
+	 * Run the query and stream the LOB to the response
+	 */
+	protected void renderMergedOutputModel(Map model, HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		Object key = model.get(this.keyAttribute);
+		if (key == null)
+			throw new ServletException("Model attribute '" + this.keyAttribute + "' is required by LobStreamingView with name '" + getName() + "'");
+
+		ResponseLobStreamingCallbackHandler handler =
+			new ResponseLobStreamingCallbackHandler(1, this.characterData, request, response, this.bufferSize);
+		handler.setContentType(getContentType());
+		this.jdbcTemplate.query(this.preparedStatementFactory.newPreparedStatementCreator(new Object[] { key }), handler);
+
+		if (!handler.isRowFound()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		}
+		else if (logger.isDebugEnabled()) {
+			logger.debug("Streamed " + handler.getCount() + " of " + handler.getLobLength() +
+				" bytes or characters of LOB with key [" + key + "]");
+		}
+	}
+
+}	// class LobStreamingView
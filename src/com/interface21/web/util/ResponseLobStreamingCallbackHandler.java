@@ -0,0 +1,184 @@
+/**
+ * Generic framework code included with
+ * <a href="http://www.amazon.com/exec/obidos/tg/detail/-/1861007841/">Expert One-On-One J2EE Design and Development</a>
+ * by Rod Johnson (Wrox, 2002).
+ * This code is free to use and modify.
+ * Please contact <a href="mailto:rod.johnson@interface21.com">rod.johnson@interface21.com</a>
+ * for commercial support.
+ */
+
+package com.interface21.web.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.interface21.jdbc.core.LobStreamingCallbackHandler;
+
+/**
+ * LobStreamingCallbackHandler that streams a BLOB or CLOB column
+ * to an HttpServletResponse, for use by controllers and views
+ * that serve documents stored in the database.
+ * <br>For BLOBs, honours a single HTTP byte range in the request's
+ * Range header, answering with 206 (Partial Content) and a Content-Range
+ * header, or with 416 if the range can't be satisfied. A Range header that
+ * isn't valid is ignored, as HTTP requires. Multiple ranges are not
+ * supported: the whole BLOB is sent instead, as HTTP allows.
+ * CLOBs are always streamed whole, through the response's Writer,
+ * as byte ranges don't map to character positions.
+ * <br>If the query returns no row or a null LOB, isRowFound() or
+ * getLobLength() can be checked afterwards; a null LOB is answered
+ * with 404 (Not Found).
+ * @author Rod Johnson
+ */
+public class ResponseLobStreamingCallbackHandler extends LobStreamingCallbackHandler {
+
+	/** Returned by parseRange() for a valid range that can't be satisfied */
+	private static final long[] UNSATISFIABLE = new long[0];
+
+	private final HttpServletRequest request;
+
+	private final HttpServletResponse response;
+
+	private String contentType;
+
+
+	/**
+	 * Create a new handler
+	 * @param columnIndex index (from 1) of the LOB column
+	 * @param characterData whether the column is a CLOB rather than a BLOB
+	 * @param request request, whose Range header we'll honour. May be null,
+	 * in which case the whole LOB is always sent.
+	 * @param response response to stream the LOB to
+	 */
+	public ResponseLobStreamingCallbackHandler(int columnIndex, boolean characterData,
+			HttpServletRequest request, HttpServletResponse response) {
+		this(columnIndex, characterData, request, response, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a new handler with the given buffer size
+	 * @param columnIndex index (from 1) of the LOB column
+	 * @param characterData whether the column is a CLOB rather than a BLOB
+	 * @param request request, whose Range header we'll honour. May be null.
+	 * @param response response to stream the LOB to
+	 * @param bufferSize size of the copy buffer, in bytes or characters
+	 */
+	public ResponseLobStreamingCallbackHandler(int columnIndex, boolean characterData,
+			HttpServletRequest request, HttpServletResponse response, int bufferSize) {
+		super(columnIndex, characterData, bufferSize);
+		this.request = request;
+		this.response = response;
+	}
+
+	/**
+	 * Set the content type of the response. If this isn't set,
+	 * the content type must be set on the response by the caller.
+	 */
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+
+	/**
+	 * Work out the range to send, and set status and headers accordingly
+	 */
+	protected boolean prepareStream(long lobLength) throws IOException {
+		if (this.contentType != null)
+			this.response.setContentType(this.contentType);
+		if (isCharacterData())
+			return true;
+
+		this.response.setHeader("Accept-Ranges", "bytes");
+		String range = (this.request != null) ? this.request.getHeader("Range") : null;
+		long[] bounds = null;
+		if (range != null && range.startsWith("bytes=") && range.indexOf(',') == -1)
+			bounds = parseRange(range.substring(6).trim(), lobLength);
+		if (bounds == UNSATISFIABLE) {
+			this.response.setHeader("Content-Range", "bytes */" + lobLength);
+			this.response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return false;
+		}
+		if (bounds != null) {
+			setRange(bounds[0], bounds[1]);
+			this.response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			this.response.setHeader("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + lobLength);
+		}
+		setContentLength(getRangeLength());
+		return true;
+	}
+
+	/**
+	 * Parse a single byte range spec, as first-last, first- or -suffix
+	 * @return inclusive start and end positions, UNSATISFIABLE if the
+	 * range is valid but starts after the end of the LOB or is an empty
+	 * suffix, or null if the range isn't valid and must be ignored
+	 */
+	private long[] parseRange(String spec, long lobLength) {
+		int dash = spec.indexOf('-');
+		if (dash == -1)
+			return null;
+		if (dash == 0) {
+			long suffix = parseDigits(spec.substring(1));
+			if (suffix == -1)
+				return null;
+			if (suffix == 0 || lobLength == 0)
+				return UNSATISFIABLE;
+			return new long[] { Math.max(0, lobLength - suffix), lobLength - 1 };
+		}
+		long start = parseDigits(spec.substring(0, dash));
+		long end = (dash == spec.length() - 1) ? Long.MAX_VALUE : parseDigits(spec.substring(dash + 1));
+		if (start == -1 || end == -1 || end < start)
+			return null;
+		if (start >= lobLength)
+			return UNSATISFIABLE;
+		return new long[] { start, Math.min(end, lobLength - 1) };
+	}
+
+	/**
+	 * Parse a byte position, which must be all digits
+	 * @return the position, Long.MAX_VALUE if it's too large for a long,
+	 * or -1 if it isn't valid
+	 */
+	private static long parseDigits(String s) {
+		if (s.length() == 0)
+			return -1;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+		}
+		try {
+			return Long.parseLong(s);
+		}
+		catch (NumberFormatException ex) {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	private void setContentLength(long length) {
+		if (length <= Integer.MAX_VALUE)
+			this.response.setContentLength((int) length);
+		else
+			this.response.setHeader("Content-Length", Long.toString(length));
+	}
+
+	/**
+	 * Send 404 (Not Found)
+	 */
+	protected void onNullLob() throws IOException {
+		this.response.sendError(HttpServletResponse.SC_NOT_FOUND);
+	}
+
+	protected OutputStream getOutputStream() throws IOException {
+		return this.response.getOutputStream();
+	}
+
+	protected Writer getWriter() throws IOException {
+		return this.response.getWriter();
+	}
+
+}	// class ResponseLobStreamingCallbackHandler
@@ -0,0 +1,66 @@
+package com.interface21.beans;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyVetoException;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Rod Johnson
+ */
+public class AbstractVetoableChangeListenerTestSuite extends TestCase {
+
+	public AbstractVetoableChangeListenerTestSuite(String name) {
+		super(name);
+	}
+
+	public static class AgeValidator extends AbstractVetoableChangeListener {
+		int validations;
+		public void validateAge(int age, PropertyChangeEvent e) throws PropertyVetoException {
+			validations++;
+			if (age < 0)
+				throw new PropertyVetoException("Age can't be negative", e);
+		}
+	}
+
+	public void testValidatorsFoundAndVetoes() throws Exception {
+		AgeValidator validator = new AgeValidator();
+		assertTrue(validator.hasValidator("age"));
+		assertTrue(!validator.hasValidator("name"));
+		assertTrue("Second instance shares the table", new AgeValidator().hasValidator("age"));
+
+		TestBean tb = new TestBean();
+		BeanWrapper bw = new BeanWrapperImpl(tb, true);
+		bw.addVetoableChangeListener(validator);
+		bw.setPropertyValue("age", "35");
+		bw.setPropertyValue("name", "rod");
+		assertTrue(tb.getAge() == 35);
+		try {
+			bw.setPropertyValue("age", "-1");
+			fail("Should have vetoed negative age");
+		}
+		catch (PropertyVetoException ex) {
+			// expected
+		}
+		assertTrue(tb.getAge() == 35);
+		assertTrue(validator.validations >= 2);
+	}
+
+	public void testEventsOnlyForPropertyWithListener() throws Exception {
+		final int[] events = new int[1];
+		TestBean tb = new TestBean();
+		BeanWrapper bw = new BeanWrapperImpl(tb, true);
+		bw.addPropertyChangeListener("age", new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent e) {
+				assertTrue("age".equals(e.getPropertyName()));
+				events[0]++;
+			}
+		});
+		bw.setPropertyValue("name", "rod");
+		bw.setPropertyValue("age", "35");
+		assertTrue(events[0] == 1);
+		assertTrue("rod".equals(tb.getName()) && tb.getAge() == 35);
+	}
+
+}
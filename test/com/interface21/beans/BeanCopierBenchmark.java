@@ -0,0 +1,58 @@
+package com.interface21.beans;
+
+import java.beans.PropertyDescriptor;
+
+/**
+ * Benchmark comparing BeanCopier with a loop of BeanWrapperImpl
+ * getPropertyValue() and setPropertyValue() calls, copying a DTO
+ * with String properties to a domain object with an int property.
+ * <br>Not a test: run main() by hand. Optional argument is the
+ * number of iterations.
+ * @author Rod Johnson
+ */
+public class BeanCopierBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+
+		BeanCopierTestSuite.PersonDto dto = new BeanCopierTestSuite.PersonDto();
+		dto.setName("rod");
+		dto.setAge("35");
+		dto.setNickname("roddy");
+
+		// Warm up both paths before timing
+		runBeanWrapperLoop(dto, iterations / 10);
+		runBeanCopier(dto, iterations / 10);
+
+		long beanWrapperMillis = runBeanWrapperLoop(dto, iterations);
+		long copierMillis = runBeanCopier(dto, iterations);
+
+		System.out.println(iterations + " copies of PersonDto to Person");
+		System.out.println("BeanWrapperImpl get/set loop: " + beanWrapperMillis + "ms");
+		System.out.println("BeanCopier: " + copierMillis + "ms");
+	}
+
+	private static long runBeanWrapperLoop(Object dto, int iterations) throws Exception {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			BeanWrapper source = new BeanWrapperImpl(dto);
+			BeanWrapper target = new BeanWrapperImpl(BeanCopierTestSuite.Person.class);
+			PropertyDescriptor[] pds = source.getPropertyDescriptors();
+			for (int j = 0; j < pds.length; j++) {
+				String name = pds[j].getName();
+				if (source.isReadableProperty(name) && target.isWritableProperty(name))
+					target.setPropertyValue(name, source.getPropertyValue(name));
+			}
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long runBeanCopier(Object dto, int iterations) throws Exception {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			BeanCopier.forClasses(BeanCopierTestSuite.PersonDto.class, BeanCopierTestSuite.Person.class).copy(dto);
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+}
@@ -0,0 +1,196 @@
+package com.interface21.beans;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Rod Johnson
+ */
+public class BeanCopierTestSuite extends TestCase {
+
+	public BeanCopierTestSuite(String name) {
+		super(name);
+	}
+
+	public static class AddressDto {
+		private String city;
+		public String getCity() { return city; }
+		public void setCity(String city) { this.city = city; }
+	}
+
+	public static class Address {
+		private String city;
+		public String getCity() { return city; }
+		public void setCity(String city) { this.city = city; }
+	}
+
+	public static class PersonDto {
+		private String name;
+		private String age;
+		private String nickname;
+		private AddressDto address;
+		private List friends = new ArrayList();
+		public String getName() { return name; }
+		public void setName(String name) { this.name = name; }
+		public String getAge() { return age; }
+		public void setAge(String age) { this.age = age; }
+		public String getNickname() { return nickname; }
+		public void setNickname(String nickname) { this.nickname = nickname; }
+		public AddressDto getAddress() { return address; }
+		public void setAddress(AddressDto address) { this.address = address; }
+		public List getFriends() { return friends; }
+		public void setFriends(List friends) { this.friends = friends; }
+	}
+
+	public static class Person {
+		private String name;
+		private int age;
+		private String alias;
+		private Address address;
+		private List friends;
+		public String getName() { return name; }
+		public void setName(String name) { this.name = name; }
+		public int getAge() { return age; }
+		public void setAge(int age) { this.age = age; }
+		public String getAlias() { return alias; }
+		public void setAlias(String alias) { this.alias = alias; }
+		public Address getAddress() { return address; }
+		public void setAddress(Address address) { this.address = address; }
+		public List getFriends() { return friends; }
+		public void setFriends(List friends) { this.friends = friends; }
+	}
+
+	public static class Team {
+		private Set members;
+		public Set getMembers() { return members; }
+		public void setMembers(Set members) { this.members = members; }
+	}
+
+	private PersonDto createDto() {
+		PersonDto dto = new PersonDto();
+		dto.setName("rod");
+		dto.setAge("35");
+		dto.setNickname("roddy");
+		AddressDto address = new AddressDto();
+		address.setCity("London");
+		dto.setAddress(address);
+		return dto;
+	}
+
+	public static class PartnerDto {
+		private String name;
+		private PartnerDto partner;
+		public String getName() { return name; }
+		public void setName(String name) { this.name = name; }
+		public PartnerDto getPartner() { return partner; }
+		public void setPartner(PartnerDto partner) { this.partner = partner; }
+	}
+
+	public static class Partner {
+		private String name;
+		private Partner partner;
+		public String getName() { return name; }
+		public void setName(String name) { this.name = name; }
+		public Partner getPartner() { return partner; }
+		public void setPartner(Partner partner) { this.partner = partner; }
+	}
+
+	public void testShallowCopyWithConversion() throws Exception {
+		BeanCopier copier = BeanCopier.forClasses(PersonDto.class, Person.class);
+		assertTrue("Copiers are cached", copier == BeanCopier.forClasses(PersonDto.class, Person.class));
+		Person person = new Person();
+		copier.copy(createDto(), person);
+		assertTrue("rod".equals(person.getName()));
+		assertTrue(person.getAge() == 35);
+		assertTrue("No target property", person.getAlias() == null);
+	}
+
+	public void testShallowCopyOfCyclicNestedBeans() throws Exception {
+		PartnerDto rod = new PartnerDto();
+		rod.setName("rod");
+		PartnerDto kerry = new PartnerDto();
+		kerry.setName("kerry");
+		rod.setPartner(kerry);
+		kerry.setPartner(rod);
+		Partner copy = (Partner) BeanCopier.forClasses(PartnerDto.class, Partner.class).copy(rod);
+		assertEquals("rod", copy.getName());
+		assertEquals("kerry", copy.getPartner().getName());
+		assertTrue("Cycle kept", copy.getPartner().getPartner() == copy);
+	}
+
+	public void testMappingsAndExclusions() throws Exception {
+		Map mappings = new HashMap();
+		mappings.put("nickname", "alias");
+		BeanCopier copier = new BeanCopier(PersonDto.class, Person.class, mappings, new String[] { "name", "address" });
+		Person person = (Person) copier.copy(createDto());
+		assertTrue("roddy".equals(person.getAlias()));
+		assertTrue(person.getName() == null);
+		assertTrue(person.getAge() == 35);
+
+		mappings.put("nickname", "xxx");
+		try {
+			new BeanCopier(PersonDto.class, Person.class, mappings, null);
+			fail("Should have thrown NotWritablePropertyException");
+		}
+		catch (NotWritablePropertyException ex) {
+			// expected
+		}
+	}
+
+	public void testDeepCopyOfNestedBeansAndCollections() throws Exception {
+		PersonDto dto = createDto();
+		PersonDto friend = createDto();
+		friend.setName("juergen");
+		friend.getFriends().add(dto);
+		dto.getFriends().add(friend);
+
+		PersonDto copy = (PersonDto) BeanCopier.forClasses(PersonDto.class, PersonDto.class).deepCopy(dto);
+		assertTrue(copy != dto);
+		assertTrue(copy.getAddress() != dto.getAddress());
+		assertTrue("London".equals(copy.getAddress().getCity()));
+		assertTrue(copy.getFriends() != dto.getFriends());
+		PersonDto friendCopy = (PersonDto) copy.getFriends().get(0);
+		assertTrue(friendCopy != friend);
+		assertTrue("juergen".equals(friendCopy.getName()));
+		assertTrue("Cycle preserved", friendCopy.getFriends().get(0) == copy);
+	}
+
+	public void testDeepCopyConvertsNestedBeanToTargetType() throws Exception {
+		Person person = (Person) BeanCopier.forClasses(PersonDto.class, Person.class).deepCopy(createDto());
+		assertTrue("London".equals(person.getAddress().getCity()));
+	}
+
+	public void testDeepCopyKeepsComparatorOfSortedSet() throws Exception {
+		Team team = new Team();
+		team.setMembers(new TreeSet(Collections.reverseOrder()));
+		team.getMembers().add("alef");
+		team.getMembers().add("juergen");
+		team.getMembers().add("rod");
+		Team copy = (Team) BeanCopier.forClasses(Team.class, Team.class).deepCopy(team);
+		assertTrue(copy.getMembers() != team.getMembers());
+		assertTrue("Comparator kept", ((SortedSet) copy.getMembers()).comparator() == Collections.reverseOrder());
+		assertTrue("Order kept", "rod".equals(((SortedSet) copy.getMembers()).first()));
+		assertTrue(copy.getMembers().size() == 3);
+	}
+
+	public void testTypeMismatch() throws Exception {
+		PersonDto dto = createDto();
+		dto.setAge("old");
+		try {
+			BeanCopier.forClasses(PersonDto.class, Person.class).copy(dto);
+			fail("Should have thrown TypeMismatchException");
+		}
+		catch (TypeMismatchException ex) {
+			// expected
+		}
+	}
+
+}
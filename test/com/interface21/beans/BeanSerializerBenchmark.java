@@ -0,0 +1,61 @@
+package com.interface21.beans;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Benchmark comparing BeanSerializer with Java serialization for
+ * payload size and round-trip throughput, serializing the order bean
+ * used in BeanSerializerTestSuite, as a command object kept in a session.
+ * <br>Not a test: run main() by hand. Optional argument is the
+ * number of iterations.
+ * @author Rod Johnson
+ */
+public class BeanSerializerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+
+		Object order = BeanSerializerTestSuite.createOrder();
+		BeanSerializer serializer = new BeanSerializer();
+
+		// Warm up both paths before timing
+		runJavaSerialization(order, iterations / 10);
+		runBeanSerializer(serializer, order, iterations / 10);
+
+		long javaMillis = runJavaSerialization(order, iterations);
+		long beanSerializerMillis = runBeanSerializer(serializer, order, iterations);
+
+		System.out.println(iterations + " round trips of order bean");
+		System.out.println("Java serialization: " + javaSerialize(order).length + " bytes; " + javaMillis + "ms");
+		System.out.println("BeanSerializer: " + serializer.serialize(order).length + " bytes; " + beanSerializerMillis + "ms");
+	}
+
+	private static byte[] javaSerialize(Object o) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(o);
+		oos.close();
+		return bos.toByteArray();
+	}
+
+	private static long runJavaSerialization(Object o, int iterations) throws Exception {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(javaSerialize(o)));
+			ois.readObject();
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long runBeanSerializer(BeanSerializer serializer, Object o, int iterations) throws Exception {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			serializer.deserialize(serializer.serialize(o));
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+}
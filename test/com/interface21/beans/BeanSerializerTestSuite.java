@@ -0,0 +1,352 @@
+package com.interface21.beans;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Rod Johnson
+ */
+public class BeanSerializerTestSuite extends TestCase {
+
+	public BeanSerializerTestSuite(String name) {
+		super(name);
+	}
+
+	public static class Order implements Serializable {
+		private String reference;
+		private int quantity;
+		private long total;
+		private boolean urgent;
+		private double discount;
+		private char grade;
+		private BigDecimal price;
+		private Date placed;
+		private Timestamp shipped;
+		private Integer priority;
+		private Locale locale;
+		private int[] codes;
+		private Customer customer;
+		private List lines = new ArrayList();
+		private Map notes = new HashMap();
+		public String getReference() { return reference; }
+		public void setReference(String reference) { this.reference = reference; }
+		public int getQuantity() { return quantity; }
+		public void setQuantity(int quantity) { this.quantity = quantity; }
+		public long getTotal() { return total; }
+		public void setTotal(long total) { this.total = total; }
+		public boolean isUrgent() { return urgent; }
+		public void setUrgent(boolean urgent) { this.urgent = urgent; }
+		public double getDiscount() { return discount; }
+		public void setDiscount(double discount) { this.discount = discount; }
+		public char getGrade() { return grade; }
+		public void setGrade(char grade) { this.grade = grade; }
+		public BigDecimal getPrice() { return price; }
+		public void setPrice(BigDecimal price) { this.price = price; }
+		public Date getPlaced() { return placed; }
+		public void setPlaced(Date placed) { this.placed = placed; }
+		public Timestamp getShipped() { return shipped; }
+		public void setShipped(Timestamp shipped) { this.shipped = shipped; }
+		public Integer getPriority() { return priority; }
+		public void setPriority(Integer priority) { this.priority = priority; }
+		public Locale getLocale() { return locale; }
+		public void setLocale(Locale locale) { this.locale = locale; }
+		public int[] getCodes() { return codes; }
+		public void setCodes(int[] codes) { this.codes = codes; }
+		public Customer getCustomer() { return customer; }
+		public void setCustomer(Customer customer) { this.customer = customer; }
+		public List getLines() { return lines; }
+		public void setLines(List lines) { this.lines = lines; }
+		public Map getNotes() { return notes; }
+		public void setNotes(Map notes) { this.notes = notes; }
+	}
+
+	public static class Customer implements Serializable {
+		private String name;
+		private Customer referrer;
+		private List orders = new ArrayList();
+		public String getName() { return name; }
+		public void setName(String name) { this.name = name; }
+		public Customer getReferrer() { return referrer; }
+		public void setReferrer(Customer referrer) { this.referrer = referrer; }
+		public List getOrders() { return orders; }
+		public void setOrders(List orders) { this.orders = orders; }
+		public int getOrderCount() { return orders.size(); }
+	}
+
+	public static class NotSerializable {
+		public NotSerializable(String s) { }
+	}
+
+	/** Has a public no-arg constructor, but state that isn't a property */
+	public static class Counter implements Serializable {
+		private int count;
+		private String name;
+		public String getName() { return name; }
+		public void setName(String name) { this.name = name; }
+		public void increment() { count++; }
+		public int getCount() { return count; }
+	}
+
+	public static class NotSerializableCounter {
+		private int count;
+		public void increment() { count++; }
+	}
+
+	/** Collection with state of its own */
+	public static class NamedList extends ArrayList {
+		private String listName;
+		public String getListName() { return listName; }
+		public void setListName(String listName) { this.listName = listName; }
+	}
+
+	public static Order createOrder() {
+		Order order = new Order();
+		order.setReference("ORD-2003-\u00e9t\u00e9");
+		order.setQuantity(-3);
+		order.setTotal(12345678901L);
+		order.setUrgent(true);
+		order.setDiscount(0.125);
+		order.setGrade('B');
+		order.setPrice(new BigDecimal("19.99"));
+		order.setPlaced(new Date(1066500000000L));
+		Timestamp shipped = new Timestamp(1066600000000L);
+		shipped.setNanos(123456789);
+		order.setShipped(shipped);
+		order.setPriority(new Integer(2));
+		order.setLocale(Locale.UK);
+		order.setCodes(new int[] { 1, -1, 300000 });
+		order.getLines().add("widget");
+		order.getLines().add(new Long(7));
+		order.getLines().add(null);
+		order.getNotes().put("gift", Boolean.TRUE);
+		Customer customer = new Customer();
+		customer.setName("Rod");
+		customer.getOrders().add(order);
+		order.setCustomer(customer);
+		return order;
+	}
+
+	public void testRoundTrip() throws Exception {
+		BeanSerializer serializer = new BeanSerializer();
+		Order order = createOrder();
+		Order copy = (Order) serializer.deserialize(serializer.serialize(order));
+		assertTrue(copy != order);
+		assertEquals(order.getReference(), copy.getReference());
+		assertEquals(-3, copy.getQuantity());
+		assertEquals(12345678901L, copy.getTotal());
+		assertTrue(copy.isUrgent());
+		assertEquals(0.125, copy.getDiscount(), 0.0);
+		assertEquals('B', copy.getGrade());
+		assertEquals(new BigDecimal("19.99"), copy.getPrice());
+		assertEquals(order.getPlaced(), copy.getPlaced());
+		assertEquals(order.getShipped(), copy.getShipped());
+		assertEquals(123456789, copy.getShipped().getNanos());
+		assertEquals(new Integer(2), copy.getPriority());
+		assertEquals(Locale.UK, copy.getLocale());
+		assertEquals(3, copy.getCodes().length);
+		assertEquals(300000, copy.getCodes()[2]);
+		assertEquals(order.getLines(), copy.getLines());
+		assertEquals(order.getNotes(), copy.getNotes());
+		assertEquals("Rod", copy.getCustomer().getName());
+	}
+
+	public void testNullsAndCycles() throws Exception {
+		BeanSerializer serializer = new BeanSerializer();
+		assertNull(serializer.deserialize(serializer.serialize(null)));
+
+		Order order = createOrder();
+		order.setPrice(null);
+		order.setCodes(null);
+		Customer customer = order.getCustomer();
+		customer.setReferrer(customer);
+		order.getLines().add(customer);
+
+		Order copy = (Order) serializer.deserialize(serializer.serialize(order));
+		assertNull(copy.getPrice());
+		assertNull(copy.getCodes());
+		Customer customerCopy = copy.getCustomer();
+		assertTrue("Self reference preserved", customerCopy.getReferrer() == customerCopy);
+		assertTrue("Cycle through collection preserved", customerCopy.getOrders().get(0) == copy);
+		assertTrue("Shared reference preserved", copy.getLines().get(3) == customerCopy);
+	}
+
+	public void testCompactness() throws Exception {
+		Order order = createOrder();
+		byte[] compact = new BeanSerializer().serialize(order);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(order);
+		oos.close();
+		assertTrue("Payload of " + compact.length + " bytes should be under half of Java serialization's " + bos.size(),
+			compact.length * 2 < bos.size());
+	}
+
+	public void testRejectsBadInput() throws Exception {
+		BeanSerializer serializer = new BeanSerializer();
+		try {
+			serializer.serialize(new NotSerializable("x"));
+			fail("Should have rejected object that is neither bean nor Serializable");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+		try {
+			serializer.deserialize(new byte[] { 1, 2, 3 });
+			fail("Should have rejected bad header");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+		byte[] data = serializer.serialize(createOrder());
+		byte[] truncated = new byte[data.length - 5];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		try {
+			serializer.deserialize(truncated);
+			fail("Should have rejected truncated data");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+	}
+
+	public void testSortedCollectionsKeepComparators() throws Exception {
+		BeanSerializer serializer = new BeanSerializer();
+		Order order = createOrder();
+		TreeSet tags = new TreeSet(Collections.reverseOrder());
+		tags.add("a");
+		tags.add("c");
+		tags.add("b");
+		order.getLines().add(tags);
+		TreeMap ranks = new TreeMap(Collections.reverseOrder());
+		ranks.put("x", new Integer(1));
+		ranks.put("z", new Integer(3));
+		order.getNotes().put("ranks", ranks);
+		TreeSet natural = new TreeSet();
+		natural.addAll(tags);
+		order.getNotes().put("natural", natural);
+
+		Order copy = (Order) serializer.deserialize(serializer.serialize(order));
+		SortedSet tagsCopy = (SortedSet) copy.getLines().get(3);
+		assertTrue("Set comparator kept", tagsCopy.comparator() == Collections.reverseOrder());
+		assertEquals("c", tagsCopy.first());
+		SortedMap ranksCopy = (SortedMap) copy.getNotes().get("ranks");
+		assertTrue("Map comparator kept", ranksCopy.comparator() == Collections.reverseOrder());
+		assertEquals("z", ranksCopy.firstKey());
+		SortedSet naturalCopy = (SortedSet) copy.getNotes().get("natural");
+		assertTrue(naturalCopy.comparator() == null && "a".equals(naturalCopy.first()));
+	}
+
+	public void testNonBeansKeepTheirState() throws Exception {
+		BeanSerializer serializer = new BeanSerializer();
+		Counter counter = new Counter();
+		counter.setName("hits");
+		counter.increment();
+		counter.increment();
+		Counter copy = (Counter) serializer.deserialize(serializer.serialize(counter));
+		assertEquals("Field without property kept through Java serialization", 2, copy.getCount());
+		assertEquals("hits", copy.getName());
+		try {
+			serializer.serialize(new NotSerializableCounter());
+			fail("Should have rejected non-Serializable object whose state isn't all properties");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+	}
+
+	public void testCollectionsWithOtherStateKeepIt() throws Exception {
+		BeanSerializer serializer = new BeanSerializer();
+		Properties defaults = new Properties();
+		defaults.setProperty("colour", "blue");
+		Properties props = new Properties(defaults);
+		props.setProperty("size", "10");
+		Properties propsCopy = (Properties) serializer.deserialize(serializer.serialize(props));
+		assertEquals("10", propsCopy.getProperty("size"));
+		assertEquals("Defaults kept", "blue", propsCopy.getProperty("colour"));
+
+		LinkedHashMap lru = new LinkedHashMap(16, 0.75f, true);
+		lru.put("a", new Integer(1));
+		lru.put("b", new Integer(2));
+		Map lruCopy = (Map) serializer.deserialize(serializer.serialize(lru));
+		lruCopy.get("a");
+		Iterator keys = lruCopy.keySet().iterator();
+		assertEquals("Access order kept", "b", keys.next());
+		assertEquals("a", keys.next());
+
+		NamedList list = new NamedList();
+		list.setListName("todo");
+		list.add("write tests");
+		NamedList listCopy = (NamedList) serializer.deserialize(serializer.serialize(list));
+		assertEquals("todo", listCopy.getListName());
+		assertEquals("write tests", listCopy.get(0));
+	}
+
+	public void testRejectsPayloadNamingWrongType() throws Exception {
+		BeanSerializer serializer = new BeanSerializer();
+		byte[] data = serializer.serialize(new ArrayList());
+		// Same length, but a Map, not a Collection
+		byte[] from = "java.util.ArrayList".getBytes("US-ASCII");
+		byte[] to = "java.util.Hashtable".getBytes("US-ASCII");
+		int index = indexOf(data, from);
+		assertTrue(index > 0);
+		System.arraycopy(to, 0, data, index, to.length);
+		try {
+			serializer.deserialize(data);
+			fail("Should have rejected payload naming a Map as a Collection");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+	}
+
+	private static int indexOf(byte[] data, byte[] target) {
+		for (int i = 0; i <= data.length - target.length; i++) {
+			int j = 0;
+			while (j < target.length && data[i + j] == target[j])
+				j++;
+			if (j == target.length)
+				return i;
+		}
+		return -1;
+	}
+
+	public void testHolderThroughJavaSerialization() throws Exception {
+		Customer customer = new Customer();
+		customer.setName("Juergen");
+		SerializedBeanHolder holder = new SerializedBeanHolder(customer);
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(holder);
+		oos.close();
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		SerializedBeanHolder copy = (SerializedBeanHolder) ois.readObject();
+
+		Customer customerCopy = (Customer) copy.getBean();
+		assertTrue(customerCopy != customer);
+		assertEquals("Juergen", customerCopy.getName());
+		assertTrue("Bean deserialized once", copy.getBean() == customerCopy);
+	}
+
+}
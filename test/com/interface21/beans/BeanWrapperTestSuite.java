@@ -419,6 +419,40 @@ public class BeanWrapperTestSuite extends TestCase {
 		assertTrue("spouse.spouse.spouse.spouse.company=Lewisham", 
 			"Lewisham".equals(kbw.getPropertyValue("spouse.spouse.spouse.spouse.company")));
 	}
+
+	public void testNestedPathWithInvalidElements() throws Exception {
+		TestBean rod = new TestBean("rod", 31);
+		rod.setSpouse(new TestBean("kerry", 34));
+		BeanWrapper bw = new BeanWrapperImpl(rod);
+		try {
+			bw.getPropertyValue("spouse.nonexistent");
+			fail("Shouldn't get nonexistent nested property");
+		}
+		catch (FatalBeanException ex) {
+			// ok
+		}
+		try {
+			bw.setPropertyValue("spouse.nonexistent.age", new Integer(3));
+			fail("Shouldn't set property below nonexistent nested property");
+		}
+		catch (NotWritablePropertyException ex) {
+			// ok
+		}
+		try {
+			bw.setPropertyValue("spouse.nonexistent", "x");
+			fail("Shouldn't set nonexistent nested property");
+		}
+		catch (NotWritablePropertyException ex) {
+			// ok
+		}
+		// Compiled paths are reused across wrappers of the same class
+		for (int i = 0; i < 3; i++) {
+			BeanWrapper other = new BeanWrapperImpl(new TestBean("x", i));
+			other.setPropertyValue("spouse", new TestBean("y", i));
+			other.setPropertyValue("spouse.age", new Integer(i + 20));
+			assertEquals(new Integer(i + 20), other.getPropertyValue("spouse.age"));
+		}
+	}
 	
 	
 
@@ -474,6 +508,24 @@ public class BeanWrapperTestSuite extends TestCase {
 		}
 	}
 
+	public void testUnvalidatedPropertyIsNotRead() throws Exception {
+		GetterCountingBean gcb = new GetterCountingBean();
+		BeanWrapper bw = new BeanWrapperImpl(gcb, true);
+		bw.addVetoableChangeListener(new AgeValidator());
+		bw.setPropertyValue("name", "tony");
+		assertTrue("Unvalidated property set", "tony".equals(gcb.name));
+		assertTrue("Getter of unvalidated property never called", gcb.nameReads == 0);
+		bw.setPropertyValue("age", new Integer(30));
+		assertTrue("Getter of validated property called for the event", gcb.ageReads == 1);
+		try {
+			bw.setPropertyValue("age", new Integer(70));
+			fail("Veto must have fired");
+		}
+		catch (PropertyVetoException ex) {
+			assertTrue("Vetoed", gcb.age == 30);
+		}
+	}
+
 	public void testEventPropagationAndNonFiringVeto() {
 		TestBean t = new TestBean();
 		String newName = "tony";
@@ -707,6 +759,38 @@ public class BeanWrapperTestSuite extends TestCase {
 		}
 	}
 
+	public static class AgeValidator extends AbstractVetoableChangeListener {
+		public void validateAge(int age, PropertyChangeEvent e) throws PropertyVetoException {
+			if (age > 65)
+				throw new PropertyVetoException("Too old", e);
+		}
+	}
+
+	public static class GetterCountingBean {
+		String name;
+		int age;
+		int nameReads;
+		int ageReads;
+
+		public String getName() {
+			nameReads++;
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public int getAge() {
+			ageReads++;
+			return age;
+		}
+
+		public void setAge(int age) {
+			this.age = age;
+		}
+	}
+
 	public static class TestBeanEditor extends PropertyEditorSupport {
 		public void setAsText(String text) {
 			TestBean tb = new TestBean();
@@ -0,0 +1,76 @@
+package com.interface21.beans;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Rod Johnson
+ */
+public class BindingPlanTestSuite extends TestCase {
+
+	public BindingPlanTestSuite(String name) {
+		super(name);
+	}
+
+	public void testNewInstancesWithConversion() throws Exception {
+		BindingPlan plan = new BindingPlan(TestBean.class, new String[] { "name", "age" });
+		for (int i = 0; i < 100; i++) {
+			TestBean tb = (TestBean) plan.newInstance(new Object[] { "name" + i, String.valueOf(i) });
+			assertTrue(("name" + i).equals(tb.getName()));
+			assertTrue(tb.getAge() == i);
+		}
+	}
+
+	public void testExistingInstanceWithNestedPath() throws Exception {
+		BindingPlan plan = new BindingPlan(TestBean.class, new String[] { "age", "spouse.name", "spouse.age" });
+		TestBean tb = new TestBean();
+		tb.setSpouse(new TestBean());
+		plan.apply(tb, new Object[] { new Integer(35), "kerry", "34" });
+		assertTrue(tb.getAge() == 35);
+		assertTrue("kerry".equals(tb.getSpouse().getName()));
+		assertTrue(tb.getSpouse().getAge() == 34);
+	}
+
+	public void testUnknownProperty() throws Exception {
+		try {
+			new BindingPlan(TestBean.class, new String[] { "name", "xxx" });
+			fail("Should have thrown NotWritablePropertyException");
+		}
+		catch (NotWritablePropertyException ex) {
+			// expected
+		}
+		BindingPlan plan = new BindingPlan(TestBean.class, new String[] { "name", "xxx" }, true, ConversionService.getDefaultInstance());
+		TestBean tb = (TestBean) plan.newInstance(new Object[] { "rod", "ignored" });
+		assertTrue("rod".equals(tb.getName()));
+	}
+
+	public void testErrorsAreCollected() throws Exception {
+		BindingPlan plan = new BindingPlan(TestBean.class, new String[] { "age", "touchy", "name" });
+		TestBean tb = new TestBean();
+		try {
+			plan.apply(tb, new Object[] { "not a number", "1.2", "rod" });
+			fail("Should have thrown PropertyVetoExceptionsException");
+		}
+		catch (PropertyVetoExceptionsException ex) {
+			assertTrue(ex.getExceptionCount() == 2);
+			assertTrue(ex.getBindObject() == tb);
+			assertTrue(ErrorCodedPropertyVetoException.TYPE_MISMATCH_ERROR_CODE.equals(
+				ex.getPropertyVetoException("age").getErrorCode()));
+			assertTrue(ex.getPropertyVetoException("touchy") != null);
+			assertTrue(ex.getPropertyVetoException("name") == null);
+		}
+		// Good properties were set anyway
+		assertTrue("rod".equals(tb.getName()));
+	}
+
+	public void testWrongValueCount() throws Exception {
+		BindingPlan plan = new BindingPlan(TestBean.class, new String[] { "name", "age" });
+		try {
+			plan.newInstance(new Object[] { "rod" });
+			fail("Should have thrown FatalBeanException");
+		}
+		catch (FatalBeanException ex) {
+			// expected
+		}
+	}
+
+}
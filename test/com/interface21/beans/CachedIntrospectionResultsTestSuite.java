@@ -0,0 +1,126 @@
+package com.interface21.beans;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Rod Johnson
+ */
+public class CachedIntrospectionResultsTestSuite extends TestCase {
+
+	public CachedIntrospectionResultsTestSuite(String name) {
+		super(name);
+	}
+
+	/** Bean class introspected only by this test */
+	public static class ConcurrentBean {
+		private String name;
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	public void testConcurrentFirstAccessIntrospectsOnce() throws Exception {
+		final CachedIntrospectionResults[] results = new CachedIntrospectionResults[16];
+		long missesBefore = IntrospectionCacheStatistics.getCurrent().getMissCount();
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					results[index] = CachedIntrospectionResults.forClass(ConcurrentBean.class);
+				}
+			};
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+
+		IntrospectionCacheStatistics stats = IntrospectionCacheStatistics.getCurrent();
+		assertEquals("Introspected once", missesBefore + 1, stats.getMissCount());
+		for (int i = 0; i < results.length; i++) {
+			assertSame(results[0], results[i]);
+		}
+		assertEquals(String.class, results[0].getPropertyDescriptor("name").getPropertyType());
+		assertTrue(stats.getHitCount() >= results.length - 1);
+		assertTrue(stats.getHitRate() > 0.0 && stats.getHitRate() <= 1.0);
+	}
+
+	public void testConcurrentHitsAreAllCounted() throws Exception {
+		CachedIntrospectionResults.forClass(ConcurrentBean.class);
+		long hitsBefore = IntrospectionCacheStatistics.getCurrent().getHitCount();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 1000; j++)
+						CachedIntrospectionResults.forClass(ConcurrentBean.class);
+				}
+			};
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals("No hits lost", hitsBefore + 8000, IntrospectionCacheStatistics.getCurrent().getHitCount());
+	}
+
+	public void testManyClassesAreAllFound() throws Exception {
+		// Enough classes to grow the table several times
+		Class[] classes = new Class[200];
+		CachedIntrospectionResults[] results = new CachedIntrospectionResults[classes.length];
+		for (int i = 0; i < classes.length; i++) {
+			classes[i] = new IsolatingClassLoader().loadIsolated(ConcurrentBean.class.getName());
+			results[i] = CachedIntrospectionResults.forClass(classes[i]);
+		}
+		for (int i = 0; i < classes.length; i++) {
+			assertSame(results[i], CachedIntrospectionResults.forClass(classes[i]));
+		}
+	}
+
+	public void testClassFromOtherClassLoader() throws Exception {
+		Class local = ConcurrentBean.class;
+		Class foreign = new IsolatingClassLoader().loadIsolated(local.getName());
+		assertTrue(foreign != local);
+
+		int sizeBefore = IntrospectionCacheStatistics.getCurrent().getSize();
+		CachedIntrospectionResults cir = CachedIntrospectionResults.forClass(foreign);
+		assertSame(foreign, cir.getBeanClass());
+		assertSame(cir, CachedIntrospectionResults.forClass(foreign));
+		assertTrue(cir != CachedIntrospectionResults.forClass(local));
+		assertTrue(IntrospectionCacheStatistics.getCurrent().getSize() > sizeBefore);
+	}
+
+	/**
+	 * ClassLoader that defines its own copy of a class from
+	 * the class file visible to its parent
+	 */
+	private static class IsolatingClassLoader extends ClassLoader {
+		IsolatingClassLoader() {
+			super(CachedIntrospectionResultsTestSuite.class.getClassLoader());
+		}
+		Class loadIsolated(String className) throws Exception {
+			InputStream in = getParent().getResourceAsStream(className.replace('.', '/') + ".class");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
+			}
+			in.close();
+			byte[] bytes = out.toByteArray();
+			return defineClass(className, bytes, 0, bytes.length);
+		}
+	}
+
+}
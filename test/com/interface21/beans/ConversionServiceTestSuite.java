@@ -0,0 +1,164 @@
+package com.interface21.beans;
+
+import java.beans.PropertyEditorSupport;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Rod Johnson
+ */
+public class ConversionServiceTestSuite extends TestCase {
+
+	public ConversionServiceTestSuite(String name) {
+		super(name);
+	}
+
+	public static class TypesBean {
+		private int count;
+		private Boolean flag;
+		private BigDecimal amount;
+		private String[] names;
+		private Properties props;
+		private Timestamp timestamp;
+		private TestBean testBean;
+
+		public int getCount() { return count; }
+		public void setCount(int count) { this.count = count; }
+		public Boolean getFlag() { return flag; }
+		public void setFlag(Boolean flag) { this.flag = flag; }
+		public BigDecimal getAmount() { return amount; }
+		public void setAmount(BigDecimal amount) { this.amount = amount; }
+		public String[] getNames() { return names; }
+		public void setNames(String[] names) { this.names = names; }
+		public Properties getProps() { return props; }
+		public void setProps(Properties props) { this.props = props; }
+		public Timestamp getTimestamp() { return timestamp; }
+		public void setTimestamp(Timestamp timestamp) { this.timestamp = timestamp; }
+		public TestBean getTestBean() { return testBean; }
+		public void setTestBean(TestBean testBean) { this.testBean = testBean; }
+	}
+
+	/** Stateful editor: the value set is only valid until the next setAsText() */
+	public static class SlowTestBeanEditor extends PropertyEditorSupport {
+		public void setAsText(String text) {
+			TestBean tb = new TestBean();
+			setValue(tb);
+			Thread.yield();
+			tb.setName(text);
+		}
+	}
+
+	public void testDefaultConverters() throws Exception {
+		TypesBean bean = new TypesBean();
+		BeanWrapper bw = new BeanWrapperImpl(bean);
+		bw.setPropertyValue("count", "0x10");
+		bw.setPropertyValue("flag", "TRUE");
+		bw.setPropertyValue("amount", "12.50");
+		bw.setPropertyValue("names", "a,b,c");
+		bw.setPropertyValue("props", "x=1\ny=2");
+		bw.setPropertyValue("timestamp", "2003-10-18 12:30:00");
+		assertTrue(bean.getCount() == 16);
+		assertTrue(bean.getFlag().booleanValue());
+		assertTrue(new BigDecimal("12.50").equals(bean.getAmount()));
+		assertTrue(bean.getNames().length == 3 && "c".equals(bean.getNames()[2]));
+		assertTrue("2".equals(bean.getProps().getProperty("y")));
+		assertTrue(Timestamp.valueOf("2003-10-18 12:30:00").equals(bean.getTimestamp()));
+	}
+
+	public void testInvalidValueIsTypeMismatch() throws Exception {
+		BeanWrapper bw = new BeanWrapperImpl(new TypesBean());
+		try {
+			bw.setPropertyValue("flag", "maybe");
+			fail("Should have thrown TypeMismatchException");
+		}
+		catch (TypeMismatchException ex) {
+			// expected
+		}
+	}
+
+	public void testCustomConverterOnOwnService() throws Exception {
+		ConversionService cs = new ConversionService();
+		cs.addConverter(String.class, TestBean.class, new Converter() {
+			public Object convert(Object value) {
+				TestBean tb = new TestBean();
+				tb.setName((String) value);
+				return tb;
+			}
+		});
+		TypesBean bean = new TypesBean();
+		BeanWrapper bw = new BeanWrapperImpl(bean);
+		bw.setConversionService(cs);
+		bw.setPropertyValue("testBean", "rod");
+		assertTrue("rod".equals(bean.getTestBean().getName()));
+	}
+
+	public void testPropertyEditorFallbackUsesEditorPerThread() throws Exception {
+		final ConversionService cs = new ConversionService();
+		java.beans.PropertyEditorManager.registerEditor(TestBean.class, SlowTestBeanEditor.class);
+		try {
+			final boolean[] failed = new boolean[1];
+			Thread[] threads = new Thread[8];
+			for (int i = 0; i < threads.length; i++) {
+				final String name = "name" + i;
+				threads[i] = new Thread() {
+					public void run() {
+						TypesBean bean = new TypesBean();
+						BeanWrapper bw = new BeanWrapperImpl(bean);
+						bw.setConversionService(cs);
+						try {
+							for (int j = 0; j < 500; j++) {
+								bw.setPropertyValue("testBean", name);
+								if (!name.equals(bean.getTestBean().getName()))
+									failed[0] = true;
+							}
+						}
+						catch (java.beans.PropertyVetoException ex) {
+							failed[0] = true;
+						}
+					}
+				};
+			}
+			for (int i = 0; i < threads.length; i++)
+				threads[i].start();
+			for (int i = 0; i < threads.length; i++)
+				threads[i].join();
+			assertTrue("Threads must not share editors", !failed[0]);
+		}
+		finally {
+			java.beans.PropertyEditorManager.registerEditor(TestBean.class, null);
+		}
+	}
+
+	public void testMissingPropertyEditorIsCached() {
+		ConversionService cs = new ConversionService();
+		assertTrue("No editor", cs.getConverter(String.class, TestBean.class) == null);
+		java.beans.PropertyEditorManager.registerEditor(TestBean.class, SlowTestBeanEditor.class);
+		try {
+			assertTrue("Manager not searched again", cs.getConverter(String.class, TestBean.class) == null);
+			assertTrue("Value left alone", "rod".equals(cs.convert("rod", TestBean.class)));
+		}
+		finally {
+			java.beans.PropertyEditorManager.registerEditor(TestBean.class, null);
+		}
+		Converter converter = new Converter() {
+			public Object convert(Object value) {
+				return new TestBean();
+			}
+		};
+		cs.addConverter(String.class, TestBean.class, converter);
+		assertTrue("Registered converter replaces marker", cs.getConverter(String.class, TestBean.class) == converter);
+	}
+
+	public void testConvertLeavesUnconvertibleValue() {
+		ConversionService cs = new ConversionService();
+		cs.setPropertyEditorFallback(false);
+		Object o = new Object();
+		assertTrue(cs.convert(o, TestBean.class) == o);
+		assertTrue(cs.convert(null, int.class) == null);
+		assertTrue(new Integer(3).equals(cs.convert("3", int.class)));
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.interface21.beans;
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Rod Johnson
+ */
+public class FastIntrospectorTestSuite extends TestCase {
+
+	public FastIntrospectorTestSuite(String name) {
+		super(name);
+	}
+
+	public static class OddBean {
+		private boolean flag;
+		public boolean isFlag() { return flag; }
+		public boolean getFlag() { return flag; }
+		public void setFlag(boolean flag) { this.flag = flag; }
+		public String getReadOnly() { return "x"; }
+		public void setWriteOnly(String s) { }
+		public void setMismatch(int i) { }
+		public String getMismatch() { return null; }
+		public static String getStatic() { return null; }
+		public String getWithArg(String s) { return s; }
+		public int setNotVoid(int i) { return i; }
+	}
+
+	public static class IndexedBean {
+		public String getName(int index) { return null; }
+		public void setName(int index, String name) { }
+	}
+
+	public void testSameAsIntrospector() throws Exception {
+		assertSameAsIntrospector(TestBean.class);
+		assertSameAsIntrospector(OddBean.class);
+		assertSameAsIntrospector(BeanCopierTestSuite.PersonDto.class);
+		assertSameAsIntrospector(java.util.Date.class);
+	}
+
+	private void assertSameAsIntrospector(Class clazz) throws Exception {
+		BeanInfo bi = Introspector.getBeanInfo(clazz);
+		PropertyDescriptor[] pds = bi.getPropertyDescriptors();
+		Map expected = new HashMap();
+		for (int i = 0; i < pds.length; i++)
+			expected.put(pds[i].getName(), pds[i]);
+
+		PropertyAccessor[] accessors = FastIntrospector.getPropertyAccessors(clazz);
+		assertTrue(clazz + " has no indexed properties", accessors != null);
+		assertTrue(clazz + ": " + expected.keySet() + " properties", accessors.length == expected.size());
+		for (int i = 0; i < accessors.length; i++) {
+			PropertyDescriptor pd = (PropertyDescriptor) expected.get(accessors[i].getName());
+			assertTrue("Property " + accessors[i].getName() + " is a JavaBeans property", pd != null);
+			assertTrue(accessors[i].getName() + " has the same getter", equal(pd.getReadMethod(), accessors[i].getReadMethod()));
+			assertTrue(accessors[i].getName() + " has the same setter", equal(pd.getWriteMethod(), accessors[i].getWriteMethod()));
+			assertTrue(accessors[i].getName() + " has the same type", pd.getPropertyType() == accessors[i].getPropertyType());
+			assertTrue(accessors[i].getName().equals(accessors[i].getPropertyDescriptor().getName()));
+		}
+	}
+
+	private boolean equal(Object a, Object b) {
+		return (a == null) ? b == null : a.equals(b);
+	}
+
+	public void testIndexedPropertiesNeedIntrospector() throws Exception {
+		assertTrue(FastIntrospector.getPropertyAccessors(IndexedBean.class) == null);
+		CachedIntrospectionResults results = CachedIntrospectionResults.forClass(IndexedBean.class);
+		assertTrue(results.getPropertyDescriptor("name") instanceof java.beans.IndexedPropertyDescriptor);
+	}
+
+	public void testMethodDescriptorsWithoutBeanInfo() throws Exception {
+		BeanWrapper bw = new BeanWrapperImpl(new TestBean("rod", 35));
+		assertTrue("rod".equals(bw.invoke("getName", new Object[0])));
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.interface21.beans;
+
+import java.util.List;
+
+public class IndexedPropertyValuesTestSuite extends AbstractPropertyValuesTests {
+
+	public IndexedPropertyValuesTestSuite(String name) {
+		super(name);
+	}
+
+	public void testValid() throws Exception {
+		IndexedPropertyValues pvs = new IndexedPropertyValues();
+		pvs.addPropertyValue(new PropertyValue("forname", "Tony"));
+		pvs.addPropertyValue(new PropertyValue("surname", "Blair"));
+		pvs.addPropertyValue(new PropertyValue("age", "50"));
+		testTony(pvs);
+		testTony(new IndexedPropertyValues(pvs));
+	}
+
+	public void testManyValues() throws Exception {
+		IndexedPropertyValues pvs = new IndexedPropertyValues(0);
+		for (int i = 0; i < 1000; i++)
+			pvs.addPropertyValue(new PropertyValue("field" + i, new Integer(i)));
+		assertTrue(pvs.size() == 1000);
+		for (int i = 0; i < 1000; i++)
+			assertTrue(new Integer(i).equals(pvs.getPropertyValue("field" + i).getValue()));
+		assertTrue(!pvs.contains("field1000"));
+		assertTrue(pvs.getPropertyValue(null) == null);
+	}
+
+	public void testSharedArrayIsNotChangedByLaterUpdates() throws Exception {
+		IndexedPropertyValues pvs = new IndexedPropertyValues();
+		pvs.addPropertyValue(new PropertyValue("forname", "Tony"));
+		PropertyValue[] copy = pvs.getPropertyValues();
+		assertTrue("Array is copied until trimmed", copy.length == 1 && copy != pvs.getPropertyValues());
+		pvs.trimToSize();
+		PropertyValue[] before = pvs.getPropertyValues();
+		assertTrue("Array is shared", before == pvs.getPropertyValues());
+		pvs.setPropertyValueAt(new PropertyValue("forname", "Gordon"), 0);
+		pvs.addPropertyValue(new PropertyValue("surname", "Blair"));
+		assertTrue(before.length == 1);
+		assertTrue("Tony".equals(before[0].getValue()));
+		assertTrue("Gordon".equals(pvs.getPropertyValue("forname").getValue()));
+
+		List list = pvs.asList();
+		assertTrue(list.size() == 2);
+		try {
+			list.set(0, new PropertyValue("forname", "John"));
+			fail("List view must be unmodifiable");
+		}
+		catch (UnsupportedOperationException ex) {
+			// expected
+		}
+	}
+
+	public void testRenameAtIndex() throws Exception {
+		IndexedPropertyValues pvs = new IndexedPropertyValues();
+		pvs.addPropertyValue(new PropertyValue("forname", "Tony"));
+		pvs.setPropertyValueAt(new PropertyValue("name", "Tony"), 0);
+		assertTrue(!pvs.contains("forname"));
+		assertTrue(pvs.contains("name"));
+	}
+
+	public void testChangeOfOneField() throws Exception {
+		MutablePropertyValues old = new MutablePropertyValues();
+		old.addPropertyValue(new PropertyValue("forname", "Tony"));
+		old.addPropertyValue(new PropertyValue("surname", "Blair"));
+		old.addPropertyValue(new PropertyValue("age", "50"));
+		IndexedPropertyValues pvs = new IndexedPropertyValues(old);
+		assertTrue("changes are empty", pvs.changesSince(old).getPropertyValues().length == 0);
+		assertTrue("changes are empty", pvs.changesSince(pvs).getPropertyValues().length == 0);
+
+		// First value for a name is the one looked up
+		pvs.addPropertyValue(new PropertyValue("forname", "Gordon"));
+		assertTrue("Tony".equals(pvs.getPropertyValue("forname").getValue()));
+		pvs.addPropertyValue(new PropertyValue("foo", "bar"));
+		PropertyValues changes = pvs.changesSince(old);
+		assertTrue("2 changes", changes.getPropertyValues().length == 2);
+		assertTrue("Gordon".equals(changes.getPropertyValue("forname").getValue()));
+		assertTrue("bar".equals(changes.getPropertyValue("foo").getValue()));
+	}
+
+}
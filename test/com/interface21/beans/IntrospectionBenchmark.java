@@ -0,0 +1,105 @@
+package com.interface21.beans;
+
+import java.beans.Introspector;
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Startup benchmark comparing java.beans.Introspector with the
+ * FastIntrospector used by CachedIntrospectionResults, over the public
+ * classes found in a set of jar files: by default, those under lib.
+ * <br>Not a test: run main() by hand. Arguments are the jar files or
+ * directories to scan. Classes are loaded before timing starts, and the
+ * Introspector's own cache is flushed, so that each engine does a cold start.
+ * @author Rod Johnson
+ */
+public class IntrospectionBenchmark {
+
+	private static final int MAX_CLASSES = 2000;
+
+	public static void main(String[] args) throws Exception {
+		List jars = new ArrayList();
+		String[] roots = (args.length > 0) ? args : new String[] { "lib" };
+		for (int i = 0; i < roots.length; i++)
+			findJars(new File(roots[i]), jars);
+
+		List classes = new ArrayList();
+		for (int i = 0; i < jars.size() && classes.size() < MAX_CLASSES; i++)
+			loadClasses((File) jars.get(i), classes);
+		Class[] beanClasses = (Class[]) classes.toArray(new Class[classes.size()]);
+
+		Introspector.flushCaches();
+		long start = System.currentTimeMillis();
+		int introspected = 0;
+		for (int i = 0; i < beanClasses.length; i++) {
+			try {
+				Introspector.getBeanInfo(beanClasses[i]).getMethodDescriptors();
+				introspected++;
+			}
+			catch (Throwable ex) {
+				// Classes may refer to missing dependencies
+			}
+		}
+		long introspectorMillis = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		int fallbacks = 0;
+		for (int i = 0; i < beanClasses.length; i++) {
+			try {
+				if (FastIntrospector.getPropertyAccessors(beanClasses[i]) == null)
+					fallbacks++;
+			}
+			catch (Throwable ex) {
+				// Classes may refer to missing dependencies
+			}
+		}
+		long fastMillis = System.currentTimeMillis() - start;
+
+		System.out.println(beanClasses.length + " classes from " + jars.size() + " jars (" + introspected + " introspectable)");
+		System.out.println("java.beans.Introspector: " + introspectorMillis + "ms");
+		System.out.println("FastIntrospector: " + fastMillis + "ms (" + fallbacks + " classes with indexed properties need the Introspector)");
+	}
+
+	private static void findJars(File file, List jars) {
+		if (file.isDirectory()) {
+			File[] files = file.listFiles();
+			for (int i = 0; i < files.length; i++)
+				findJars(files[i], jars);
+		}
+		else if (file.getName().endsWith(".jar")) {
+			jars.add(file);
+		}
+	}
+
+	private static void loadClasses(File jar, List classes) throws Exception {
+		JarFile jarFile = new JarFile(jar);
+		try {
+			for (Enumeration en = jarFile.entries(); en.hasMoreElements() && classes.size() < MAX_CLASSES; ) {
+				String name = ((JarEntry) en.nextElement()).getName();
+				if (!name.endsWith(".class") || name.indexOf('$') != -1)
+					continue;
+				try {
+					Class clazz = Class.forName(name.substring(0, name.length() - 6).replace('/', '.'), false,
+						IntrospectionBenchmark.class.getClassLoader());
+					if (Modifier.isPublic(clazz.getModifiers()) && !clazz.isInterface()) {
+						// Force linking, so failures show up now rather than while timing
+						clazz.getMethods();
+						classes.add(clazz);
+					}
+				}
+				catch (Throwable ex) {
+					// Not on our classpath, or depends on missing classes
+				}
+			}
+		}
+		finally {
+			jarFile.close();
+		}
+	}
+
+}
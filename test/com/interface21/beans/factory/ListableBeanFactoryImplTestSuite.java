@@ -9,9 +9,14 @@ import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
 import com.interface21.beans.BeansException;
+import com.interface21.beans.Employee;
 import com.interface21.beans.ITestBean;
+import com.interface21.beans.MutablePropertyValues;
+import com.interface21.beans.PropertyValue;
 import com.interface21.beans.TestBean;
+import com.interface21.beans.factory.support.DefaultRootBeanDefinition;
 import com.interface21.beans.factory.support.ListableBeanFactoryImpl;
+import com.interface21.beans.factory.support.StartupReport;
 
 
 /**
@@ -42,6 +47,64 @@ public class ListableBeanFactoryImplTestSuite extends TestCase {
 		assertTrue("Singleton was instantiated", KnowsIfInstantiated.wasInstantiated());
 	} 
 	
+	public void testLazyInitSingletonNotPreInstantiated() {
+		KnowsIfInstantiated.clearInstantiationRecord();
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		p.setProperty("x1.class", KnowsIfInstantiated.class.getName());
+		p.setProperty("x1.(lazy-init)", "true");
+		p.setProperty("kerry.class", "com.interface21.beans.TestBean");
+		lbf.registerBeanDefinitions(p, null);
+		assertTrue("x1 is lazy-init", lbf.isLazyInit("x1"));
+		assertTrue("kerry isn't lazy-init", !lbf.isLazyInit("kerry"));
+		lbf.preInstantiateSingletons();
+		assertTrue("Lazy-init singleton not instantiated", !KnowsIfInstantiated.wasInstantiated());
+		assertTrue("kerry instantiated", lbf.containsSingleton("kerry") && !lbf.containsSingleton("x1"));
+		
+		String[] unrequested = lbf.getUnrequestedBeanNames();
+		assertTrue("x1 never requested", unrequested.length == 1 && unrequested[0].equals("x1"));
+		lbf.getBean("x1");
+		assertTrue("Lazy-init singleton instantiated on request", KnowsIfInstantiated.wasInstantiated());
+		assertTrue("All beans requested", lbf.getUnrequestedBeanNames().length == 0);
+		
+		// All singletons lazy-init
+		KnowsIfInstantiated.clearInstantiationRecord();
+		lbf = new ListableBeanFactoryImpl();
+		lbf.setDefaultLazyInit(true);
+		p = new Properties();
+		p.setProperty("x1.class", KnowsIfInstantiated.class.getName());
+		lbf.registerBeanDefinitions(p, null);
+		lbf.preInstantiateSingletons();
+		assertTrue("Singleton not instantiated", !KnowsIfInstantiated.wasInstantiated());
+	}
+	
+	public void testLazyClassLoading() {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		lbf.setLazyClassLoading(true);
+		Properties p = new Properties();
+		p.setProperty("missing.class", "com.interface21.beans.NoSuchClass");
+		p.setProperty("missing.(lazy-init)", "true");
+		p.setProperty("kerry.class", "com.interface21.beans.TestBean");
+		p.setProperty("kerry.age", "35");
+		p.setProperty("child.parent", "kerry");
+		p.setProperty("child.(singleton)", "false");
+		assertTrue("Registered without loading classes", lbf.registerBeanDefinitions(p, null) == 3);
+		lbf.preInstantiateSingletons();
+		assertTrue("kerry created", ((TestBean) lbf.getBean("kerry")).getAge() == 35);
+		assertTrue("Child created", ((TestBean) lbf.getBean("child")).getAge() == 35);
+		
+		String[] names = lbf.getBeanDefinitionNames(ITestBean.class);
+		assertTrue("kerry and child are ITestBeans", names.length == 2);
+		assertTrue("Missing class matches nothing", lbf.getBeanDefinitionNames(Object.class).length == 2);
+		try {
+			lbf.getBean("missing");
+			fail("Missing class must be reported on first use");
+		}
+		catch (BeansException ex) {
+			// Ok
+		}
+	}
+	
 	public void testEmpty() {		
 		ListableBeanFactory lbf = new ListableBeanFactoryImpl();
 		assertTrue("No beans defined --> array != null", lbf.getBeanDefinitionNames() != null);
@@ -194,6 +257,228 @@ public class ListableBeanFactoryImplTestSuite extends TestCase {
 	}
 	
 	
+	public void testCircularReferenceDetected() throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		p.setProperty("rod.class", "com.interface21.beans.TestBean");
+		p.setProperty("rod.spouse(ref)", "kerry");
+		p.setProperty("kerry.class", "com.interface21.beans.TestBean");
+		p.setProperty("kerry.spouse(ref)", "rod");
+		lbf.registerBeanDefinitions(p, null);
+		try {
+			lbf.getBean("rod");
+			fail("Circular reference should have been detected");
+		}
+		catch (BeansException ex) {
+			// cool
+		}
+	}
+	
+	
+	public void testConcurrentSingletonCreation() throws Exception {
+		final ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		p.setProperty("slow.class", SlowBean.class.getName());
+		p.setProperty("kerry.class", "com.interface21.beans.TestBean");
+		p.setProperty("kerry.spouse(ref)", "slow");
+		lbf.registerBeanDefinitions(p, null);
+		SlowBean.instances = 0;
+		
+		final Object[] results = new Object[8];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					results[index] = lbf.getBean(index % 2 == 0 ? "slow" : "kerry");
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		
+		assertTrue("Singleton created once, not " + SlowBean.instances + " times", SlowBean.instances == 1);
+		for (int i = 0; i < results.length; i += 2) {
+			assertTrue("Same instance returned", results[i] == results[0]);
+			assertTrue("Same instance referenced", ((TestBean) results[i + 1]).getSpouse() == results[0]);
+		}
+	}
+	
+	
+	public void testParallelPreInstantiation() throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		p.setProperty("a.class", SlowBean.class.getName());
+		p.setProperty("b.class", SlowBean.class.getName());
+		p.setProperty("d.class", SlowBean.class.getName());
+		p.setProperty("c.class", SlowBean.class.getName());
+		p.setProperty("c.spouse(ref)", "proto");
+		p.setProperty("proto.class", "com.interface21.beans.TestBean");
+		p.setProperty("proto.(singleton)", "false");
+		p.setProperty("proto.spouse(ref)", "a");
+		lbf.registerBeanDefinitions(p, null);
+		SlowBean.instances = 0;
+		
+		StartupReport report = lbf.preInstantiateSingletons(4);
+		assertTrue("4 singletons created, not " + SlowBean.instances, SlowBean.instances == 4);
+		assertTrue("4 singletons reported", report.getSingletonCount() == 4);
+		assertTrue("Independent singletons created in parallel: " + report,
+			report.getElapsedMillis() < report.getTotalCreationMillis());
+		String[] path = report.getCriticalPath();
+		assertTrue("Critical path goes through prototype: " + report,
+			path.length == 2 && path[0].equals("a") && path[1].equals("c"));
+		assertTrue("Dependency satisfied", ((TestBean) ((TestBean) lbf.getBean("c")).getSpouse()).getSpouse() == lbf.getBean("a"));
+	}
+	
+	
+	public void testPreInstantiationReportsCycle() throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		p.setProperty("rod.class", "com.interface21.beans.TestBean");
+		p.setProperty("rod.spouse(ref)", "kerry");
+		p.setProperty("kerry.class", "com.interface21.beans.TestBean");
+		p.setProperty("kerry.spouse(ref)", "rod");
+		p.setProperty("tony.class", "com.interface21.beans.TestBean");
+		lbf.registerBeanDefinitions(p, null);
+		try {
+			lbf.preInstantiateSingletons(2);
+			fail("Circular reference should have been detected");
+		}
+		catch (BeansException ex) {
+			// cool
+		}
+	}
+	
+	
+	public void testGetBeanDefinitionNamesByType() throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		// Child registered before its parent doesn't match until the parent is registered
+		p.setProperty("child.parent", "parent");
+		p.setProperty("child.name", "child");
+		lbf.registerBeanDefinitions(p, null);
+		assertTrue("Child with unknown parent doesn't match", lbf.getBeanDefinitionNames(Object.class).length == 0);
+		
+		p = new Properties();
+		p.setProperty("parent.class", "com.interface21.beans.TestBean");
+		p.setProperty("other.class", "com.interface21.beans.factory.KnowsIfInstantiated");
+		lbf.registerBeanDefinitions(p, null);
+		assertTrue("3 beans are Objects", lbf.getBeanDefinitionNames(Object.class).length == 3);
+		String[] names = lbf.getBeanDefinitionNames(ITestBean.class);
+		assertTrue("Parent and child match interface", names.length == 2);
+		assertTrue("No Employees", lbf.getBeanDefinitionNames(Employee.class).length == 0);
+		
+		// Re-registering the parent changes the type of the child
+		lbf.registerBeanDefinition("parent", new DefaultRootBeanDefinition(Employee.class, null, true));
+		names = lbf.getBeanDefinitionNames(Employee.class);
+		assertTrue("Parent and child are now Employees", names.length == 2);
+		assertTrue("Still 2 ITestBeans", lbf.getBeanDefinitionNames(ITestBean.class).length == 2);
+		assertTrue("Child is an Employee", lbf.getBean("child") instanceof Employee);
+		
+		// Re-registering the child as a root definition detaches it from the parent
+		lbf.registerBeanDefinition("child", new DefaultRootBeanDefinition(KnowsIfInstantiated.class, null, true));
+		lbf.registerBeanDefinition("parent", new DefaultRootBeanDefinition(TestBean.class, null, true));
+		names = lbf.getBeanDefinitionNames(KnowsIfInstantiated.class);
+		assertTrue("2 KnowsIfInstantiated beans", names.length == 2);
+		names = lbf.getBeanDefinitionNames(ITestBean.class);
+		assertTrue("Only parent is an ITestBean", names.length == 1 && names[0].equals("parent"));
+	}
+
+	public void testPrototypeInstantiationPlan() throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		p.setProperty("wife.class", "com.interface21.beans.TestBean");
+		p.setProperty("wife.name", "kerry");
+		p.setProperty("parent.class", "com.interface21.beans.TestBean");
+		p.setProperty("parent.(singleton)", "false");
+		p.setProperty("parent.name", "parent");
+		p.setProperty("parent.age", "50");
+		p.setProperty("parent.spouse(ref)", "wife");
+		p.setProperty("child.parent", "parent");
+		p.setProperty("child.(singleton)", "false");
+		p.setProperty("child.age", "35");
+		p.setProperty("child.touchy", "sometimes");
+		lbf.registerBeanDefinitions(p, null);
+		
+		TestBean child1 = (TestBean) lbf.getBean("child");
+		TestBean child2 = (TestBean) lbf.getBean("child");
+		assertTrue("Prototypes NOT equal", child1 != child2);
+		assertTrue("Inherited name", child1.getName().equals("parent") && child2.getName().equals("parent"));
+		assertTrue("Overridden age", child1.getAge() == 35 && child2.getAge() == 35);
+		assertTrue("Child property set", "sometimes".equals(child2.getTouchy()));
+		assertTrue("Singleton reference shared", child1.getSpouse() == lbf.getBean("wife") && child2.getSpouse() == child1.getSpouse());
+		assertTrue("Parent unchanged", ((TestBean) lbf.getBean("parent")).getAge() == 50);
+		
+		// Re-registering the parent must be seen by the child
+		MutablePropertyValues pvs = new MutablePropertyValues();
+		pvs.addPropertyValue(new PropertyValue("name", "newParent"));
+		lbf.registerBeanDefinition("parent", new DefaultRootBeanDefinition(TestBean.class, pvs, false));
+		child1 = (TestBean) lbf.getBean("child");
+		assertTrue("New parent name", child1.getName().equals("newParent"));
+		assertTrue("No spouse now", child1.getSpouse() == null);
+	}
+	
+	public void testPrototypeReferencesToPrototypesAreFresh() throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		p.setProperty("husband.class", "com.interface21.beans.TestBean");
+		p.setProperty("husband.(singleton)", "false");
+		p.setProperty("husband.spouse(ref)", "wife");
+		p.setProperty("wife.class", "com.interface21.beans.TestBean");
+		p.setProperty("wife.(singleton)", "false");
+		lbf.registerBeanDefinitions(p, null);
+		TestBean husband1 = (TestBean) lbf.getBean("husband");
+		TestBean husband2 = (TestBean) lbf.getBean("husband");
+		assertTrue("Spouses set", husband1.getSpouse() != null && husband2.getSpouse() != null);
+		assertTrue("Each has its own spouse", husband1.getSpouse() != husband2.getSpouse());
+	}
+	
+	public void testPrototypeInstantiationPlanReportsErrors() throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		p.setProperty("kerry.class", "com.interface21.beans.TestBean");
+		p.setProperty("kerry.(singleton)", "false");
+		p.setProperty("kerry.age", "not a number");
+		p.setProperty("rod.class", "com.interface21.beans.TestBean");
+		p.setProperty("rod.(singleton)", "false");
+		p.setProperty("rod.spouse(ref)", "nobody");
+		lbf.registerBeanDefinitions(p, null);
+		for (int i = 0; i < 2; i++) {
+			try {
+				lbf.getBean("kerry");
+				fail("Type mismatch must be reported");
+			}
+			catch (BeansException ex) {
+				// Ok
+			}
+			try {
+				lbf.getBean("rod");
+				fail("Unresolved reference must be reported");
+			}
+			catch (BeansException ex) {
+				// Ok
+			}
+		}
+	}
+	
+	
+	public static class SlowBean extends TestBean implements InitializingBean {
+		
+		static int instances;
+		
+		public SlowBean() {
+			synchronized (SlowBean.class) {
+				++instances;
+			}
+		}
+		
+		public void afterPropertiesSet() throws Exception {
+			Thread.sleep(100);
+		}
+	}
+	
+	
 	/*
 	public void testInvalidBeanDefinition() throws Exception {		
 		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
@@ -0,0 +1,166 @@
+package com.interface21.beans.factory.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import com.interface21.beans.ITestBean;
+import com.interface21.beans.TestBean;
+
+/**
+ * @author Rod Johnson
+ */
+public class BeanDefinitionSnapshotStoreTestSuite extends TestCase {
+
+	private File directory;
+
+	public BeanDefinitionSnapshotStoreTestSuite(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("snapshots", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	protected void tearDown() {
+		File[] files = directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++)
+			files[i].delete();
+		directory.delete();
+	}
+
+	private Properties createProperties() {
+		Properties p = new Properties();
+		p.setProperty("wife.class", "com.interface21.beans.TestBean");
+		p.setProperty("wife.name", "kerry");
+		p.setProperty("wife.(lazy-init)", "true");
+		p.setProperty("rod.class", "com.interface21.beans.TestBean");
+		p.setProperty("rod.(singleton)", "false");
+		p.setProperty("rod.name", "Rod");
+		p.setProperty("rod.age", "31");
+		p.setProperty("rod.spouse(ref)", "wife");
+		p.setProperty("rod.(scope)", "pooled");
+		p.setProperty("rod.(pool-size)", "4");
+		p.setProperty("child.parent", "rod");
+		p.setProperty("child.age", "5");
+		return p;
+	}
+
+	public void testRoundTrip() throws Exception {
+		BeanDefinitionSnapshotStore store = new BeanDefinitionSnapshotStore(directory);
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		assertTrue("3 beans parsed", store.registerBeanDefinitions(lbf, createProperties(), null) == 3);
+		assertTrue("Snapshot written", directory.listFiles().length == 1);
+
+		lbf = new ListableBeanFactoryImpl();
+		String key = BeanDefinitionSnapshotStore.computeKey(createProperties(), null);
+		assertTrue("3 beans loaded", store.load(key, lbf) == 3);
+		TestBean rod1 = (TestBean) lbf.getBean("rod");
+		TestBean rod2 = (TestBean) lbf.getBean("rod");
+		assertTrue("Prototype", rod1 != rod2);
+		assertTrue("Properties", rod1.getName().equals("Rod") && rod1.getAge() == 31);
+		assertTrue("Reference", rod1.getSpouse() == lbf.getBean("wife") && rod1.getSpouse().getName().equals("kerry"));
+		assertTrue("Lazy-init", lbf.isLazyInit("wife") && !lbf.isLazyInit("child"));
+		assertTrue("Scope", lbf.getScopeStatistics("rod").getScope().equals(BeanScope.pooled(4, 0, 0)) &&
+			lbf.getScopeStatistics("child") == null);
+		TestBean child = (TestBean) lbf.getBean("child");
+		assertTrue("Child inherits", child.getName().equals("Rod") && child.getAge() == 5);
+		assertTrue("Child is a singleton", child == lbf.getBean("child"));
+		assertTrue("Types indexed", lbf.getBeanDefinitionNames(ITestBean.class).length == 3);
+	}
+
+	public void testLoadWithLazyClassLoading() throws Exception {
+		BeanDefinitionSnapshotStore store = new BeanDefinitionSnapshotStore(directory);
+		Properties p = new Properties();
+		p.setProperty("missing.class", "com.interface21.beans.NoSuchClass");
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		lbf.setLazyClassLoading(true);
+		store.registerBeanDefinitions(lbf, p, null);
+
+		lbf = new ListableBeanFactoryImpl();
+		lbf.setLazyClassLoading(true);
+		assertTrue("Loaded without loading class", store.load(BeanDefinitionSnapshotStore.computeKey(p, null), lbf) == 1);
+	}
+
+	public void testChangedSourceIsParsed() throws Exception {
+		BeanDefinitionSnapshotStore store = new BeanDefinitionSnapshotStore(directory);
+		Properties p = createProperties();
+		store.registerBeanDefinitions(new ListableBeanFactoryImpl(), p, null);
+		String key = BeanDefinitionSnapshotStore.computeKey(p, null);
+
+		p.setProperty("rod.age", "32");
+		assertTrue("Key changes with source", !key.equals(BeanDefinitionSnapshotStore.computeKey(p, null)));
+		assertTrue("Ignoring keys without prefix", key.equals(BeanDefinitionSnapshotStore.computeKey(createProperties(), "")));
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		store.registerBeanDefinitions(lbf, p, null);
+		assertTrue("New value", ((TestBean) lbf.getBean("rod")).getAge() == 32);
+		assertTrue("2 snapshots", directory.listFiles().length == 2);
+	}
+
+	public void testUnreadableSnapshotIgnored() throws Exception {
+		BeanDefinitionSnapshotStore store = new BeanDefinitionSnapshotStore(directory);
+		String key = BeanDefinitionSnapshotStore.computeKey(createProperties(), null);
+		FileOutputStream out = new FileOutputStream(new File(directory, key + ".snapshot"));
+		out.write(new byte[] { 1, 2, 3 });
+		out.close();
+
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		assertTrue("Snapshot ignored", store.load(key, lbf) == -1);
+		assertTrue("Snapshot deleted", directory.listFiles().length == 0);
+		assertTrue("Parsed instead", store.registerBeanDefinitions(lbf, createProperties(), null) == 3);
+	}
+
+	public void testCorruptLengthIgnored() throws Exception {
+		// Varints too large for the file, and negative
+		assertCorruptLengthIgnored(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 });
+		assertCorruptLengthIgnored(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F });
+	}
+
+	/**
+	 * Replace the length of the first string in a snapshot, the first bean name
+	 */
+	private void assertCorruptLengthIgnored(byte[] length) throws Exception {
+		BeanDefinitionSnapshotStore store = new BeanDefinitionSnapshotStore(directory);
+		store.registerBeanDefinitions(new ListableBeanFactoryImpl(), createProperties(), null);
+		String key = BeanDefinitionSnapshotStore.computeKey(createProperties(), null);
+		File file = new File(directory, key + ".snapshot");
+		byte[] data = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		assertTrue(in.read(data) == data.length);
+		in.close();
+
+		// Magic, version, key, count, new string marker
+		int offset = 4 + 1 + 2 + key.length() + 1 + 1;
+		ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+		corrupt.write(data, 0, offset);
+		corrupt.write(length);
+		corrupt.write(data, offset + 1, data.length - offset - 1);
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(corrupt.toByteArray());
+		out.close();
+
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		assertTrue("Snapshot ignored", store.load(key, lbf) == -1);
+		assertTrue("Snapshot deleted", !file.exists());
+	}
+
+	public void testUnstorableValueNotSnapshotted() throws Exception {
+		BeanDefinitionSnapshotStore store = new BeanDefinitionSnapshotStore(directory);
+		Map m = new HashMap();
+		m.put("rod.class", "com.interface21.beans.TestBean");
+		m.put("rod.spouse", new TestBean());
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		assertTrue("Registered", store.registerBeanDefinitions(lbf, m, null) == 1);
+		assertTrue("No snapshot", directory.listFiles().length == 0);
+		assertTrue("Bean works", ((TestBean) lbf.getBean("rod")).getSpouse() != null);
+	}
+
+}
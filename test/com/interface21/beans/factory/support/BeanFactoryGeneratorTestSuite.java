@@ -0,0 +1,151 @@
+package com.interface21.beans.factory.support;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import com.interface21.beans.FatalBeanException;
+import com.interface21.beans.ITestBean;
+import com.interface21.beans.MutablePropertyValues;
+import com.interface21.beans.PropertyValue;
+import com.interface21.beans.TestBean;
+
+/**
+ * Generated source is compiled and run if a Java compiler is available
+ * through javax.tools; otherwise only the source is checked.
+ * @author Rod Johnson
+ */
+public class BeanFactoryGeneratorTestSuite extends TestCase {
+
+	private File directory;
+
+	public BeanFactoryGeneratorTestSuite(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("generated", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	protected void tearDown() {
+		delete(directory);
+	}
+
+	private static void delete(File f) {
+		File[] files = f.listFiles();
+		for (int i = 0; files != null && i < files.length; i++)
+			delete(files[i]);
+		f.delete();
+	}
+
+	private ListableBeanFactoryImpl createFactory() {
+		Properties p = new Properties();
+		p.setProperty("wife.class", "com.interface21.beans.TestBean");
+		p.setProperty("wife.name", "kerry \u00e9");
+		p.setProperty("wife.(lazy-init)", "true");
+		p.setProperty("rod.class", "com.interface21.beans.TestBean");
+		p.setProperty("rod.(singleton)", "false");
+		p.setProperty("rod.name", "Rod \"quoted\"\n\\");
+		p.setProperty("rod.age", "31");
+		p.setProperty("rod.spouse(ref)", "wife");
+		p.setProperty("child.parent", "rod");
+		p.setProperty("child.age", "5");
+		p.setProperty("child.touchy", "sometimes");
+		p.setProperty("formatter.class", "com.interface21.beans.TestBean");
+		p.setProperty("formatter.(scope)", "thread");
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		lbf.registerBeanDefinitions(p, null);
+		return lbf;
+	}
+
+	public void testSource() throws Exception {
+		String source = new BeanFactoryGenerator(createFactory()).generate("test.GeneratedFactory");
+		assertTrue("Package", source.startsWith("package test;"));
+		assertTrue("Subclass", source.indexOf("public class GeneratedFactory extends ListableBeanFactoryImpl") != -1);
+		assertTrue("Direct construction", source.indexOf("new com.interface21.beans.TestBean()") != -1);
+		assertTrue("Converted int", source.indexOf("bean.setAge(31);") != -1);
+		assertTrue("Escaped literal", source.indexOf("bean.setName(\"Rod \\\"quoted\\\"\\n\\\\\");") != -1);
+		assertTrue("Non-ASCII escaped", source.indexOf("kerry \\u00e9") != -1);
+		assertTrue("Reference", source.indexOf("bean.setSpouse((com.interface21.beans.ITestBean) getReferencedBean(") != -1);
+		assertTrue("Child inherits parent properties", source.indexOf("bean.setAge(5);") != -1);
+		assertTrue("Scope", source.indexOf("BeanScope.THREAD") != -1);
+		for (int i = 0; i < source.length(); i++)
+			assertTrue("ASCII only", source.charAt(i) < 0x80);
+	}
+
+	public void testUnsupportedValueRejected() {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		MutablePropertyValues pvs = new MutablePropertyValues();
+		pvs.addPropertyValue(new PropertyValue("spouse", new TestBean()));
+		lbf.registerBeanDefinition("rod", new DefaultRootBeanDefinition(TestBean.class, pvs, true));
+		try {
+			new BeanFactoryGenerator(lbf).generate("test.GeneratedFactory");
+			fail("Can't generate a bean as a value");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+	}
+
+	public void testGeneratedFactory() throws Exception {
+		ListableBeanFactoryImpl lbf = compile(new BeanFactoryGenerator(createFactory()), "test.GeneratedFactory");
+		if (lbf == null)
+			return;
+
+		assertTrue("4 beans", lbf.getBeanDefinitionNames().length == 4);
+		assertTrue("Types", lbf.getBeanDefinitionNames(ITestBean.class).length == 4);
+		TestBean rod1 = (TestBean) lbf.getBean("rod");
+		TestBean rod2 = (TestBean) lbf.getBean("rod");
+		assertTrue("Prototype", rod1 != rod2);
+		assertTrue("Properties", rod1.getName().equals("Rod \"quoted\"\n\\") && rod1.getAge() == 31);
+		assertTrue("Reference", rod1.getSpouse() == lbf.getBean("wife") && rod1.getSpouse().getName().equals("kerry \u00e9"));
+		assertTrue("Lazy-init", lbf.isLazyInit("wife"));
+		TestBean child = (TestBean) lbf.getBean("child");
+		assertTrue("Child inherits", child.getName().equals("Rod \"quoted\"\n\\") && child.getAge() == 5);
+		assertTrue("Child is a singleton", child == lbf.getBean("child"));
+		assertTrue("Thread scope", lbf.getBean("formatter") == lbf.getBean("formatter") &&
+			lbf.getScopeStatistics("formatter").getCreatedCount() == 1);
+
+		// Replaced definitions are created by reflection
+		MutablePropertyValues pvs = new MutablePropertyValues();
+		pvs.addPropertyValue(new PropertyValue("age", "99"));
+		lbf.registerBeanDefinition("rod", new DefaultRootBeanDefinition(TestBean.class, pvs, false));
+		assertTrue("Replaced definition", ((TestBean) lbf.getBean("rod")).getAge() == 99 &&
+			((TestBean) lbf.getBean("rod")).getName() == null);
+	}
+
+	/**
+	 * Compile the generated factory and return an instance, or null
+	 * if no compiler is available
+	 */
+	private ListableBeanFactoryImpl compile(BeanFactoryGenerator generator, String className) throws Exception {
+		Object compiler;
+		try {
+			Class toolProvider = Class.forName("javax.tools.ToolProvider");
+			compiler = toolProvider.getMethod("getSystemJavaCompiler", new Class[0]).invoke(null, new Object[0]);
+		}
+		catch (ClassNotFoundException ex) {
+			return null;
+		}
+		if (compiler == null)
+			return null;
+
+		File source = generator.generate(className, directory);
+		Method run = Class.forName("javax.tools.Tool").getMethod("run",
+			new Class[] { java.io.InputStream.class, java.io.OutputStream.class, java.io.OutputStream.class, String[].class });
+		String[] args = new String[] { "-nowarn", "-cp", System.getProperty("java.class.path"),
+			"-d", directory.getPath(), source.getPath() };
+		Integer result = (Integer) run.invoke(compiler, new Object[] { null, null, null, args });
+		assertTrue("Generated source compiles", result.intValue() == 0);
+
+		ClassLoader cl = new URLClassLoader(new URL[] { directory.toURL() }, getClass().getClassLoader());
+		return (ListableBeanFactoryImpl) cl.loadClass(className).newInstance();
+	}
+
+}
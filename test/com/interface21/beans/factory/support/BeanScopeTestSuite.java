@@ -0,0 +1,202 @@
+package com.interface21.beans.factory.support;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import com.interface21.beans.FatalBeanException;
+import com.interface21.beans.TestBean;
+
+/**
+ * @author Rod Johnson
+ */
+public class BeanScopeTestSuite extends TestCase {
+
+	public BeanScopeTestSuite(String name) {
+		super(name);
+	}
+
+	private ListableBeanFactoryImpl createFactory(String poolSize, String maxIdle, String maxWait) {
+		Properties p = new Properties();
+		p.setProperty("wife.class", "com.interface21.beans.TestBean");
+		p.setProperty("wife.name", "kerry");
+		p.setProperty("parser.class", "com.interface21.beans.TestBean");
+		p.setProperty("parser.(scope)", "pooled");
+		p.setProperty("parser.name", "parser");
+		p.setProperty("parser.spouse(ref)", "wife");
+		if (poolSize != null)
+			p.setProperty("parser.(pool-size)", poolSize);
+		if (maxIdle != null)
+			p.setProperty("parser.(pool-max-idle)", maxIdle);
+		if (maxWait != null)
+			p.setProperty("parser.(pool-max-wait)", maxWait);
+		p.setProperty("formatter.class", "com.interface21.beans.TestBean");
+		p.setProperty("formatter.(scope)", "thread");
+		p.setProperty("formatter.age", "7");
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		lbf.registerBeanDefinitions(p, null);
+		return lbf;
+	}
+
+	public void testPropertiesDeclareScopes() {
+		ListableBeanFactoryImpl lbf = createFactory("3", "1000", "50");
+		assertTrue("Pooled bean isn't a singleton", !lbf.isSingleton("parser"));
+		assertTrue("Thread-scoped bean isn't a singleton", !lbf.isSingleton("formatter"));
+		assertTrue("Pool settings", lbf.getScopeStatistics("parser").getScope().equals(BeanScope.pooled(3, 1000, 50)));
+		assertTrue("Thread scope", lbf.getScopeStatistics("formatter").getScope() == BeanScope.THREAD);
+		assertTrue("No statistics for singleton", lbf.getScopeStatistics("wife") == null);
+		assertTrue("Default pool size", createFactory(null, null, null).getScopeStatistics("parser").getScope().getMaxSize() ==
+			BeanScope.DEFAULT_MAX_SIZE);
+	}
+
+	public void testInvalidScope() {
+		Properties p = new Properties();
+		p.setProperty("parser.class", "com.interface21.beans.TestBean");
+		p.setProperty("parser.(scope)", "session");
+		try {
+			new ListableBeanFactoryImpl().registerBeanDefinitions(p, null);
+			fail("Unknown scope");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+		p.setProperty("parser.(scope)", "pooled");
+		p.setProperty("parser.(pool-size)", "many");
+		try {
+			new ListableBeanFactoryImpl().registerBeanDefinitions(p, null);
+			fail("Invalid pool size");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+	}
+
+	public void testReferenceToPooledBeanFailsFast() {
+		Properties p = new Properties();
+		p.setProperty("parser.class", "com.interface21.beans.TestBean");
+		p.setProperty("parser.(scope)", "pooled");
+		p.setProperty("parser.(pool-size)", "1");
+		p.setProperty("user.class", "com.interface21.beans.TestBean");
+		p.setProperty("user.(singleton)", "false");
+		p.setProperty("user.spouse(ref)", "parser");
+		p.setProperty("owner.class", "com.interface21.beans.TestBean");
+		p.setProperty("owner.spouse(ref)", "parser");
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		lbf.registerBeanDefinitions(p, null);
+		// Repeated, as the pool would be exhausted if a reference borrowed an instance
+		for (int i = 0; i < 2; i++) {
+			try {
+				lbf.getBean("user");
+				fail("Prototype references pooled bean");
+			}
+			catch (FatalBeanException ex) {
+				// Ok
+			}
+		}
+		try {
+			lbf.getBean("owner");
+			fail("Singleton references pooled bean");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+		assertTrue("Nothing borrowed", lbf.getScopeStatistics("parser").getRequestCount() == 0);
+	}
+
+	public void testPoolBorrowAndRelease() {
+		ListableBeanFactoryImpl lbf = createFactory("2", null, "50");
+		TestBean p1 = (TestBean) lbf.getBean("parser");
+		TestBean p2 = (TestBean) lbf.getBean("parser");
+		assertTrue("Distinct instances", p1 != p2);
+		assertTrue("Populated", p1.getName().equals("parser") && p1.getSpouse() == lbf.getBean("wife"));
+		BeanScopeStatistics stats = lbf.getScopeStatistics("parser");
+		assertTrue("2 active", stats.getActiveCount() == 2 && stats.getIdleCount() == 0);
+		assertTrue("Fully used", stats.getUtilization() == 1.0);
+
+		try {
+			lbf.getBean("parser");
+			fail("Pool exhausted");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+
+		lbf.releaseBean("parser", p2);
+		assertTrue("Released instance reused", lbf.getBean("parser") == p2);
+		lbf.releaseBean("parser", p1);
+		lbf.releaseBean("parser", p2);
+		lbf.releaseBean("parser", p2);
+		stats = lbf.getScopeStatistics("parser");
+		assertTrue("Double release ignored", stats.getActiveCount() == 0 && stats.getIdleCount() == 2);
+		assertTrue("Counts", stats.getCreatedCount() == 2 && stats.getRequestCount() == 4 &&
+			stats.getPeakActiveCount() == 2 && stats.getWaitCount() == 1 && stats.getTimeoutCount() == 1);
+		lbf.releaseBean("wife", lbf.getBean("wife"));
+	}
+
+	public void testWaitForReleasedInstance() throws Exception {
+		final ListableBeanFactoryImpl lbf = createFactory("1", null, null);
+		final TestBean p1 = (TestBean) lbf.getBean("parser");
+		Thread releaser = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+				}
+				catch (InterruptedException ex) {
+				}
+				lbf.releaseBean("parser", p1);
+			}
+		};
+		releaser.start();
+		assertTrue("Waited for released instance", lbf.getBean("parser") == p1);
+		releaser.join();
+		assertTrue("Wait counted", lbf.getScopeStatistics("parser").getWaitCount() == 1);
+	}
+
+	public void testIdleEviction() throws Exception {
+		ListableBeanFactoryImpl lbf = createFactory("2", "20", null);
+		Object p1 = lbf.getBean("parser");
+		lbf.releaseBean("parser", p1);
+		Thread.sleep(60);
+		lbf.evictIdleBeans();
+		BeanScopeStatistics stats = lbf.getScopeStatistics("parser");
+		assertTrue("Evicted", stats.getIdleCount() == 0 && stats.getDiscardedCount() == 1);
+		assertTrue("New instance", lbf.getBean("parser") != p1);
+	}
+
+	public void testThreadScope() throws Exception {
+		final ListableBeanFactoryImpl lbf = createFactory(null, null, null);
+		TestBean f1 = (TestBean) lbf.getBean("formatter");
+		assertTrue("Same instance in thread", lbf.getBean("formatter") == f1 && f1.getAge() == 7);
+
+		final Object[] other = new Object[1];
+		Thread t = new Thread() {
+			public void run() {
+				other[0] = lbf.getBean("formatter");
+				lbf.releaseThreadScopedBeans();
+			}
+		};
+		t.start();
+		t.join();
+		assertTrue("Other thread has its own instance", other[0] != null && other[0] != f1);
+
+		BeanScopeStatistics stats = lbf.getScopeStatistics("formatter");
+		assertTrue("Counts", stats.getCreatedCount() == 2 && stats.getActiveCount() == 1 &&
+			stats.getDiscardedCount() == 1 && stats.getPeakActiveCount() == 2);
+
+		lbf.releaseThreadScopedBeans();
+		assertTrue("New instance after release", lbf.getBean("formatter") != f1);
+	}
+
+	public void testReplacedDefinitionGetsNewPool() {
+		ListableBeanFactoryImpl lbf = createFactory("1", null, "10");
+		Object p1 = lbf.getBean("parser");
+		DefaultRootBeanDefinition bd = new DefaultRootBeanDefinition(TestBean.class, null, false);
+		bd.setScope(BeanScope.pooled(1, 0, 10));
+		lbf.registerBeanDefinition("parser", bd);
+		Object p2 = lbf.getBean("parser");
+		assertTrue("New pool", p2 != p1);
+		lbf.releaseBean("parser", p1);
+		assertTrue("Old instance not pooled", lbf.getScopeStatistics("parser").getActiveCount() == 1);
+	}
+
+}
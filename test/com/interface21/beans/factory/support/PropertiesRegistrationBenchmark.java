@@ -0,0 +1,66 @@
+package com.interface21.beans.factory.support;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Benchmark of ListableBeanFactoryImpl.registerBeanDefinitions() with
+ * properties defining 5,000 beans, as from a large ResourceBundle of views.
+ * For comparison, also times the key scan the previous implementation made:
+ * a pass over all keys for each bean.
+ * <br>Not a test: run main() by hand. Optional argument is the number of beans.
+ * @author Rod Johnson
+ */
+public class PropertiesRegistrationBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int beans = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+
+		Properties p = new Properties();
+		for (int i = 0; i < beans; i++) {
+			p.setProperty("bean" + i + ".class", "com.interface21.beans.TestBean");
+			p.setProperty("bean" + i + ".name", "bean" + i);
+			p.setProperty("bean" + i + ".age", String.valueOf(i % 100));
+			if (i > 0)
+				p.setProperty("bean" + i + ".spouse(ref)", "bean" + (i - 1));
+		}
+
+		// Warm up before timing
+		register(p);
+
+		long start = System.currentTimeMillis();
+		int count = register(p);
+		long singlePassMillis = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		int matches = scanPerBean(p, beans);
+		long perBeanScanMillis = System.currentTimeMillis() - start;
+
+		System.out.println(count + " beans from " + p.size() + " properties");
+		System.out.println("Key scan per bean (previous implementation, scan only): " + perBeanScanMillis + "ms (" + matches + " matches)");
+		System.out.println("Single-pass registration: " + singlePassMillis + "ms");
+	}
+
+	private static int register(Map m) {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		return lbf.registerBeanDefinitions(m, null);
+	}
+
+	/**
+	 * Scan all keys for each bean, as the previous implementation did
+	 * to find the properties of each bean it registered
+	 */
+	private static int scanPerBean(Map m, int beans) {
+		int matches = 0;
+		for (int i = 0; i < beans; i++) {
+			String prefix = "bean" + i + ".";
+			for (Iterator itr = m.keySet().iterator(); itr.hasNext(); ) {
+				if (((String) itr.next()).startsWith(prefix))
+					matches++;
+			}
+		}
+		return matches;
+	}
+
+}
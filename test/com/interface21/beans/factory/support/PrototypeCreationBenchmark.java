@@ -0,0 +1,60 @@
+package com.interface21.beans.factory.support;
+
+import java.util.Properties;
+
+/**
+ * Benchmark of getBean() for a prototype with a parent definition, literal
+ * properties and a reference to a singleton, as for a controller or command
+ * created for each request. Compares creation from compiled instantiation
+ * plans with creation through a BeanWrapper, as before.
+ * <br>Not a test: run main() by hand. Optional argument is the number of beans to create.
+ * @author Rod Johnson
+ */
+public class PrototypeCreationBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+
+		ListableBeanFactoryImpl planned = createFactory(true);
+		ListableBeanFactoryImpl unplanned = createFactory(false);
+
+		// Warm up before timing
+		create(planned, count / 10);
+		create(unplanned, count / 10);
+
+		long unplannedMillis = create(unplanned, count);
+		long plannedMillis = create(planned, count);
+
+		System.out.println(count + " prototypes");
+		System.out.println("BeanWrapper for each instance (previous implementation): " + unplannedMillis + "ms");
+		System.out.println("Instantiation plans: " + plannedMillis + "ms");
+	}
+
+	private static ListableBeanFactoryImpl createFactory(boolean useInstantiationPlans) {
+		Properties p = new Properties();
+		p.setProperty("wife.class", "com.interface21.beans.TestBean");
+		p.setProperty("wife.name", "kerry");
+		p.setProperty("parent.class", "com.interface21.beans.TestBean");
+		p.setProperty("parent.(singleton)", "false");
+		p.setProperty("parent.name", "parent");
+		p.setProperty("parent.age", "50");
+		p.setProperty("parent.spouse(ref)", "wife");
+		p.setProperty("command.parent", "parent");
+		p.setProperty("command.(singleton)", "false");
+		p.setProperty("command.name", "command");
+		p.setProperty("command.age", "35");
+		p.setProperty("command.touchy", "sometimes");
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		lbf.setUseInstantiationPlans(useInstantiationPlans);
+		lbf.registerBeanDefinitions(p, null);
+		return lbf;
+	}
+
+	private static long create(ListableBeanFactoryImpl lbf, int count) {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < count; i++)
+			lbf.getBean("command");
+		return System.currentTimeMillis() - start;
+	}
+
+}
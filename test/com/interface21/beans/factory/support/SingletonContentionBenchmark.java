@@ -0,0 +1,73 @@
+package com.interface21.beans.factory.support;
+
+import java.util.Properties;
+
+import com.interface21.beans.factory.BeanFactory;
+
+/**
+ * Benchmark of 64 threads calling getBean() for singletons that have
+ * already been created, as in a web application under load. Compares the
+ * factory's lock-free reads with the same calls serialized on the factory,
+ * as they were when getSharedInstance() was synchronized.
+ * <br>Not a test: run main() by hand. Optional arguments are the
+ * number of calls per thread and the number of threads.
+ * @author Rod Johnson
+ */
+public class SingletonContentionBenchmark {
+
+	private static final int BEANS = 100;
+
+	public static void main(String[] args) throws Exception {
+		int calls = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+		int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 64;
+
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Properties p = new Properties();
+		for (int i = 0; i < BEANS; i++) {
+			p.setProperty("bean" + i + ".class", "com.interface21.beans.TestBean");
+			p.setProperty("bean" + i + ".name", "bean" + i);
+		}
+		lbf.registerBeanDefinitions(p, null);
+		lbf.preInstantiateSingletons();
+
+		// Warm up both paths before timing
+		run(lbf, calls / 10, threads, false);
+		run(lbf, calls / 10, threads, true);
+
+		long lockFreeMillis = run(lbf, calls, threads, false);
+		long lockedMillis = run(lbf, calls, threads, true);
+
+		System.out.println(threads + " threads each calling getBean() " + calls + " times");
+		System.out.println("Serialized on factory: " + lockedMillis + "ms");
+		System.out.println("Lock-free: " + lockFreeMillis + "ms");
+	}
+
+	private static long run(final BeanFactory bf, final int calls, int threadCount, final boolean serialize) throws Exception {
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threads.length; i++) {
+			final int offset = i;
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < calls; j++) {
+						String name = "bean" + ((j + offset) % BEANS);
+						if (serialize) {
+							synchronized (bf) {
+								bf.getBean(name);
+							}
+						}
+						else {
+							bf.getBean(name);
+						}
+					}
+				}
+			};
+		}
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < threads.length; i++)
+			threads[i].start();
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		return System.currentTimeMillis() - start;
+	}
+
+}
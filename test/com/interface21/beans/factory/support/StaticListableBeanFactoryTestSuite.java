@@ -0,0 +1,43 @@
+package com.interface21.beans.factory.support;
+
+import junit.framework.TestCase;
+
+import com.interface21.beans.Employee;
+import com.interface21.beans.ITestBean;
+import com.interface21.beans.TestBean;
+
+/**
+ * @author Rod Johnson
+ */
+public class StaticListableBeanFactoryTestSuite extends TestCase {
+
+	public StaticListableBeanFactoryTestSuite(String name) {
+		super(name);
+	}
+
+	public void testGetBeanDefinitionNames() {
+		StaticListableBeanFactory sbf = new StaticListableBeanFactory();
+		sbf.addBean("rod", new TestBean());
+		sbf.addBean("tony", new Employee());
+		String[] names = sbf.getBeanDefinitionNames();
+		assertTrue("2 names", names.length == 2);
+	}
+
+	public void testGetBeanDefinitionNamesByType() {
+		StaticListableBeanFactory sbf = new StaticListableBeanFactory();
+		sbf.addBean("rod", new TestBean());
+		sbf.addBean("tony", new Employee());
+		sbf.addBean("string", "a string");
+		assertTrue("3 Objects", sbf.getBeanDefinitionNames(Object.class).length == 3);
+		assertTrue("2 ITestBeans", sbf.getBeanDefinitionNames(ITestBean.class).length == 2);
+		String[] names = sbf.getBeanDefinitionNames(Employee.class);
+		assertTrue("1 Employee", names.length == 1 && names[0].equals("tony"));
+		assertTrue("1 Comparable", sbf.getBeanDefinitionNames(Comparable.class).length == 1);
+
+		// Replacing a bean replaces its index entries
+		sbf.addBean("tony", new TestBean());
+		assertTrue("No Employees", sbf.getBeanDefinitionNames(Employee.class).length == 0);
+		assertTrue("Still 2 ITestBeans", sbf.getBeanDefinitionNames(ITestBean.class).length == 2);
+	}
+
+}
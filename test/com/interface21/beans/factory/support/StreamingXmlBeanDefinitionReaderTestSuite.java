@@ -0,0 +1,98 @@
+package com.interface21.beans.factory.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.xml.sax.SAXException;
+
+import com.interface21.beans.FatalBeanException;
+import com.interface21.beans.ITestBean;
+import com.interface21.beans.TestBean;
+import com.interface21.beans.factory.AbstractListableBeanFactoryTests;
+import com.interface21.beans.factory.BeanFactory;
+
+/**
+ * Runs the bean factory tests against the XML document
+ * used to test XmlBeanFactory, read by the streaming reader.
+ * @author Rod Johnson
+ */
+public class StreamingXmlBeanDefinitionReaderTestSuite extends AbstractListableBeanFactoryTests {
+
+	private ListableBeanFactoryImpl factory;
+
+	public StreamingXmlBeanDefinitionReaderTestSuite(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		this.factory = read("/com/interface21/beans/factory/xml/test.xml");
+	}
+
+	protected BeanFactory getBeanFactory() {
+		return factory;
+	}
+
+	private ListableBeanFactoryImpl read(String resource) throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		InputStream is = getClass().getResourceAsStream(resource);
+		try {
+			new StreamingXmlBeanDefinitionReader().registerBeanDefinitions(lbf, is);
+		}
+		finally {
+			is.close();
+		}
+		return lbf;
+	}
+
+	private ListableBeanFactoryImpl read(byte[] document) throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		new StreamingXmlBeanDefinitionReader().registerBeanDefinitions(lbf, new ByteArrayInputStream(document));
+		return lbf;
+	}
+
+	public void testReferences() throws Exception {
+		ListableBeanFactoryImpl lbf = read("/com/interface21/beans/factory/xml/reftypes.xml");
+		assertTrue("5 beans", lbf.getBeanDefinitionCount() == 5);
+		TestBean emma = (TestBean) lbf.getBean("emma");
+		TestBean georgia = (TestBean) lbf.getBean("georgia");
+		ITestBean emmasJenks = emma.getSpouse();
+		assertTrue("Prototype references are distinct", emmasJenks != georgia.getSpouse() && emmasJenks.getName().equals("Andrew"));
+		assertTrue("Singleton references are shared",
+			((TestBean) lbf.getBean("david")).getSpouse() == ((TestBean) lbf.getBean("jenks")).getSpouse());
+	}
+
+	public void testScopesAndLazyInit() throws Exception {
+		ListableBeanFactoryImpl lbf = read((
+			"<beans>" +
+			"<bean name=\"parser\" class=\"com.interface21.beans.TestBean\" scope=\"pooled\" pool-size=\"2\" pool-max-wait=\"10\">" +
+			"<property name=\"name\">parser</property></bean>" +
+			"<bean name=\"formatter\" class=\"com.interface21.beans.TestBean\" scope=\"thread\"/>" +
+			"<bean name=\"lazy\" class=\"com.interface21.beans.TestBean\" lazy-init=\"true\"/>" +
+			"</beans>").getBytes("UTF-8"));
+		assertTrue("Pooled", lbf.getScopeStatistics("parser").getScope().equals(BeanScope.pooled(2, 0, 10)));
+		assertTrue("Pooled bean populated", ((TestBean) lbf.getBean("parser")).getName().equals("parser"));
+		assertTrue("Thread", lbf.getScopeStatistics("formatter").getScope() == BeanScope.THREAD);
+		assertTrue("Lazy-init", lbf.isLazyInit("lazy") && !lbf.isLazyInit("parser"));
+	}
+
+	public void testMalformedDocument() throws Exception {
+		try {
+			read("<beans><bean name=\"rod\" class=\"com.interface21.beans.TestBean\"></beans>".getBytes("UTF-8"));
+			fail("Malformed document");
+		}
+		catch (SAXException ex) {
+			// Ok
+		}
+	}
+
+	public void testMissingClass() throws Exception {
+		try {
+			read("<beans><bean name=\"rod\" class=\"com.interface21.beans.NoSuchClass\"/></beans>".getBytes("UTF-8"));
+			fail("Missing class");
+		}
+		catch (FatalBeanException ex) {
+			// Ok
+		}
+	}
+
+}
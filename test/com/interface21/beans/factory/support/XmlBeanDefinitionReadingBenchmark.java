@@ -0,0 +1,109 @@
+package com.interface21.beans.factory.support;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.interface21.beans.MutablePropertyValues;
+import com.interface21.beans.PropertyValue;
+
+/**
+ * Benchmark of reading a large XML bean definition document: building a DOM
+ * and registering a definition for each bean element, as the XML contexts
+ * have always done, against StreamingXmlBeanDefinitionReader.
+ * Reports time and the heap in use when reading completes, with the DOM
+ * still referenced as it is during a refresh.
+ * <br>Not a test: run main() by hand. Optional argument is the number of beans.
+ * @author Rod Johnson
+ */
+public class XmlBeanDefinitionReadingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int beans = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		byte[] document = createDocument(beans);
+		System.out.println(beans + " beans in " + (document.length / 1024) + "KB of XML");
+
+		// Warm up before timing
+		readDom(document);
+		readStreaming(document);
+
+		long before = usedMemory();
+		long start = System.currentTimeMillis();
+		Object[] dom = readDom(document);
+		long domMillis = System.currentTimeMillis() - start;
+		long domBytes = usedMemory() - before;
+		dom = null;
+
+		before = usedMemory();
+		start = System.currentTimeMillis();
+		ListableBeanFactoryImpl lbf = readStreaming(document);
+		long streamingMillis = System.currentTimeMillis() - start;
+		long streamingBytes = usedMemory() - before;
+
+		System.out.println("DOM: " + domMillis + "ms, " + (domBytes / 1024) + "KB in use");
+		System.out.println("Streaming: " + streamingMillis + "ms, " + (streamingBytes / 1024) + "KB in use (" +
+			lbf.getBeanDefinitionCount() + " definitions)");
+	}
+
+	private static byte[] createDocument(int beans) throws Exception {
+		StringBuffer sb = new StringBuffer("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<beans>\n");
+		for (int i = 0; i < beans; i++) {
+			sb.append("\t<bean name=\"bean").append(i).append("\" class=\"com.interface21.beans.TestBean\">\n");
+			sb.append("\t\t<property name=\"name\">bean").append(i).append("</property>\n");
+			sb.append("\t\t<property name=\"age\">").append(i % 100).append("</property>\n");
+			if (i > 0)
+				sb.append("\t\t<property name=\"spouse\" beanRef=\"true\">bean").append(i - 1).append("</property>\n");
+			sb.append("\t</bean>\n");
+		}
+		sb.append("</beans>\n");
+		return sb.toString().getBytes("UTF-8");
+	}
+
+	/**
+	 * Return the document and the factory, so that both stay reachable
+	 */
+	private static Object[] readDom(byte[] document) throws Exception {
+		DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		Document doc = db.parse(new ByteArrayInputStream(document));
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		Map classes = new HashMap();
+		NodeList beanElements = doc.getDocumentElement().getElementsByTagName("bean");
+		for (int i = 0; i < beanElements.getLength(); i++) {
+			Element bean = (Element) beanElements.item(i);
+			MutablePropertyValues pvs = new MutablePropertyValues();
+			NodeList properties = bean.getElementsByTagName("property");
+			for (int j = 0; j < properties.getLength(); j++) {
+				Element property = (Element) properties.item(j);
+				Object value = property.getFirstChild().getNodeValue();
+				if ("true".equals(property.getAttribute("beanRef")))
+					value = new RuntimeBeanReference((String) value);
+				pvs.addPropertyValue(new PropertyValue(property.getAttribute("name"), value));
+			}
+			String name = bean.getAttribute("name");
+			lbf.registerBeanDefinition(name, lbf.createBeanDefinition(name, bean.getAttribute("class"), null, pvs,
+				true, false, classes));
+		}
+		return new Object[] { doc, lbf };
+	}
+
+	private static ListableBeanFactoryImpl readStreaming(byte[] document) throws Exception {
+		ListableBeanFactoryImpl lbf = new ListableBeanFactoryImpl();
+		new StreamingXmlBeanDefinitionReader().registerBeanDefinitions(lbf, new ByteArrayInputStream(document));
+		return lbf;
+	}
+
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+}
@@ -8,6 +8,7 @@ import junit.framework.TestSuite;
 
 import com.interface21.beans.MutablePropertyValues;
 import com.interface21.beans.factory.LBIInit;
+import com.interface21.beans.factory.support.DefaultRootBeanDefinition;
 import com.interface21.context.ACATest;
 import com.interface21.context.ApplicationContext;
 import com.interface21.context.AbstractApplicationContextTests;
@@ -60,6 +61,18 @@ public class StaticApplicationContextTestSuite extends AbstractApplicationContex
 		assertCount(11);
 	}
 	
+	public void testLazyInitSingletonIsConfiguredWhenCreated() throws Exception {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		DefaultRootBeanDefinition bd = new DefaultRootBeanDefinition(ACATest.class, new MutablePropertyValues(), true);
+		bd.setLazyInit(true);
+		ctx.defaultBeanFactory.registerBeanDefinition("lazyAca", bd);
+		ctx.rebuild();
+		assertTrue("Not created by refresh", !ctx.defaultBeanFactory.containsSingleton("lazyAca"));
+		// Requested from the bean factory, as a reference from another bean would be
+		ACATest aca = (ACATest) ctx.defaultBeanFactory.getBean("lazyAca");
+		assertTrue("Configured on creation", aca.getApplicationContext() == ctx);
+	}
+	
 	protected void tearDown() {
 	}
 	
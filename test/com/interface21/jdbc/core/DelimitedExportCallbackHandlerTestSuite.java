@@ -0,0 +1,144 @@
+package com.interface21.jdbc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.easymock.MockControl;
+
+import com.mockobjects.sql.MockMultiRowResultSet;
+import com.mockobjects.sql.MockResultSetMetaData;
+
+/**
+ * @author Rod Johnson
+ */
+public class DelimitedExportCallbackHandlerTestSuite extends TestCase {
+
+	public DelimitedExportCallbackHandlerTestSuite(String name) {
+		super(name);
+	}
+
+	/**
+	 * Mock ResultSet that supports wasNull() and getBoolean()
+	 */
+	private static class NullAwareResultSet extends MockMultiRowResultSet {
+		private boolean wasNull;
+		public Object getObject(int i) throws SQLException {
+			Object o = super.getObject(i);
+			this.wasNull = (o == null);
+			return o;
+		}
+		public int getInt(int i) throws SQLException {
+			Object o = getObject(i);
+			return (o != null) ? ((Integer) o).intValue() : 0;
+		}
+		public boolean getBoolean(int i) throws SQLException {
+			Object o = getObject(i);
+			return (o != null) && ((Boolean) o).booleanValue();
+		}
+		public boolean wasNull() {
+			return this.wasNull;
+		}
+	}
+
+	private NullAwareResultSet resultSet(Object[][] data) {
+		MockResultSetMetaData rsmd = new MockResultSetMetaData();
+		rsmd.setupGetColumnCount(5);
+		rsmd.setupAddColumnNames(new String[] { "ID", "NAME", "BIG", "ACTIVE", "CREATED" });
+		rsmd.setupAddColumnTypes(new int[] { Types.INTEGER, Types.VARCHAR, Types.BIGINT, Types.BIT, Types.TIMESTAMP });
+		NullAwareResultSet rs = new NullAwareResultSet();
+		rs.setupMetaData(rsmd);
+		rs.setupRows(data);
+		return rs;
+	}
+
+	private String export(DelimitedExportCallbackHandler handler, ByteArrayOutputStream out, Object[][] data) throws Exception {
+		NullAwareResultSet rs = resultSet(data);
+		while (rs.next()) {
+			handler.processRow(rs);
+		}
+		handler.flush();
+		return new String(out.toByteArray(), "UTF-8");
+	}
+
+	private Timestamp timestamp() {
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2003, Calendar.FEBRUARY, 11, 8, 10, 23);
+		Timestamp ts = new Timestamp(cal.getTime().getTime());
+		ts.setNanos(250000000);
+		return ts;
+	}
+
+	public void testCsvWithQuotingAndNulls() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// Tiny buffer to exercise flushing mid-row
+		DelimitedExportCallbackHandler handler = new DelimitedExportCallbackHandler(out, 32);
+		handler.setHeader(true);
+		String result = export(handler, out, new Object[][] {
+			{ new Integer(-42), "Rod, \"the\" author", new Long(Long.MIN_VALUE), Boolean.TRUE, timestamp() },
+			{ null, "caf\u00e9\nbar", new Long(1234567890123L), null, null },
+		});
+		assertEquals(
+			"ID,NAME,BIG,ACTIVE,CREATED\n" +
+			"-42,\"Rod, \"\"the\"\" author\",-9223372036854775808,true,2003-02-11 08:10:23.250\n" +
+			",\"caf\u00e9\nbar\",1234567890123,,\n",
+			result);
+		assertEquals(2, handler.getRowCount());
+	}
+
+	public void testHeaderWrittenWithoutRows() throws Exception {
+		String sql = "SELECT ID, NAME, BIG, ACTIVE, CREATED FROM CUSTOMER WHERE 1 = 0";
+		MockControl psControl = EasyMock.controlFor(PreparedStatement.class);
+		PreparedStatement ps = (PreparedStatement) psControl.getMock();
+		ps.executeQuery();
+		psControl.setReturnValue(resultSet(new Object[0][]));
+		ps.getWarnings();
+		psControl.setReturnValue(null);
+		ps.close();
+		psControl.activate();
+
+		MockControl conControl = EasyMock.controlFor(Connection.class);
+		Connection con = (Connection) conControl.getMock();
+		con.prepareStatement(sql);
+		conControl.setReturnValue(ps);
+		con.close();
+		conControl.activate();
+
+		MockControl dsControl = EasyMock.controlFor(DataSource.class);
+		DataSource ds = (DataSource) dsControl.getMock();
+		ds.getConnection();
+		dsControl.setReturnValue(con);
+		dsControl.activate();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DelimitedExportCallbackHandler handler = new DelimitedExportCallbackHandler(out);
+		handler.setHeader(true);
+		new JdbcTemplate(ds).query(sql, handler);
+		handler.flush();
+		assertEquals("ID,NAME,BIG,ACTIVE,CREATED\n", new String(out.toByteArray(), "UTF-8"));
+		assertEquals(0, handler.getRowCount());
+		psControl.verify();
+	}
+
+	public void testTsv() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DelimitedExportCallbackHandler handler = new DelimitedExportCallbackHandler(out);
+		handler.setDelimiter('\t');
+		handler.setLineSeparator("\r\n");
+		String result = export(handler, out, new Object[][] {
+			{ new Integer(0), "a,b", new Long(7), Boolean.FALSE, timestamp() },
+		});
+		assertEquals("0\ta,b\t7\tfalse\t2003-02-11 08:10:23.250\r\n", result);
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.interface21.jdbc.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.easymock.MockControl;
+
+import com.interface21.dao.InvalidDataAccessApiUsageException;
+
+/**
+ * @author Rod Johnson
+ */
+public class LobStreamingCallbackHandlerTestSuite extends TestCase {
+
+	private static final byte[] DOCUMENT = "The quick brown fox jumps over the lazy dog".getBytes();
+
+	public LobStreamingCallbackHandlerTestSuite(String name) {
+		super(name);
+	}
+
+	private ResultSet blobResultSet(byte[] data) throws Exception {
+		MockControl blobControl = EasyMock.controlFor(Blob.class);
+		Blob blob = (Blob) blobControl.getMock();
+		blob.length();
+		blobControl.setReturnValue((long) data.length);
+		blob.getBinaryStream();
+		blobControl.setReturnValue(new ByteArrayInputStream(data));
+		blobControl.activate();
+
+		MockControl rsControl = EasyMock.controlFor(ResultSet.class);
+		ResultSet rs = (ResultSet) rsControl.getMock();
+		rs.getBlob(1);
+		rsControl.setReturnValue(blob);
+		rsControl.activate();
+		return rs;
+	}
+
+	public void testStreamWholeBlob() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LobStreamingCallbackHandler handler = new LobStreamingCallbackHandler(1, out);
+		handler.processRow(blobResultSet(DOCUMENT));
+		assertTrue(handler.isRowFound());
+		assertEquals(DOCUMENT.length, handler.getLobLength());
+		assertEquals(DOCUMENT.length, handler.getCount());
+		assertEquals(new String(DOCUMENT), out.toString());
+	}
+
+	public void testStreamBlobRangeWithSmallBuffer() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LobStreamingCallbackHandler handler = new LobStreamingCallbackHandler(1, false, 3) {
+			protected java.io.OutputStream getOutputStream() {
+				return out;
+			}
+		};
+		handler.setRange(4, 18);
+		handler.processRow(blobResultSet(DOCUMENT));
+		assertEquals(15, handler.getCount());
+		assertEquals("quick brown fox", out.toString());
+	}
+
+	public void testRangeBeyondEndIsTruncated() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LobStreamingCallbackHandler handler = new LobStreamingCallbackHandler(1, out);
+		handler.setRange(40, 1000);
+		handler.processRow(blobResultSet(DOCUMENT));
+		assertEquals("dog", out.toString());
+	}
+
+	public void testStreamClob() throws Exception {
+		String text = "Some long text \u00e9\u00e8";
+		MockControl clobControl = EasyMock.controlFor(Clob.class);
+		Clob clob = (Clob) clobControl.getMock();
+		clob.length();
+		clobControl.setReturnValue((long) text.length());
+		clob.getCharacterStream();
+		clobControl.setReturnValue(new StringReader(text));
+		clobControl.activate();
+
+		MockControl rsControl = EasyMock.controlFor(ResultSet.class);
+		ResultSet rs = (ResultSet) rsControl.getMock();
+		rs.getClob(2);
+		rsControl.setReturnValue(clob);
+		rsControl.activate();
+
+		StringWriter out = new StringWriter();
+		LobStreamingCallbackHandler handler = new LobStreamingCallbackHandler(2, out);
+		handler.processRow(rs);
+		assertEquals(text, out.toString());
+		clobControl.verify();
+		rsControl.verify();
+	}
+
+	public void testRejectsSecondRow() throws Exception {
+		LobStreamingCallbackHandler handler = new LobStreamingCallbackHandler(1, new ByteArrayOutputStream());
+		handler.processRow(blobResultSet(DOCUMENT));
+		try {
+			handler.processRow(blobResultSet(DOCUMENT));
+			fail("Should reject second row");
+		}
+		catch (InvalidDataAccessApiUsageException ex) {
+			// Ok
+		}
+	}
+
+}
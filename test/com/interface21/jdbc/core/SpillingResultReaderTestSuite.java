@@ -0,0 +1,180 @@
+package com.interface21.jdbc.core;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.easymock.MockControl;
+
+import com.interface21.dao.DataAccessResourceFailureException;
+import com.interface21.dao.InvalidDataAccessApiUsageException;
+import com.mockobjects.sql.MockMultiRowResultSet;
+import com.mockobjects.sql.MockResultSetMetaData;
+
+/**
+ * @author Rod Johnson
+ */
+public class SpillingResultReaderTestSuite extends TestCase {
+
+	private File tempDirectory;
+
+	public SpillingResultReaderTestSuite(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		tempDirectory = File.createTempFile("spilltest", "");
+		tempDirectory.delete();
+		tempDirectory.mkdir();
+	}
+
+	protected void tearDown() {
+		File[] files = tempDirectory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+		tempDirectory.delete();
+	}
+
+	private Object[][] data(int rows) {
+		Object[][] data = new Object[rows][];
+		for (int i = 0; i < rows; i++) {
+			data[i] = new Object[] {
+				new Integer(i), "name\u00e9\u4e2d" + i, (i % 2 == 0) ? null : new BigDecimal("12.5" + i),
+				new Timestamp(1000000L + i), new byte[] { (byte) i, 2, 3 }
+			};
+		}
+		return data;
+	}
+
+	private void read(SpillingResultReader rr, Object[][] data) throws Exception {
+		MockResultSetMetaData rsmd = new MockResultSetMetaData();
+		rsmd.setupGetColumnCount(5);
+		rsmd.setupAddColumnNames(new String[] { "id", "name", "amount", "created", "data" });
+		rsmd.setupAddColumnTypes(new int[] { Types.INTEGER, Types.VARCHAR, Types.DECIMAL, Types.TIMESTAMP, Types.BLOB });
+		MockMultiRowResultSet rs = new MockMultiRowResultSet();
+		rs.setupMetaData(rsmd);
+		rs.setupRows(data);
+		while (rs.next()) {
+			rr.processRow(rs);
+		}
+	}
+
+	private void assertRows(Object[][] data, Iterator it) {
+		for (int i = 0; i < data.length; i++) {
+			assertTrue("has row " + i, it.hasNext());
+			Object[] row = (Object[]) it.next();
+			assertEquals(data[i][0], row[0]);
+			assertEquals(data[i][1], row[1]);
+			assertEquals(data[i][2], row[2]);
+			assertEquals(data[i][3], row[3]);
+			byte[] bytes = (byte[]) row[4];
+			assertEquals(3, bytes.length);
+			assertEquals((byte) i, bytes[0]);
+		}
+		assertTrue("no more rows", !it.hasNext());
+	}
+
+	public void testAllRowsInMemory() throws Exception {
+		SpillingResultReader rr = new SpillingResultReader();
+		rr.setTempDirectory(tempDirectory);
+		Object[][] data = data(10);
+		read(rr, data);
+		assertTrue("not spilled", !rr.isSpilled());
+		assertEquals(10, rr.getRowCount());
+		assertRows(data, rr.iterator());
+		assertRows(data, rr.getResults().iterator());
+		rr.close();
+	}
+
+	public void testAllRowsSpilled() throws Exception {
+		SpillingResultReader rr = new SpillingResultReader(0);
+		rr.setTempDirectory(tempDirectory);
+		Object[][] data = data(100);
+		read(rr, data);
+		assertTrue("spilled", rr.isSpilled());
+		assertEquals(100, rr.getSpilledRowCount());
+		assertEquals(1, tempDirectory.listFiles().length);
+		assertRows(data, rr.iterator());
+		// Can read more than once
+		assertRows(data, rr.iterator());
+		rr.close();
+		assertEquals("spill file deleted", 0, tempDirectory.listFiles().length);
+		try {
+			rr.iterator();
+			fail("Can't read after close");
+		}
+		catch (InvalidDataAccessApiUsageException ex) {
+			// Ok
+		}
+	}
+
+	public void testUnspillableValueClosesReader() throws Exception {
+		SpillingResultReader rr = new SpillingResultReader(0);
+		rr.setTempDirectory(tempDirectory);
+		Object[][] data = data(5);
+		data[3][1] = new Object();
+		try {
+			read(rr, data);
+			fail("Can't spill value that isn't serializable");
+		}
+		catch (InvalidDataAccessApiUsageException ex) {
+			// Ok
+		}
+		assertEquals("spill file deleted", 0, tempDirectory.listFiles().length);
+		try {
+			rr.iterator();
+			fail("Can't read partly written rows");
+		}
+		catch (InvalidDataAccessApiUsageException ex) {
+			// Ok
+		}
+	}
+
+	public void testLobTooLargeForArray() throws Exception {
+		MockControl blobControl = EasyMock.controlFor(Blob.class);
+		Blob blob = (Blob) blobControl.getMock();
+		blob.length();
+		blobControl.setReturnValue(Integer.MAX_VALUE + 1L);
+		blobControl.activate();
+		MockControl rsControl = EasyMock.controlFor(ResultSet.class);
+		ResultSet rs = (ResultSet) rsControl.getMock();
+		rs.getObject(1);
+		rsControl.setReturnValue(blob);
+		rsControl.activate();
+
+		try {
+			new SpillingResultReader().extractValue(rs, 1);
+			fail("Can't read 2GB BLOB into an array");
+		}
+		catch (DataAccessResourceFailureException ex) {
+			// Ok
+		}
+		blobControl.verify();
+	}
+
+	public void testPartlySpilledAcrossSmallMappedRegions() throws Exception {
+		SpillingResultReader rr = new SpillingResultReader(1000);
+		rr.setMappingSize(64);
+		rr.setTempDirectory(tempDirectory);
+		Object[][] data = data(200);
+		read(rr, data);
+		assertTrue("spilled", rr.isSpilled());
+		assertTrue("some rows in memory", rr.getSpilledRowCount() > 0 && rr.getSpilledRowCount() < 200);
+		assertRows(data, rr.iterator());
+
+		List results = rr.getResults();
+		assertEquals(200, results.size());
+		assertEquals(new Integer(150), ((Object[]) results.get(150))[0]);
+		rr.close();
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.interface21.jdbc.object;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.easymock.MockControl;
+
+import com.interface21.dao.DataIntegrityViolationException;
+import com.interface21.jdbc.core.SqlParameter;
+
+/**
+ * @author Rod Johnson
+ */
+public class BulkLoaderTestSuite extends TestCase {
+
+	private File file;
+
+	public BulkLoaderTestSuite(String name) {
+		super(name);
+	}
+
+	/**
+	 * SqlUpdate that records batches instead of executing them,
+	 * failing any batch containing the given id
+	 */
+	private static class RecordingUpdate extends SqlUpdate {
+		private final List rows = Collections.synchronizedList(new LinkedList());
+		private final Integer failingId;
+		public RecordingUpdate(Integer failingId) {
+			MockControl dsControl = EasyMock.controlFor(DataSource.class);
+			setDataSource((DataSource) dsControl.getMock());
+			setSql("INSERT INTO CUSTOMER (ID, NAME, CREATED, BALANCE) VALUES (?, ?, ?, ?)");
+			declareParameter(new SqlParameter(Types.INTEGER));
+			declareParameter(new SqlParameter(Types.VARCHAR));
+			declareParameter(new SqlParameter(Types.DATE));
+			declareParameter(new SqlParameter(Types.DECIMAL));
+			this.failingId = failingId;
+		}
+		public int[] batchUpdate(Object[][] batchArgs) {
+			for (int i = 0; i < batchArgs.length; i++) {
+				if (batchArgs[i][0].equals(this.failingId))
+					throw new DataIntegrityViolationException("Duplicate key", null);
+			}
+			for (int i = 0; i < batchArgs.length; i++) {
+				this.rows.add(batchArgs[i]);
+			}
+			return new int[batchArgs.length];
+		}
+	}
+
+	protected void setUp() throws Exception {
+		this.file = File.createTempFile("bulkload", ".csv");
+	}
+
+	protected void tearDown() {
+		this.file.delete();
+	}
+
+	private void writeFile(String content) throws Exception {
+		OutputStream out = new FileOutputStream(this.file);
+		out.write(content.getBytes("UTF-8"));
+		out.close();
+	}
+
+	public void testLoadAcrossWindowsAndBatches() throws Exception {
+		StringBuffer sb = new StringBuffer("ID,NAME,CREATED,BALANCE\r\n");
+		for (int i = 1; i <= 250; i++) {
+			sb.append(i).append(",\"Customer \"\"").append(i).append("\"\"\",2003-02-").append(10 + i % 10).append(",").append(i).append(".50\r\n");
+		}
+		// No trailing newline on the last line
+		sb.append("251,caf\u00e9,,");
+		writeFile(sb.toString());
+
+		RecordingUpdate update = new RecordingUpdate(null);
+		BulkLoader loader = new BulkLoader(update);
+		loader.setSkipHeader(true);
+		loader.setBatchSize(7);
+		loader.setParserThreads(3);
+		// Small windows, so that lines straddle window boundaries
+		loader.setMappingSize(100);
+		BulkLoadReport report = loader.load(this.file);
+
+		assertEquals(251, report.getRowsRead());
+		assertEquals(251, report.getRowsLoaded());
+		assertEquals(0, report.getRowsRejected());
+		assertEquals(0, report.getFailures().size());
+		assertEquals(251, update.rows.size());
+		boolean[] seen = new boolean[252];
+		for (int i = 0; i < update.rows.size(); i++) {
+			Object[] row = (Object[]) update.rows.get(i);
+			int id = ((Integer) row[0]).intValue();
+			assertTrue("Row " + id + " loaded once", !seen[id]);
+			seen[id] = true;
+			if (id == 251) {
+				assertEquals("caf\u00e9", row[1]);
+				assertNull(row[2]);
+				assertNull(row[3]);
+			}
+			else {
+				assertEquals("Customer \"" + id + "\"", row[1]);
+				assertEquals(java.sql.Date.valueOf("2003-02-" + (10 + id % 10)), row[2]);
+				assertEquals(new java.math.BigDecimal(id + ".50"), row[3]);
+			}
+		}
+	}
+
+	public void testParseAndBatchFailuresAreReported() throws Exception {
+		writeFile(
+			"1,a,2003-01-01,1\n" +
+			"x,b,2003-01-01,1\n" +
+			"3,c,2003-13-01,1\n" +
+			"4,d,2003-01-01\n" +
+			"5,e,2003-01-01,1\n" +
+			"6,f,2003-01-01,1\n");
+		RecordingUpdate update = new RecordingUpdate(new Integer(6));
+		BulkLoader loader = new BulkLoader(update);
+		loader.setBatchSize(5);
+		BulkLoadReport report = loader.load(this.file);
+
+		assertEquals(6, report.getRowsRead());
+		assertEquals(2, report.getRowsLoaded());
+		assertEquals(4, report.getRowsRejected());
+		assertEquals(2, report.getBatchCount());
+		assertEquals(1, report.getFailedBatchCount());
+		assertEquals(4, report.getFailures().size());
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.interface21.jdbc.object;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.easymock.MockControl;
+
+import com.interface21.beans.MutablePropertyValues;
+import com.interface21.beans.PropertyValue;
+import com.interface21.context.ApplicationContext;
+import com.interface21.context.ContextOptions;
+import com.interface21.context.support.StaticApplicationContext;
+import com.interface21.jdbc.core.SqlParameter;
+
+/**
+ * @author Rod Johnson
+ * @since 18 October 2003
+ */
+public class StatementWarmUpListenerTestSuite extends TestCase {
+
+	private static final String SQL = "UPDATE CUSTOMER SET NAME = ? WHERE ID = ?";
+
+	/** DataSource used by WarmUpUpdate instances created by the context */
+	private static DataSource dataSource;
+
+	private static int instances;
+
+	public StatementWarmUpListenerTestSuite(String name) {
+		super(name);
+	}
+
+	/**
+	 * SqlUpdate that counts the instances the context creates
+	 */
+	public static class WarmUpUpdate extends SqlUpdate {
+		public WarmUpUpdate() {
+			instances++;
+			setDataSource(dataSource);
+			setSql(SQL);
+			declareParameter(new SqlParameter(Types.VARCHAR));
+			declareParameter(new SqlParameter(Types.INTEGER));
+		}
+	}
+
+	protected void setUp() {
+		instances = 0;
+	}
+
+	private StaticApplicationContext createContext(boolean lazyInit) throws Exception {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		if (lazyInit) {
+			MutablePropertyValues pvs = new MutablePropertyValues();
+			pvs.addPropertyValue(new PropertyValue("lazyInit", "true"));
+			ctx.registerSingleton(ApplicationContext.OPTIONS_BEAN_NAME, ContextOptions.class, pvs);
+		}
+		ctx.registerSingleton("warmUp", StatementWarmUpListener.class, new MutablePropertyValues());
+		ctx.registerSingleton("update", WarmUpUpdate.class, new MutablePropertyValues());
+		return ctx;
+	}
+
+	public void testStatementIsPreparedOnRefresh() throws Exception {
+		MockControl psControl = EasyMock.controlFor(PreparedStatement.class);
+		PreparedStatement ps = (PreparedStatement) psControl.getMock();
+		ps.close();
+		psControl.activate();
+
+		MockControl conControl = EasyMock.controlFor(Connection.class);
+		Connection con = (Connection) conControl.getMock();
+		con.prepareStatement(SQL);
+		conControl.setReturnValue(ps);
+		con.close();
+		conControl.activate();
+
+		MockControl dsControl = EasyMock.controlFor(DataSource.class);
+		dataSource = (DataSource) dsControl.getMock();
+		dataSource.getConnection();
+		dsControl.setReturnValue(con);
+		dsControl.activate();
+
+		StaticApplicationContext ctx = createContext(false);
+		ctx.rebuild();
+		StatementWarmUpListener listener = (StatementWarmUpListener) ctx.getBean("warmUp");
+		assertTrue("Prepared 1 statement", listener.getStatementCount() == 1);
+		assertTrue("No failures", listener.getFailureCount() == 0);
+		assertTrue("Timed update", listener.getOperationMillis().containsKey("update"));
+		dsControl.verify();
+		conControl.verify();
+		psControl.verify();
+	}
+
+	public void testLazyInitOperationIsNotCreated() throws Exception {
+		// Any call on the DataSource fails
+		MockControl dsControl = EasyMock.controlFor(DataSource.class);
+		dataSource = (DataSource) dsControl.getMock();
+		dsControl.activate();
+
+		StaticApplicationContext ctx = createContext(true);
+		ctx.rebuild();
+		StatementWarmUpListener listener = (StatementWarmUpListener) ctx.getBean("warmUp");
+		assertTrue("Lazy-init update not created", instances == 0);
+		assertTrue("Prepared no statements", listener.getStatementCount() == 0);
+		dsControl.verify();
+
+		ctx.getBean("update");
+		assertTrue("Created on request", instances == 1);
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.interface21.web.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.ResultSet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.easymock.MockControl;
+
+/**
+ * @author Rod Johnson
+ * @since 18 October 2003
+ */
+public class ResponseLobStreamingCallbackHandlerTestSuite extends TestCase {
+
+	private static final byte[] DOCUMENT = "The quick brown fox jumps over the lazy dog".getBytes();
+
+	public ResponseLobStreamingCallbackHandlerTestSuite(String name) {
+		super(name);
+	}
+
+	private ResultSet blobResultSet(byte[] data) throws Exception {
+		MockControl blobControl = EasyMock.controlFor(Blob.class);
+		Blob blob = (Blob) blobControl.getMock();
+		blob.length();
+		blobControl.setReturnValue((long) data.length);
+		blob.getBinaryStream();
+		blobControl.setReturnValue(new ByteArrayInputStream(data));
+		blobControl.activate();
+
+		MockControl rsControl = EasyMock.controlFor(ResultSet.class);
+		ResultSet rs = (ResultSet) rsControl.getMock();
+		rs.getBlob(1);
+		rsControl.setReturnValue(blob);
+		rsControl.activate();
+		return rs;
+	}
+
+	private HttpServletRequest rangeRequest(String range) {
+		MockControl requestControl = EasyMock.controlFor(HttpServletRequest.class);
+		HttpServletRequest request = (HttpServletRequest) requestControl.getMock();
+		request.getHeader("Range");
+		requestControl.setReturnValue(range);
+		requestControl.activate();
+		return request;
+	}
+
+	/**
+	 * Stream the document in answer to a request with the given Range header
+	 * @return the bytes sent
+	 */
+	private String stream(String range, HttpServletResponse response) throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ResponseLobStreamingCallbackHandler handler =
+				new ResponseLobStreamingCallbackHandler(1, false, rangeRequest(range), response) {
+			protected OutputStream getOutputStream() {
+				return out;
+			}
+		};
+		handler.processRow(blobResultSet(DOCUMENT));
+		return out.toString();
+	}
+
+	public void testValidRangeIsPartialContent() throws Exception {
+		MockControl responseControl = EasyMock.controlFor(HttpServletResponse.class);
+		HttpServletResponse response = (HttpServletResponse) responseControl.getMock();
+		response.setHeader("Accept-Ranges", "bytes");
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		response.setHeader("Content-Range", "bytes 4-18/43");
+		response.setContentLength(15);
+		responseControl.activate();
+
+		assertEquals("quick brown fox", stream("bytes=4-18", response));
+		responseControl.verify();
+	}
+
+	public void testInvalidRangeIsIgnored() throws Exception {
+		String[] ranges = { "bytes=abc", "bytes=18-4", "bytes=--3", "bytes=4-x", "bytes=-", "bytes=+4-18" };
+		for (int i = 0; i < ranges.length; i++) {
+			MockControl responseControl = EasyMock.controlFor(HttpServletResponse.class);
+			HttpServletResponse response = (HttpServletResponse) responseControl.getMock();
+			response.setHeader("Accept-Ranges", "bytes");
+			response.setContentLength(DOCUMENT.length);
+			responseControl.activate();
+
+			assertEquals("Whole document for " + ranges[i], new String(DOCUMENT), stream(ranges[i], response));
+			responseControl.verify();
+		}
+	}
+
+	public void testUnsatisfiableRangeIsRejected() throws Exception {
+		String[] ranges = { "bytes=43-", "bytes=100-200", "bytes=-0" };
+		for (int i = 0; i < ranges.length; i++) {
+			MockControl responseControl = EasyMock.controlFor(HttpServletResponse.class);
+			HttpServletResponse response = (HttpServletResponse) responseControl.getMock();
+			response.setHeader("Accept-Ranges", "bytes");
+			response.setHeader("Content-Range", "bytes */43");
+			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			responseControl.activate();
+
+			assertEquals("Nothing sent for " + ranges[i], "", stream(ranges[i], response));
+			responseControl.verify();
+		}
+	}
+
+}